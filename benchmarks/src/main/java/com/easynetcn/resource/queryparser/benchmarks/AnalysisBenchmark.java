@@ -0,0 +1,83 @@
+package com.easynetcn.resource.queryparser.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.easynetcn.resource.queryparser.QueryBuilder;
+import com.easynetcn.resource.queryparser.QueryParser;
+
+/**
+ * Cost of {@link QueryBuilder#createFieldQuery} alone: running the analysis
+ * chain over the text of one term or phrase and building the query from the
+ * token stream.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnalysisBenchmark {
+	@Param
+	public AnalyzerKind analyzer;
+
+	@Param({ "false", "true" })
+	public boolean quoted;
+
+	@Param({ "false", "true" })
+	public boolean singlePass;
+
+	private String[] texts;
+	private int next;
+	private AnalyzingParser parser;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(AnalyzerKind.SEED);
+		texts = new String[QueryCorpus.SIZE];
+		for (int i = 0; i < texts.length; i++) {
+			StringBuilder sb = new StringBuilder();
+			int words = 1 + random.nextInt(4);
+			for (int w = 0; w < words; w++) {
+				if (w > 0) {
+					sb.append(' ');
+				}
+				sb.append(QueryCorpus.TERMS[random.nextInt(QueryCorpus.TERMS.length)]);
+			}
+			texts[i] = sb.toString();
+		}
+		parser = new AnalyzingParser(analyzer.create());
+		parser.setSinglePassAnalysis(singlePass);
+	}
+
+	@Benchmark
+	public Query createFieldQuery() {
+		return parser.analyze("ti", texts[next++ & (QueryCorpus.SIZE - 1)], quoted);
+	}
+
+	/** Exposes the protected analysis entry point. */
+	static final class AnalyzingParser extends QueryParser {
+		AnalyzingParser(Analyzer a) {
+			super("ti", a);
+		}
+
+		Query analyze(String field, String text, boolean quoted) {
+			return createFieldQuery(getAnalyzer(), BooleanClause.Occur.SHOULD, field, text, quoted, 0);
+		}
+	}
+}
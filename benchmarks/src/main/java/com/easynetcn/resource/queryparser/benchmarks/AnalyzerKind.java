@@ -0,0 +1,55 @@
+package com.easynetcn.resource.queryparser.benchmarks;
+
+import java.util.Random;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+
+import com.easynetcn.resource.queryparser.MockGraphTokenFilter;
+import com.easynetcn.resource.queryparser.MockLowerCaseFilter;
+import com.easynetcn.resource.queryparser.MockSynonymFilter;
+
+/**
+ * The analysis chains benchmarked, built from the filters of the test Mock*
+ * classes. MockTokenizer needs a randomized test context, so all chains use a
+ * plain {@link WhitespaceTokenizer} instead.
+ */
+public enum AnalyzerKind {
+	/** Whitespace tokenization and lowercasing. */
+	SIMPLE {
+		@Override
+		TokenStream filter(Tokenizer tokenizer) {
+			return new MockLowerCaseFilter(tokenizer);
+		}
+	},
+	/** Single and multi word synonyms: "dogs" and "guinea pig". */
+	SYNONYM {
+		@Override
+		TokenStream filter(Tokenizer tokenizer) {
+			return new MockSynonymFilter(new MockLowerCaseFilter(tokenizer));
+		}
+	},
+	/** Token graphs with overlapping multi-position tokens. */
+	GRAPH {
+		@Override
+		TokenStream filter(Tokenizer tokenizer) {
+			return new MockGraphTokenFilter(new Random(SEED), new MockLowerCaseFilter(tokenizer));
+		}
+	};
+
+	static final long SEED = 0x5EEDL;
+
+	abstract TokenStream filter(Tokenizer tokenizer);
+
+	public Analyzer create() {
+		return new Analyzer() {
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName) {
+				Tokenizer tokenizer = new WhitespaceTokenizer();
+				return new TokenStreamComponents(tokenizer, filter(tokenizer));
+			}
+		};
+	}
+}
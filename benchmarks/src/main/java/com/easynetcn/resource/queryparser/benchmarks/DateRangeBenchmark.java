@@ -0,0 +1,61 @@
+package com.easynetcn.resource.queryparser.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.document.DateTools;
+import org.apache.lucene.search.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.easynetcn.resource.queryparser.DateRangeFormat;
+import com.easynetcn.resource.queryparser.ParseException;
+import com.easynetcn.resource.queryparser.QueryParser;
+
+/**
+ * Parsing of date range queries such as <code>pd=[20100101 TO 20151231]</code>
+ * with the patent patterns of {@link DateRangeFormat#PATENT}, or with the
+ * locale's date format only, which does not parse these bounds. Without a
+ * date resolution bounds are not parsed as dates at all.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateRangeBenchmark {
+	@Param({ "true", "false" })
+	public boolean patentFormat;
+
+	@Param({ "true", "false" })
+	public boolean dateResolution;
+
+	private String[] queries;
+	private int next;
+	private QueryParser parser;
+
+	@Setup
+	public void setup() {
+		queries = QueryCorpus.RANGE.queries();
+		parser = new QueryParser("ti", AnalyzerKind.SIMPLE.create());
+		parser.setDateRangeFormat(patentFormat ? DateRangeFormat.PATENT : DateRangeFormat.NONE);
+		if (dateResolution) {
+			parser.setDateResolution("pd", DateTools.Resolution.DAY);
+			parser.setDateResolution("ad", DateTools.Resolution.DAY);
+		}
+	}
+
+	@Benchmark
+	public Query parse() throws ParseException {
+		return parser.parse(queries[next++ & (QueryCorpus.SIZE - 1)]);
+	}
+}
@@ -0,0 +1,63 @@
+package com.easynetcn.resource.queryparser.benchmarks;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.easynetcn.resource.queryparser.DfaTokenManager;
+import com.easynetcn.resource.queryparser.FastCharStream;
+import com.easynetcn.resource.queryparser.QueryParserConstants;
+import com.easynetcn.resource.queryparser.QueryParserTokenManager;
+import com.easynetcn.resource.queryparser.Token;
+
+/**
+ * Throughput of {@link QueryParserTokenManager#getNextToken()}, generated or
+ * {@link DfaTokenManager hand-built}: one operation tokenizes one whole query.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+	@Param
+	public QueryCorpus corpus;
+
+	@Param({ "false", "true" })
+	public boolean dfa;
+
+	private String[] queries;
+	private int next;
+	private QueryParserTokenManager tokenManager;
+
+	@Setup
+	public void setup() {
+		queries = corpus.queries();
+		FastCharStream stream = new FastCharStream(new StringReader(""));
+		tokenManager = dfa ? new DfaTokenManager(stream) : new QueryParserTokenManager(stream);
+	}
+
+	@Benchmark
+	public int tokenize() {
+		String query = queries[next++ & (QueryCorpus.SIZE - 1)];
+		tokenManager.ReInit(new FastCharStream(new StringReader(query)));
+		int tokens = 0;
+		for (Token t = tokenManager.getNextToken(); t.kind != QueryParserConstants.EOF; t = tokenManager
+				.getNextToken()) {
+			tokens++;
+		}
+		return tokens;
+	}
+}
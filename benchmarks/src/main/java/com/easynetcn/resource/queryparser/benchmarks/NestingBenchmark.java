@@ -0,0 +1,63 @@
+package com.easynetcn.resource.queryparser.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.search.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.easynetcn.resource.queryparser.ParseException;
+import com.easynetcn.resource.queryparser.QueryParser;
+
+/**
+ * Recursive against iterative parsing of deeply nested groups, see
+ * {@link QueryParser#setIterativeNesting(boolean)}: one operation parses one
+ * query of the form <code>(ti=t0 or (ti=t1 or (... ti=tn)))</code>. The
+ * forked JVM gets a large thread stack so the recursive parser survives the
+ * deepest inputs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss256m")
+public class NestingBenchmark {
+	@Param({ "100", "1000", "10000" })
+	public int depth;
+
+	@Param({ "false", "true" })
+	public boolean iterative;
+
+	private String query;
+	private QueryParser parser;
+
+	@Setup
+	public void setup() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < depth; i++) {
+			sb.append("(ti=t").append(i).append(" or ");
+		}
+		sb.append("ti=t").append(depth);
+		for (int i = 0; i < depth; i++) {
+			sb.append(')');
+		}
+		query = sb.toString();
+		parser = new QueryParser("ti", AnalyzerKind.SIMPLE.create());
+		parser.setIterativeNesting(iterative);
+	}
+
+	@Benchmark
+	public Query parse() throws ParseException {
+		return parser.parse(query);
+	}
+}
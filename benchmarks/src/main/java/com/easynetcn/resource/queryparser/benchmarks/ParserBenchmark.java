@@ -0,0 +1,57 @@
+package com.easynetcn.resource.queryparser.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.search.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.easynetcn.resource.queryparser.ParseException;
+import com.easynetcn.resource.queryparser.QueryParser;
+
+/**
+ * Latency of a full {@link QueryParser#parse(String)}, from query text to
+ * Lucene query, including analysis.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+	@Param
+	public QueryCorpus corpus;
+
+	@Param
+	public AnalyzerKind analyzer;
+
+	@Param({ "false", "true" })
+	public boolean lazyTokenImages;
+
+	private String[] queries;
+	private int next;
+	private QueryParser parser;
+
+	@Setup
+	public void setup() {
+		queries = corpus.queries();
+		parser = new QueryParser("ti", analyzer.create());
+		parser.setAllowLeadingWildcard(true);
+		parser.setLazyTokenImages(lazyTokenImages);
+	}
+
+	@Benchmark
+	public Query parse() throws ParseException {
+		return parser.parse(queries[next++ & (QueryCorpus.SIZE - 1)]);
+	}
+}
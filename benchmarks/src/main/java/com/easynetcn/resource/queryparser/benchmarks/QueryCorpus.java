@@ -0,0 +1,170 @@
+package com.easynetcn.resource.queryparser.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Generated patent search queries of different shapes. Every corpus is built
+ * from a fixed seed so that runs are comparable.
+ */
+public enum QueryCorpus {
+	/** One to three field queries, the bulk of interactive searches. */
+	SHORT {
+		@Override
+		String generate(Random random) {
+			StringBuilder sb = new StringBuilder();
+			int clauses = 1 + random.nextInt(3);
+			for (int i = 0; i < clauses; i++) {
+				if (i > 0) {
+					sb.append(random.nextBoolean() ? " and " : " or ");
+				}
+				appendFieldTerm(sb, random);
+			}
+			return sb.toString();
+		}
+	},
+	/** Saved searches and alerts with hundreds of clauses. */
+	LONG_BOOLEAN {
+		@Override
+		String generate(Random random) {
+			StringBuilder sb = new StringBuilder();
+			int clauses = 200 + random.nextInt(200);
+			for (int i = 0; i < clauses; i++) {
+				if (i > 0) {
+					sb.append(OPERATORS[random.nextInt(OPERATORS.length)]);
+				}
+				if (random.nextInt(10) == 0) {
+					appendPhrase(sb, random);
+				} else {
+					appendFieldTerm(sb, random);
+				}
+			}
+			return sb.toString();
+		}
+	},
+	/** Machine generated queries that nest groups dozens of levels deep. */
+	NESTED {
+		@Override
+		String generate(Random random) {
+			StringBuilder sb = new StringBuilder();
+			int depth = 32 + random.nextInt(32);
+			for (int i = 0; i < depth; i++) {
+				appendFieldTerm(sb, random);
+				sb.append(random.nextBoolean() ? " and (" : " or (");
+			}
+			appendFieldTerm(sb, random);
+			for (int i = 0; i < depth; i++) {
+				sb.append(')');
+			}
+			return sb.toString();
+		}
+	},
+	/** Date and number ranges combined with a few terms. */
+	RANGE {
+		@Override
+		String generate(Random random) {
+			StringBuilder sb = new StringBuilder();
+			int year = 1990 + random.nextInt(25);
+			sb.append("pd=[").append(year).append("0101 TO ").append(year + 1 + random.nextInt(5)).append("1231]");
+			if (random.nextBoolean()) {
+				sb.append(" and ad={").append(year - 2).append("0101 TO *}");
+			}
+			sb.append(" and ");
+			appendFieldTerm(sb, random);
+			if (random.nextBoolean()) {
+				sb.append(" and clm=[1 TO ").append(1 + random.nextInt(50)).append(']');
+			}
+			return sb.toString();
+		}
+	},
+
+	/** Chinese patent titles and abstracts under Chinese field aliases. */
+	CJK {
+		@Override
+		String generate(Random random) {
+			StringBuilder sb = new StringBuilder();
+			int clauses = 1 + random.nextInt(4);
+			for (int i = 0; i < clauses; i++) {
+				if (i > 0) {
+					sb.append(OPERATORS[random.nextInt(OPERATORS.length)]);
+				}
+				sb.append(CJK_FIELDS[random.nextInt(CJK_FIELDS.length)]).append('=');
+				if (random.nextBoolean()) {
+					sb.append(CJK_TITLES[random.nextInt(CJK_TITLES.length)]);
+				} else {
+					sb.append('(').append(CJK_TITLES[random.nextInt(CJK_TITLES.length)]).append(" or ")
+							.append(CJK_TITLES[random.nextInt(CJK_TITLES.length)]).append(')');
+				}
+			}
+			return sb.toString();
+		}
+	};
+
+	/** Number of distinct queries in every corpus. */
+	public static final int SIZE = 256;
+
+	static final String[] FIELDS = { "ti", "ab", "cl", "pa", "in", "co", "ipc", "TI", "AB" };
+
+	static final String[] TERMS = { "car", "vehicle", "engine", "motor", "battery", "electric", "hybrid", "brake",
+			"wheel", "dogs", "guinea pig", "sensor", "lithium", "charging", "汽车", "发动机", "电池", "toyota", "honda",
+			"siemens" };
+
+	static final String[] CJK_FIELDS = { "名称", "摘要", "权利要求", "申请人", "发明人" };
+
+	static final String[] CJK_TITLES = { "锂离子电池正极材料及其制备方法", "一种电动汽车充电装置", "混合动力车辆的发动机控制系统",
+			"车辆制动能量回收方法", "基于深度学习的图像识别方法", "比亚迪股份有限公司", "华为技术有限公司", "半导体器件及其制造方法",
+			"ＬＥＤ照明装置", "无线通信网络中的数据传输方法" };
+
+	static final String[] OPERATORS = { " and ", " or ", " not ", " AND ", " OR ", " " };
+
+	abstract String generate(Random random);
+
+	/**
+	 * @return the {@link #SIZE} queries of this corpus.
+	 */
+	public String[] queries() {
+		Random random = new Random(0x5EEDL + ordinal());
+		String[] queries = new String[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			queries[i] = generate(random);
+		}
+		return queries;
+	}
+
+	static void appendFieldTerm(StringBuilder sb, Random random) {
+		sb.append(FIELDS[random.nextInt(FIELDS.length)]).append('=');
+		String term = TERMS[random.nextInt(TERMS.length)];
+		if (term.indexOf(' ') >= 0) {
+			sb.append('"').append(term).append('"');
+			return;
+		}
+		sb.append(term);
+		switch (random.nextInt(8)) {
+		case 0:
+			sb.append('*');
+			break;
+		case 1:
+			sb.append("~1");
+			break;
+		case 2:
+			sb.append('^').append(1 + random.nextInt(5));
+			break;
+		default:
+			break;
+		}
+	}
+
+	static void appendPhrase(StringBuilder sb, Random random) {
+		sb.append(FIELDS[random.nextInt(FIELDS.length)]).append("=\"");
+		int words = 2 + random.nextInt(3);
+		for (int i = 0; i < words; i++) {
+			if (i > 0) {
+				sb.append(' ');
+			}
+			sb.append(TERMS[random.nextInt(TERMS.length)]);
+		}
+		sb.append('"');
+		if (random.nextBoolean()) {
+			sb.append('~').append(random.nextInt(4));
+		}
+	}
+}
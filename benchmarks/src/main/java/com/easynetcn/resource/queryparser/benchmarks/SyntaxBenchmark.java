@@ -0,0 +1,50 @@
+package com.easynetcn.resource.queryparser.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.easynetcn.resource.queryparser.ParseException;
+import com.easynetcn.resource.queryparser.QueryNode;
+import com.easynetcn.resource.queryparser.QueryParser;
+
+/**
+ * Latency of {@link QueryParser#parseToAst(String)}: lexing and the grammar
+ * productions only, without analysis or building Lucene queries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SyntaxBenchmark {
+	@Param
+	public QueryCorpus corpus;
+
+	private String[] queries;
+	private int next;
+	private QueryParser parser;
+
+	@Setup
+	public void setup() {
+		queries = corpus.queries();
+		parser = new QueryParser("ti", AnalyzerKind.SIMPLE.create());
+		parser.setAllowLeadingWildcard(true);
+	}
+
+	@Benchmark
+	public QueryNode parseToAst() throws ParseException {
+		return parser.parseToAst(queries[next++ & (QueryCorpus.SIZE - 1)]);
+	}
+}
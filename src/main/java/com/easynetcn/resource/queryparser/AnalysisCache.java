@@ -0,0 +1,201 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.Query;
+
+/**
+ * A bounded cache of the queries {@link QueryBuilder} builds from analyzed
+ * text, see {@link QueryBuilder#setAnalysisCache(AnalysisCache)}. Frequent
+ * terms such as classification codes or assignee names then skip the
+ * analysis chain entirely.
+ * <p>
+ * Entries are keyed by the analyzer identity, field, text, default operator,
+ * quoting and phrase slop, plus the class and the analysis settings of the
+ * builder, so a cache may be shared by any number of builders and threads.
+ * Caching can be switched off for individual fields, e.g. fields whose
+ * analyzer is not deterministic or whose values rarely repeat.
+ * <p>
+ * The cache is bounded both by number of entries and by total weight, where
+ * the weight of an entry approximates its size in characters. Least recently
+ * used entries are evicted first.
+ */
+public class AnalysisCache {
+	/** Fixed per-entry overhead added to the character count of an entry. */
+	private static final int ENTRY_OVERHEAD = 128;
+	/** Stands for analysis that produced no query, e.g. only stop words. */
+	private static final Object NO_QUERY = new Object();
+
+	private final LruCache<Key, Object> cache;
+	private final Map<String, Boolean> fieldEnabled = new ConcurrentHashMap<>();
+	private volatile boolean enabledByDefault = true;
+	private final LongAdder bypasses = new LongAdder();
+
+	/**
+	 * Creates a cache holding at most <code>maxEntries</code> queries, without
+	 * a weight limit.
+	 */
+	public AnalysisCache(int maxEntries) {
+		this(maxEntries, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Creates a cache holding at most <code>maxEntries</code> queries whose
+	 * total weight, in characters of field names and text, does not exceed
+	 * <code>maxWeight</code>.
+	 */
+	public AnalysisCache(int maxEntries, long maxWeight) {
+		this.cache = new LruCache<>(maxEntries, maxWeight, AnalysisCache::weigh);
+	}
+
+	/**
+	 * Enables or disables caching for <code>field</code>, overriding
+	 * {@link #setEnabledByDefault(boolean)}.
+	 */
+	public void setFieldEnabled(String field, boolean enabled) {
+		fieldEnabled.put(field, enabled);
+	}
+
+	/**
+	 * Sets whether fields without an explicit
+	 * {@link #setFieldEnabled(String, boolean) setting} are cached. Default:
+	 * true.
+	 */
+	public void setEnabledByDefault(boolean enabled) {
+		this.enabledByDefault = enabled;
+	}
+
+	/**
+	 * @return whether queries built for <code>field</code> are cached.
+	 */
+	public boolean isEnabled(String field) {
+		Boolean enabled = fieldEnabled.get(field);
+		return enabled == null ? enabledByDefault : enabled;
+	}
+
+	/**
+	 * @return the number of lookups that found a cached query.
+	 */
+	public long getHitCount() {
+		return cache.hitCount();
+	}
+
+	/**
+	 * @return the number of lookups that had to analyze the text.
+	 */
+	public long getMissCount() {
+		return cache.missCount();
+	}
+
+	/**
+	 * @return the number of times text was analyzed without a lookup because
+	 *         caching is disabled for its field.
+	 */
+	public long getBypassCount() {
+		return bypasses.sum();
+	}
+
+	/**
+	 * @return the number of entries evicted to stay within the limits.
+	 */
+	public long getEvictionCount() {
+		return cache.evictionCount();
+	}
+
+	/**
+	 * @return the number of cached queries.
+	 */
+	public int size() {
+		return cache.size();
+	}
+
+	/**
+	 * @return the total weight of the cached queries.
+	 */
+	public long getWeight() {
+		return cache.weight();
+	}
+
+	/**
+	 * Removes all cached queries.
+	 */
+	public void clear() {
+		cache.clear();
+	}
+
+	/**
+	 * Returns the cached query for the given key, or runs
+	 * <code>analysis</code> and caches its result.
+	 */
+	Query get(Key key, Supplier<Query> analysis) {
+		if (!isEnabled(key.field)) {
+			bypasses.increment();
+			return analysis.get();
+		}
+		Object cached = cache.get(key);
+		if (cached == null) {
+			Query query = analysis.get();
+			cache.put(key, query == null ? NO_QUERY : query);
+			return query;
+		}
+		return cached == NO_QUERY ? null : (Query) cached;
+	}
+
+	private static long weigh(Key key, Object value) {
+		return ENTRY_OVERHEAD + key.field.length() + key.text.length();
+	}
+
+	static final class Key {
+		final Class<?> builderClass;
+		final Analyzer analyzer;
+		final String field;
+		final String text;
+		final BooleanClause.Occur operator;
+		// quoted and the builder settings
+		final int flags;
+		final int phraseSlop;
+		final int hash;
+
+		Key(Class<?> builderClass, Analyzer analyzer, String field, String text, BooleanClause.Occur operator,
+				int flags, int phraseSlop) {
+			this.builderClass = builderClass;
+			this.analyzer = analyzer;
+			this.field = field;
+			this.text = text;
+			this.operator = operator;
+			this.flags = flags;
+			this.phraseSlop = phraseSlop;
+			int h = System.identityHashCode(analyzer);
+			h = 31 * h + field.hashCode();
+			h = 31 * h + text.hashCode();
+			h = 31 * h + operator.hashCode();
+			h = 31 * h + flags;
+			h = 31 * h + phraseSlop;
+			this.hash = h;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hash == other.hash && analyzer == other.analyzer && builderClass == other.builderClass
+					&& flags == other.flags && phraseSlop == other.phraseSlop && operator == other.operator
+					&& field.equals(other.field) && text.equals(other.text);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
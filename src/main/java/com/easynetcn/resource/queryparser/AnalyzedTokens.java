@@ -0,0 +1,127 @@
+package com.easynetcn.resource.queryparser;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.BytesTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRefArray;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.Counter;
+
+/**
+ * The tokens of an analyzed text, captured in a single pass: term bytes in a
+ * shared {@link BytesRefArray}, position increments and lengths in int
+ * arrays. Unlike {@link org.apache.lucene.analysis.CachingTokenFilter} no
+ * attribute state is cloned per token.
+ * <p>
+ * The tokens can be read back any number of times as a token stream with a
+ * term, position increment and position length attribute; {@link #reset()}
+ * rewinds it. Instances are reused through {@link #clear()}.
+ *
+ * @see QueryBuilder#setSinglePassAnalysis(boolean)
+ */
+final class AnalyzedTokens extends TokenStream {
+	private final BytesTermAttribute termAtt = addAttribute(BytesTermAttribute.class);
+	private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
+	private final PositionLengthAttribute posLenAtt = addAttribute(PositionLengthAttribute.class);
+
+	private final BytesRefArray terms = new BytesRefArray(Counter.newCounter());
+	private final BytesRefBuilder spare = new BytesRefBuilder();
+	private int[] positionIncrements = new int[8];
+	private int[] positionLengths = new int[8];
+	private int size;
+	private int positionCount;
+	private boolean hasSynonyms;
+	private int maxPositionLength;
+	private int next;
+
+	/**
+	 * Reads all tokens of <code>source</code>, which is reset and ended but
+	 * not closed.
+	 *
+	 * @return false if <code>source</code> has no term attribute, in which
+	 *         case nothing was read.
+	 */
+	boolean capture(TokenStream source) throws IOException {
+		TermToBytesRefAttribute sourceTermAtt = source.getAttribute(TermToBytesRefAttribute.class);
+		PositionIncrementAttribute sourcePosIncAtt = source.addAttribute(PositionIncrementAttribute.class);
+		PositionLengthAttribute sourcePosLenAtt = source.addAttribute(PositionLengthAttribute.class);
+		if (sourceTermAtt == null) {
+			return false;
+		}
+
+		source.reset();
+		while (source.incrementToken()) {
+			if (size == positionIncrements.length) {
+				positionIncrements = ArrayUtil.grow(positionIncrements, size + 1);
+				positionLengths = ArrayUtil.grow(positionLengths, size + 1);
+			}
+			terms.append(sourceTermAtt.getBytesRef());
+			int positionIncrement = sourcePosIncAtt.getPositionIncrement();
+			positionIncrements[size] = positionIncrement;
+			if (positionIncrement != 0) {
+				positionCount += positionIncrement;
+			} else {
+				hasSynonyms = true;
+			}
+			int positionLength = sourcePosLenAtt.getPositionLength();
+			positionLengths[size] = positionLength;
+			maxPositionLength = Math.max(maxPositionLength, positionLength);
+			size++;
+		}
+		source.end();
+		return true;
+	}
+
+	/** @return the number of tokens. */
+	int size() {
+		return size;
+	}
+
+	/** @return the sum of the position increments. */
+	int positionCount() {
+		return positionCount;
+	}
+
+	/** @return whether some token shares the position of the previous one. */
+	boolean hasSynonyms() {
+		return hasSynonyms;
+	}
+
+	/** @return the longest position length of any token. */
+	int maxPositionLength() {
+		return maxPositionLength;
+	}
+
+	@Override
+	public boolean incrementToken() {
+		if (next == size) {
+			return false;
+		}
+		clearAttributes();
+		termAtt.setBytesRef(terms.get(spare, next));
+		posIncAtt.setPositionIncrement(positionIncrements[next]);
+		posLenAtt.setPositionLength(positionLengths[next]);
+		next++;
+		return true;
+	}
+
+	@Override
+	public void reset() {
+		next = 0;
+	}
+
+	/** Forgets the captured tokens, keeping the buffers. */
+	void clear() {
+		terms.clear();
+		size = 0;
+		positionCount = 0;
+		hasSynonyms = false;
+		maxPositionLength = 0;
+		next = 0;
+	}
+}
@@ -0,0 +1,91 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.search.Query;
+
+/**
+ * The outcome of {@link ConcurrentQueryParser#parseAll(java.util.Collection)}:
+ * for every input query, in input order, either its {@link ParseResult} or
+ * the {@link ParseException} it failed with, plus the throughput of the
+ * batch.
+ */
+public final class BatchParseResult {
+	private final ParseResult[] results;
+	private final ParseException[] exceptions;
+	private final int failureCount;
+	private final long elapsedNanos;
+
+	BatchParseResult(ParseResult[] results, ParseException[] exceptions, long elapsedNanos) {
+		this.results = results;
+		this.exceptions = exceptions;
+		int failures = 0;
+		for (ParseException e : exceptions) {
+			if (e != null) {
+				failures++;
+			}
+		}
+		this.failureCount = failures;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * @return the number of queries in the batch.
+	 */
+	public int size() {
+		return results.length;
+	}
+
+	/**
+	 * @return the parsed query at <code>index</code>, or <code>null</code> if
+	 *         it failed to parse.
+	 */
+	public Query getQuery(int index) {
+		ParseResult result = results[index];
+		return result == null ? null : result.getQuery();
+	}
+
+	/**
+	 * @return the query and field texts at <code>index</code>, or
+	 *         <code>null</code> if it failed to parse.
+	 */
+	public ParseResult getResult(int index) {
+		return results[index];
+	}
+
+	/**
+	 * @return why the query at <code>index</code> failed to parse, or
+	 *         <code>null</code> if it did not.
+	 */
+	public ParseException getException(int index) {
+		return exceptions[index];
+	}
+
+	/**
+	 * @return the number of queries that failed to parse.
+	 */
+	public int getFailureCount() {
+		return failureCount;
+	}
+
+	/**
+	 * @return the wall clock time the batch took.
+	 */
+	public long getElapsed(TimeUnit unit) {
+		return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return the number of queries parsed per second of wall clock time.
+	 */
+	public double getQueriesPerSecond() {
+		return elapsedNanos == 0 ? 0 : results.length * 1e9 / elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "%d queries, %d failed, %.1f ms, %.0f queries/s", results.length, failureCount,
+				elapsedNanos / 1e6, getQueriesPerSecond());
+	}
+}
@@ -0,0 +1,37 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A sequence of clauses: the whole query, or a group in parentheses.
+ */
+public final class BooleanNode extends QueryNode {
+	private final List<ClauseNode> clauses;
+
+	public BooleanNode(List<ClauseNode> clauses, float boost, int beginOffset, int endOffset) {
+		super(boost, beginOffset, endOffset);
+		this.clauses = Collections.unmodifiableList(new ArrayList<ClauseNode>(clauses));
+	}
+
+	/**
+	 * @return the clauses, in query order.
+	 */
+	public List<ClauseNode> getClauses() {
+		return clauses;
+	}
+
+	@Override
+	void toString(StringBuilder sb) {
+		sb.append('(');
+		for (int i = 0; i < clauses.size(); i++) {
+			if (i > 0) {
+				sb.append(' ');
+			}
+			clauses.get(i).toString(sb);
+		}
+		sb.append(')');
+		appendBoost(sb);
+	}
+}
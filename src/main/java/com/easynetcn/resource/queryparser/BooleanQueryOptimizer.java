@@ -0,0 +1,456 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Simplifies parsed boolean queries without changing which documents match,
+ * see {@link QueryParserBase#setBooleanQueryOptimizer(BooleanQueryOptimizer)}.
+ * Queries written by analysts such as
+ * <code>((ti=a or ti=b) or (ti=c or ti=d))</code> otherwise become nested
+ * boolean queries, each scored by its own scorer. In order, bottom-up:
+ * <ul>
+ * <li><b>flatten</b>: a pure disjunction inside a disjunction, or a pure
+ * conjunction required by a conjunction, is merged into its parent, unless
+ * the parent would exceed {@link BooleanQuery#getMaxClauseCount()};
+ * <li><b>dedup</b>: identical clauses with the same occur are kept once;
+ * <li><b>contradictions</b>: a boolean query that requires and prohibits the
+ * same query, such as <code>x and not x</code>, is replaced by a
+ * {@link MatchNoDocsQuery}, which also removes it from optional positions
+ * and empties any conjunction requiring it;
+ * <li><b>merge terms</b>: optional term queries on the same field are merged
+ * into one {@link TermInSetQuery} where scores are not needed, i.e. below
+ * filter or prohibited clauses and constant score queries, or everywhere if
+ * the caller {@link Builder#scoresNeeded(boolean) does not need scores};
+ * prohibited term queries on the same field are always merged;
+ * <li><b>collapse</b>: a boolean query with a single required or optional
+ * clause is replaced by that clause.
+ * </ul>
+ * Boolean queries with a minimum number of optional clauses to match are
+ * left as they are, apart from their sub-queries. Since coordination factors
+ * change with the number of clauses, scores may differ slightly.
+ * <p>
+ * Instances are immutable and can be shared.
+ */
+public final class BooleanQueryOptimizer {
+	private final boolean flatten;
+	private final boolean dedup;
+	private final boolean collapse;
+	private final boolean mergeTerms;
+	private final boolean scoresNeeded;
+
+	private BooleanQueryOptimizer(Builder builder) {
+		this.flatten = builder.flatten;
+		this.dedup = builder.dedup;
+		this.collapse = builder.collapse;
+		this.mergeTerms = builder.mergeTerms;
+		this.scoresNeeded = builder.scoresNeeded;
+	}
+
+	/**
+	 * @return a builder with every optimization enabled, for queries whose
+	 *         scores are needed.
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Optimizes <code>query</code>.
+	 */
+	public OptimizedQuery optimize(Query query) {
+		List<Query> contradictions = new ArrayList<Query>();
+		Query optimized = optimize(query, scoresNeeded, contradictions);
+		return new OptimizedQuery(optimized, countClauses(query), countClauses(optimized), contradictions);
+	}
+
+	private Query optimize(Query query, boolean scoring, List<Query> contradictions) {
+		// bottom-up with an explicit stack, queries parsed with iterative
+		// nesting can be deeper than the thread stack
+		ArrayDeque<Pending> stack = new ArrayDeque<Pending>();
+		stack.push(new Pending(query, scoring));
+		while (true) {
+			Pending pending = stack.peek();
+			Query child = pending.nextChild();
+			if (child != null) {
+				stack.push(new Pending(child, pending.childScoring()));
+				continue;
+			}
+			stack.pop();
+			Query optimized = finish(pending, contradictions);
+			if (stack.isEmpty()) {
+				return optimized;
+			}
+			stack.peek().optimized.add(optimized);
+		}
+	}
+
+	/**
+	 * @return the optimized <code>pending.query</code>, whose sub-queries are
+	 *         optimized already.
+	 */
+	private Query finish(Pending pending, List<Query> contradictions) {
+		Query query = pending.query;
+		if (query instanceof BooleanQuery) {
+			return optimizeBoolean((BooleanQuery) query, pending.optimized, pending.scoring, contradictions);
+		} else if (query instanceof BoostQuery) {
+			BoostQuery boost = (BoostQuery) query;
+			Query inner = pending.optimized.get(0);
+			if (inner instanceof MatchNoDocsQuery) {
+				return inner;
+			}
+			return inner == boost.getQuery() ? query : new BoostQuery(inner, boost.getBoost());
+		} else if (query instanceof ConstantScoreQuery) {
+			ConstantScoreQuery constant = (ConstantScoreQuery) query;
+			Query inner = pending.optimized.get(0);
+			if (inner instanceof MatchNoDocsQuery) {
+				return inner;
+			}
+			return inner == constant.getQuery() ? query : new ConstantScoreQuery(inner);
+		}
+		return query;
+	}
+
+	private Query optimizeBoolean(BooleanQuery query, List<Query> optimized, boolean scoring,
+			List<Query> contradictions) {
+		int minShouldMatch = query.getMinimumNumberShouldMatch();
+		List<BooleanClause> clauses = new ArrayList<BooleanClause>(query.clauses().size());
+		for (int i = 0; i < optimized.size(); i++) {
+			BooleanClause clause = query.clauses().get(i);
+			int remaining = query.clauses().size() - i - 1;
+			Occur occur = clause.getOccur();
+			Query child = optimized.get(i);
+			if (child instanceof MatchNoDocsQuery && minShouldMatch == 0) {
+				if (occur == Occur.MUST || occur == Occur.FILTER) {
+					return child;
+				}
+				// never matches, so neither adds matches nor excludes any
+				continue;
+			}
+			if (flatten && minShouldMatch == 0 && child instanceof BooleanQuery
+					&& flattenInto(clauses, remaining, occur, (BooleanQuery) child, query.isCoordDisabled())) {
+				continue;
+			}
+			clauses.add(child == clause.getQuery() ? clause : new BooleanClause(child, occur));
+		}
+
+		if (dedup) {
+			clauses = dedup(clauses, minShouldMatch);
+		}
+		Query contradiction = findContradiction(clauses);
+		if (contradiction != null) {
+			contradictions.add(contradiction);
+			return new MatchNoDocsQuery("contradiction: " + contradiction);
+		}
+		if (mergeTerms) {
+			clauses = mergeTerms(clauses, Occur.MUST_NOT);
+			if (!scoring && minShouldMatch == 0) {
+				clauses = mergeTerms(clauses, Occur.SHOULD);
+			}
+		}
+		if (collapse && clauses.size() == 1) {
+			BooleanClause single = clauses.get(0);
+			if (single.getOccur() == Occur.MUST || (single.getOccur() == Occur.SHOULD && minShouldMatch <= 1)
+					|| (single.getOccur() == Occur.FILTER && !scoring)) {
+				return single.getQuery();
+			}
+		}
+
+		if (clauses.equals(query.clauses())) {
+			return query;
+		}
+		BooleanQuery.Builder builder = new BooleanQuery.Builder();
+		builder.setDisableCoord(query.isCoordDisabled());
+		builder.setMinimumNumberShouldMatch(minShouldMatch);
+		for (BooleanClause clause : clauses) {
+			builder.add(clause);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Adds the clauses of <code>child</code> to <code>clauses</code> if that
+	 * does not change the matches, and the parent, with the
+	 * <code>remaining</code> clauses still to be added, stays within
+	 * {@link BooleanQuery#getMaxClauseCount()}.
+	 *
+	 * @return whether it did.
+	 */
+	private static boolean flattenInto(List<BooleanClause> clauses, int remaining, Occur occur, BooleanQuery child,
+			boolean coordDisabled) {
+		if (child.getMinimumNumberShouldMatch() != 0 || child.isCoordDisabled() != coordDisabled) {
+			return false;
+		}
+		if (clauses.size() + child.clauses().size() + remaining > BooleanQuery.getMaxClauseCount()) {
+			// a valid query must not fail because of the optimizer
+			return false;
+		}
+		boolean hasShould = false;
+		boolean hasRequired = false;
+		boolean hasProhibited = false;
+		for (BooleanClause clause : child.clauses()) {
+			switch (clause.getOccur()) {
+			case SHOULD:
+				hasShould = true;
+				break;
+			case MUST_NOT:
+				hasProhibited = true;
+				break;
+			default:
+				hasRequired = true;
+				break;
+			}
+		}
+		if (occur == Occur.SHOULD && !hasRequired && !hasProhibited) {
+			// (a or b) or c == a or b or c
+			clauses.addAll(child.clauses());
+			return true;
+		}
+		if (occur == Occur.MUST && hasRequired && !hasShould) {
+			// +(+a -b) +c == +a -b +c
+			clauses.addAll(child.clauses());
+			return true;
+		}
+		return false;
+	}
+
+	private static List<BooleanClause> dedup(List<BooleanClause> clauses, int minShouldMatch) {
+		Set<BooleanClause> seen = new LinkedHashSet<BooleanClause>();
+		List<BooleanClause> result = new ArrayList<BooleanClause>(clauses.size());
+		for (BooleanClause clause : clauses) {
+			// with a minimum to match, optional duplicates count twice
+			if (seen.add(clause) || (clause.getOccur() == Occur.SHOULD && minShouldMatch > 0)) {
+				result.add(clause);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return a query that is both required and prohibited, or
+	 *         <code>null</code>.
+	 */
+	private static Query findContradiction(List<BooleanClause> clauses) {
+		Set<Query> prohibited = null;
+		for (BooleanClause clause : clauses) {
+			if (clause.getOccur() == Occur.MUST_NOT) {
+				if (prohibited == null) {
+					prohibited = new LinkedHashSet<Query>();
+				}
+				prohibited.add(clause.getQuery());
+			}
+		}
+		if (prohibited != null) {
+			for (BooleanClause clause : clauses) {
+				if ((clause.getOccur() == Occur.MUST || clause.getOccur() == Occur.FILTER)
+						&& prohibited.contains(clause.getQuery())) {
+					return clause.getQuery();
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Replaces the term queries with the given occur on a field by one
+	 * {@link TermInSetQuery}, at the position of the first of them.
+	 */
+	private static List<BooleanClause> mergeTerms(List<BooleanClause> clauses, Occur occur) {
+		Map<String, List<BytesRef>> termsByField = null;
+		for (BooleanClause clause : clauses) {
+			if (clause.getOccur() == occur && clause.getQuery() instanceof TermQuery) {
+				Term term = ((TermQuery) clause.getQuery()).getTerm();
+				if (termsByField == null) {
+					termsByField = new LinkedHashMap<String, List<BytesRef>>();
+				}
+				List<BytesRef> terms = termsByField.get(term.field());
+				if (terms == null) {
+					terms = new ArrayList<BytesRef>();
+					termsByField.put(term.field(), terms);
+				}
+				terms.add(term.bytes());
+			}
+		}
+		if (termsByField == null) {
+			return clauses;
+		}
+		boolean merge = false;
+		for (List<BytesRef> terms : termsByField.values()) {
+			merge |= terms.size() > 1;
+		}
+		if (!merge) {
+			return clauses;
+		}
+
+		List<BooleanClause> result = new ArrayList<BooleanClause>(clauses.size());
+		for (BooleanClause clause : clauses) {
+			if (clause.getOccur() == occur && clause.getQuery() instanceof TermQuery) {
+				String field = ((TermQuery) clause.getQuery()).getTerm().field();
+				List<BytesRef> terms = termsByField.get(field);
+				if (terms == null) {
+					// already merged
+					continue;
+				} else if (terms.size() > 1) {
+					result.add(new BooleanClause(new TermInSetQuery(field, terms), occur));
+					termsByField.remove(field);
+					continue;
+				}
+			}
+			result.add(clause);
+		}
+		return result;
+	}
+
+	/**
+	 * A query on the stack of {@link #optimize(Query, boolean, List)}, with
+	 * its sub-queries optimized so far.
+	 */
+	private static final class Pending {
+		final Query query;
+		final boolean scoring;
+		final List<Query> optimized = new ArrayList<Query>();
+
+		Pending(Query query, boolean scoring) {
+			this.query = query;
+			this.scoring = scoring;
+		}
+
+		/**
+		 * @return the next sub-query to optimize, or <code>null</code> if the
+		 *         query can be finished.
+		 */
+		Query nextChild() {
+			int next = optimized.size();
+			if (query instanceof BooleanQuery) {
+				BooleanQuery bq = (BooleanQuery) query;
+				if (next == bq.clauses().size() || (next > 0 && emptiesParent(bq, next - 1))) {
+					return null;
+				}
+				return bq.clauses().get(next).getQuery();
+			} else if (query instanceof BoostQuery) {
+				return next == 0 ? ((BoostQuery) query).getQuery() : null;
+			} else if (query instanceof ConstantScoreQuery) {
+				return next == 0 ? ((ConstantScoreQuery) query).getQuery() : null;
+			}
+			return null;
+		}
+
+		/**
+		 * @return whether scores are needed for the sub-query returned by
+		 *         {@link #nextChild()}.
+		 */
+		boolean childScoring() {
+			if (query instanceof BooleanQuery) {
+				return scoring && ((BooleanQuery) query).clauses().get(optimized.size()).isScoring();
+			}
+			return scoring && query instanceof BoostQuery;
+		}
+
+		/**
+		 * @return whether the optimized clause <code>index</code> never
+		 *         matches and is required, so the remaining clauses need not be
+		 *         optimized.
+		 */
+		private boolean emptiesParent(BooleanQuery bq, int index) {
+			Occur occur = bq.clauses().get(index).getOccur();
+			return optimized.get(index) instanceof MatchNoDocsQuery && bq.getMinimumNumberShouldMatch() == 0
+					&& (occur == Occur.MUST || occur == Occur.FILTER);
+		}
+	}
+
+	/**
+	 * @return the number of boolean clauses in <code>query</code>, at any
+	 *         depth.
+	 */
+	static int countClauses(Query query) {
+		// iterative, queries parsed with iterative nesting can be deeper than
+		// the stack
+		int count = 0;
+		ArrayDeque<Query> pending = new ArrayDeque<Query>();
+		pending.push(query);
+		while (!pending.isEmpty()) {
+			Query next = pending.pop();
+			if (next instanceof BooleanQuery) {
+				for (BooleanClause clause : ((BooleanQuery) next).clauses()) {
+					count++;
+					pending.push(clause.getQuery());
+				}
+			} else if (next instanceof BoostQuery) {
+				pending.push(((BoostQuery) next).getQuery());
+			} else if (next instanceof ConstantScoreQuery) {
+				pending.push(((ConstantScoreQuery) next).getQuery());
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Configures a {@link BooleanQueryOptimizer}. All optimizations are
+	 * enabled by default.
+	 */
+	public static final class Builder {
+		private boolean flatten = true;
+		private boolean dedup = true;
+		private boolean collapse = true;
+		private boolean mergeTerms = true;
+		private boolean scoresNeeded = true;
+
+		private Builder() {
+		}
+
+		/** Whether nested pure disjunctions and conjunctions are flattened. */
+		public Builder flatten(boolean flatten) {
+			this.flatten = flatten;
+			return this;
+		}
+
+		/** Whether duplicate clauses are removed. */
+		public Builder dedup(boolean dedup) {
+			this.dedup = dedup;
+			return this;
+		}
+
+		/** Whether single clause boolean queries are unwrapped. */
+		public Builder collapse(boolean collapse) {
+			this.collapse = collapse;
+			return this;
+		}
+
+		/** Whether term queries on the same field are merged. */
+		public Builder mergeTerms(boolean mergeTerms) {
+			this.mergeTerms = mergeTerms;
+			return this;
+		}
+
+		/**
+		 * Whether the scores of the optimized queries are needed. If not, e.g.
+		 * because they only filter or are sorted by a field, optional term
+		 * queries are merged everywhere. Default: true.
+		 */
+		public Builder scoresNeeded(boolean scoresNeeded) {
+			this.scoresNeeded = scoresNeeded;
+			return this;
+		}
+
+		public BooleanQueryOptimizer build() {
+			return new BooleanQueryOptimizer(this);
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.Locale;
+
+/**
+ * Thrown when a parse exceeds a limit of the
+ * {@link QueryParserBase#setParseBudget(ParseBudget) parse budget}.
+ */
+public class BudgetExceededException extends ParseException {
+	private static final long serialVersionUID = 1L;
+
+	private final ParseBudget.Limit limit;
+	private final long max;
+
+	public BudgetExceededException(ParseBudget.Limit limit, long max) {
+		super("Query exceeds the " + limit.name().toLowerCase(Locale.ROOT).replace('_', ' ') + " limit of " + max);
+		this.limit = limit;
+		this.max = max;
+	}
+
+	/** @return the limit that was exceeded. */
+	public ParseBudget.Limit getLimit() {
+		return limit;
+	}
+
+	/** @return the value of the limit that was exceeded. */
+	public long getMax() {
+		return max;
+	}
+}
@@ -0,0 +1,46 @@
+package com.easynetcn.resource.queryparser;
+
+/**
+ * The outcome of {@link QueryParserBase#canonicalize(String)}: a rendering of
+ * a query that equivalent inputs share, such as
+ * <code>TI=car AND co=us</code> and <code>co=us and ti = car</code>, and
+ * its {@link QueryFingerprint}. Instances are immutable.
+ */
+public final class CanonicalQuery {
+	private final String text;
+	private final QueryFingerprint fingerprint;
+
+	public CanonicalQuery(String text) {
+		this.text = text;
+		this.fingerprint = QueryFingerprint.of(text);
+	}
+
+	/**
+	 * @return the canonical text, in the notation of
+	 *         {@link org.apache.lucene.search.Query#toString()}: required
+	 *         clauses start with <code>+</code>, prohibited ones with
+	 *         <code>-</code>.
+	 */
+	public String getText() {
+		return text;
+	}
+
+	public QueryFingerprint getFingerprint() {
+		return fingerprint;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof CanonicalQuery && text.equals(((CanonicalQuery) obj).text);
+	}
+
+	@Override
+	public int hashCode() {
+		return fingerprint.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+}
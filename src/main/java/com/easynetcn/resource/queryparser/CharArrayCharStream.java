@@ -0,0 +1,43 @@
+package com.easynetcn.resource.queryparser;
+
+/**
+ * A {@link CharStream} reading directly from a region of a char array, e.g.
+ * a buffer filled from the network. The array is not copied, so it must not
+ * change while a query is parsed from it. It can be
+ * {@link #reset(char[], int, int) reset} to a new region.
+ * <p>
+ * Like {@link FastCharStream} it does no line counting: columns are offsets
+ * from the start of the region.
+ */
+public final class CharArrayCharStream extends RegionCharStream {
+	private static final char[] EMPTY = new char[0];
+
+	private char[] buffer = EMPTY;
+
+	public CharArrayCharStream() {
+	}
+
+	public CharArrayCharStream(char[] buffer, int offset, int length) {
+		reset(buffer, offset, length);
+	}
+
+	/** Reads <code>length</code> chars of <code>buffer</code> from offset. */
+	public void reset(char[] buffer, int offset, int length) {
+		if (offset < 0 || length < 0 || offset > buffer.length - length) {
+			throw new IndexOutOfBoundsException(
+					"offset=" + offset + ", length=" + length + ", buffer.length=" + buffer.length);
+		}
+		this.buffer = buffer;
+		setRegion(offset, offset + length);
+	}
+
+	@Override
+	char get(int offset) {
+		return buffer[offset];
+	}
+
+	@Override
+	String text(int begin, int end) {
+		return new String(buffer, begin, end - begin);
+	}
+}
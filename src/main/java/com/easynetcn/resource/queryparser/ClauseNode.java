@@ -0,0 +1,82 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.Objects;
+
+/**
+ * A clause of a {@link BooleanNode}: a query with the conjunction and
+ * modifier written before it. Whether the clause ends up required, optional
+ * or prohibited also depends on the default operator and on the neighbouring
+ * clauses, so it is decided when the tree is compiled.
+ */
+public final class ClauseNode {
+
+	/** The conjunction joining a clause to the previous one. */
+	public enum Conjunction {
+		NONE, AND, OR
+	}
+
+	/** The modifier of a clause: none, <code>+</code>, or <code>-</code>/<code>NOT</code>. */
+	public enum Modifier {
+		NONE, REQUIRED, PROHIBITED
+	}
+
+	private final Conjunction conjunction;
+	private final Modifier modifier;
+	private final QueryNode query;
+	private final int beginOffset;
+	private final int endOffset;
+
+	public ClauseNode(Conjunction conjunction, Modifier modifier, QueryNode query, int beginOffset, int endOffset) {
+		this.conjunction = Objects.requireNonNull(conjunction);
+		this.modifier = Objects.requireNonNull(modifier);
+		this.query = Objects.requireNonNull(query);
+		this.beginOffset = beginOffset;
+		this.endOffset = endOffset;
+	}
+
+	public Conjunction getConjunction() {
+		return conjunction;
+	}
+
+	public Modifier getModifier() {
+		return modifier;
+	}
+
+	public QueryNode getQuery() {
+		return query;
+	}
+
+	/**
+	 * @return the offset of the conjunction, modifier or query, whichever
+	 *         comes first.
+	 */
+	public int getBeginOffset() {
+		return beginOffset;
+	}
+
+	/**
+	 * @return the offset after the query.
+	 */
+	public int getEndOffset() {
+		return endOffset;
+	}
+
+	void toString(StringBuilder sb) {
+		if (conjunction != Conjunction.NONE) {
+			sb.append(conjunction).append(' ');
+		}
+		if (modifier == Modifier.REQUIRED) {
+			sb.append('+');
+		} else if (modifier == Modifier.PROHIBITED) {
+			sb.append('-');
+		}
+		query.toString(sb);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		toString(sb);
+		return sb.toString();
+	}
+}
@@ -0,0 +1,311 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.search.Query;
+
+/**
+ * A thread-safe entry point for parsing queries from many threads at once.
+ * <p>
+ * {@link QueryParser} itself is <em>not</em> thread-safe, and constructing one
+ * per request allocates a token manager, its lookahead bookkeeping and a char
+ * stream every time. This class keeps a bounded pool of pre-initialized
+ * parsers, striped by thread so that concurrent callers rarely touch the same
+ * slots, and leases one parser for the duration of each {@link #parse(String)}
+ * call. The parser is reset through {@code ReInit} by
+ * {@link QueryParserBase#parse(String)}, so no state leaks between requests.
+ * <p>
+ * When every slot of a stripe is leased a fresh parser is created from the
+ * factory; on release it is dropped if the stripe is already full, so the pool
+ * never grows beyond {@code stripes * parsersPerStripe} instances.
+ * <p>
+ * All parsers are created by the same factory and must be configured there:
+ * changing the settings of a leased parser is not supported.
+ * <p>
+ * Bulk jobs can hand a whole batch to {@link #parseAll(Collection)}, which
+ * spreads it over a {@link ForkJoinPool}.
+ */
+public class ConcurrentQueryParser {
+	/** Number of queries a batch task parses with one leased parser. */
+	private static final int BATCH_CHUNK = 64;
+
+	private final Supplier<? extends QueryParserBase> factory;
+	private final AtomicReferenceArray<QueryParserBase> slots;
+	private final int stripeMask;
+	private final int parsersPerStripe;
+
+	/**
+	 * Creates a pool of {@link QueryParser}s with default settings.
+	 *
+	 * @param f
+	 *            the default field for query terms.
+	 * @param a
+	 *            used to find terms in the query text.
+	 */
+	public ConcurrentQueryParser(String f, Analyzer a) {
+		this(() -> new QueryParser(f, a));
+	}
+
+	/**
+	 * Creates a pool with one stripe per available processor and two parsers
+	 * per stripe.
+	 *
+	 * @param factory
+	 *            creates fully configured parsers; called from any thread.
+	 */
+	public ConcurrentQueryParser(Supplier<? extends QueryParserBase> factory) {
+		this(factory, Runtime.getRuntime().availableProcessors(), 2);
+	}
+
+	/**
+	 * Creates a pool of parsers.
+	 *
+	 * @param factory
+	 *            creates fully configured parsers; called from any thread.
+	 * @param stripes
+	 *            number of stripes, rounded up to a power of two.
+	 * @param parsersPerStripe
+	 *            number of pooled parsers kept per stripe.
+	 */
+	public ConcurrentQueryParser(Supplier<? extends QueryParserBase> factory, int stripes, int parsersPerStripe) {
+		if (factory == null) {
+			throw new IllegalArgumentException("factory must not be null");
+		}
+		if (stripes < 1 || parsersPerStripe < 1) {
+			throw new IllegalArgumentException("stripes and parsersPerStripe must be >= 1");
+		}
+
+		int size = Integer.highestOneBit(stripes);
+		if (size < stripes) {
+			size <<= 1;
+		}
+
+		this.factory = factory;
+		this.stripeMask = size - 1;
+		this.parsersPerStripe = parsersPerStripe;
+		this.slots = new AtomicReferenceArray<>(size * parsersPerStripe);
+
+		for (int i = 0; i < slots.length(); i++) {
+			slots.set(i, newParser());
+		}
+	}
+
+	/**
+	 * Parses a query string with a pooled parser. Safe to call from any number
+	 * of threads.
+	 *
+	 * @param query
+	 *            the query string to be parsed.
+	 * @throws ParseException
+	 *             if the parsing fails
+	 * @see QueryParserBase#parse(String)
+	 */
+	public Query parse(String query) throws ParseException {
+		QueryParserBase parser = lease();
+		Query res;
+		try {
+			res = parser.parse(query);
+		} catch (ParseException | RuntimeException e) {
+			release(parser);
+			throw e;
+		}
+		// a parser that threw an Error is left to the garbage collector
+		release(parser);
+		return res;
+	}
+
+	/**
+	 * Parses a query string with a pooled parser and returns it together with
+	 * its field texts. Safe to call from any number of threads.
+	 *
+	 * @param query
+	 *            the query string to be parsed.
+	 * @throws ParseException
+	 *             if the parsing fails
+	 * @see QueryParserBase#parseWithFieldTexts(String)
+	 */
+	public ParseResult parseWithFieldTexts(String query) throws ParseException {
+		QueryParserBase parser = lease();
+		ParseResult res;
+		try {
+			res = parser.parseWithFieldTexts(query);
+		} catch (ParseException | RuntimeException e) {
+			release(parser);
+			throw e;
+		}
+		release(parser);
+		return res;
+	}
+
+	/**
+	 * Parses many queries on the {@link ForkJoinPool#commonPool() common
+	 * pool}.
+	 *
+	 * @see #parseAll(Collection, ForkJoinPool)
+	 */
+	public BatchParseResult parseAll(Collection<String> queries) {
+		return parseAll(queries, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Parses many queries in parallel. The queries are split into chunks
+	 * that the workers of <code>pool</code> parse with one leased parser
+	 * each. A query that fails does not abort the batch: its
+	 * {@link ParseException} is returned in place of its result. So are
+	 * runtime exceptions, e.g. of the analyzer, and stack overflows of
+	 * queries nested too deep, wrapped in a {@link ParseException} whose
+	 * cause they are; the parser that overflowed is replaced.
+	 *
+	 * @param queries
+	 *            the queries; <code>null</code> elements fail like invalid
+	 *            queries.
+	 * @param pool
+	 *            runs the batch; its parallelism bounds the number of
+	 *            parsers in use.
+	 * @return the results in the iteration order of <code>queries</code>.
+	 */
+	public BatchParseResult parseAll(Collection<String> queries, ForkJoinPool pool) {
+		String[] input = queries.toArray(new String[queries.size()]);
+		ParseResult[] results = new ParseResult[input.length];
+		ParseException[] exceptions = new ParseException[input.length];
+
+		long start = System.nanoTime();
+		pool.invoke(new BatchTask(input, results, exceptions, 0, input.length));
+		return new BatchParseResult(results, exceptions, System.nanoTime() - start);
+	}
+
+	/**
+	 * Collects <code>queries</code>, keeping their encounter order, and
+	 * parses them on the common pool.
+	 *
+	 * @see #parseAll(Collection, ForkJoinPool)
+	 */
+	public BatchParseResult parseAll(Stream<String> queries) {
+		return parseAll(queries, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Collects <code>queries</code>, keeping their encounter order, and
+	 * parses them on <code>pool</code>.
+	 *
+	 * @see #parseAll(Collection, ForkJoinPool)
+	 */
+	public BatchParseResult parseAll(Stream<String> queries, ForkJoinPool pool) {
+		List<String> list = queries.collect(Collectors.toCollection(ArrayList::new));
+		return parseAll(list, pool);
+	}
+
+	/**
+	 * @return the maximum number of parsers kept in the pool.
+	 */
+	public int getCapacity() {
+		return slots.length();
+	}
+
+	/**
+	 * Takes a parser out of the pool of the calling thread's stripe, or creates
+	 * a new one when the stripe is exhausted. Every leased parser must be
+	 * handed back with {@link #release(QueryParserBase)}.
+	 */
+	QueryParserBase lease() {
+		int start = stripeStart();
+		for (int i = start; i < start + parsersPerStripe; i++) {
+			QueryParserBase parser = slots.getAndSet(i, null);
+			if (parser != null) {
+				return parser;
+			}
+		}
+		return newParser();
+	}
+
+	/**
+	 * Returns a parser to the calling thread's stripe. If the stripe is full
+	 * the parser is left to the garbage collector.
+	 */
+	void release(QueryParserBase parser) {
+		int start = stripeStart();
+		for (int i = start; i < start + parsersPerStripe; i++) {
+			if (slots.get(i) == null && slots.compareAndSet(i, null, parser)) {
+				return;
+			}
+		}
+	}
+
+	private int stripeStart() {
+		long id = Thread.currentThread().getId();
+		// spread sequential thread ids over the stripes
+		int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		return ((h ^ (h >>> 16)) & stripeMask) * parsersPerStripe;
+	}
+
+	/**
+	 * Parses the queries from <code>from</code> to <code>to</code>, splitting
+	 * the range until a chunk is small enough for one parser.
+	 */
+	private final class BatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final String[] queries;
+		private final ParseResult[] results;
+		private final ParseException[] exceptions;
+		private final int from;
+		private final int to;
+
+		BatchTask(String[] queries, ParseResult[] results, ParseException[] exceptions, int from, int to) {
+			this.queries = queries;
+			this.results = results;
+			this.exceptions = exceptions;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > BATCH_CHUNK) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new BatchTask(queries, results, exceptions, from, mid),
+						new BatchTask(queries, results, exceptions, mid, to));
+				return;
+			}
+
+			QueryParserBase parser = lease();
+			for (int i = from; i < to; i++) {
+				try {
+					results[i] = parser.parseWithFieldTexts(queries[i]);
+				} catch (ParseException e) {
+					exceptions[i] = e;
+				} catch (RuntimeException | StackOverflowError e) {
+					exceptions[i] = failure(queries[i], e);
+					if (e instanceof Error) {
+						// the parser may be left inconsistent, so it is discarded
+						parser = newParser();
+					}
+				}
+			}
+			release(parser);
+		}
+	}
+
+	private static ParseException failure(String query, Throwable cause) {
+		ParseException e = new ParseException("Cannot parse '" + query + "': " + cause);
+		e.initCause(cause);
+		return e;
+	}
+
+	private QueryParserBase newParser() {
+		QueryParserBase parser = factory.get();
+		if (parser == null) {
+			throw new IllegalStateException("factory returned null");
+		}
+		return parser;
+	}
+}
@@ -0,0 +1,135 @@
+package com.easynetcn.resource.queryparser;
+
+import java.text.ParsePosition;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The <code>java.time</code> patterns range bounds are tried against before
+ * the locale's short date format, e.g. <code>uuuuMMdd</code> for
+ * <code>pd=[20100101 TO 20151231]</code>. See
+ * {@link QueryParserBase#setDateRangeFormat(DateRangeFormat)}.
+ * <p>
+ * Only the year, month and day of a pattern are used. Fields a pattern leaves
+ * out default to the start of the period for lower bounds and to its end for
+ * inclusive upper bounds, so <code>pd=[2001 TO 2002]</code> covers both
+ * years. Parsing never throws: text that matches no pattern is left to the
+ * locale's date format. Instances are immutable and can be shared.
+ */
+public final class DateRangeFormat {
+
+	/**
+	 * Common patent date formats: <code>uuuuMMdd</code>,
+	 * <code>uuuu-MM-dd</code> and <code>uuuu</code>.
+	 */
+	public static final DateRangeFormat PATENT = of("uuuuMMdd", "uuuu-MM-dd", "uuuu");
+
+	/** No patterns, range bounds are only parsed with the locale's date format. */
+	public static final DateRangeFormat NONE = of();
+
+	/** Returned by {@link #parse(String, boolean, ZoneId)} for text that is no date. */
+	static final long NO_DATE = Long.MIN_VALUE;
+
+	private final List<String> patterns;
+	private final DateTimeFormatter[] formatters;
+
+	private DateRangeFormat(String[] patterns) {
+		this.patterns = Collections.unmodifiableList(Arrays.asList(patterns.clone()));
+		this.formatters = new DateTimeFormatter[patterns.length];
+		for (int i = 0; i < patterns.length; i++) {
+			formatters[i] = DateTimeFormatter.ofPattern(patterns[i], Locale.ROOT);
+		}
+	}
+
+	/**
+	 * @param patterns
+	 *            {@link DateTimeFormatter} patterns, tried in order
+	 * @throws IllegalArgumentException
+	 *             if a pattern is invalid
+	 */
+	public static DateRangeFormat of(String... patterns) {
+		return new DateRangeFormat(patterns);
+	}
+
+	public List<String> getPatterns() {
+		return patterns;
+	}
+
+	/**
+	 * Parses a range bound with the first pattern matching all of
+	 * <code>text</code>.
+	 *
+	 * @param endOfPeriod
+	 *            whether the bound is an inclusive upper bound, which is moved
+	 *            to the last millisecond of the period it names
+	 * @return the bound in milliseconds since the epoch, or {@link #NO_DATE}
+	 */
+	long parse(String text, boolean endOfPeriod, ZoneId zone) {
+		for (DateTimeFormatter formatter : formatters) {
+			ParsePosition pos = new ParsePosition(0);
+			TemporalAccessor parsed = formatter.parseUnresolved(text, pos);
+			if (parsed == null || pos.getErrorIndex() >= 0 || pos.getIndex() != text.length()) {
+				continue;
+			}
+			LocalDate date = toDate(parsed, endOfPeriod);
+			if (date != null) {
+				return endOfPeriod ? date.atTime(23, 59, 59, 999000000).atZone(zone).toInstant().toEpochMilli()
+						: date.atStartOfDay(zone).toInstant().toEpochMilli();
+			}
+		}
+		return NO_DATE;
+	}
+
+	/**
+	 * @return the date of the parsed fields, or <code>null</code> if they
+	 *         are no valid date
+	 */
+	private static LocalDate toDate(TemporalAccessor parsed, boolean endOfPeriod) {
+		long year;
+		if (parsed.isSupported(ChronoField.YEAR)) {
+			year = parsed.getLong(ChronoField.YEAR);
+		} else if (parsed.isSupported(ChronoField.YEAR_OF_ERA)) {
+			year = parsed.getLong(ChronoField.YEAR_OF_ERA);
+		} else {
+			return null;
+		}
+		long month = field(parsed, ChronoField.MONTH_OF_YEAR, endOfPeriod ? 12 : 1);
+		if (year < 1 || year > 9999 || month < 1 || month > 12) {
+			return null;
+		}
+		int length = Month.of((int) month).length(Year.isLeap(year));
+		long day = field(parsed, ChronoField.DAY_OF_MONTH, endOfPeriod ? length : 1);
+		if (day < 1 || day > length) {
+			return null;
+		}
+		return LocalDate.of((int) year, (int) month, (int) day);
+	}
+
+	private static long field(TemporalAccessor parsed, ChronoField field, long absent) {
+		return parsed.isSupported(field) ? parsed.getLong(field) : absent;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof DateRangeFormat && patterns.equals(((DateRangeFormat) obj).patterns);
+	}
+
+	@Override
+	public int hashCode() {
+		return patterns.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return patterns.toString();
+	}
+}
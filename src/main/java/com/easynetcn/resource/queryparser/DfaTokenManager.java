@@ -0,0 +1,444 @@
+package com.easynetcn.resource.queryparser;
+
+import java.io.IOException;
+
+/**
+ * A hand-built deterministic replacement for the generated token manager,
+ * producing the same tokens of the same kinds, images and columns, and the
+ * same lexical errors. Where the generated NFA tracks up to 54 states per
+ * character, this lexer classifies ASCII characters with a lookup table,
+ * treats every other character but the ideographic space <code>U+3000</code>
+ * as a term character without further checks, and runs terms, prefix terms
+ * and wildcard terms through a small transition table. Chinese and
+ * full-width text therefore costs one comparison per character.
+ * <p>
+ * Select it with the token manager constructor of the parser:
+ *
+ * <pre class="prettyprint">
+ * QueryParser parser = new QueryParser(new DfaTokenManager(new FastCharStream(new StringReader(""))));
+ * parser.init("ti", analyzer);
+ * </pre>
+ */
+public class DfaTokenManager extends QueryParserTokenManager {
+
+	// character classes
+	private static final int TERM_CHAR = 0; // may start and continue a term
+	private static final int OPERATOR = 1; // continues but does not start a term: - + / !
+	private static final int ASTERISK = 2;
+	private static final int QUESTION_MARK = 3;
+	private static final int ESCAPE = 4;
+	private static final int END = 5; // whitespace and syntax characters
+
+	private static final byte[] ASCII_CLASSES = new byte[128];
+
+	static {
+		for (int c = 0; c < 128; c++) {
+			ASCII_CLASSES[c] = TERM_CHAR;
+		}
+		for (char c : " \t\n\r()[]{}:=^\"~#".toCharArray()) {
+			ASCII_CLASSES[c] = END;
+		}
+		for (char c : "-+/!".toCharArray()) {
+			ASCII_CLASSES[c] = OPERATOR;
+		}
+		ASCII_CLASSES['*'] = ASTERISK;
+		ASCII_CLASSES['?'] = QUESTION_MARK;
+		ASCII_CLASSES['\\'] = ESCAPE;
+	}
+
+	// states of the term automaton and the token kinds they accept
+	private static final int IN_TERM = 0;
+	private static final int IN_PREFIX = 1;
+	private static final int IN_WILDCARD = 2;
+	private static final int IN_STAR = 3;
+	private static final int[] ACCEPTS = { TERM, PREFIXTERM, WILDTERM, STAR };
+
+	// next state by state and class: TERM_CHAR, OPERATOR, ASTERISK,
+	// QUESTION_MARK; escaped characters are term characters, END stops
+	private static final byte[] TRANSITIONS = {
+			IN_TERM, IN_TERM, IN_PREFIX, IN_WILDCARD, // IN_TERM
+			IN_WILDCARD, IN_WILDCARD, IN_WILDCARD, IN_WILDCARD, // IN_PREFIX
+			IN_WILDCARD, IN_WILDCARD, IN_WILDCARD, IN_WILDCARD, // IN_WILDCARD
+			IN_WILDCARD, IN_WILDCARD, IN_WILDCARD, IN_WILDCARD, // IN_STAR
+	};
+
+	// the first characters of a term, upper cased and packed 7 bits each, for
+	// the keywords, which ignore case like the rest of the grammar
+	private static final int KEYWORD_AND = keyword("AND");
+	private static final int KEYWORD_AMPERSANDS = keyword("&&");
+	private static final int KEYWORD_OR = keyword("OR");
+	private static final int KEYWORD_BARS = keyword("||");
+	private static final int KEYWORD_NOT = keyword("NOT");
+
+	private static final int SKIP = 7;
+	private static final int NO_MATCH = 0x7fffffff;
+
+	// characters read for the current token
+	private int curPos;
+
+	public DfaTokenManager(CharStream stream) {
+		super(stream);
+	}
+
+	public DfaTokenManager(CharStream stream, int lexState) {
+		super(stream, lexState);
+	}
+
+	private static int keyword(String s) {
+		int key = 0;
+		for (int i = 0; i < s.length(); i++) {
+			key = key << 7 | s.charAt(i);
+		}
+		return key << 2 | s.length();
+	}
+
+	private static int charClass(int c) {
+		return c < 128 ? ASCII_CLASSES[c] : c == '\u3000' ? END : TERM_CHAR;
+	}
+
+	/**
+	 * @return the upper case of an ASCII letter, <code>c</code> for other
+	 *         ASCII characters, 0 for the rest
+	 */
+	private static int upperCase(int c) {
+		return c >= 'a' && c <= 'z' ? c - ('a' - 'A') : c < 128 ? c : 0;
+	}
+
+	private static boolean isWhitespace(int c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\u3000';
+	}
+
+	@Override
+	public Token getNextToken() {
+		for (;;) {
+			try {
+				curChar = input_stream.BeginToken();
+			} catch (IOException e) {
+				jjmatchedKind = 0;
+				jjmatchedPos = -1;
+				return jjFillToken();
+			}
+
+			jjmatchedKind = NO_MATCH;
+			jjmatchedPos = 0;
+			curPos = 1;
+			switch (curLexState) {
+			case Boost:
+				matchNumber();
+				break;
+			case Range:
+				matchRange();
+				break;
+			default:
+				matchDefault();
+				break;
+			}
+
+			if (jjmatchedKind != NO_MATCH) {
+				if (jjmatchedPos + 1 < curPos) {
+					input_stream.backup(curPos - jjmatchedPos - 1);
+				}
+				if (jjmatchedKind == SKIP) {
+					continue;
+				}
+				Token matchedToken = jjFillToken();
+				if (jjnewLexState[jjmatchedKind] != -1) {
+					curLexState = jjnewLexState[jjmatchedKind];
+				}
+				return matchedToken;
+			}
+			throw lexicalError();
+		}
+	}
+
+	/**
+	 * Reads the next character into <code>curChar</code>.
+	 *
+	 * @return false at the end of the input
+	 */
+	private boolean next() {
+		try {
+			curChar = input_stream.readChar();
+		} catch (IOException e) {
+			return false;
+		}
+		curPos++;
+		return true;
+	}
+
+	private void match(int kind) {
+		jjmatchedKind = kind;
+		jjmatchedPos = curPos - 1;
+	}
+
+	private void matchDefault() {
+		switch (curChar) {
+		case '(':
+			match(LPAREN);
+			break;
+		case ')':
+			match(RPAREN);
+			break;
+		case '[':
+			match(RANGEIN_START);
+			break;
+		case '{':
+			match(RANGEEX_START);
+			break;
+		case '^':
+			match(CARAT);
+			break;
+		case ':':
+		case '=':
+			match(COLON);
+			break;
+		case '+':
+		case '-':
+		case '!':
+			match(curChar == '+' ? PLUS : curChar == '-' ? MINUS : NOT);
+			if (next() && isWhitespace(curChar)) {
+				match(BAREOPER);
+			}
+			break;
+		case '"':
+			matchQuoted();
+			break;
+		case '/':
+			matchRegexp();
+			break;
+		case '#':
+			// at least one term character
+			matchTermChars(REFERENCE);
+			break;
+		case '~':
+			match(FUZZY_SLOP);
+			matchTermChars(FUZZY_SLOP);
+			break;
+		case ' ':
+		case '\t':
+		case '\n':
+		case '\r':
+		case '\u3000':
+			match(SKIP);
+			break;
+		case ']':
+		case '}':
+			break;
+		default:
+			matchTerm();
+			break;
+		}
+	}
+
+	/**
+	 * Terms, prefix terms, wildcard terms, the star and the keywords.
+	 */
+	private void matchTerm() {
+		int state;
+		boolean escaped = false;
+		switch (charClass(curChar)) {
+		case ESCAPE:
+			if (!next()) {
+				return;
+			}
+			escaped = true;
+			state = IN_TERM;
+			break;
+		case ASTERISK:
+			state = IN_STAR;
+			break;
+		case QUESTION_MARK:
+			state = IN_WILDCARD;
+			break;
+		default:
+			state = IN_TERM;
+			break;
+		}
+		int key = upperCase(curChar);
+		match(ACCEPTS[state]);
+
+		while (next()) {
+			int charClass = charClass(curChar);
+			if (charClass == ESCAPE) {
+				if (!next()) {
+					break;
+				}
+				escaped = true;
+				charClass = TERM_CHAR;
+			} else if (charClass == END) {
+				break;
+			}
+			state = TRANSITIONS[state << 2 | charClass];
+			if (curPos <= 3) {
+				key = key << 7 | upperCase(curChar);
+			}
+			match(ACCEPTS[state]);
+		}
+
+		int length = jjmatchedPos + 1;
+		if (state == IN_TERM && !escaped && length <= 3) {
+			key = key << 2 | length;
+			if (key == KEYWORD_AND || key == KEYWORD_AMPERSANDS) {
+				jjmatchedKind = AND;
+			} else if (key == KEYWORD_OR || key == KEYWORD_BARS) {
+				jjmatchedKind = OR;
+			} else if (key == KEYWORD_NOT) {
+				jjmatchedKind = NOT;
+			}
+		}
+	}
+
+	/**
+	 * Term characters after the first character of a reference or fuzzy
+	 * slop.
+	 */
+	private void matchTermChars(int kind) {
+		while (next()) {
+			int charClass = charClass(curChar);
+			if (charClass == ESCAPE) {
+				if (!next()) {
+					return;
+				}
+			} else if (charClass != TERM_CHAR && charClass != OPERATOR) {
+				return;
+			}
+			match(kind);
+		}
+	}
+
+	private void matchQuoted() {
+		while (next()) {
+			if (curChar == '"') {
+				match(QUOTED);
+				return;
+			}
+			if (curChar == '\\' && !next()) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * A slash preceded by a backslash either ends the expression or
+	 * continues it; the longest match wins.
+	 */
+	private void matchRegexp() {
+		boolean escaped = false;
+		while (next()) {
+			if (curChar == '/') {
+				match(REGEXPTERM);
+				if (!escaped) {
+					return;
+				}
+				escaped = false;
+			} else {
+				escaped = curChar == '\\';
+			}
+		}
+	}
+
+	private void matchNumber() {
+		if (curChar < '0' || curChar > '9') {
+			return;
+		}
+		match(NUMBER);
+		boolean fraction = false;
+		while (next()) {
+			if (curChar >= '0' && curChar <= '9') {
+				match(NUMBER);
+			} else if (curChar == '.' && !fraction) {
+				fraction = true;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Range bounds, which compete for the longest match: goop runs up to a
+	 * space or a closing bracket, while a quoted bound may contain both.
+	 */
+	private void matchRange() {
+		int first = curChar;
+		if (first == ' ') {
+			match(SKIP);
+			return;
+		} else if (first == ']') {
+			match(RANGEIN_END);
+			return;
+		} else if (first == '}') {
+			match(RANGEEX_END);
+			return;
+		}
+
+		boolean goop = true;
+		int goopLength = 1;
+		int second = -1;
+		// states of the quoted bound: at its start, in its body, after a
+		// backslash that may escape a quote
+		boolean quoteStart = first == '"';
+		boolean quoteBody = false;
+		boolean quoteEscape = false;
+		int quotedLength = 0;
+		while ((goop || quoteStart || quoteBody || quoteEscape) && next()) {
+			int c = curChar;
+			if (curPos == 2) {
+				second = c;
+			}
+			if (goop) {
+				if (c == ' ' || c == ']' || c == '}') {
+					goop = false;
+				} else {
+					goopLength = curPos;
+				}
+			}
+			if (quoteBody && c == '"') {
+				quotedLength = curPos;
+			}
+			boolean body = ((quoteStart || quoteBody) && c != '"') || (quoteEscape && c == '"');
+			quoteEscape = (quoteStart || quoteBody) && c == '\\';
+			quoteBody = body;
+			quoteStart = false;
+		}
+
+		if (quotedLength >= goopLength) {
+			jjmatchedKind = RANGE_QUOTED;
+			jjmatchedPos = quotedLength - 1;
+		} else if (goopLength == 1 && isWhitespace(first)) {
+			jjmatchedKind = SKIP;
+			jjmatchedPos = 0;
+		} else {
+			jjmatchedKind = goopLength == 2 && upperCase(first) == 'T' && upperCase(second) == 'O' ? RANGE_TO : RANGE_GOOP;
+			jjmatchedPos = goopLength - 1;
+		}
+	}
+
+	/**
+	 * Builds the error of the generated token manager.
+	 */
+	private TokenMgrError lexicalError() {
+		int errorLine = input_stream.getEndLine();
+		int errorColumn = input_stream.getEndColumn();
+		String errorAfter = null;
+		boolean eofSeen = false;
+		try {
+			input_stream.readChar();
+			input_stream.backup(1);
+		} catch (IOException e) {
+			eofSeen = true;
+			errorAfter = curPos <= 1 ? "" : input_stream.GetImage();
+			if (curChar == '\n' || curChar == '\r') {
+				errorLine++;
+				errorColumn = 0;
+			} else {
+				errorColumn++;
+			}
+		}
+		if (!eofSeen) {
+			input_stream.backup(1);
+			errorAfter = curPos <= 1 ? "" : input_stream.GetImage();
+		}
+		return new TokenMgrError(eofSeen, curLexState, errorLine, errorColumn, errorAfter, curChar,
+				TokenMgrError.LEXICAL_ERROR);
+	}
+}
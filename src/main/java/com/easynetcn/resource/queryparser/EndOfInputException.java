@@ -0,0 +1,24 @@
+package com.easynetcn.resource.queryparser;
+
+import java.io.IOException;
+
+/**
+ * Signals the end of input to the token manager, which expects an
+ * {@link IOException} from {@link CharStream#readChar()}. The token manager
+ * hits the end several times per query, so a single stackless instance is
+ * shared.
+ */
+final class EndOfInputException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	static final EndOfInputException INSTANCE = new EndOfInputException();
+
+	private EndOfInputException() {
+		super("read past eof");
+	}
+
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+}
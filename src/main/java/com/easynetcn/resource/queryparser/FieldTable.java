@@ -0,0 +1,207 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable table of the fields a query may use and their aliases, e.g.
+ * <code>"名称"</code>, <code>"title"</code> and <code>"TI"</code> all meaning
+ * <code>ti</code>. See {@link QueryParserBase#setFieldTable(FieldTable)}.
+ * <p>
+ * Lookups are case-insensitive, comparing code points after simple Unicode
+ * case folding, and run against a precomputed open-addressing hash table, so
+ * resolving a field token allocates nothing and returns the interned canonical
+ * field name. Unknown fields raise a {@link MissingFieldException}, unless
+ * {@link Builder#allowUnknownFields(boolean)} is set.
+ */
+public final class FieldTable {
+	private final String[] keys; // case folded names and aliases
+	private final String[] fields; // canonical names, same slots as keys
+	private final int[] hashes;
+	private final int mask;
+	private final Set<String> canonicalFields;
+	private final boolean allowUnknownFields;
+
+	private FieldTable(Builder builder) {
+		int size = Integer.highestOneBit(Math.max(builder.aliases.size(), 1) * 2 + 1) << 1;
+		this.keys = new String[size];
+		this.fields = new String[size];
+		this.hashes = new int[size];
+		this.mask = size - 1;
+		for (Map.Entry<String, String> e : builder.aliases.entrySet()) {
+			String key = e.getKey();
+			int hash = hash(key, 0, key.length());
+			int slot = hash & mask;
+			while (keys[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			fields[slot] = e.getValue();
+			hashes[slot] = hash;
+		}
+		this.canonicalFields = Collections.unmodifiableSet(new LinkedHashSet<>(builder.aliases.values()));
+		this.allowUnknownFields = builder.allowUnknownFields;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Resolves a field name or alias.
+	 *
+	 * @return the interned canonical field name, or <code>null</code> if the
+	 *         field is unknown.
+	 */
+	public String resolve(CharSequence name, int start, int end) {
+		int hash = hash(name, start, end);
+		for (int slot = hash & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+			if (hashes[slot] == hash && foldedEquals(keys[slot], name, start, end)) {
+				return fields[slot];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Resolves the field of a <code>field:</code> or <code>field=</code>
+	 * clause.
+	 *
+	 * @throws MissingFieldException
+	 *             if the field is unknown and unknown fields are not allowed.
+	 */
+	public String resolve(Token fieldToken) throws MissingFieldException {
+		String image = fieldToken.image;
+		String field = resolve(image, 0, image.length());
+		if (field != null) {
+			return field;
+		}
+		if (allowUnknownFields) {
+			return image.toLowerCase(Locale.ROOT);
+		}
+		throw new MissingFieldException(fieldToken, image);
+	}
+
+	/**
+	 * @return the canonical field names, in the order they were added.
+	 */
+	public Set<String> getFields() {
+		return canonicalFields;
+	}
+
+	public boolean getAllowUnknownFields() {
+		return allowUnknownFields;
+	}
+
+	private static int fold(int codePoint) {
+		return Character.toLowerCase(Character.toUpperCase(codePoint));
+	}
+
+	private static int hash(CharSequence s, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end;) {
+			int cp = Character.codePointAt(s, i);
+			h = 31 * h + fold(cp);
+			i += Character.charCount(cp);
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean foldedEquals(String key, CharSequence s, int start, int end) {
+		int k = 0;
+		for (int i = start; i < end;) {
+			if (k >= key.length()) {
+				return false;
+			}
+			int cp = Character.codePointAt(s, i);
+			int keyCp = key.codePointAt(k);
+			if (fold(cp) != keyCp) {
+				return false;
+			}
+			i += Character.charCount(cp);
+			k += Character.charCount(keyCp);
+		}
+		return k == key.length();
+	}
+
+	private static String fold(String s) {
+		StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length();) {
+			int cp = s.codePointAt(i);
+			sb.appendCodePoint(fold(cp));
+			i += Character.charCount(cp);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Collects fields and aliases for a {@link FieldTable}.
+	 */
+	public static final class Builder {
+		// case folded name or alias -> interned canonical name
+		private final Map<String, String> aliases = new LinkedHashMap<>();
+		private boolean allowUnknownFields = false;
+
+		private Builder() {
+		}
+
+		/**
+		 * Adds a field that may be used under its own name or any of the
+		 * given aliases.
+		 */
+		public Builder field(String field, String... aliases) {
+			String canonical = field.intern();
+			put(field, canonical);
+			for (String alias : aliases) {
+				put(alias, canonical);
+			}
+			return this;
+		}
+
+		/**
+		 * Adds an alias for <code>field</code>, which is added as well if
+		 * needed.
+		 */
+		public Builder alias(String alias, String field) {
+			return field(field, alias);
+		}
+
+		/**
+		 * Adds every entry of an alias to field map.
+		 */
+		public Builder aliases(Map<String, String> aliasToField) {
+			for (Map.Entry<String, String> e : aliasToField.entrySet()) {
+				alias(e.getKey(), e.getValue());
+			}
+			return this;
+		}
+
+		/**
+		 * Whether fields missing from the table are accepted, lowercased,
+		 * instead of raising a {@link MissingFieldException}. Default: false.
+		 */
+		public Builder allowUnknownFields(boolean allowUnknownFields) {
+			this.allowUnknownFields = allowUnknownFields;
+			return this;
+		}
+
+		public FieldTable build() {
+			return new FieldTable(this);
+		}
+
+		private void put(String name, String canonical) {
+			if (name == null || name.isEmpty()) {
+				throw new IllegalArgumentException("field names and aliases must not be empty");
+			}
+			String previous = aliases.putIfAbsent(fold(name), canonical);
+			if (previous != null && !previous.equals(canonical)) {
+				throw new IllegalArgumentException(
+						"'" + name + "' is already an alias of " + previous + ", cannot map it to " + canonical);
+			}
+		}
+	}
+}
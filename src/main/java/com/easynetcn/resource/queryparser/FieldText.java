@@ -1,8 +1,8 @@
 package com.easynetcn.resource.queryparser;
 
 public class FieldText {
-	private String field;
-	private String text;
+	private final String field;
+	private final String text;
 
 	public FieldText(String field, String text) {
 		this.field = field;
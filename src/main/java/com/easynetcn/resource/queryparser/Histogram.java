@@ -0,0 +1,125 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of non-negative long values such as latencies in
+ * nanoseconds, in the spirit of HdrHistogram: each power of two is split
+ * into {@value #SUB_BUCKETS} buckets, so values are recorded with a relative
+ * error below 1/{@value #SUB_BUCKETS} in a fixed amount of memory. Recording
+ * is lock free and does not allocate.
+ * <p>
+ * Reads are not atomic with respect to concurrent recording; a percentile
+ * may miss values recorded while it is computed.
+ */
+public final class Histogram {
+	private static final int SUB_BUCKET_BITS = 4;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// values below SUB_BUCKETS have a bucket each, every power of two above
+	// SUB_BUCKETS buckets
+	private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Records <code>value</code>; negative values are recorded as 0.
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(bucket(value));
+		count.increment();
+		total.add(value);
+		max.accumulate(value);
+	}
+
+	/** @return the number of recorded values. */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/** @return the sum of the recorded values. */
+	public long getTotal() {
+		return total.sum();
+	}
+
+	/** @return the largest recorded value, or 0. */
+	public long getMax() {
+		return max.get();
+	}
+
+	/** @return the mean of the recorded values, or 0. */
+	public double getMean() {
+		long n = getCount();
+		return n == 0 ? 0 : (double) getTotal() / n;
+	}
+
+	/**
+	 * @param percentile
+	 *            between 0 and 100.
+	 * @return the smallest value such that <code>percentile</code> percent of
+	 *         the recorded values are at or below it, rounded up to the upper
+	 *         bound of its bucket but not above {@link #getMax()}; 0 if
+	 *         nothing was recorded.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+		}
+		long n = getCount();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(upperBound(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/** Forgets all recorded values. */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		total.reset();
+		max.reset();
+	}
+
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+	}
+
+	/** @return the largest value of bucket <code>i</code>. */
+	static long upperBound(int i) {
+		if (i < SUB_BUCKETS) {
+			return i;
+		}
+		int exponent = (i - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+		int subBucket = (i - SUB_BUCKETS) % SUB_BUCKETS;
+		long lower = (1L << exponent) + ((long) subBucket << (exponent - SUB_BUCKET_BITS));
+		return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + " mean=" + (long) getMean() + " p50=" + getValueAtPercentile(50) + " p99="
+				+ getValueAtPercentile(99) + " max=" + getMax();
+	}
+}
@@ -0,0 +1,121 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link ParserMetrics} kept in memory, to be scraped periodically: latency
+ * histograms in nanoseconds of whole parses, of each {@link Phase} and of each
+ * {@link QueryType}, a histogram of the clause counts of the parsed queries,
+ * the number of terms seen per field and the number of failed parses. Safe
+ * for use by any number of parsers and threads.
+ */
+public class HistogramParserMetrics implements ParserMetrics {
+	private final Histogram parseLatency = new Histogram();
+	private final Histogram clauseCounts = new Histogram();
+	private final Map<Phase, Histogram> phaseLatency = new EnumMap<>(Phase.class);
+	private final Map<QueryType, Histogram> queryLatency = new EnumMap<>(QueryType.class);
+	private final ConcurrentHashMap<String, LongAdder> fieldTermCounts = new ConcurrentHashMap<>();
+	private final LongAdder failures = new LongAdder();
+
+	public HistogramParserMetrics() {
+		for (Phase phase : Phase.values()) {
+			phaseLatency.put(phase, new Histogram());
+		}
+		for (QueryType type : QueryType.values()) {
+			queryLatency.put(type, new Histogram());
+		}
+	}
+
+	@Override
+	public void onParse(long nanos, int clauseCount) {
+		parseLatency.record(nanos);
+		clauseCounts.record(clauseCount);
+	}
+
+	@Override
+	public void onPhase(Phase phase, long nanos) {
+		phaseLatency.get(phase).record(nanos);
+	}
+
+	@Override
+	public void onQuery(QueryType type, String field, long nanos) {
+		queryLatency.get(type).record(nanos);
+		fieldTermCounts.computeIfAbsent(field, f -> new LongAdder()).increment();
+	}
+
+	@Override
+	public void onFailure(long nanos) {
+		failures.increment();
+	}
+
+	/** @return the latencies of successful parses. */
+	public Histogram getParseLatency() {
+		return parseLatency;
+	}
+
+	/** @return the clause counts of the parsed queries. */
+	public Histogram getClauseCounts() {
+		return clauseCounts;
+	}
+
+	/** @return the time spent in <code>phase</code> per parse. */
+	public Histogram getPhaseLatency(Phase phase) {
+		return phaseLatency.get(phase);
+	}
+
+	/** @return the time it took to build each query of <code>type</code>. */
+	public Histogram getQueryLatency(QueryType type) {
+		return queryLatency.get(type);
+	}
+
+	/**
+	 * @return a snapshot of the number of terms, phrases and ranges seen per
+	 *         field, sorted by field.
+	 */
+	public Map<String, Long> getFieldTermCounts() {
+		Map<String, Long> counts = new TreeMap<>();
+		for (Map.Entry<String, LongAdder> entry : fieldTermCounts.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().sum());
+		}
+		return counts;
+	}
+
+	/** @return the number of parses that failed. */
+	public long getFailureCount() {
+		return failures.sum();
+	}
+
+	/** Forgets everything recorded so far. */
+	public void reset() {
+		parseLatency.reset();
+		clauseCounts.reset();
+		for (Histogram histogram : phaseLatency.values()) {
+			histogram.reset();
+		}
+		for (Histogram histogram : queryLatency.values()) {
+			histogram.reset();
+		}
+		fieldTermCounts.clear();
+		failures.reset();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("parse: ").append(parseLatency).append('\n');
+		sb.append("clauses: ").append(clauseCounts).append('\n');
+		for (Map.Entry<Phase, Histogram> entry : phaseLatency.entrySet()) {
+			sb.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+		}
+		for (Map.Entry<QueryType, Histogram> entry : queryLatency.entrySet()) {
+			sb.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+		}
+		sb.append("terms per field: ").append(getFieldTermCounts()).append('\n');
+		sb.append("failures: ").append(getFailureCount());
+		return sb.toString();
+	}
+}
@@ -0,0 +1,158 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * A thread-safe, size and weight bounded LRU map.
+ * <p>
+ * Keys are spread over a fixed number of segments, each an access-ordered
+ * {@link LinkedHashMap} guarded by its own lock, so concurrent lookups of
+ * different keys rarely contend. Each segment gets an equal share of the
+ * entry and weight limits and evicts its least recently used entries when
+ * either is exceeded.
+ */
+final class LruCache<K, V> {
+	private final Segment<K, V>[] segments;
+	private final ToLongBiFunction<? super K, ? super V> weigher;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	LruCache(int maxEntries, long maxWeight, ToLongBiFunction<? super K, ? super V> weigher) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("maxEntries must be >= 1");
+		}
+		if (maxWeight < 1) {
+			throw new IllegalArgumentException("maxWeight must be >= 1");
+		}
+
+		// small caches get fewer segments so that each share stays useful
+		long share = Math.min(maxEntries / 16, maxWeight / 65536);
+		int count = (int) Math.max(1, Long.highestOneBit(Math.min(16, share)));
+		this.segments = (Segment<K, V>[]) new Segment[count];
+		for (int i = 0; i < count; i++) {
+			segments[i] = new Segment<>(Math.max(1, maxEntries / count), Math.max(1, maxWeight / count));
+		}
+		this.weigher = weigher;
+	}
+
+	V get(K key) {
+		Segment<K, V> segment = segmentFor(key);
+		V value;
+		synchronized (segment) {
+			value = segment.map.get(key);
+		}
+		if (value == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return value;
+	}
+
+	void put(K key, V value) {
+		long weight = weigher.applyAsLong(key, value);
+		Segment<K, V> segment = segmentFor(key);
+		synchronized (segment) {
+			if (weight > segment.maxWeight) {
+				// would evict everything else and still not fit
+				return;
+			}
+			V old = segment.map.put(key, value);
+			if (old != null) {
+				segment.weight -= weigher.applyAsLong(key, old);
+			}
+			segment.weight += weight;
+
+			Iterator<Map.Entry<K, V>> it = segment.map.entrySet().iterator();
+			while ((segment.map.size() > segment.maxEntries || segment.weight > segment.maxWeight) && it.hasNext()) {
+				Map.Entry<K, V> eldest = it.next();
+				segment.weight -= weigher.applyAsLong(eldest.getKey(), eldest.getValue());
+				it.remove();
+				evictions.increment();
+			}
+		}
+	}
+
+	/** Removes all entries whose key matches the given predicate. */
+	void removeIf(Predicate<? super K> predicate) {
+		for (Segment<K, V> segment : segments) {
+			synchronized (segment) {
+				Iterator<Map.Entry<K, V>> it = segment.map.entrySet().iterator();
+				while (it.hasNext()) {
+					Map.Entry<K, V> entry = it.next();
+					if (predicate.test(entry.getKey())) {
+						segment.weight -= weigher.applyAsLong(entry.getKey(), entry.getValue());
+						it.remove();
+					}
+				}
+			}
+		}
+	}
+
+	void clear() {
+		for (Segment<K, V> segment : segments) {
+			synchronized (segment) {
+				segment.map.clear();
+				segment.weight = 0;
+			}
+		}
+	}
+
+	int size() {
+		int size = 0;
+		for (Segment<K, V> segment : segments) {
+			synchronized (segment) {
+				size += segment.map.size();
+			}
+		}
+		return size;
+	}
+
+	long weight() {
+		long weight = 0;
+		for (Segment<K, V> segment : segments) {
+			synchronized (segment) {
+				weight += segment.weight;
+			}
+		}
+		return weight;
+	}
+
+	long hitCount() {
+		return hits.sum();
+	}
+
+	long missCount() {
+		return misses.sum();
+	}
+
+	long evictionCount() {
+		return evictions.sum();
+	}
+
+	private Segment<K, V> segmentFor(K key) {
+		int h = key.hashCode();
+		h ^= h >>> 16;
+		return segments[h & (segments.length - 1)];
+	}
+
+	private static final class Segment<K, V> {
+		final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+		final int maxEntries;
+		final long maxWeight;
+		long weight;
+
+		Segment(int maxEntries, long maxWeight) {
+			this.maxEntries = maxEntries;
+			this.maxWeight = maxWeight;
+		}
+	}
+}
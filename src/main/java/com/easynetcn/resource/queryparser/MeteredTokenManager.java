@@ -0,0 +1,42 @@
+package com.easynetcn.resource.queryparser;
+
+/**
+ * Wraps the token manager of a parser and adds the time spent reading tokens
+ * to {@link QueryParserBase#lexingNanos}, for
+ * {@link ParserMetrics.Phase#LEXING}.
+ */
+final class MeteredTokenManager extends QueryParserTokenManager {
+	final QueryParserTokenManager delegate;
+	private final QueryParserBase parser;
+
+	MeteredTokenManager(QueryParserTokenManager delegate, QueryParserBase parser) {
+		super(null);
+		this.delegate = delegate;
+		this.parser = parser;
+	}
+
+	@Override
+	public Token getNextToken() {
+		long start = System.nanoTime();
+		try {
+			return delegate.getNextToken();
+		} finally {
+			parser.lexingNanos += System.nanoTime() - start;
+		}
+	}
+
+	@Override
+	public void ReInit(CharStream stream) {
+		delegate.ReInit(stream);
+	}
+
+	@Override
+	public void ReInit(CharStream stream, int lexState) {
+		delegate.ReInit(stream, lexState);
+	}
+
+	@Override
+	public void SwitchTo(int lexState) {
+		delegate.SwitchTo(lexState);
+	}
+}
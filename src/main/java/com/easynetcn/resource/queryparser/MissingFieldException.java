@@ -1,5 +1,9 @@
 package com.easynetcn.resource.queryparser;
 
+/**
+ * Thrown when a query uses a field that is not in the
+ * {@link QueryParserBase#setFieldTable(FieldTable) field table}.
+ */
 public class MissingFieldException extends ParseException {
 	private static final long serialVersionUID = 1L;
 
@@ -7,6 +11,7 @@ public class MissingFieldException extends ParseException {
 	private final Token fieldToken;
 
 	public MissingFieldException(Token fieldToken, String field) {
+		super("Unknown field '" + field + "' at column " + fieldToken.beginColumn);
 		this.fieldToken = fieldToken;
 		this.field = field;
 	}
@@ -0,0 +1,46 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A run of plain terms separated only by whitespace, such as
+ * <code>guinea pig</code>. Depending on
+ * {@link QueryParserBase#getSplitOnWhitespace()} the terms are analyzed one by
+ * one or together.
+ */
+public final class MultiTermNode extends QueryNode {
+	private final String field;
+	private final List<String> terms;
+
+	public MultiTermNode(String field, List<String> terms, int beginOffset, int endOffset) {
+		super(Float.NaN, beginOffset, endOffset);
+		this.field = Objects.requireNonNull(field);
+		this.terms = Collections.unmodifiableList(new ArrayList<String>(terms));
+	}
+
+	public String getField() {
+		return field;
+	}
+
+	/**
+	 * @return the terms as written, at least two.
+	 */
+	public List<String> getTerms() {
+		return terms;
+	}
+
+	@Override
+	void toString(StringBuilder sb) {
+		sb.append(field).append(":<");
+		for (int i = 0; i < terms.size(); i++) {
+			if (i > 0) {
+				sb.append(' ');
+			}
+			sb.append(terms.get(i));
+		}
+		sb.append('>');
+	}
+}
@@ -0,0 +1,60 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.search.Query;
+
+/**
+ * The outcome of {@link BooleanQueryOptimizer#optimize(Query)}: the optimized
+ * query, the number of boolean clauses before and after, and the
+ * contradictions found. Instances are immutable.
+ */
+public final class OptimizedQuery {
+	private final Query query;
+	private final int clauseCountBefore;
+	private final int clauseCountAfter;
+	private final List<Query> contradictions;
+
+	OptimizedQuery(Query query, int clauseCountBefore, int clauseCountAfter, List<Query> contradictions) {
+		this.query = query;
+		this.clauseCountBefore = clauseCountBefore;
+		this.clauseCountAfter = clauseCountAfter;
+		this.contradictions = contradictions.isEmpty() ? Collections.<Query> emptyList()
+				: Collections.unmodifiableList(contradictions);
+	}
+
+	public Query getQuery() {
+		return query;
+	}
+
+	/**
+	 * @return the number of boolean clauses of the original query, at any
+	 *         depth.
+	 */
+	public int getClauseCountBefore() {
+		return clauseCountBefore;
+	}
+
+	/**
+	 * @return the number of boolean clauses of the optimized query, at any
+	 *         depth.
+	 */
+	public int getClauseCountAfter() {
+		return clauseCountAfter;
+	}
+
+	/**
+	 * @return the queries that were both required and prohibited by the same
+	 *         boolean query, which therefore matches nothing; empty if there
+	 *         were none.
+	 */
+	public List<Query> getContradictions() {
+		return contradictions;
+	}
+
+	@Override
+	public String toString() {
+		return query + " (" + clauseCountBefore + " -> " + clauseCountAfter + " clauses)";
+	}
+}
@@ -0,0 +1,139 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits on the work a single parse may do, protecting request threads from
+ * pathological input such as thousands of nested parentheses, gigantic
+ * regular expressions or text that analyzes to millions of tokens. See
+ * {@link QueryParserBase#setParseBudget(ParseBudget)}. A parse over budget
+ * stops as soon as the limit is reached and throws a
+ * {@link BudgetExceededException}.
+ * <p>
+ * Every limit is unlimited unless set. Instances are immutable and can be
+ * shared.
+ */
+public final class ParseBudget {
+
+	/** The limits of a budget. */
+	public enum Limit {
+		/** Characters of the query text. */
+		INPUT_LENGTH,
+		/** Parentheses open at the same time. */
+		NESTING_DEPTH,
+		/** Clauses and terms of runs of terms, counted over all levels. */
+		CLAUSES,
+		/**
+		 * Operators of a single wildcard or regular expression term:
+		 * <code>*</code> and <code>?</code> in wildcards, <code>* + ? | {
+		 * [</code> in regular expressions.
+		 */
+		PATTERN_COMPLEXITY,
+		/** Tokens produced by analysis, over all terms and phrases. */
+		ANALYSIS_TOKENS,
+		/** Nanoseconds of wall-clock time. */
+		TIME
+	}
+
+	private final long[] limits;
+
+	private ParseBudget(Builder builder) {
+		this.limits = builder.limits.clone();
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return the value of <code>limit</code>, {@link Long#MAX_VALUE} if
+	 *         unlimited.
+	 */
+	public long get(Limit limit) {
+		return limits[limit.ordinal()];
+	}
+
+	/**
+	 * @return the complexity of a wildcard or regular expression term image,
+	 *         see {@link Limit#PATTERN_COMPLEXITY}.
+	 */
+	static int complexity(String image, boolean regexp) {
+		int complexity = 0;
+		for (int i = 0; i < image.length(); i++) {
+			switch (image.charAt(i)) {
+			case '*':
+			case '?':
+				complexity++;
+				break;
+			case '+':
+			case '|':
+			case '{':
+			case '[':
+				if (regexp) {
+					complexity++;
+				}
+				break;
+			default:
+				break;
+			}
+		}
+		return complexity;
+	}
+
+	/**
+	 * Collects the limits of a {@link ParseBudget}.
+	 */
+	public static final class Builder {
+		private final long[] limits = new long[Limit.values().length];
+
+		private Builder() {
+			Arrays.fill(limits, Long.MAX_VALUE);
+		}
+
+		/** Sets the maximum number of characters of the query text. */
+		public Builder maxInputLength(int maxInputLength) {
+			return set(Limit.INPUT_LENGTH, maxInputLength);
+		}
+
+		/** Sets how many parentheses may be open at the same time. */
+		public Builder maxNestingDepth(int maxNestingDepth) {
+			return set(Limit.NESTING_DEPTH, maxNestingDepth);
+		}
+
+		/** Sets the maximum number of clauses of a query, over all levels. */
+		public Builder maxClauses(int maxClauses) {
+			return set(Limit.CLAUSES, maxClauses);
+		}
+
+		/**
+		 * Sets the maximum complexity of a wildcard or regular expression
+		 * term, see {@link Limit#PATTERN_COMPLEXITY}.
+		 */
+		public Builder maxPatternComplexity(int maxPatternComplexity) {
+			return set(Limit.PATTERN_COMPLEXITY, maxPatternComplexity);
+		}
+
+		/** Sets the maximum number of tokens analysis may produce. */
+		public Builder maxAnalysisTokens(int maxAnalysisTokens) {
+			return set(Limit.ANALYSIS_TOKENS, maxAnalysisTokens);
+		}
+
+		/** Sets the wall-clock time after which a parse is aborted. */
+		public Builder timeout(long timeout, TimeUnit unit) {
+			return set(Limit.TIME, unit.toNanos(timeout));
+		}
+
+		public ParseBudget build() {
+			return new ParseBudget(this);
+		}
+
+		private Builder set(Limit limit, long value) {
+			if (value < 0) {
+				throw new IllegalArgumentException(limit + " must be >= 0: " + value);
+			}
+			limits[limit.ordinal()] = value;
+			return this;
+		}
+	}
+}
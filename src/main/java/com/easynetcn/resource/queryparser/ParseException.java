@@ -113,7 +113,8 @@ public class ParseException extends Exception {
       }
       retval += " " + tokenImage[tok.kind];
       retval += " \"";
-      retval += add_escapes(tok.image);
+      // lazy token images are null, see QueryParserBase#setLazyTokenImages
+      retval += tok.image == null ? "" : add_escapes(tok.image);
       retval += " \"";
       tok = tok.next;
     }
@@ -0,0 +1,33 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.search.Query;
+
+/**
+ * The outcome of {@link QueryParserBase#parseWithFieldTexts(String)}: the
+ * parsed query and the {@link FieldText}s captured from it. Instances are
+ * immutable and may be shared, e.g. through a {@link ParsedQueryCache}.
+ */
+public final class ParseResult {
+	private final Query query;
+	private final List<FieldText> fieldTexts;
+
+	public ParseResult(Query query, List<FieldText> fieldTexts) {
+		this.query = query;
+		this.fieldTexts = fieldTexts.isEmpty() ? Collections.<FieldText> emptyList()
+				: Collections.unmodifiableList(fieldTexts);
+	}
+
+	public Query getQuery() {
+		return query;
+	}
+
+	/**
+	 * @return the field texts in query order; empty if capturing was disabled.
+	 */
+	public List<FieldText> getFieldTexts() {
+		return fieldTexts;
+	}
+}
@@ -0,0 +1,133 @@
+package com.easynetcn.resource.queryparser;
+
+/**
+ * A bounded cache of parsed queries that can be shared by any number of
+ * parsers, see {@link QueryParserBase#setQueryCache(ParsedQueryCache)}.
+ * <p>
+ * Entries are keyed by the raw query text plus a fingerprint of every parser
+ * setting that influences the result (default operator, slops, fuzzy
+ * settings, locale, date resolutions, analyzer identity, ...), so parsers with
+ * different configurations never see each other's results. A cached entry
+ * is the {@link ParseResult} of the first parse of a query.
+ * <p>
+ * The cache is bounded both by number of entries and by total weight, where
+ * the weight of an entry approximates its size in characters. Least recently
+ * used entries are evicted first.
+ */
+public class ParsedQueryCache {
+	/** Fixed per-entry overhead added to the character count of an entry. */
+	private static final int ENTRY_OVERHEAD = 64;
+
+	private final LruCache<Key, ParseResult> cache;
+
+	/**
+	 * Creates a cache holding at most <code>maxEntries</code> queries, without
+	 * a weight limit.
+	 */
+	public ParsedQueryCache(int maxEntries) {
+		this(maxEntries, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Creates a cache holding at most <code>maxEntries</code> queries whose
+	 * total weight, in characters of query text and field texts, does not
+	 * exceed <code>maxWeight</code>.
+	 */
+	public ParsedQueryCache(int maxEntries, long maxWeight) {
+		this.cache = new LruCache<>(maxEntries, maxWeight, ParsedQueryCache::weigh);
+	}
+
+	/**
+	 * @return the number of lookups that found a cached query.
+	 */
+	public long getHitCount() {
+		return cache.hitCount();
+	}
+
+	/**
+	 * @return the number of lookups that had to parse the query.
+	 */
+	public long getMissCount() {
+		return cache.missCount();
+	}
+
+	/**
+	 * @return the number of entries evicted to stay within the limits.
+	 */
+	public long getEvictionCount() {
+		return cache.evictionCount();
+	}
+
+	/**
+	 * @return the number of cached queries.
+	 */
+	public int size() {
+		return cache.size();
+	}
+
+	/**
+	 * @return the total weight of the cached queries.
+	 */
+	public long getWeight() {
+		return cache.weight();
+	}
+
+	/**
+	 * Removes all cached queries.
+	 */
+	public void clear() {
+		cache.clear();
+	}
+
+	ParseResult get(String query, Object settings) {
+		return cache.get(new Key(query, settings));
+	}
+
+	void put(String query, Object settings, ParseResult result) {
+		cache.put(new Key(query, settings), result);
+	}
+
+	/**
+	 * Drops every entry parsed with the given settings fingerprint.
+	 */
+	void invalidate(Object settings) {
+		cache.removeIf(key -> key.settings.equals(settings));
+	}
+
+	private static long weigh(Key key, ParseResult value) {
+		long weight = ENTRY_OVERHEAD + key.query.length();
+		for (FieldText fieldText : value.getFieldTexts()) {
+			weight += fieldText.getText().length();
+		}
+		return weight;
+	}
+
+	private static final class Key {
+		final String query;
+		final Object settings;
+		final int hash;
+
+		Key(String query, Object settings) {
+			this.query = query;
+			this.settings = settings;
+			this.hash = 31 * query.hashCode() + settings.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hash == other.hash && query.equals(other.query) && settings.equals(other.settings);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.easynetcn.resource.queryparser;
+
+/**
+ * Receives timings and counts of the parses of a {@link QueryParserBase}, see
+ * {@link QueryParserBase#setParserMetrics(ParserMetrics)}. A parser calls its
+ * metrics from the parsing thread, so an instance shared by several parsers
+ * must be thread safe. Calls happen inside the parse, so implementations
+ * should be cheap; {@link HistogramParserMetrics} only updates counters.
+ * <p>
+ * Whole parses and their phases are measured by
+ * {@link QueryParserBase#parse(String)} and the methods delegating to it;
+ * {@link QueryParserBase#compile(QueryNode)} only reports
+ * {@link #onQuery(QueryType, String, long)}.
+ */
+public interface ParserMetrics {
+
+	/** The phases of a parse, which do not overlap. */
+	enum Phase {
+		/** Reading tokens from the query text. */
+		LEXING,
+		/** Matching the tokens against the grammar, without lexing. */
+		GRAMMAR,
+		/** Analyzing term and phrase text and building their queries. */
+		ANALYSIS,
+		/** Building all other queries, without analysis. */
+		CONSTRUCTION
+	}
+
+	/** The kinds of queries built for a term or range of a query. */
+	enum QueryType {
+		TERM, PHRASE, PREFIX, WILDCARD, FUZZY, REGEXP, RANGE
+	}
+
+	/** Ignores everything. */
+	ParserMetrics NOOP = new ParserMetrics() {
+		@Override
+		public void onParse(long nanos, int clauseCount) {
+		}
+
+		@Override
+		public void onPhase(Phase phase, long nanos) {
+		}
+
+		@Override
+		public void onQuery(QueryType type, String field, long nanos) {
+		}
+
+		@Override
+		public void onFailure(long nanos) {
+		}
+	};
+
+	/**
+	 * Called once for every successful parse, after {@link #onPhase} was
+	 * called for each phase.
+	 *
+	 * @param nanos
+	 *            the time the parse took.
+	 * @param clauseCount
+	 *            the number of boolean clauses of the query, at any depth.
+	 */
+	void onParse(long nanos, int clauseCount);
+
+	/**
+	 * Called once per phase for every successful parse.
+	 *
+	 * @param nanos
+	 *            the time spent in <code>phase</code>.
+	 */
+	void onPhase(Phase phase, long nanos);
+
+	/**
+	 * Called for every term, phrase or range of a query once its query is
+	 * built.
+	 *
+	 * @param field
+	 *            the field of the term.
+	 * @param nanos
+	 *            the time it took to build the query, including analysis.
+	 */
+	void onQuery(QueryType type, String field, long nanos);
+
+	/**
+	 * Called for every parse that failed with a {@link ParseException}.
+	 *
+	 * @param nanos
+	 *            the time until it failed.
+	 */
+	void onFailure(long nanos);
+}
@@ -0,0 +1,216 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.List;
+
+import org.apache.lucene.document.DateTools;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.FloatPoint;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+
+/**
+ * The point type of a numeric or date field, see
+ * {@link QueryParserBase#setPointType(String, PointType)}. Range clauses and
+ * plain terms on such fields compile to point queries of the matching
+ * {@link IntPoint}, {@link LongPoint}, {@link FloatPoint} or
+ * {@link DoublePoint} instead of text queries.
+ */
+public enum PointType {
+	/** Values indexed with {@link IntPoint}. */
+	INT {
+		@Override
+		Query newRangeQuery(String field, Number lower, Number upper, boolean lowerInclusive, boolean upperInclusive) {
+			long l = lower == null ? Integer.MIN_VALUE : lower.longValue() + (lowerInclusive ? 0 : 1);
+			long u = upper == null ? Integer.MAX_VALUE : upper.longValue() - (upperInclusive ? 0 : 1);
+			if (l > Integer.MAX_VALUE || u < Integer.MIN_VALUE) {
+				return new MatchNoDocsQuery("empty range on " + field);
+			}
+			return IntPoint.newRangeQuery(field, (int) l, (int) u);
+		}
+
+		@Override
+		String toString(byte[] packed) {
+			return Integer.toString(IntPoint.decodeDimension(packed, 0));
+		}
+
+		@Override
+		Query newRangeQuery(String field, byte[] lower, byte[] upper) {
+			return IntPoint.newRangeQuery(field, IntPoint.decodeDimension(lower, 0), IntPoint.decodeDimension(upper, 0));
+		}
+
+		@Override
+		Query newSetQuery(String field, List<byte[]> packed) {
+			int[] values = new int[packed.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = IntPoint.decodeDimension(packed.get(i), 0);
+			}
+			return IntPoint.newSetQuery(field, values);
+		}
+	},
+	/** Values indexed with {@link LongPoint}. */
+	LONG {
+		@Override
+		Query newRangeQuery(String field, Number lower, Number upper, boolean lowerInclusive, boolean upperInclusive) {
+			return newLongRangeQuery(field, lower, upper, lowerInclusive, upperInclusive);
+		}
+
+		@Override
+		String toString(byte[] packed) {
+			return Long.toString(LongPoint.decodeDimension(packed, 0));
+		}
+
+		@Override
+		Query newRangeQuery(String field, byte[] lower, byte[] upper) {
+			return newLongRangeQuery(field, lower, upper);
+		}
+
+		@Override
+		Query newSetQuery(String field, List<byte[]> packed) {
+			return newLongSetQuery(field, packed);
+		}
+	},
+	/** Values indexed with {@link FloatPoint}. */
+	FLOAT {
+		@Override
+		Query newRangeQuery(String field, Number lower, Number upper, boolean lowerInclusive, boolean upperInclusive) {
+			float l = lower == null ? Float.NEGATIVE_INFINITY : lower.floatValue();
+			float u = upper == null ? Float.POSITIVE_INFINITY : upper.floatValue();
+			return FloatPoint.newRangeQuery(field, lowerInclusive || lower == null ? l : FloatPoint.nextUp(l),
+					upperInclusive || upper == null ? u : FloatPoint.nextDown(u));
+		}
+
+		@Override
+		String toString(byte[] packed) {
+			return Float.toString(FloatPoint.decodeDimension(packed, 0));
+		}
+
+		@Override
+		Query newRangeQuery(String field, byte[] lower, byte[] upper) {
+			return FloatPoint.newRangeQuery(field, FloatPoint.decodeDimension(lower, 0),
+					FloatPoint.decodeDimension(upper, 0));
+		}
+
+		@Override
+		Query newSetQuery(String field, List<byte[]> packed) {
+			float[] values = new float[packed.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = FloatPoint.decodeDimension(packed.get(i), 0);
+			}
+			return FloatPoint.newSetQuery(field, values);
+		}
+	},
+	/** Values indexed with {@link DoublePoint}. */
+	DOUBLE {
+		@Override
+		Query newRangeQuery(String field, Number lower, Number upper, boolean lowerInclusive, boolean upperInclusive) {
+			double l = lower == null ? Double.NEGATIVE_INFINITY : lower.doubleValue();
+			double u = upper == null ? Double.POSITIVE_INFINITY : upper.doubleValue();
+			return DoublePoint.newRangeQuery(field, lowerInclusive || lower == null ? l : DoublePoint.nextUp(l),
+					upperInclusive || upper == null ? u : DoublePoint.nextDown(u));
+		}
+
+		@Override
+		String toString(byte[] packed) {
+			return Double.toString(DoublePoint.decodeDimension(packed, 0));
+		}
+
+		@Override
+		Query newRangeQuery(String field, byte[] lower, byte[] upper) {
+			return DoublePoint.newRangeQuery(field, DoublePoint.decodeDimension(lower, 0),
+					DoublePoint.decodeDimension(upper, 0));
+		}
+
+		@Override
+		Query newSetQuery(String field, List<byte[]> packed) {
+			double[] values = new double[packed.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = DoublePoint.decodeDimension(packed.get(i), 0);
+			}
+			return DoublePoint.newSetQuery(field, values);
+		}
+	},
+	/**
+	 * Milliseconds since the epoch indexed with {@link LongPoint}. Values are
+	 * parsed like the bounds of date ranges, and a plain date matches the
+	 * whole period it names, e.g. a day or a year.
+	 */
+	DATE {
+		@Override
+		Query newRangeQuery(String field, Number lower, Number upper, boolean lowerInclusive, boolean upperInclusive) {
+			return newLongRangeQuery(field, lower, upper, lowerInclusive, upperInclusive);
+		}
+
+		@Override
+		String toString(byte[] packed) {
+			return DateTools.timeToString(LongPoint.decodeDimension(packed, 0), DateTools.Resolution.MILLISECOND);
+		}
+
+		@Override
+		Query newRangeQuery(String field, byte[] lower, byte[] upper) {
+			return newLongRangeQuery(field, lower, upper);
+		}
+
+		@Override
+		Query newSetQuery(String field, List<byte[]> packed) {
+			return newLongSetQuery(field, packed);
+		}
+	};
+
+	/**
+	 * @param lower
+	 *            the lower bound, <code>null</code> if open
+	 * @param upper
+	 *            the upper bound, <code>null</code> if open
+	 */
+	abstract Query newRangeQuery(String field, Number lower, Number upper, boolean lowerInclusive,
+			boolean upperInclusive);
+
+	/**
+	 * @return a value of this type encoded by a point query
+	 */
+	abstract String toString(byte[] packed);
+
+	/**
+	 * @return the query of the points of this type between the encoded
+	 *         bounds, both inclusive
+	 */
+	abstract Query newRangeQuery(String field, byte[] lower, byte[] upper);
+
+	/**
+	 * @return the query of the encoded points of this type
+	 */
+	abstract Query newSetQuery(String field, List<byte[]> packed);
+
+	private static Query newLongRangeQuery(String field, Number lower, Number upper, boolean lowerInclusive,
+			boolean upperInclusive) {
+		long l = lower == null ? Long.MIN_VALUE : lower.longValue();
+		long u = upper == null ? Long.MAX_VALUE : upper.longValue();
+		if (lower != null && !lowerInclusive) {
+			if (l == Long.MAX_VALUE) {
+				return new MatchNoDocsQuery("empty range on " + field);
+			}
+			l++;
+		}
+		if (upper != null && !upperInclusive) {
+			if (u == Long.MIN_VALUE) {
+				return new MatchNoDocsQuery("empty range on " + field);
+			}
+			u--;
+		}
+		return LongPoint.newRangeQuery(field, l, u);
+	}
+
+	private static Query newLongRangeQuery(String field, byte[] lower, byte[] upper) {
+		return LongPoint.newRangeQuery(field, LongPoint.decodeDimension(lower, 0), LongPoint.decodeDimension(upper, 0));
+	}
+
+	private static Query newLongSetQuery(String field, List<byte[]> packed) {
+		long[] values = new long[packed.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = LongPoint.decodeDimension(packed.get(i), 0);
+		}
+		return LongPoint.newSetQuery(field, values);
+	}
+}
@@ -47,7 +47,6 @@ import org.apache.lucene.search.spans.SpanNearQuery;
 import org.apache.lucene.search.spans.SpanOrQuery;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.search.spans.SpanTermQuery;
-import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.graph.GraphTokenStreamFiniteStrings;
 
 /**
@@ -72,6 +71,11 @@ public class QueryBuilder {
 	protected boolean enablePositionIncrements = true;
 	protected boolean enableGraphQueries = true;
 	protected boolean autoGenerateMultiTermSynonymsPhraseQuery = false;
+	protected AnalysisCache analysisCache = null;
+	protected boolean singlePassAnalysis = false;
+	protected QuerySerializer querySerializer = new QuerySerializer(this::getPointType);
+	// token buffers for single pass analysis, reused across calls
+	private final List<AnalyzedTokens> spareTokens = new ArrayList<>();
 
 	/** Creates a new QueryBuilder using the given analyzer. */
 	public QueryBuilder(Analyzer analyzer) {
@@ -251,6 +255,44 @@ public class QueryBuilder {
 		this.autoGenerateMultiTermSynonymsPhraseQuery = enable;
 	}
 
+	/**
+	 * Sets the cache of queries built from analyzed text, or <code>null</code>
+	 * to analyze every time. A cache may be shared by several builders.
+	 * Default: null.
+	 */
+	public void setAnalysisCache(AnalysisCache analysisCache) {
+		this.analysisCache = analysisCache;
+	}
+
+	/**
+	 * @see #setAnalysisCache(AnalysisCache)
+	 */
+	public AnalysisCache getAnalysisCache() {
+		return analysisCache;
+	}
+
+	/**
+	 * Set to <code>true</code> to read the analyzed tokens once into compact
+	 * primitive buffers and build queries from those, instead of caching every
+	 * token's attribute state in a {@link CachingTokenFilter} and reading the
+	 * cache twice. This cuts analysis allocations, notably for long phrases.
+	 * <p>
+	 * Only the term, position increment and position length of the tokens are
+	 * kept, so subclasses whose <code>analyzeXXX</code> methods read other
+	 * attributes must leave it off. The buffers are reused, so the builder
+	 * must then not be used by several threads at once. Default: false.
+	 */
+	public void setSinglePassAnalysis(boolean singlePassAnalysis) {
+		this.singlePassAnalysis = singlePassAnalysis;
+	}
+
+	/**
+	 * @see #setSinglePassAnalysis(boolean)
+	 */
+	public boolean getSinglePassAnalysis() {
+		return singlePassAnalysis;
+	}
+
 	/**
 	 * Creates a query from the analysis chain.
 	 * <p>
@@ -278,6 +320,19 @@ public class QueryBuilder {
 			boolean quoted, int phraseSlop) {
 		assert operator == BooleanClause.Occur.SHOULD || operator == BooleanClause.Occur.MUST;
 
+		AnalysisCache cache = analysisCache;
+		if (cache != null) {
+			int flags = (quoted ? 1 : 0) | (enablePositionIncrements ? 2 : 0) | (enableGraphQueries ? 4 : 0)
+					| (autoGenerateMultiTermSynonymsPhraseQuery ? 8 : 0);
+			AnalysisCache.Key key = new AnalysisCache.Key(getClass(), analyzer, field, queryText, operator, flags,
+					phraseSlop);
+			return cache.get(key, () -> analyzeFieldQuery(analyzer, operator, field, queryText, quoted, phraseSlop));
+		}
+		return analyzeFieldQuery(analyzer, operator, field, queryText, quoted, phraseSlop);
+	}
+
+	private Query analyzeFieldQuery(Analyzer analyzer, BooleanClause.Occur operator, String field, String queryText,
+			boolean quoted, int phraseSlop) {
 		// Use the analyzer to get all the tokens, and then build an appropriate
 		// query based on the analysis chain.
 		try (TokenStream source = analyzer.tokenStream(field, queryText)) {
@@ -324,6 +379,10 @@ public class QueryBuilder {
 			int phraseSlop) {
 		assert operator == BooleanClause.Occur.SHOULD || operator == BooleanClause.Occur.MUST;
 
+		if (singlePassAnalysis) {
+			return createFieldQuerySinglePass(source, operator, field, quoted, phraseSlop);
+		}
+
 		// Build an appropriate query based on the analysis chain.
 		try (CachingTokenFilter stream = new CachingTokenFilter(source)) {
 
@@ -360,42 +419,71 @@ public class QueryBuilder {
 				}
 			}
 
-			// phase 2: based on token count, presence of synonyms, and options
-			// formulate a single term, boolean, or phrase.
+			return buildFieldQuery(stream, numTokens, positionCount, hasSynonyms, isGraph, operator, field, quoted,
+					phraseSlop);
+		} catch (IOException e) {
+			throw new RuntimeException("Error analyzing query text", e);
+		}
+	}
 
-			if (numTokens == 0) {
+	private Query createFieldQuerySinglePass(TokenStream source, BooleanClause.Occur operator, String field,
+			boolean quoted, int phraseSlop) {
+		AnalyzedTokens tokens = spareTokens.isEmpty() ? new AnalyzedTokens()
+				: spareTokens.remove(spareTokens.size() - 1);
+		try (TokenStream in = source) {
+			if (!tokens.capture(in)) {
 				return null;
-			} else if (numTokens == 1) {
-				// single term
-				return analyzeTerm(field, stream);
-			} else if (isGraph) {
-				// graph
-				if (quoted) {
-					return analyzeGraphPhrase(stream, field, phraseSlop);
-				} else {
-					return analyzeGraphBoolean(field, stream, operator);
-				}
-			} else if (quoted && positionCount > 1) {
-				// phrase
-				if (hasSynonyms) {
-					// complex phrase with synonyms
-					return analyzeMultiPhrase(field, stream, phraseSlop);
-				} else {
-					// simple phrase
-					return analyzePhrase(field, stream, phraseSlop);
-				}
-			} else {
-				// boolean
-				if (positionCount == 1) {
-					// only one position, with synonyms
-					return analyzeBoolean(field, stream);
-				} else {
-					// complex case: multiple positions
-					return analyzeMultiBoolean(field, stream, operator);
-				}
 			}
+			boolean isGraph = enableGraphQueries && tokens.maxPositionLength() > 1;
+			return buildFieldQuery(tokens, tokens.size(), tokens.positionCount(), tokens.hasSynonyms(), isGraph,
+					operator, field, quoted, phraseSlop);
 		} catch (IOException e) {
 			throw new RuntimeException("Error analyzing query text", e);
+		} finally {
+			tokens.clear();
+			spareTokens.add(tokens);
+		}
+	}
+
+	/**
+	 * Phase 2 of {@link #createFieldQuery(TokenStream, BooleanClause.Occur, String, boolean, int)}:
+	 * based on token count, presence of synonyms, and options formulate a
+	 * single term, boolean, or phrase from the re-readable
+	 * <code>stream</code>.
+	 */
+	private Query buildFieldQuery(TokenStream stream, int numTokens, int positionCount, boolean hasSynonyms,
+			boolean isGraph, BooleanClause.Occur operator, String field, boolean quoted, int phraseSlop)
+			throws IOException {
+		if (numTokens == 0) {
+			return null;
+		} else if (numTokens == 1) {
+			// single term
+			return analyzeTerm(field, stream);
+		} else if (isGraph) {
+			// graph
+			if (quoted) {
+				return analyzeGraphPhrase(stream, field, phraseSlop);
+			} else {
+				return analyzeGraphBoolean(field, stream, operator);
+			}
+		} else if (quoted && positionCount > 1) {
+			// phrase
+			if (hasSynonyms) {
+				// complex phrase with synonyms
+				return analyzeMultiPhrase(field, stream, phraseSlop);
+			} else {
+				// simple phrase
+				return analyzePhrase(field, stream, phraseSlop);
+			}
+		} else {
+			// boolean
+			if (positionCount == 1) {
+				// only one position, with synonyms
+				return analyzeBoolean(field, stream);
+			} else {
+				// complex case: multiple positions
+				return analyzeMultiBoolean(field, stream, operator);
+			}
 		}
 	}
 
@@ -738,342 +826,144 @@ public class QueryBuilder {
 		return new MultiPhraseQuery.Builder();
 	}
 
-	public String toString(Query query, String field) {
-		StringBuilder buffer = new StringBuilder();
-
-		if (query instanceof TermQuery) {
-			buffer.append(toString((TermQuery) query, field));
-		} else if (query instanceof BooleanQuery) {
-			buffer.append(toString((BooleanQuery) query, field));
-		} else if (query instanceof WildcardQuery) {
-			buffer.append(toString((WildcardQuery) query, field));
-		} else if (query instanceof PhraseQuery) {
-			buffer.append(toString((PhraseQuery) query, field));
-		} else if (query instanceof PrefixQuery) {
-			buffer.append(toString((PrefixQuery) query, field));
-		} else if (query instanceof MultiPhraseQuery) {
-			buffer.append(toString((MultiPhraseQuery) query, field));
-		} else if (query instanceof FuzzyQuery) {
-			buffer.append(toString((FuzzyQuery) query, field));
-		} else if (query instanceof RegexpQuery) {
-			buffer.append(toString((RegexpQuery) query, field));
-		} else if (query instanceof TermRangeQuery) {
-			buffer.append(toString((TermRangeQuery) query, field));
-		} else if (query instanceof ConstantScoreQuery) {
-			buffer.append(toString((ConstantScoreQuery) query, field));
-		} else if (query instanceof DisjunctionMaxQuery) {
-			buffer.append(toString((DisjunctionMaxQuery) query, field));
-		} else if (query instanceof MatchAllDocsQuery) {
-			buffer.append(toString((MatchAllDocsQuery) query, field));
-		} else if (query instanceof SynonymQuery) {
-			buffer.append(toString((SynonymQuery) query, field));
-		} else {
-			buffer.append(query.toString(field));
-		}
+	/**
+	 * Returns the point type {@link #toString(Query, String)} decodes the
+	 * values of point queries on the given field with, <code>null</code> if
+	 * unknown.
+	 */
+	public PointType getPointType(String field) {
+		return null;
+	}
 
-		return buffer.toString();
+	/**
+	 * Returns the text of <code>query</code>, written by the
+	 * {@link #getQuerySerializer() query serializer}.
+	 * 
+	 * @param field
+	 *            the default field, which need not be written
+	 */
+	public String toString(Query query, String field) {
+		return querySerializer.toString(query, field);
 	}
 
+	/**
+	 * @deprecated {@link #toString(Query, String)} no longer calls this method,
+	 *             register a {@link QuerySerializer.Handler} with the
+	 *             {@link #getQuerySerializer() query serializer} instead.
+	 */
+	@Deprecated
 	protected String toString(TermQuery termQuery, String field) {
-		StringBuilder buffer = new StringBuilder();
-
-		buffer.append(field);
-		buffer.append(":");
-		buffer.append(termQuery.getTerm().text());
-
-		return buffer.toString();
+		return querySerializer.toString(termQuery, field);
 	}
 
+	/**
+	 * @deprecated see {@link #toString(TermQuery, String)}
+	 */
+	@Deprecated
 	protected String toString(BooleanQuery booleanQuery, String field) {
-		StringBuilder buffer = new StringBuilder();
-		List<BooleanClause> clauses = booleanQuery.clauses();
-		boolean needParens = booleanQuery.getMinimumNumberShouldMatch() > 0;
-
-		if (needParens) {
-			buffer.append("(");
-		}
-
-		int i = 0;
-
-		for (BooleanClause c : booleanQuery) {
-			buffer.append(c.getOccur().toString());
-
-			Query subQuery = c.getQuery();
-
-			if (subQuery instanceof BooleanQuery) { // wrap sub-bools in parens
-				buffer.append("(");
-				buffer.append(toString((BooleanQuery) subQuery, field));
-				buffer.append(")");
-			} else {
-				buffer.append(toString(subQuery, field));
-			}
-
-			if (i != clauses.size() - 1) {
-				buffer.append(" ");
-			}
-
-			i += 1;
-		}
-
-		if (needParens) {
-			buffer.append(")");
-		}
-
-		if (booleanQuery.getMinimumNumberShouldMatch() > 0) {
-			buffer.append('~');
-			buffer.append(booleanQuery.getMinimumNumberShouldMatch());
-		}
-
-		return buffer.toString();
+		return querySerializer.toString(booleanQuery, field);
 	}
 
+	/**
+	 * @deprecated see {@link #toString(TermQuery, String)}
+	 */
+	@Deprecated
 	protected String toString(WildcardQuery wildcardQuery, String field) {
-		StringBuilder buffer = new StringBuilder();
-		Term term = wildcardQuery.getTerm();
-
-		if (!wildcardQuery.getField().equals(field)) {
-			buffer.append(wildcardQuery.getField());
-			buffer.append(":");
-		}
-
-		buffer.append(term.text());
-
-		return buffer.toString();
+		return querySerializer.toString(wildcardQuery, field);
 	}
 
+	/**
+	 * @deprecated see {@link #toString(TermQuery, String)}
+	 */
+	@Deprecated
 	protected String toString(PhraseQuery phraseQuery, String field) {
-		StringBuilder buffer = new StringBuilder();
-		Term[] terms = phraseQuery.getTerms();
-		int[] positions = phraseQuery.getPositions();
-		int slop = phraseQuery.getSlop();
-
-		buffer.append(field);
-		buffer.append(":");
-		buffer.append("\"");
-
-		final int maxPosition;
-
-		if (positions.length == 0) {
-			maxPosition = -1;
-		} else {
-			maxPosition = positions[positions.length - 1];
-		}
-
-		String[] pieces = new String[maxPosition + 1];
-
-		for (int i = 0; i < terms.length; i++) {
-			int pos = positions[i];
-			String s = pieces[pos];
-
-			if (s == null) {
-				s = (terms[i]).text();
-			} else {
-				s = s + "|" + (terms[i]).text();
-			}
-
-			pieces[pos] = s;
-		}
-		for (int i = 0; i < pieces.length; i++) {
-			if (i > 0) {
-				buffer.append(' ');
-			}
-
-			String s = pieces[i];
-
-			if (s == null) {
-				buffer.append('?');
-			} else {
-				buffer.append(s);
-			}
-		}
-
-		buffer.append("\"");
-
-		if (slop != 0) {
-			buffer.append("~");
-			buffer.append(slop);
-		}
-
-		return buffer.toString();
+		return querySerializer.toString(phraseQuery, field);
 	}
 
+	/**
+	 * @deprecated see {@link #toString(TermQuery, String)}
+	 */
+	@Deprecated
 	protected String toString(PrefixQuery prefixQuery, String field) {
-		StringBuilder buffer = new StringBuilder();
-		Term term = prefixQuery.getPrefix();
-
-		if (!prefixQuery.getField().equals(field)) {
-			buffer.append(prefixQuery.getField());
-			buffer.append(':');
-		}
-
-		buffer.append(term.text());
-		buffer.append('*');
-
-		return buffer.toString();
+		return querySerializer.toString(prefixQuery, field);
 	}
 
+	/**
+	 * @deprecated see {@link #toString(TermQuery, String)}
+	 */
+	@Deprecated
 	protected String toString(MultiPhraseQuery multiPhraseQuery, String field) {
-		StringBuilder buffer = new StringBuilder();
-		Term[][] termArrays = multiPhraseQuery.getTermArrays();
-		int[] positions = multiPhraseQuery.getPositions();
-		int slop = multiPhraseQuery.getSlop();
-
-		buffer.append(field);
-		buffer.append(":");
-		buffer.append("\"");
-
-		int lastPos = -1;
-
-		for (int i = 0; i < termArrays.length; ++i) {
-			Term[] terms = termArrays[i];
-			int position = positions[i];
-			if (i != 0) {
-				buffer.append(" ");
-
-				for (int j = 1; j < (position - lastPos); j++) {
-					buffer.append("? ");
-				}
-			}
-			if (terms.length > 1) {
-				buffer.append("(");
-
-				for (int j = 0; j < terms.length; j++) {
-					buffer.append(terms[j].text());
-					if (j < terms.length - 1)
-						buffer.append(" ");
-				}
-
-				buffer.append(")");
-			} else {
-				buffer.append(terms[0].text());
-			}
-
-			lastPos = position;
-		}
-		buffer.append("\"");
-
-		if (slop != 0) {
-			buffer.append("~");
-			buffer.append(slop);
-		}
-
-		return buffer.toString();
+		return querySerializer.toString(multiPhraseQuery, field);
 	}
 
+	/**
+	 * @deprecated see {@link #toString(TermQuery, String)}
+	 */
+	@Deprecated
 	protected String toString(FuzzyQuery fuzzyQuery, String field) {
-		final StringBuilder buffer = new StringBuilder();
-		Term term = fuzzyQuery.getTerm();
-		int maxEdits = fuzzyQuery.getMaxEdits();
-
-		if (!term.field().equals(field)) {
-			buffer.append(term.field());
-			buffer.append(":");
-		}
-
-		buffer.append(term.text());
-		buffer.append('~');
-		buffer.append(Integer.toString(maxEdits));
-
-		return buffer.toString();
+		return querySerializer.toString(fuzzyQuery, field);
 	}
 
+	/**
+	 * @deprecated see {@link #toString(TermQuery, String)}
+	 */
+	@Deprecated
 	protected String toString(RegexpQuery regexpQuery, String field) {
-		StringBuilder buffer = new StringBuilder();
-		Term term = regexpQuery.getRegexp();
-
-		if (!term.field().equals(field)) {
-			buffer.append(term.field());
-			buffer.append(":");
-		}
-
-		buffer.append('/');
-		buffer.append(term.text());
-		buffer.append('/');
-
-		return buffer.toString();
+		return querySerializer.toString(regexpQuery, field);
 	}
 
+	/**
+	 * @deprecated see {@link #toString(TermQuery, String)}
+	 */
+	@Deprecated
 	protected String toString(TermRangeQuery termRangeQuery, String field) {
-		StringBuilder buffer = new StringBuilder();
-		boolean includeLower = termRangeQuery.includesLower();
-		BytesRef lowerTerm = termRangeQuery.getLowerTerm();
-		BytesRef upperTerm = termRangeQuery.getUpperTerm();
-		boolean includeUpper = termRangeQuery.includesUpper();
-
-		if (!termRangeQuery.getField().equals(field)) {
-			buffer.append(termRangeQuery.getField());
-			buffer.append(":");
-		}
-
-		buffer.append(includeLower ? '[' : '{');
-		// TODO: all these toStrings for queries should just output the bytes,
-		// it might not be UTF-8!
-		buffer.append(
-				lowerTerm != null ? ("*".equals(Term.toString(lowerTerm)) ? "\\*" : Term.toString(lowerTerm)) : "*");
-		buffer.append(" TO ");
-		buffer.append(
-				upperTerm != null ? ("*".equals(Term.toString(upperTerm)) ? "\\*" : Term.toString(upperTerm)) : "*");
-		buffer.append(includeUpper ? ']' : '}');
-
-		return buffer.toString();
+		return querySerializer.toString(termRangeQuery, field);
 	}
 
+	/**
+	 * @deprecated see {@link #toString(TermQuery, String)}
+	 */
+	@Deprecated
 	protected String toString(ConstantScoreQuery constantScoreQuery, String field) {
-		Query query = constantScoreQuery.getQuery();
-
-		return new StringBuilder("(").append(toString(query, field)).append(')').toString();
+		return querySerializer.toString(constantScoreQuery, field);
 	}
 
+	/**
+	 * @deprecated see {@link #toString(TermQuery, String)}
+	 */
+	@Deprecated
 	protected String toString(DisjunctionMaxQuery disjunctionMaxQuery, String field) {
-		StringBuilder buffer = new StringBuilder();
-		List<Query> disjuncts = disjunctionMaxQuery.getDisjuncts();
-		float tieBreakerMultiplier = disjunctionMaxQuery.getTieBreakerMultiplier();
-
-		buffer.append("(");
-
-		for (int i = 0; i < disjuncts.size(); i++) {
-			Query subquery = disjuncts.get(i);
-
-			if (subquery instanceof BooleanQuery) { // wrap sub-bools in parens
-				buffer.append("(");
-				buffer.append(toString(subquery, field));
-				buffer.append(")");
-			} else
-				buffer.append(toString(subquery, field));
-			if (i != disjuncts.size() - 1)
-				buffer.append(" | ");
-		}
-
-		buffer.append(")");
-
-		if (tieBreakerMultiplier != 0.0f) {
-			buffer.append("~");
-			buffer.append(tieBreakerMultiplier);
-		}
-
-		return buffer.toString();
+		return querySerializer.toString(disjunctionMaxQuery, field);
 	}
 
+	/**
+	 * @deprecated see {@link #toString(TermQuery, String)}
+	 */
+	@Deprecated
 	protected String toString(MatchAllDocsQuery matchAllDocsQuery) {
-		return "*:*";
+		return querySerializer.toString(matchAllDocsQuery, null);
 	}
 
+	/**
+	 * @deprecated see {@link #toString(TermQuery, String)}
+	 */
+	@Deprecated
 	protected String toString(SynonymQuery synonymQuery, String field) {
-		StringBuilder builder = new StringBuilder("(");
-		List<Term> terms = synonymQuery.getTerms();
-
-		for (int i = 0; i < terms.size(); i++) {
-			if (i != 0) {
-				builder.append(" ");
-			}
-
-			TermQuery termQuery = new TermQuery(terms.get(i));
-
-			builder.append(toString(termQuery, field));
-		}
+		return querySerializer.toString(synonymQuery, field);
+	}
 
-		builder.append(")");
+	/**
+	 * Sets the serializer {@link #toString(Query, String)} writes queries
+	 * with, e.g. one with handlers for custom queries.
+	 */
+	public void setQuerySerializer(QuerySerializer querySerializer) {
+		this.querySerializer = querySerializer;
+	}
 
-		return builder.toString();
+	/**
+	 * @see #setQuerySerializer(QuerySerializer)
+	 */
+	public QuerySerializer getQuerySerializer() {
+		return querySerializer;
 	}
 }
@@ -0,0 +1,301 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.search.BooleanClause.Occur;
+
+/**
+ * Renders a {@link QueryNode} tree so that queries which compile to the same
+ * Lucene query with the settings of a parser render the same. Field names
+ * and operators are already resolved and case folded by the parser; on top
+ * of that:
+ * <ul>
+ * <li>each clause is rendered with the occur the parser would give it, as
+ * decided by conjunctions, modifiers and the default operator, so
+ * <code>a AND b</code> and <code>+a +b</code> agree;
+ * <li>the clauses of a group are sorted, since their order does not matter;
+ * <li>a group of a single unmodified clause is replaced by its clause, as
+ * the parser does;
+ * <li>boosts are rendered as floats, nested boosts multiplied and boosts of
+ * 1 dropped;
+ * <li>phrase slops and fuzzy similarities are resolved against the defaults
+ * and rendered as numbers, and the ignored <code>~</code> suffixes of
+ * prefix, wildcard and regular expression terms are dropped.
+ * </ul>
+ * Term texts are kept as written, since only the analyzer knows which of
+ * them are equivalent. Terms delimit themselves, as the grammar requires
+ * whitespace and operators in them to be escaped, and so do phrases and
+ * regular expressions, which end at their first unescaped quote or slash.
+ * Range bounds lose their quotes when parsed and may contain anything, so
+ * they are always rendered quoted, to keep different ranges from rendering
+ * the same.
+ * Groups are walked with an explicit stack, like {@link QueryNodeCompiler}
+ * does.
+ */
+final class QueryCanonicalizer {
+	private final QueryParserBase parser;
+
+	QueryCanonicalizer(QueryParserBase parser) {
+		this.parser = parser;
+	}
+
+	String canonicalize(QueryNode node) {
+		Rendered rendered;
+		if (node instanceof BooleanNode) {
+			rendered = canonicalizeBoolean((BooleanNode) node);
+		} else {
+			rendered = leaf(node);
+		}
+		if (rendered.boost == 1) {
+			return rendered.text;
+		}
+		StringBuilder sb = new StringBuilder();
+		rendered.appendTo(sb);
+		return sb.toString();
+	}
+
+	private Rendered canonicalizeBoolean(BooleanNode root) {
+		ArrayDeque<Group> stack = new ArrayDeque<Group>();
+		Group group = new Group(root, occurs(root.getClauses()));
+		while (true) {
+			if (group.next < group.nodes.size()) {
+				QueryNode child = group.nodes.get(group.next).getQuery();
+				if (child instanceof BooleanNode) {
+					stack.push(group);
+					BooleanNode node = (BooleanNode) child;
+					group = new Group(node, occurs(node.getClauses()));
+					continue;
+				}
+				if (child instanceof MultiTermNode && parser.getSplitOnWhitespace()) {
+					MultiTermNode multiTerm = (MultiTermNode) child;
+					for (String term : multiTerm.getTerms()) {
+						group.add(new Rendered(multiTerm.getField() + ':' + term, 1, false));
+					}
+				} else {
+					group.add(leaf(child));
+				}
+				group.next++;
+				continue;
+			}
+			Rendered result = group.finish();
+			if (stack.isEmpty()) {
+				return result;
+			}
+			group = stack.pop();
+			group.add(result);
+			group.next++;
+		}
+	}
+
+	/**
+	 * @return the occur of each clause, or each term of a run of terms split
+	 *         on whitespace, the way
+	 *         {@link QueryParserBase#addClause(List, int, int, org.apache.lucene.search.Query)}
+	 *         decides it.
+	 */
+	private List<Occur> occurs(List<ClauseNode> nodes) {
+		boolean and = parser.operator == QueryParserBase.AND_OPERATOR;
+		List<Occur> occurs = new ArrayList<Occur>(nodes.size());
+		for (ClauseNode clause : nodes) {
+			if (clause.getQuery() instanceof MultiTermNode) {
+				// added without a conjunction or modifier
+				int n = parser.getSplitOnWhitespace() ? ((MultiTermNode) clause.getQuery()).getTerms().size() : 1;
+				for (int i = 0; i < n; i++) {
+					occurs.add(and ? Occur.MUST : Occur.SHOULD);
+				}
+				continue;
+			}
+
+			ClauseNode.Conjunction conj = clause.getConjunction();
+			int last = occurs.size() - 1;
+			if (last >= 0 && occurs.get(last) != Occur.MUST_NOT) {
+				if (conj == ClauseNode.Conjunction.AND) {
+					occurs.set(last, Occur.MUST);
+				} else if (and && conj == ClauseNode.Conjunction.OR) {
+					occurs.set(last, Occur.SHOULD);
+				}
+			}
+
+			boolean prohibited = clause.getModifier() == ClauseNode.Modifier.PROHIBITED;
+			boolean required;
+			if (and) {
+				required = !prohibited && conj != ClauseNode.Conjunction.OR;
+			} else {
+				required = clause.getModifier() == ClauseNode.Modifier.REQUIRED
+						|| (conj == ClauseNode.Conjunction.AND && !prohibited);
+			}
+			occurs.add(prohibited ? Occur.MUST_NOT : required ? Occur.MUST : Occur.SHOULD);
+		}
+		return occurs;
+	}
+
+	/**
+	 * Renders any node but a {@link BooleanNode}.
+	 */
+	private Rendered leaf(QueryNode node) {
+		StringBuilder sb = new StringBuilder();
+		if (node instanceof TermNode) {
+			TermNode term = (TermNode) node;
+			sb.append(term.getField()).append(':').append(term.getImage());
+			if (term.getKind() == TermNode.Kind.PHRASE) {
+				int slop = phraseSlop(term.getFuzzySlop());
+				if (slop != 0) {
+					sb.append('~').append(slop);
+				}
+			} else if (term.getKind() == TermNode.Kind.TERM && term.getFuzzySlop() != null) {
+				sb.append('~').append(fuzzyMinSim(term.getFuzzySlop()));
+			}
+		} else if (node instanceof RangeNode) {
+			RangeNode range = (RangeNode) node;
+			sb.append(range.getField()).append(':').append(range.getIncludeLower() ? '[' : '{');
+			appendBound(sb, range.getLower());
+			sb.append(" TO ");
+			appendBound(sb, range.getUpper());
+			sb.append(range.getIncludeUpper() ? ']' : '}');
+		} else if (node instanceof ReferenceNode) {
+			// #1 would render the same whatever it stands for
+			throw new IllegalArgumentException("Cannot canonicalize reference #" + ((ReferenceNode) node).getName()
+					+ ", expand references first");
+		} else if (node instanceof MultiTermNode) {
+			MultiTermNode multiTerm = (MultiTermNode) node;
+			sb.append(multiTerm.getField()).append(":<").append(String.join(" ", multiTerm.getTerms())).append('>');
+		} else {
+			throw new IllegalArgumentException("Unknown node " + node.getClass());
+		}
+		return new Rendered(sb.toString(), boost(node), false);
+	}
+
+	/**
+	 * Appends a range bound between quotes, <code>*</code> if it is open.
+	 */
+	private static void appendBound(StringBuilder sb, String bound) {
+		if (bound == null) {
+			sb.append('*');
+		} else {
+			// escaped, so that the bound ends at the closing quote
+			sb.append('"');
+			for (int i = 0; i < bound.length(); i++) {
+				char c = bound.charAt(i);
+				if (c == '"' || c == '\\') {
+					sb.append('\\');
+				}
+				sb.append(c);
+			}
+			sb.append('"');
+		}
+	}
+
+	/**
+	 * @return the slop {@link QueryParserBase#handleQuotedTerm} uses.
+	 */
+	private int phraseSlop(String fuzzySlop) {
+		int slop = parser.phraseSlop;
+		if (fuzzySlop != null) {
+			try {
+				slop = (int) Float.parseFloat(fuzzySlop.substring(1));
+			} catch (NumberFormatException ignored) {
+			}
+		}
+		return slop;
+	}
+
+	/**
+	 * @return the similarity {@link QueryParserBase#handleBareFuzzy} uses.
+	 */
+	private float fuzzyMinSim(String fuzzySlop) {
+		float minSim = parser.fuzzyMinSim;
+		try {
+			minSim = Float.parseFloat(fuzzySlop.substring(1));
+		} catch (NumberFormatException ignored) {
+		}
+		return minSim;
+	}
+
+	/**
+	 * @return the boost of a node, 1 if it has none.
+	 */
+	private static float boost(QueryNode node) {
+		return node.hasBoost() ? node.getBoost() : 1;
+	}
+
+	/**
+	 * A rendered node: its text without the boost, and the boost.
+	 */
+	private static final class Rendered {
+		final String text;
+		final float boost;
+		// whether the text is a list of clauses, which needs parentheses
+		final boolean clauses;
+
+		Rendered(String text, float boost, boolean clauses) {
+			this.text = text;
+			this.boost = boost;
+			this.clauses = clauses;
+		}
+
+		void appendTo(StringBuilder sb) {
+			if (clauses) {
+				sb.append('(').append(text).append(')');
+			} else {
+				sb.append(text);
+			}
+			if (boost != 1) {
+				sb.append('^').append(boost);
+			}
+		}
+	}
+
+	/**
+	 * A boolean node being rendered by
+	 * {@link QueryCanonicalizer#canonicalizeBoolean(BooleanNode)}.
+	 */
+	private static final class Group {
+		final BooleanNode node;
+		final List<ClauseNode> nodes;
+		final List<Occur> occurs;
+		final List<Rendered> rendered = new ArrayList<Rendered>();
+		// index of the clause node to render next
+		int next;
+
+		Group(BooleanNode node, List<Occur> occurs) {
+			this.node = node;
+			this.nodes = node.getClauses();
+			this.occurs = occurs;
+		}
+
+		void add(Rendered clause) {
+			rendered.add(clause);
+		}
+
+		/**
+		 * Sorts the clauses, or returns the clause of a group of a single
+		 * unmodified clause with the boosts multiplied.
+		 */
+		Rendered finish() {
+			float boost = boost(node);
+			if (nodes.size() == 1 && rendered.size() == 1 && !(nodes.get(0).getQuery() instanceof MultiTermNode)
+					&& nodes.get(0).getModifier() == ClauseNode.Modifier.NONE) {
+				Rendered only = rendered.get(0);
+				return new Rendered(only.text, only.boost * boost, only.clauses);
+			}
+			List<String> clauses = new ArrayList<String>(rendered.size());
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < rendered.size(); i++) {
+				sb.setLength(0);
+				Occur occur = occurs.get(i);
+				if (occur == Occur.MUST) {
+					sb.append('+');
+				} else if (occur == Occur.MUST_NOT) {
+					sb.append('-');
+				}
+				rendered.get(i).appendTo(sb);
+				clauses.add(sb.toString());
+			}
+			Collections.sort(clauses);
+			return new Rendered(String.join(" ", clauses), boost, true);
+		}
+	}
+}
@@ -0,0 +1,712 @@
+package com.easynetcn.resource.queryparser;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.FloatPoint;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.PrefixCodedTerms;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.DocValuesRewriteMethod;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.MultiPhraseQuery;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.PointInSetQuery;
+import org.apache.lucene.search.PointRangeQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.RegexpQuery;
+import org.apache.lucene.search.SynonymQuery;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.lucene.search.TopTermsRewrite;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.search.spans.SpanNearQuery;
+import org.apache.lucene.search.spans.SpanOrQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.automaton.Operations;
+import org.apache.lucene.util.automaton.RegExp;
+
+/**
+ * A compact binary encoding of a {@link ParseResult}, to parse a query once
+ * and ship the result to other nodes or keep it in a persistent cache.
+ * Decoding builds the Lucene queries directly, without the parser or the
+ * analyzer.
+ * <p>
+ * The encoding starts with its {@link #VERSION}, followed by a dictionary of
+ * the field names, the query tree and the field texts. Nodes of the tree are
+ * a tag byte followed by their fields: numbers as variable length ints,
+ * field names as indexes into the dictionary, terms as length-prefixed
+ * bytes, boosts as float bits. All queries the parser builds can be
+ * encoded: term, boolean, boost, phrase, multi-phrase, prefix, wildcard,
+ * regular expression, fuzzy, term range, one-dimensional point range and
+ * point set, constant score, disjunction max, match all, match no docs,
+ * synonym, term-in-set and span term/near/or queries. Others throw an
+ * {@link IllegalArgumentException}.
+ * <p>
+ * Wildcards and regular expressions are decoded with the default limit of
+ * determinized states, regular expressions with all {@link RegExp} syntax
+ * flags, and the reason of a {@link MatchNoDocsQuery} is not kept; none of
+ * these takes part in query equality.
+ */
+public final class QueryCodec {
+	/** The version of the encoding, the first byte of an encoded result. */
+	public static final int VERSION = 1;
+
+	private static final byte NULL = 0;
+	private static final byte TERM = 1;
+	private static final byte BOOLEAN = 2;
+	private static final byte BOOST = 3;
+	private static final byte PHRASE = 4;
+	private static final byte MULTI_PHRASE = 5;
+	private static final byte PREFIX = 6;
+	private static final byte WILDCARD = 7;
+	private static final byte REGEXP = 8;
+	private static final byte FUZZY = 9;
+	private static final byte TERM_RANGE = 10;
+	private static final byte POINT_RANGE = 11;
+	private static final byte POINT_SET = 12;
+	private static final byte CONSTANT_SCORE = 13;
+	private static final byte DISJUNCTION_MAX = 14;
+	private static final byte MATCH_ALL = 15;
+	private static final byte MATCH_NO_DOCS = 16;
+	private static final byte SYNONYM = 17;
+	private static final byte TERM_IN_SET = 18;
+	private static final byte SPAN_TERM = 19;
+	private static final byte SPAN_NEAR = 20;
+	private static final byte SPAN_OR = 21;
+
+	// rewrite methods of multi-term queries
+	private static final byte CONSTANT_SCORE_REWRITE = 1;
+	private static final byte SCORING_BOOLEAN_REWRITE = 2;
+	private static final byte CONSTANT_SCORE_BOOLEAN_REWRITE = 3;
+	private static final byte TOP_TERMS_SCORING_BOOLEAN_REWRITE = 4;
+	private static final byte TOP_TERMS_BOOST_ONLY_BOOLEAN_REWRITE = 5;
+	private static final byte TOP_TERMS_BLENDED_FREQ_SCORING_REWRITE = 6;
+	private static final byte DOC_VALUES_REWRITE = 7;
+
+	private static final BooleanClause.Occur[] OCCURS = BooleanClause.Occur.values();
+	private static final PointType[] POINT_TYPES = PointType.values();
+
+	private QueryCodec() {
+	}
+
+	/**
+	 * @return the encoding of <code>result</code>
+	 * @throws IllegalArgumentException
+	 *             if the query contains a query that cannot be encoded
+	 */
+	public static byte[] encode(ParseResult result) {
+		Encoder tree = new Encoder();
+		tree.writeQuery(result.getQuery());
+		List<FieldText> fieldTexts = result.getFieldTexts();
+		tree.writeVInt(fieldTexts.size());
+		for (FieldText fieldText : fieldTexts) {
+			tree.writeField(fieldText.getField());
+			tree.writeString(fieldText.getText());
+		}
+
+		Encoder out = new Encoder();
+		out.writeByte(VERSION);
+		out.writeVInt(tree.fields.size());
+		for (String field : tree.fields) {
+			out.writeString(field);
+		}
+		out.bytes.append(tree.bytes);
+		return Arrays.copyOf(out.bytes.bytes(), out.bytes.length());
+	}
+
+	/**
+	 * Decodes a result from the position of <code>in</code> on, leaving the
+	 * position after it. The queries keep copies of their terms, so the
+	 * buffer may be reused once this method returns; terms of a heap buffer
+	 * are copied straight from its array, without intermediate copies.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the encoding is of another version or malformed
+	 */
+	public static ParseResult decode(ByteBuffer in) {
+		try {
+			return new Decoder(in).readResult();
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Truncated encoding", e);
+		} catch (IllegalArgumentException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			// e.g. Lucene rejecting a query, or too many clauses
+			throw new IllegalArgumentException("Malformed encoding", e);
+		}
+	}
+
+	/**
+	 * Writes the encoding into a growing buffer.
+	 */
+	private static final class Encoder {
+		final BytesRefBuilder bytes = new BytesRefBuilder();
+		final List<String> fields = new ArrayList<String>();
+		final Map<String, Integer> fieldIds = new HashMap<String, Integer>();
+
+		void writeByte(int b) {
+			bytes.append((byte) b);
+		}
+
+		void writeVInt(int i) {
+			while ((i & ~0x7F) != 0) {
+				writeByte((i & 0x7F) | 0x80);
+				i >>>= 7;
+			}
+			writeByte(i);
+		}
+
+		void writeFloat(float f) {
+			int bits = Float.floatToIntBits(f);
+			writeByte(bits >>> 24);
+			writeByte(bits >>> 16);
+			writeByte(bits >>> 8);
+			writeByte(bits);
+		}
+
+		void writeBytes(BytesRef b) {
+			writeVInt(b.length);
+			bytes.append(b.bytes, b.offset, b.length);
+		}
+
+		void writeBytes(byte[] b) {
+			writeVInt(b.length);
+			bytes.append(b, 0, b.length);
+		}
+
+		void writeString(String s) {
+			writeBytes(s.getBytes(StandardCharsets.UTF_8));
+		}
+
+		void writeField(String field) {
+			Integer id = fieldIds.get(field);
+			if (id == null) {
+				id = fields.size();
+				fields.add(field);
+				fieldIds.put(field, id);
+			}
+			writeVInt(id);
+		}
+
+		void writeTerm(Term term) {
+			writeField(term.field());
+			writeBytes(term.bytes());
+		}
+
+		void writeQuery(Query query) {
+			if (query == null) {
+				writeByte(NULL);
+			} else if (query instanceof TermQuery) {
+				writeByte(TERM);
+				writeTerm(((TermQuery) query).getTerm());
+			} else if (query instanceof BooleanQuery) {
+				BooleanQuery bq = (BooleanQuery) query;
+				writeByte(BOOLEAN);
+				writeByte(bq.isCoordDisabled() ? 1 : 0);
+				writeVInt(bq.getMinimumNumberShouldMatch());
+				writeVInt(bq.clauses().size());
+				for (BooleanClause clause : bq) {
+					writeByte(clause.getOccur().ordinal());
+					writeQuery(clause.getQuery());
+				}
+			} else if (query instanceof BoostQuery) {
+				writeByte(BOOST);
+				writeFloat(((BoostQuery) query).getBoost());
+				writeQuery(((BoostQuery) query).getQuery());
+			} else if (query instanceof PhraseQuery) {
+				PhraseQuery pq = (PhraseQuery) query;
+				Term[] terms = pq.getTerms();
+				int[] positions = pq.getPositions();
+				writeByte(PHRASE);
+				writeVInt(pq.getSlop());
+				writeVInt(terms.length);
+				for (int i = 0; i < terms.length; i++) {
+					writeVInt(positions[i]);
+					writeTerm(terms[i]);
+				}
+			} else if (query instanceof MultiPhraseQuery) {
+				MultiPhraseQuery mpq = (MultiPhraseQuery) query;
+				Term[][] termArrays = mpq.getTermArrays();
+				int[] positions = mpq.getPositions();
+				writeByte(MULTI_PHRASE);
+				writeVInt(mpq.getSlop());
+				writeVInt(termArrays.length);
+				for (int i = 0; i < termArrays.length; i++) {
+					writeVInt(positions[i]);
+					writeVInt(termArrays[i].length);
+					for (Term term : termArrays[i]) {
+						writeTerm(term);
+					}
+				}
+			} else if (query instanceof MultiTermQuery) {
+				writeMultiTermQuery((MultiTermQuery) query);
+			} else if (query instanceof PointRangeQuery) {
+				PointRangeQuery prq = (PointRangeQuery) query;
+				writeByte(POINT_RANGE);
+				writeField(prq.getField());
+				writeByte(pointType(query, prq.getNumDims()).ordinal());
+				writeBytes(prq.getLowerPoint());
+				writeBytes(prq.getUpperPoint());
+			} else if (query instanceof PointInSetQuery) {
+				PointInSetQuery psq = (PointInSetQuery) query;
+				writeByte(POINT_SET);
+				writeField(psq.getField());
+				writeByte(pointType(query, psq.getNumDims()).ordinal());
+				writeVInt(psq.getPackedPoints().size());
+				for (byte[] point : psq.getPackedPoints()) {
+					writeBytes(point);
+				}
+			} else if (query instanceof ConstantScoreQuery) {
+				writeByte(CONSTANT_SCORE);
+				writeQuery(((ConstantScoreQuery) query).getQuery());
+			} else if (query instanceof DisjunctionMaxQuery) {
+				DisjunctionMaxQuery dmq = (DisjunctionMaxQuery) query;
+				writeByte(DISJUNCTION_MAX);
+				writeFloat(dmq.getTieBreakerMultiplier());
+				writeVInt(dmq.getDisjuncts().size());
+				for (Query disjunct : dmq.getDisjuncts()) {
+					writeQuery(disjunct);
+				}
+			} else if (query instanceof MatchAllDocsQuery) {
+				writeByte(MATCH_ALL);
+			} else if (query instanceof MatchNoDocsQuery) {
+				writeByte(MATCH_NO_DOCS);
+			} else if (query instanceof SynonymQuery) {
+				List<Term> terms = ((SynonymQuery) query).getTerms();
+				writeByte(SYNONYM);
+				writeVInt(terms.size());
+				for (Term term : terms) {
+					writeTerm(term);
+				}
+			} else if (query instanceof TermInSetQuery) {
+				PrefixCodedTerms termData = ((TermInSetQuery) query).getTermData();
+				PrefixCodedTerms.TermIterator it = termData.iterator();
+				writeByte(TERM_IN_SET);
+				writeVInt((int) termData.size());
+				for (BytesRef term = it.next(); term != null; term = it.next()) {
+					writeField(it.field());
+					writeBytes(term);
+				}
+			} else if (query instanceof SpanTermQuery) {
+				writeByte(SPAN_TERM);
+				writeTerm(((SpanTermQuery) query).getTerm());
+			} else if (query instanceof SpanNearQuery) {
+				SpanNearQuery snq = (SpanNearQuery) query;
+				writeByte(SPAN_NEAR);
+				writeVInt(snq.getSlop());
+				writeByte(snq.isInOrder() ? 1 : 0);
+				writeSpans(snq.getClauses());
+			} else if (query instanceof SpanOrQuery) {
+				writeByte(SPAN_OR);
+				writeSpans(((SpanOrQuery) query).getClauses());
+			} else {
+				throw new IllegalArgumentException("Cannot encode " + query.getClass().getName());
+			}
+		}
+
+		private void writeSpans(SpanQuery[] clauses) {
+			writeVInt(clauses.length);
+			for (SpanQuery clause : clauses) {
+				writeQuery(clause);
+			}
+		}
+
+		private void writeMultiTermQuery(MultiTermQuery query) {
+			if (query instanceof PrefixQuery) {
+				writeByte(PREFIX);
+				writeTerm(((PrefixQuery) query).getPrefix());
+			} else if (query instanceof WildcardQuery) {
+				writeByte(WILDCARD);
+				writeTerm(((WildcardQuery) query).getTerm());
+			} else if (query instanceof RegexpQuery) {
+				writeByte(REGEXP);
+				writeTerm(((RegexpQuery) query).getRegexp());
+			} else if (query instanceof FuzzyQuery) {
+				FuzzyQuery fq = (FuzzyQuery) query;
+				MultiTermQuery.RewriteMethod rewrite = fq.getRewriteMethod();
+				writeByte(FUZZY);
+				writeTerm(fq.getTerm());
+				writeVInt(fq.getMaxEdits());
+				writeVInt(fq.getPrefixLength());
+				writeByte(fq.getTranspositions() ? 1 : 0);
+				// not exposed, but the size of the default rewrite method
+				writeVInt(rewrite instanceof TopTermsRewrite ? ((TopTermsRewrite<?>) rewrite).getSize()
+						: FuzzyQuery.defaultMaxExpansions);
+			} else if (query instanceof TermRangeQuery) {
+				TermRangeQuery trq = (TermRangeQuery) query;
+				writeByte(TERM_RANGE);
+				writeField(trq.getField());
+				writeByte((trq.includesLower() ? 1 : 0) | (trq.includesUpper() ? 2 : 0)
+						| (trq.getLowerTerm() != null ? 4 : 0) | (trq.getUpperTerm() != null ? 8 : 0));
+				if (trq.getLowerTerm() != null) {
+					writeBytes(trq.getLowerTerm());
+				}
+				if (trq.getUpperTerm() != null) {
+					writeBytes(trq.getUpperTerm());
+				}
+			} else {
+				throw new IllegalArgumentException("Cannot encode " + query.getClass().getName());
+			}
+			writeRewriteMethod(query.getRewriteMethod());
+		}
+
+		private void writeRewriteMethod(MultiTermQuery.RewriteMethod rewrite) {
+			if (rewrite == MultiTermQuery.CONSTANT_SCORE_REWRITE) {
+				writeByte(CONSTANT_SCORE_REWRITE);
+			} else if (rewrite == MultiTermQuery.SCORING_BOOLEAN_REWRITE) {
+				writeByte(SCORING_BOOLEAN_REWRITE);
+			} else if (rewrite == MultiTermQuery.CONSTANT_SCORE_BOOLEAN_REWRITE) {
+				writeByte(CONSTANT_SCORE_BOOLEAN_REWRITE);
+			} else if (rewrite.getClass() == MultiTermQuery.TopTermsScoringBooleanQueryRewrite.class) {
+				writeByte(TOP_TERMS_SCORING_BOOLEAN_REWRITE);
+				writeVInt(((TopTermsRewrite<?>) rewrite).getSize());
+			} else if (rewrite.getClass() == MultiTermQuery.TopTermsBoostOnlyBooleanQueryRewrite.class) {
+				writeByte(TOP_TERMS_BOOST_ONLY_BOOLEAN_REWRITE);
+				writeVInt(((TopTermsRewrite<?>) rewrite).getSize());
+			} else if (rewrite.getClass() == MultiTermQuery.TopTermsBlendedFreqScoringRewrite.class) {
+				writeByte(TOP_TERMS_BLENDED_FREQ_SCORING_REWRITE);
+				writeVInt(((TopTermsRewrite<?>) rewrite).getSize());
+			} else if (rewrite.getClass() == DocValuesRewriteMethod.class) {
+				writeByte(DOC_VALUES_REWRITE);
+			} else {
+				throw new IllegalArgumentException("Cannot encode rewrite method " + rewrite.getClass().getName());
+			}
+		}
+
+		/**
+		 * @return the point type of a query built by one of the factory
+		 *         methods of the point classes
+		 */
+		private static PointType pointType(Query query, int numDims) {
+			Class<?> pointClass = query.getClass().getEnclosingClass();
+			if (numDims == 1) {
+				if (pointClass == IntPoint.class) {
+					return PointType.INT;
+				} else if (pointClass == LongPoint.class) {
+					return PointType.LONG;
+				} else if (pointClass == FloatPoint.class) {
+					return PointType.FLOAT;
+				} else if (pointClass == DoublePoint.class) {
+					return PointType.DOUBLE;
+				}
+			}
+			throw new IllegalArgumentException("Cannot encode " + query.getClass().getName());
+		}
+	}
+
+	/**
+	 * Reads an encoding from a buffer.
+	 */
+	private static final class Decoder {
+		final ByteBuffer in;
+		String[] fields;
+
+		Decoder(ByteBuffer in) {
+			this.in = in;
+		}
+
+		ParseResult readResult() {
+			int version = in.get();
+			if (version != VERSION) {
+				throw new IllegalArgumentException("Unsupported encoding version " + version);
+			}
+			fields = new String[readCount()];
+			for (int i = 0; i < fields.length; i++) {
+				fields[i] = readString();
+			}
+			Query query = readQuery();
+			int count = readCount();
+			List<FieldText> fieldTexts = new ArrayList<FieldText>(count);
+			for (int i = 0; i < count; i++) {
+				fieldTexts.add(new FieldText(readField(), readString()));
+			}
+			return new ParseResult(query, fieldTexts);
+		}
+
+		int readVInt() {
+			int i = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = in.get();
+				i |= (b & 0x7F) << shift;
+				if (b >= 0) {
+					return i;
+				}
+				if (shift >= 28) {
+					throw new IllegalArgumentException("Malformed variable length int");
+				}
+			}
+		}
+
+		/**
+		 * @return the number of the following elements or bytes, checked
+		 *         against the rest of the buffer, as each takes at least one
+		 *         byte.
+		 */
+		int readCount() {
+			int count = readVInt();
+			if (count < 0 || count > in.remaining()) {
+				throw new IllegalArgumentException("Malformed count " + count);
+			}
+			return count;
+		}
+
+		float readFloat() {
+			// big endian, whatever the order of the buffer
+			int bits = (in.get() & 0xFF) << 24 | (in.get() & 0xFF) << 16 | (in.get() & 0xFF) << 8 | (in.get() & 0xFF);
+			return Float.intBitsToFloat(bits);
+		}
+
+		boolean readBoolean() {
+			return in.get() != 0;
+		}
+
+		/**
+		 * @return the next bytes, which share the array of a heap buffer; they
+		 *         must be copied before a query keeps them.
+		 */
+		BytesRef readBytes() {
+			int length = readCount();
+			BytesRef bytes;
+			if (in.hasArray()) {
+				bytes = new BytesRef(in.array(), in.arrayOffset() + in.position(), length);
+				in.position(in.position() + length);
+			} else {
+				bytes = new BytesRef(length);
+				in.get(bytes.bytes, 0, length);
+				bytes.length = length;
+			}
+			return bytes;
+		}
+
+		byte[] readByteArray() {
+			byte[] bytes = new byte[readCount()];
+			in.get(bytes);
+			return bytes;
+		}
+
+		String readString() {
+			return readBytes().utf8ToString();
+		}
+
+		String readField() {
+			int id = readVInt();
+			if (id >= fields.length) {
+				throw new IllegalArgumentException("Unknown field " + id);
+			}
+			return fields[id];
+		}
+
+		Term readTerm() {
+			// Term keeps a copy of the bytes
+			return new Term(readField(), readBytes());
+		}
+
+		Query readQuery() {
+			byte tag = in.get();
+			switch (tag) {
+			case NULL:
+				return null;
+			case TERM:
+				return new TermQuery(readTerm());
+			case BOOLEAN: {
+				BooleanQuery.Builder builder = new BooleanQuery.Builder();
+				builder.setDisableCoord(readBoolean());
+				builder.setMinimumNumberShouldMatch(readVInt());
+				for (int i = readCount(); i > 0; i--) {
+					BooleanClause.Occur occur = readOccur();
+					builder.add(readQuery(), occur);
+				}
+				return builder.build();
+			}
+			case BOOST: {
+				float boost = readFloat();
+				return new BoostQuery(readQuery(), boost);
+			}
+			case PHRASE: {
+				PhraseQuery.Builder builder = new PhraseQuery.Builder();
+				builder.setSlop(readVInt());
+				for (int i = readCount(); i > 0; i--) {
+					int position = readVInt();
+					builder.add(readTerm(), position);
+				}
+				return builder.build();
+			}
+			case MULTI_PHRASE: {
+				MultiPhraseQuery.Builder builder = new MultiPhraseQuery.Builder();
+				builder.setSlop(readVInt());
+				for (int i = readCount(); i > 0; i--) {
+					int position = readVInt();
+					Term[] terms = new Term[readCount()];
+					for (int j = 0; j < terms.length; j++) {
+						terms[j] = readTerm();
+					}
+					builder.add(terms, position);
+				}
+				return builder.build();
+			}
+			case PREFIX:
+				return readRewriteMethod(new PrefixQuery(readTerm()));
+			case WILDCARD:
+				// with the default limit, as the encoding may not come from a
+				// parser
+				return readRewriteMethod(
+						new WildcardQuery(readTerm(), Operations.DEFAULT_MAX_DETERMINIZED_STATES));
+			case REGEXP:
+				return readRewriteMethod(
+						new RegexpQuery(readTerm(), RegExp.ALL, Operations.DEFAULT_MAX_DETERMINIZED_STATES));
+			case FUZZY: {
+				Term term = readTerm();
+				int maxEdits = readVInt();
+				int prefixLength = readVInt();
+				boolean transpositions = readBoolean();
+				int maxExpansions = readVInt();
+				return readRewriteMethod(new FuzzyQuery(term, maxEdits, prefixLength, maxExpansions, transpositions));
+			}
+			case TERM_RANGE: {
+				String field = readField();
+				int flags = in.get();
+				// TermRangeQuery keeps the bounds it is given
+				BytesRef lower = (flags & 4) != 0 ? BytesRef.deepCopyOf(readBytes()) : null;
+				BytesRef upper = (flags & 8) != 0 ? BytesRef.deepCopyOf(readBytes()) : null;
+				return readRewriteMethod(new TermRangeQuery(field, lower, upper, (flags & 1) != 0, (flags & 2) != 0));
+			}
+			case POINT_RANGE: {
+				String field = readField();
+				PointType type = readPointType();
+				return type.newRangeQuery(field, readByteArray(), readByteArray());
+			}
+			case POINT_SET: {
+				String field = readField();
+				PointType type = readPointType();
+				List<byte[]> points = new ArrayList<byte[]>();
+				for (int i = readCount(); i > 0; i--) {
+					points.add(readByteArray());
+				}
+				return type.newSetQuery(field, points);
+			}
+			case CONSTANT_SCORE:
+				return new ConstantScoreQuery(readQuery());
+			case DISJUNCTION_MAX: {
+				float tieBreakerMultiplier = readFloat();
+				List<Query> disjuncts = new ArrayList<Query>();
+				for (int i = readCount(); i > 0; i--) {
+					disjuncts.add(readQuery());
+				}
+				return new DisjunctionMaxQuery(disjuncts, tieBreakerMultiplier);
+			}
+			case MATCH_ALL:
+				return new MatchAllDocsQuery();
+			case MATCH_NO_DOCS:
+				return new MatchNoDocsQuery();
+			case SYNONYM: {
+				Term[] terms = new Term[readCount()];
+				for (int i = 0; i < terms.length; i++) {
+					terms[i] = readTerm();
+				}
+				return new SynonymQuery(terms);
+			}
+			case TERM_IN_SET: {
+				String field = null;
+				List<BytesRef> terms = new ArrayList<BytesRef>();
+				for (int i = readCount(); i > 0; i--) {
+					field = readField();
+					// TermInSetQuery encodes the terms into a copy
+					terms.add(readBytes());
+				}
+				return new TermInSetQuery(field, terms);
+			}
+			case SPAN_TERM:
+				return new SpanTermQuery(readTerm());
+			case SPAN_NEAR: {
+				int slop = readVInt();
+				boolean inOrder = readBoolean();
+				return new SpanNearQuery(readSpans(), slop, inOrder);
+			}
+			case SPAN_OR:
+				return new SpanOrQuery(readSpans());
+			default:
+				throw new IllegalArgumentException("Unknown query tag " + tag);
+			}
+		}
+
+		private SpanQuery[] readSpans() {
+			SpanQuery[] clauses = new SpanQuery[readCount()];
+			for (int i = 0; i < clauses.length; i++) {
+				Query clause = readQuery();
+				if (!(clause instanceof SpanQuery)) {
+					throw new IllegalArgumentException("Expected a span query");
+				}
+				clauses[i] = (SpanQuery) clause;
+			}
+			return clauses;
+		}
+
+		private BooleanClause.Occur readOccur() {
+			int occur = in.get();
+			if (occur < 0 || occur >= OCCURS.length) {
+				throw new IllegalArgumentException("Unknown occur " + occur);
+			}
+			return OCCURS[occur];
+		}
+
+		private PointType readPointType() {
+			int type = in.get();
+			if (type < 0 || type >= POINT_TYPES.length) {
+				throw new IllegalArgumentException("Unknown point type " + type);
+			}
+			return POINT_TYPES[type];
+		}
+
+		private MultiTermQuery readRewriteMethod(MultiTermQuery query) {
+			byte method = in.get();
+			switch (method) {
+			case CONSTANT_SCORE_REWRITE:
+				query.setRewriteMethod(MultiTermQuery.CONSTANT_SCORE_REWRITE);
+				break;
+			case SCORING_BOOLEAN_REWRITE:
+				query.setRewriteMethod(MultiTermQuery.SCORING_BOOLEAN_REWRITE);
+				break;
+			case CONSTANT_SCORE_BOOLEAN_REWRITE:
+				query.setRewriteMethod(MultiTermQuery.CONSTANT_SCORE_BOOLEAN_REWRITE);
+				break;
+			case TOP_TERMS_SCORING_BOOLEAN_REWRITE:
+				query.setRewriteMethod(new MultiTermQuery.TopTermsScoringBooleanQueryRewrite(readVInt()));
+				break;
+			case TOP_TERMS_BOOST_ONLY_BOOLEAN_REWRITE:
+				query.setRewriteMethod(new MultiTermQuery.TopTermsBoostOnlyBooleanQueryRewrite(readVInt()));
+				break;
+			case TOP_TERMS_BLENDED_FREQ_SCORING_REWRITE:
+				query.setRewriteMethod(new MultiTermQuery.TopTermsBlendedFreqScoringRewrite(readVInt()));
+				break;
+			case DOC_VALUES_REWRITE:
+				query.setRewriteMethod(new DocValuesRewriteMethod());
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown rewrite method " + method);
+			}
+			return query;
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package com.easynetcn.resource.queryparser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.lucene.search.Query;
+
+/**
+ * Parses a UTF-8 file holding one query per line, e.g. a saved search log,
+ * and hands every query or parse error to a {@link QueryRecordHandler}.
+ * <p>
+ * The file is memory-mapped one window at a time, each window ending at a
+ * line break, and decoded into a single reused char buffer that the queries
+ * are parsed from in place through
+ * {@link QueryParserBase#parse(char[], int, int)}. Heap use is therefore
+ * bounded by the window size (or the longest line, if longer), however large
+ * the file is. Lines may end with <code>\n</code> or <code>\r\n</code>, blank
+ * lines are skipped but counted, a leading byte order mark is ignored and
+ * malformed UTF-8 is replaced with <code>U+FFFD</code>.
+ * <p>
+ * Like the wrapped parser, instances are not thread safe.
+ */
+public class QueryFileParser {
+	/** The default size in bytes of the mapped window. */
+	public static final int DEFAULT_WINDOW_SIZE = 8 << 20;
+
+	private final QueryParserBase parser;
+	private final int windowSize;
+	private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private CharBuffer chars;
+
+	public QueryFileParser(QueryParserBase parser) {
+		this(parser, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * @param windowSize
+	 *            the number of bytes mapped and decoded at a time.
+	 */
+	public QueryFileParser(QueryParserBase parser, int windowSize) {
+		if (windowSize < 1) {
+			throw new IllegalArgumentException("windowSize must be positive: " + windowSize);
+		}
+		this.parser = parser;
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * Parses every line of <code>file</code>.
+	 *
+	 * @return the number of lines read, including blank ones.
+	 * @throws IOException
+	 *             if the file cannot be read, or a line does not fit in 2GB.
+	 */
+	public long parse(Path file, QueryRecordHandler handler) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = 0;
+			long lineNumber = 0;
+			int window = windowSize;
+			while (position < size) {
+				int length = (int) Math.min(window, size - position);
+				MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				int end = length;
+				if (position + length < size) {
+					// '\n' never occurs inside a multi-byte UTF-8 sequence
+					end = lastLineBreak(bytes, length) + 1;
+					if (end == 0) {
+						if (window > Integer.MAX_VALUE / 2) {
+							throw new IOException("Line at byte " + position + " of " + file + " is too long");
+						}
+						window *= 2;
+						continue;
+					}
+				}
+				bytes.limit(end);
+				if (position == 0) {
+					skipByteOrderMark(bytes);
+				}
+				decode(bytes);
+				lineNumber = parseLines(lineNumber, handler);
+				position += end;
+				window = windowSize;
+			}
+			return lineNumber;
+		}
+	}
+
+	private static int lastLineBreak(ByteBuffer bytes, int length) {
+		for (int i = length - 1; i >= 0; i--) {
+			if (bytes.get(i) == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static void skipByteOrderMark(ByteBuffer bytes) {
+		if (bytes.remaining() >= 3 && (bytes.get(0) & 0xFF) == 0xEF && (bytes.get(1) & 0xFF) == 0xBB
+				&& (bytes.get(2) & 0xFF) == 0xBF) {
+			bytes.position(3);
+		}
+	}
+
+	private void decode(ByteBuffer bytes) throws IOException {
+		// UTF-8 never decodes to more chars than it has bytes
+		if (chars == null || chars.capacity() < bytes.remaining()) {
+			chars = CharBuffer.allocate(Math.max(bytes.remaining(), Math.min(windowSize, 8192)));
+		}
+		chars.clear();
+		decoder.reset();
+		CoderResult result = decoder.decode(bytes, chars, true);
+		if (!result.isUnderflow()) {
+			result.throwException();
+		}
+		decoder.flush(chars);
+		chars.flip();
+	}
+
+	private long parseLines(long lineNumber, QueryRecordHandler handler) {
+		char[] buffer = chars.array();
+		int limit = chars.limit();
+		int start = 0;
+		while (start < limit) {
+			int end = start;
+			while (end < limit && buffer[end] != '\n') {
+				end++;
+			}
+			int next = end + 1;
+			if (end > start && buffer[end - 1] == '\r') {
+				end--;
+			}
+			lineNumber++;
+			if (!isBlank(buffer, start, end)) {
+				parseLine(lineNumber, buffer, start, end - start, handler);
+			}
+			start = next;
+		}
+		return lineNumber;
+	}
+
+	private void parseLine(long lineNumber, char[] buffer, int offset, int length, QueryRecordHandler handler) {
+		Query query;
+		try {
+			query = parser.parse(buffer, offset, length);
+		} catch (ParseException e) {
+			handler.onError(lineNumber, new String(buffer, offset, length), e);
+			return;
+		}
+		handler.onQuery(lineNumber, query, parser.getFieldTexts());
+	}
+
+	private static boolean isBlank(char[] buffer, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (!Character.isWhitespace(buffer[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
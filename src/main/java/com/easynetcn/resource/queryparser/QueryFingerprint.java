@@ -0,0 +1,187 @@
+package com.easynetcn.resource.queryparser;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A 128-bit fingerprint of the text of a {@link CanonicalQuery}: the
+ * MurmurHash3 (x64, 128-bit, seed 0) of its UTF-8 bytes. The value only
+ * depends on the text, so it is the same on every node and across restarts
+ * and can key shared caches or deduplicate saved searches.
+ * <p>
+ * Instances are immutable.
+ */
+public final class QueryFingerprint {
+	private static final long C1 = 0x87c37b91114253d5L;
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+	private final long high;
+	private final long low;
+
+	public QueryFingerprint(long high, long low) {
+		this.high = high;
+		this.low = low;
+	}
+
+	/**
+	 * @return the fingerprint of <code>text</code>.
+	 */
+	@SuppressWarnings("fallthrough")
+	public static QueryFingerprint of(String text) {
+		byte[] data = text.getBytes(StandardCharsets.UTF_8);
+		int length = data.length;
+		int blocks = length >>> 4;
+		long h1 = 0;
+		long h2 = 0;
+
+		for (int i = 0; i < blocks; i++) {
+			long k1 = getLong(data, i << 4);
+			long k2 = getLong(data, (i << 4) + 8);
+			h1 ^= mixK1(k1);
+			h1 = Long.rotateLeft(h1, 27) + h2;
+			h1 = h1 * 5 + 0x52dce729;
+			h2 ^= mixK2(k2);
+			h2 = Long.rotateLeft(h2, 31) + h1;
+			h2 = h2 * 5 + 0x38495ab5;
+		}
+
+		int tail = blocks << 4;
+		long k1 = 0;
+		long k2 = 0;
+		switch (length & 15) {
+		case 15:
+			k2 ^= (data[tail + 14] & 0xffL) << 48;
+			// fall through
+		case 14:
+			k2 ^= (data[tail + 13] & 0xffL) << 40;
+			// fall through
+		case 13:
+			k2 ^= (data[tail + 12] & 0xffL) << 32;
+			// fall through
+		case 12:
+			k2 ^= (data[tail + 11] & 0xffL) << 24;
+			// fall through
+		case 11:
+			k2 ^= (data[tail + 10] & 0xffL) << 16;
+			// fall through
+		case 10:
+			k2 ^= (data[tail + 9] & 0xffL) << 8;
+			// fall through
+		case 9:
+			k2 ^= data[tail + 8] & 0xffL;
+			h2 ^= mixK2(k2);
+			// fall through
+		case 8:
+			k1 ^= (data[tail + 7] & 0xffL) << 56;
+			// fall through
+		case 7:
+			k1 ^= (data[tail + 6] & 0xffL) << 48;
+			// fall through
+		case 6:
+			k1 ^= (data[tail + 5] & 0xffL) << 40;
+			// fall through
+		case 5:
+			k1 ^= (data[tail + 4] & 0xffL) << 32;
+			// fall through
+		case 4:
+			k1 ^= (data[tail + 3] & 0xffL) << 24;
+			// fall through
+		case 3:
+			k1 ^= (data[tail + 2] & 0xffL) << 16;
+			// fall through
+		case 2:
+			k1 ^= (data[tail + 1] & 0xffL) << 8;
+			// fall through
+		case 1:
+			k1 ^= data[tail] & 0xffL;
+			h1 ^= mixK1(k1);
+			// fall through
+		default:
+			break;
+		}
+
+		h1 ^= length;
+		h2 ^= length;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix(h1);
+		h2 = fmix(h2);
+		h1 += h2;
+		h2 += h1;
+		return new QueryFingerprint(h1, h2);
+	}
+
+	private static long getLong(byte[] data, int offset) {
+		long value = 0;
+		for (int i = 7; i >= 0; i--) {
+			value = value << 8 | (data[offset + i] & 0xffL);
+		}
+		return value;
+	}
+
+	private static long mixK1(long k1) {
+		return Long.rotateLeft(k1 * C1, 31) * C2;
+	}
+
+	private static long mixK2(long k2) {
+		return Long.rotateLeft(k2 * C2, 33) * C1;
+	}
+
+	private static long fmix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+	/**
+	 * @return the first 64 bits, <code>h1</code> of MurmurHash3.
+	 */
+	public long getHigh() {
+		return high;
+	}
+
+	/**
+	 * @return the last 64 bits, <code>h2</code> of MurmurHash3.
+	 */
+	public long getLow() {
+		return low;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof QueryFingerprint)) {
+			return false;
+		}
+		QueryFingerprint other = (QueryFingerprint) obj;
+		return high == other.high && low == other.low;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) low;
+	}
+
+	/**
+	 * @return the 32 hex digits of the fingerprint.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(32);
+		appendHex(sb, high);
+		appendHex(sb, low);
+		return sb.toString();
+	}
+
+	private static void appendHex(StringBuilder sb, long value) {
+		String hex = Long.toHexString(value);
+		for (int i = hex.length(); i < 16; i++) {
+			sb.append('0');
+		}
+		sb.append(hex);
+	}
+}
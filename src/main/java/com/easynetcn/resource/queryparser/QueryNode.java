@@ -0,0 +1,73 @@
+package com.easynetcn.resource.queryparser;
+
+/**
+ * A node of the syntax tree of a query, see
+ * {@link QueryParserBase#parseToAst(String)}. The tree records what was
+ * written, without analysis or any Lucene query objects, and is compiled to a
+ * {@link org.apache.lucene.search.Query} by
+ * {@link QueryParserBase#compile(QueryNode)}.
+ * <p>
+ * Nodes are immutable. Offsets are char offsets into the parsed query, the
+ * end offset being exclusive.
+ */
+public abstract class QueryNode {
+	private final float boost;
+	private final int beginOffset;
+	private final int endOffset;
+
+	/**
+	 * @param boost
+	 *            the boost, or {@link Float#NaN} if none was given.
+	 */
+	QueryNode(float boost, int beginOffset, int endOffset) {
+		this.boost = boost;
+		this.beginOffset = beginOffset;
+		this.endOffset = endOffset;
+	}
+
+	/**
+	 * @return whether a boost such as <code>^2</code> was given.
+	 */
+	public boolean hasBoost() {
+		return !Float.isNaN(boost);
+	}
+
+	/**
+	 * @return the boost, or {@link Float#NaN} if none was given.
+	 */
+	public float getBoost() {
+		return boost;
+	}
+
+	/**
+	 * @return the offset of the first char of the node in the query.
+	 */
+	public int getBeginOffset() {
+		return beginOffset;
+	}
+
+	/**
+	 * @return the offset after the last char of the node in the query.
+	 */
+	public int getEndOffset() {
+		return endOffset;
+	}
+
+	abstract void toString(StringBuilder sb);
+
+	void appendBoost(StringBuilder sb) {
+		if (hasBoost()) {
+			sb.append('^').append(boost);
+		}
+	}
+
+	/**
+	 * @return a compact rendering of the tree, for debugging.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		toString(sb);
+		return sb.toString();
+	}
+}
@@ -0,0 +1,370 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Compiles a {@link QueryNode} tree to a Lucene query through the factory
+ * methods of a parser (<code>getFieldQuery</code>, <code>getRangeQuery</code>,
+ * <code>handleBareTokenQuery</code>, ...), so subclasses that override those
+ * keep working. Field texts are recorded on the parser in query order.
+ */
+final class QueryNodeCompiler {
+	private final QueryParserBase parser;
+
+	QueryNodeCompiler(QueryParserBase parser) {
+		this.parser = parser;
+	}
+
+	/**
+	 * @return the query, or <code>null</code> if analysis removed every term.
+	 */
+	Query compile(QueryNode node) throws ParseException {
+		if (node instanceof BooleanNode) {
+			return compileBoolean((BooleanNode) node);
+		}
+		return compileLeaf(node);
+	}
+
+	/**
+	 * Compiles any node but a {@link BooleanNode}.
+	 */
+	private Query compileLeaf(QueryNode node) throws ParseException {
+		if (node instanceof TermNode) {
+			TermNode term = (TermNode) node;
+			if (parser.metrics == ParserMetrics.NOOP) {
+				return compileTerm(term);
+			}
+			long start = System.nanoTime();
+			Query q = compileTerm(term);
+			parser.metrics.onQuery(queryType(term), term.getField(), System.nanoTime() - start);
+			return q;
+		} else if (node instanceof RangeNode) {
+			RangeNode range = (RangeNode) node;
+			long start = parser.metrics == ParserMetrics.NOOP ? 0 : System.nanoTime();
+			Query q = parser.getRangeQuery(range.getField(), range.getLower(), range.getUpper(),
+					range.getIncludeLower(), range.getIncludeUpper());
+			if (parser.metrics != ParserMetrics.NOOP) {
+				parser.metrics.onQuery(ParserMetrics.QueryType.RANGE, range.getField(), System.nanoTime() - start);
+			}
+			return boost(q, node);
+		} else if (node instanceof ReferenceNode) {
+			ReferenceNode reference = (ReferenceNode) node;
+			Token token = token(QueryParserConstants.REFERENCE, "#" + reference.getName(), node);
+			return boost(parser.handleReference(reference.getField(), token), node);
+		} else if (node instanceof MultiTermNode) {
+			List<BooleanClause> clauses = new ArrayList<BooleanClause>();
+			Query first = compileMultiTerm((MultiTermNode) node, clauses);
+			return clauses.size() == 1 && first != null ? first : parser.getBooleanQuery(clauses);
+		}
+		throw new IllegalArgumentException("Unknown node " + node.getClass());
+	}
+
+	private Query compileTerm(TermNode term) throws ParseException {
+		String field = term.getField();
+		parser.addFieldText(field, term.getImage());
+		if (term.getKind() == TermNode.Kind.WILDCARD || term.getKind() == TermNode.Kind.REGEXP) {
+			parser.checkPattern(term.getImage(), term.getKind() == TermNode.Kind.REGEXP);
+		} else {
+			parser.checkDeadline();
+		}
+		Token fuzzySlop = term.getFuzzySlop() == null ? null
+				: token(QueryParserConstants.FUZZY_SLOP, term.getFuzzySlop(), term);
+		Query q;
+		switch (term.getKind()) {
+		case PHRASE:
+			q = parser.handleQuotedTerm(field, token(QueryParserConstants.QUOTED, term.getImage(), term), fuzzySlop);
+			break;
+		case PREFIX:
+			q = parser.handleBareTokenQuery(field, token(QueryParserConstants.PREFIXTERM, term.getImage(), term),
+					fuzzySlop, true, false, fuzzySlop != null, false);
+			break;
+		case WILDCARD:
+			q = parser.handleBareTokenQuery(field, token(QueryParserConstants.WILDTERM, term.getImage(), term),
+					fuzzySlop, false, true, fuzzySlop != null, false);
+			break;
+		case REGEXP:
+			q = parser.handleBareTokenQuery(field, token(QueryParserConstants.REGEXPTERM, term.getImage(), term),
+					fuzzySlop, false, false, fuzzySlop != null, true);
+			break;
+		default:
+			q = parser.handleBareTokenQuery(field, token(QueryParserConstants.TERM, term.getImage(), term), fuzzySlop,
+					false, false, fuzzySlop != null, false);
+			break;
+		}
+		return boost(q, term);
+	}
+
+	/**
+	 * Compiles a boolean node and the boolean nodes below it, depth first,
+	 * with an explicit stack instead of recursion, so trees nested thousands
+	 * of levels deep compile as well.
+	 */
+	private Query compileBoolean(BooleanNode root) throws ParseException {
+		ArrayDeque<Group> stack = new ArrayDeque<Group>();
+		Group group = new Group(root, termSetField(root.getClauses()));
+		while (true) {
+			Query result;
+			if (group.termSetField != null) {
+				result = boost(compileTermSet(group.termSetField, group.nodes), group.node);
+			} else if (group.next < group.nodes.size()) {
+				QueryNode child = group.nodes.get(group.next).getQuery();
+				if (child instanceof BooleanNode) {
+					stack.push(group);
+					BooleanNode node = (BooleanNode) child;
+					group = new Group(node, termSetField(node.getClauses()));
+				} else if (child instanceof MultiTermNode) {
+					group.added(compileMultiTerm((MultiTermNode) child, group.clauses));
+				} else {
+					addClause(group, compileLeaf(child));
+				}
+				continue;
+			} else {
+				result = boost(group.finish(parser), group.node);
+			}
+			if (stack.isEmpty()) {
+				return result;
+			}
+			group = stack.pop();
+			addClause(group, result);
+		}
+	}
+
+	/**
+	 * Adds the query of the next clause of <code>group</code>.
+	 */
+	private void addClause(Group group, Query q) {
+		ClauseNode clause = group.nodes.get(group.next);
+		int mods = modifier(clause.getModifier());
+		parser.addClause(group.clauses, conjunction(clause.getConjunction()), mods, q);
+		group.added(mods == QueryParserBase.MOD_NONE ? q : null);
+	}
+
+	/**
+	 * @return the field of the clauses if they are a disjunction of at least
+	 *         {@link QueryParserBase#setTermSetThreshold(int)} plain terms on
+	 *         that field, otherwise <code>null</code>.
+	 */
+	private String termSetField(List<ClauseNode> nodes) {
+		int threshold = parser.termSetThreshold;
+		if (threshold == 0) {
+			return null;
+		}
+		boolean or = parser.operator == QueryParserBase.OR_OPERATOR;
+		String field = null;
+		int terms = 0;
+		for (int i = 0; i < nodes.size(); i++) {
+			ClauseNode clause = nodes.get(i);
+			if (clause.getModifier() != ClauseNode.Modifier.NONE
+					|| clause.getConjunction() == ClauseNode.Conjunction.AND
+					|| (!or && i > 0 && clause.getConjunction() != ClauseNode.Conjunction.OR)) {
+				return null;
+			}
+			QueryNode query = clause.getQuery();
+			String termField;
+			if (query instanceof TermNode) {
+				TermNode term = (TermNode) query;
+				if (term.getKind() != TermNode.Kind.TERM || term.getFuzzySlop() != null || term.hasBoost()) {
+					return null;
+				}
+				termField = term.getField();
+				terms++;
+			} else if (query instanceof MultiTermNode && or && parser.getSplitOnWhitespace()) {
+				termField = ((MultiTermNode) query).getField();
+				terms += ((MultiTermNode) query).getTerms().size();
+			} else {
+				return null;
+			}
+			if (field == null) {
+				field = termField;
+			} else if (!field.equals(termField)) {
+				return null;
+			}
+		}
+		return terms >= Math.max(threshold, 2) ? field : null;
+	}
+
+	/**
+	 * Compiles a disjunction of plain terms to a {@link TermInSetQuery} of
+	 * the terms that analyze to a single term, and optional clauses for the
+	 * others.
+	 */
+	private Query compileTermSet(String field, List<ClauseNode> nodes) throws ParseException {
+		List<BytesRef> terms = new ArrayList<BytesRef>();
+		List<Query> others = new ArrayList<Query>();
+		for (ClauseNode clause : nodes) {
+			if (clause.getQuery() instanceof MultiTermNode) {
+				for (String term : ((MultiTermNode) clause.getQuery()).getTerms()) {
+					addTermSetQuery(field, fieldQuery(field, term), terms, others);
+				}
+			} else {
+				addTermSetQuery(field, compile(clause.getQuery()), terms, others);
+			}
+		}
+		Query set = terms.isEmpty() ? null : new TermInSetQuery(field, terms);
+		if (others.isEmpty()) {
+			return set;
+		}
+		List<BooleanClause> clauses = new ArrayList<BooleanClause>(others.size() + 1);
+		if (set != null) {
+			clauses.add(parser.newBooleanClause(set, BooleanClause.Occur.SHOULD));
+		}
+		for (Query q : others) {
+			clauses.add(parser.newBooleanClause(q, BooleanClause.Occur.SHOULD));
+		}
+		return parser.getBooleanQuery(clauses);
+	}
+
+	private static void addTermSetQuery(String field, Query q, List<BytesRef> terms, List<Query> others) {
+		if (q == null) {
+			// removed by analysis, e.g. a stop word
+			return;
+		}
+		if (q instanceof TermQuery && ((TermQuery) q).getTerm().field().equals(field)) {
+			terms.add(((TermQuery) q).getTerm().bytes());
+		} else {
+			others.add(q);
+		}
+	}
+
+	/**
+	 * Adds the clauses of a run of terms.
+	 *
+	 * @return the query of the first term if the terms are split on
+	 *         whitespace, otherwise the query of all terms.
+	 */
+	private Query compileMultiTerm(MultiTermNode node, List<BooleanClause> clauses) throws ParseException {
+		String field = node.getField();
+		List<String> terms = node.getTerms();
+		if (parser.getSplitOnWhitespace()) {
+			Query first = null;
+			for (int i = 0; i < terms.size(); i++) {
+				Query q = fieldQuery(field, terms.get(i));
+				parser.addClause(clauses, QueryParserBase.CONJ_NONE, QueryParserBase.MOD_NONE, q);
+				if (i == 0) {
+					first = q;
+				}
+			}
+			return first;
+		}
+		Query q = fieldQuery(field, String.join(" ", terms));
+		parser.addMultiTermClauses(clauses, q);
+		return q;
+	}
+
+	/**
+	 * @return the query of unquoted text from a run of terms.
+	 */
+	private Query fieldQuery(String field, String text) throws ParseException {
+		if (parser.metrics == ParserMetrics.NOOP) {
+			return parser.getFieldQuery(field, text, false);
+		}
+		long start = System.nanoTime();
+		Query q = parser.getFieldQuery(field, text, false);
+		parser.metrics.onQuery(ParserMetrics.QueryType.TERM, field, System.nanoTime() - start);
+		return q;
+	}
+
+	private Query boost(Query q, QueryNode node) {
+		Token boost = node.hasBoost()
+				? token(QueryParserConstants.NUMBER, Float.toString(node.getBoost()), node) : null;
+		return parser.handleBoost(q, boost);
+	}
+
+	private static ParserMetrics.QueryType queryType(TermNode term) {
+		if (term.isFuzzy()) {
+			return ParserMetrics.QueryType.FUZZY;
+		}
+		switch (term.getKind()) {
+		case PHRASE:
+			return ParserMetrics.QueryType.PHRASE;
+		case PREFIX:
+			return ParserMetrics.QueryType.PREFIX;
+		case WILDCARD:
+			return ParserMetrics.QueryType.WILDCARD;
+		case REGEXP:
+			return ParserMetrics.QueryType.REGEXP;
+		default:
+			return ParserMetrics.QueryType.TERM;
+		}
+	}
+
+	private static int conjunction(ClauseNode.Conjunction conjunction) {
+		switch (conjunction) {
+		case AND:
+			return QueryParserBase.CONJ_AND;
+		case OR:
+			return QueryParserBase.CONJ_OR;
+		default:
+			return QueryParserBase.CONJ_NONE;
+		}
+	}
+
+	private static int modifier(ClauseNode.Modifier modifier) {
+		switch (modifier) {
+		case REQUIRED:
+			return QueryParserBase.MOD_REQ;
+		case PROHIBITED:
+			return QueryParserBase.MOD_NOT;
+		default:
+			return QueryParserBase.MOD_NONE;
+		}
+	}
+
+	/**
+	 * A boolean node being compiled by {@link #compileBoolean(BooleanNode)}.
+	 */
+	private static final class Group {
+		final BooleanNode node;
+		final List<ClauseNode> nodes;
+		final String termSetField;
+		final List<BooleanClause> clauses = new ArrayList<BooleanClause>();
+		// index of the clause node to compile next
+		int next;
+		// the query of the first clause, if unmodified
+		Query firstQuery;
+
+		Group(BooleanNode node, String termSetField) {
+			this.node = node;
+			this.nodes = node.getClauses();
+			this.termSetField = termSetField;
+		}
+
+		void added(Query q) {
+			if (next == 0) {
+				firstQuery = q;
+			}
+			next++;
+		}
+
+		/**
+		 * Combines the clauses the way the grammar's <code>Query</code>
+		 * production always has: a single unmodified clause is returned as
+		 * is.
+		 */
+		Query finish(QueryParserBase parser) throws ParseException {
+			if (clauses.size() == 1 && firstQuery != null) {
+				return firstQuery;
+			}
+			return parser.getBooleanQuery(clauses);
+		}
+	}
+
+	/**
+	 * @return a token for the handle* methods, which read only its image and
+	 *         columns.
+	 */
+	private static Token token(int kind, String image, QueryNode node) {
+		Token token = Token.newToken(kind, image);
+		token.beginColumn = node.getBeginOffset();
+		token.endColumn = node.getEndOffset();
+		return token;
+	}
+}
@@ -3,17 +3,13 @@
 package com.easynetcn.resource.queryparser;
 
 import java.io.StringReader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.DateTools;
-import org.apache.lucene.search.BooleanClause;
-import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermRangeQuery;
 
 /**
@@ -35,13 +31,15 @@ import org.apache.lucene.search.TermRangeQuery;
  * <li> a term, indicating all the documents that contain this term; or
  * <li> a nested query, enclosed in parentheses.  Note that this may be used
  * with a <code>+</code>/<code>-</code> prefix to require any of a set of
- * terms.
+ * terms; or
+ * <li> a reference such as <code>#12</code> to an earlier query, see
+ * {@link #setReferenceResolver(ReferenceResolver)}.
  * </ul>
  *
  * Thus, in BNF, the query grammar is:
  * <pre>
  *   Query  ::= ( Clause )*
- *   Clause ::= ["+", "-"] [&lt;TERM&gt; ":"] ( &lt;TERM&gt; | "(" Query ")" )
+ *   Clause ::= ["+", "-"] [&lt;TERM&gt; ":"] ( &lt;TERM&gt; | "(" Query ")" | &lt;REFERENCE&gt; )
  * </pre>
  *
  * <p>
@@ -116,11 +114,13 @@ public class QueryParser extends QueryParserBase implements QueryParserConstants
           ("setAutoGeneratePhraseQueries(true) is disallowed when getSplitOnWhitespace() == false");
     }
     this.autoGeneratePhraseQueries = value;
+    settingsChanged();
   }
 
   /**
    * @see #setSplitOnWhitespace(boolean)
    */
+  @Override
   public boolean getSplitOnWhitespace() {
     return splitOnWhitespace;
   }
@@ -138,31 +138,220 @@ public class QueryParser extends QueryParserBase implements QueryParserConstants
           ("setSplitOnWhitespace(false) is disallowed when getAutoGeneratePhraseQueries() == true");
     }
     this.splitOnWhitespace = splitOnWhitespace;
+    settingsChanged();
+  }
+
+  @Override
+  protected void collectSettings(List<Object> settings) {
+    super.collectSettings(settings);
+    settings.add(splitOnWhitespace);
+  }
+
+  @Override
+  final void meterLexing(boolean metered) {
+    if (metered && !(token_source instanceof MeteredTokenManager)) {
+      token_source = new MeteredTokenManager(token_source, this);
+    } else if (!metered && token_source instanceof MeteredTokenManager) {
+      token_source = ((MeteredTokenManager) token_source).delegate;
+    }
+  }
+
+  /**
+   * Parses like {@link #TopLevelQuery(String)}, but keeps the enclosing
+   * groups on an explicit stack instead of recursing through Query and
+   * Clause for every parenthesis, so the nesting depth is bounded only by
+   * memory. Terms, runs of terms, conjunctions and modifiers are still parsed
+   * by their productions.
+   */
+  @Override
+  final QueryNode iterativeTopLevelQuery(String field) throws ParseException {
+    int begin = getToken(1).beginColumn;
+    ArrayDeque<Group> stack = new ArrayDeque<Group>();
+    Group group = new Group(field, null);
+    while (true) {
+      int kind = getToken(1).kind;
+      boolean first = group.clauses.isEmpty();
+      if (!first && !startsClause(kind, false)) {
+        // the end of the Query production of the group
+        expectEndOfQuery(stack.isEmpty() ? EOF : RPAREN);
+        if (stack.isEmpty()) {
+          int end = token.endColumn;
+          jj_consume_token(EOF);
+          return new BooleanNode(group.clauses, Float.NaN, begin, end);
+        }
+        jj_consume_token(RPAREN);
+        exitGroup();
+        Token boost = Boost();
+        QueryNode q = new BooleanNode(group.clauses, boost(boost), group.lparen.beginColumn, token.endColumn);
+        group = stack.pop();
+        group.clauses.add(new ClauseNode(group.conj, group.mods, q, group.clauseBegin, token.endColumn));
+        countClauses(1);
+        continue;
+      }
+      if (startsMultiTerm()) {
+        MultiTermNode q = MultiTerm(group.field);
+        group.clauses.add(new ClauseNode(ClauseNode.Conjunction.NONE, ClauseNode.Modifier.NONE, q, q.getBeginOffset(), q.getEndOffset()));
+        countClauses(q.getTerms().size());
+        continue;
+      }
+      if (!startsClause(kind, first)) {
+        throw unexpected(FIRST_CLAUSE_START);
+      }
+      int clauseBegin = getToken(1).beginColumn;
+      ClauseNode.Conjunction conj = first ? ClauseNode.Conjunction.NONE : Conjunction();
+      ClauseNode.Modifier mods = Modifiers();
+      String clauseField = group.field;
+      if (startsField()) {
+        Token fieldToken = jj_consume_token(getToken(1).kind);
+        jj_consume_token(COLON);
+        clauseField = fieldToken.kind == TERM ? getField(fieldToken) : "*";
+      }
+      QueryNode q;
+      switch (getToken(1).kind) {
+      case LPAREN:
+        Token lparen = jj_consume_token(LPAREN);
+        enterGroup();
+        group.conj = conj;
+        group.mods = mods;
+        group.clauseBegin = clauseBegin;
+        stack.push(group);
+        group = new Group(clauseField, lparen);
+        continue;
+      case REFERENCE:
+        Token reference = jj_consume_token(REFERENCE);
+        Token boost = Boost();
+        checkReferenceField(clauseField, reference);
+        q = new ReferenceNode(clauseField, image(reference).substring(1), boost(boost), reference.beginColumn, token.endColumn);
+        break;
+      case BAREOPER:
+      case STAR:
+      case QUOTED:
+      case TERM:
+      case PREFIXTERM:
+      case WILDTERM:
+      case REGEXPTERM:
+      case RANGEIN_START:
+      case RANGEEX_START:
+      case NUMBER:
+        q = Term(clauseField);
+        break;
+      default:
+        throw unexpected(CLAUSE_BODY_START);
+      }
+      group.clauses.add(new ClauseNode(conj, mods, q, clauseBegin, token.endColumn));
+      countClauses(1);
+    }
+  }
+
+  /**
+   * @param first
+   *          whether the clause is the first of its Query, which cannot start
+   *          with a conjunction
+   * @return whether a clause of the Query production may start with the token
+   */
+  private static boolean startsClause(int kind, boolean first) {
+    return ((first ? FIRST_CLAUSE_START : CLAUSE_START) & 1L << kind) != 0;
+  }
+
+  /**
+   * Throws unless the next token is <code>kind</code>, which ends a Query
+   * production. Another clause is listed as expected as well, because the
+   * semantic lookahead that decided against one records no expected tokens.
+   */
+  private void expectEndOfQuery(int kind) throws ParseException {
+    if (peek(token).kind != kind) {
+      throw unexpected(CLAUSE_START | 1L << kind);
+    }
+  }
+
+  /**
+   * @return the exception for an unexpected next token, expecting the given
+   *         token kinds and those the generated productions have recorded
+   */
+  private ParseException unexpected(long expected) {
+    for (int[] sequence : generateParseException().expectedTokenSequences) {
+      expected |= 1L << sequence[0];
+    }
+    int[][] sequences = new int[Long.bitCount(expected)][];
+    for (int i = 0; expected != 0; expected &= expected - 1) {
+      sequences[i++] = new int[] { Long.numberOfTrailingZeros(expected) };
+    }
+    return new ParseException(token, sequences, tokenImage);
+  }
+
+  /** A parenthesized group being parsed by {@link #iterativeTopLevelQuery(String)}. */
+  private static final class Group {
+    final String field;
+    final Token lparen;
+    final List<ClauseNode> clauses = new ArrayList<ClauseNode>();
+    // the clause of this group that holds the nested group being parsed
+    ClauseNode.Conjunction conj;
+    ClauseNode.Modifier mods;
+    int clauseBegin;
+
+    Group(String field, Token lparen) {
+      this.field = field;
+      this.lparen = lparen;
+    }
   }
 
   private boolean splitOnWhitespace = DEFAULT_SPLIT_ON_WHITESPACE;
-  private static Set<Integer> disallowedPostMultiTerm
-    = new HashSet<Integer>(Arrays.asList(COLON, STAR, FUZZY_SLOP, CARAT, AND, OR));
+  // token kinds as bits of a long, all kinds are below 64
+  private static final long DISALLOWED_POST_MULTI_TERM
+    = 1L << COLON | 1L << STAR | 1L << FUZZY_SLOP | 1L << CARAT | 1L << AND | 1L << OR;
+  private static final long FIELD_NAME = 1L << TERM | 1L << STAR;
+  private static final long CLAUSE_BODY_START = 1L << BAREOPER | 1L << LPAREN | 1L << STAR | 1L << QUOTED
+    | 1L << TERM | 1L << PREFIXTERM | 1L << WILDTERM | 1L << REGEXPTERM | 1L << REFERENCE
+    | 1L << RANGEIN_START | 1L << RANGEEX_START | 1L << NUMBER;
+  private static final long FIRST_CLAUSE_START = CLAUSE_BODY_START | 1L << NOT | 1L << PLUS | 1L << MINUS;
+  private static final long CLAUSE_START = FIRST_CLAUSE_START | 1L << AND | 1L << OR;
+
   private static boolean allowedPostMultiTerm(int tokenKind) {
-    return disallowedPostMultiTerm.contains(tokenKind) == false;
+    return (DISALLOWED_POST_MULTI_TERM & 1L << tokenKind) == 0;
+  }
+
+  /**
+   * Decides whether the next tokens start a MultiTerm: two terms not followed
+   * by a token that binds the second one to something else. Peeks at the
+   * token list directly instead of a syntactic lookahead, which scans and
+   * throws an Error to report success.
+   */
+  private boolean startsMultiTerm() {
+    Token t = peek(token);
+    if (t.kind != TERM) {
+      return false;
+    }
+    t = peek(t);
+    return t.kind == TERM && allowedPostMultiTerm(peek(t).kind);
+  }
+
+  /** Decides whether the next tokens are a field name and its colon. */
+  private boolean startsField() {
+    Token t = peek(token);
+    return (FIELD_NAME & 1L << t.kind) != 0 && peek(t).kind == COLON;
+  }
+
+  /** @return the token after <code>t</code>, lexed if not yet read ahead */
+  private Token peek(Token t) {
+    return t.next != null ? t.next : (t.next = token_source.getNextToken());
   }
 
 // *   Query  ::= ( Clause )*
-// *   Clause ::= ["+", "-"] [<TERM> ":"] ( <TERM> | "(" Query ")" )
+// *   Clause ::= ["+", "-"] [<TERM> ":"] ( <TERM> | "(" Query ")" | <REFERENCE> )
   final public 
-int Conjunction() throws ParseException {int ret = CONJ_NONE;
+ClauseNode.Conjunction Conjunction() throws ParseException {ClauseNode.Conjunction ret = ClauseNode.Conjunction.NONE;
     switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
     case AND:
     case OR:{
       switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
       case AND:{
         jj_consume_token(AND);
-ret = CONJ_AND;
+ret = ClauseNode.Conjunction.AND;
         break;
         }
       case OR:{
         jj_consume_token(OR);
-ret = CONJ_OR;
+ret = ClauseNode.Conjunction.OR;
         break;
         }
       default:
@@ -180,7 +369,7 @@ ret = CONJ_OR;
     throw new Error("Missing return statement in function");
 }
 
-  final public int Modifiers() throws ParseException {int ret = MOD_NONE;
+  final public ClauseNode.Modifier Modifiers() throws ParseException {ClauseNode.Modifier ret = ClauseNode.Modifier.NONE;
     switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
     case NOT:
     case PLUS:
@@ -188,17 +377,17 @@ ret = CONJ_OR;
       switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
       case PLUS:{
         jj_consume_token(PLUS);
-ret = MOD_REQ;
+ret = ClauseNode.Modifier.REQUIRED;
         break;
         }
       case MINUS:{
         jj_consume_token(MINUS);
-ret = MOD_NOT;
+ret = ClauseNode.Modifier.PROHIBITED;
         break;
         }
       case NOT:{
         jj_consume_token(NOT);
-ret = MOD_NOT;
+ret = ClauseNode.Modifier.PROHIBITED;
         break;
         }
       default:
@@ -217,118 +406,62 @@ ret = MOD_NOT;
 }
 
 // This makes sure that there is no garbage after the query string
-  final public Query TopLevelQuery(String field) throws ParseException {Query q;
-    q = Query(field);
+  final public QueryNode TopLevelQuery(String field) throws ParseException {List<ClauseNode> clauses;
+  int begin = getToken(1).beginColumn;
+  int end;
+    clauses = Query(field);
+end = token.endColumn; expectEndOfQuery(EOF);
     jj_consume_token(0);
-{if ("" != null) return q;}
+{if ("" != null) return new BooleanNode(clauses, Float.NaN, begin, end);}
     throw new Error("Missing return statement in function");
 }
 
-  final public Query Query(String field) throws ParseException {List<BooleanClause> clauses = new ArrayList<BooleanClause>();
-  Query q, firstQuery=null;
-  int conj, mods;
-    if (jj_2_1(2)) {
-      firstQuery = MultiTerm(field, clauses);
+  final public List<ClauseNode> Query(String field) throws ParseException {List<ClauseNode> clauses = new ArrayList<ClauseNode>();
+  QueryNode q;
+  ClauseNode.Conjunction conj;
+  ClauseNode.Modifier mods;
+  int begin;
+    if (startsMultiTerm()) {
+      q = MultiTerm(field);
+clauses.add(new ClauseNode(ClauseNode.Conjunction.NONE, ClauseNode.Modifier.NONE, q, q.getBeginOffset(), q.getEndOffset())); countClauses(((MultiTermNode) q).getTerms().size());
+    } else if (true) {
+begin = getToken(1).beginColumn;
+      mods = Modifiers();
+      q = Clause(field);
+clauses.add(new ClauseNode(ClauseNode.Conjunction.NONE, mods, q, begin, token.endColumn)); countClauses(1);
     } else {
-      switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
-      case NOT:
-      case PLUS:
-      case MINUS:
-      case BAREOPER:
-      case LPAREN:
-      case STAR:
-      case QUOTED:
-      case TERM:
-      case PREFIXTERM:
-      case WILDTERM:
-      case REGEXPTERM:
-      case RANGEIN_START:
-      case RANGEEX_START:
-      case NUMBER:{
-        mods = Modifiers();
-        q = Clause(field);
-addClause(clauses, CONJ_NONE, mods, q);
-        if (mods == MOD_NONE) {
-          firstQuery = q;
-        }
-        break;
-        }
-      default:
-        jj_la1[4] = jj_gen;
-        jj_consume_token(-1);
-        throw new ParseException();
-      }
+      jj_consume_token(-1);
+      throw new ParseException();
     }
     label_1:
     while (true) {
-      switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
-      case AND:
-      case OR:
-      case NOT:
-      case PLUS:
-      case MINUS:
-      case BAREOPER:
-      case LPAREN:
-      case STAR:
-      case QUOTED:
-      case TERM:
-      case PREFIXTERM:
-      case WILDTERM:
-      case REGEXPTERM:
-      case RANGEIN_START:
-      case RANGEEX_START:
-      case NUMBER:{
+      if (startsClause(peek(token).kind, false)) {
         ;
-        break;
-        }
-      default:
-        jj_la1[5] = jj_gen;
+      } else {
         break label_1;
       }
-      if (jj_2_2(2)) {
-        MultiTerm(field, clauses);
+      if (startsMultiTerm()) {
+        q = MultiTerm(field);
+clauses.add(new ClauseNode(ClauseNode.Conjunction.NONE, ClauseNode.Modifier.NONE, q, q.getBeginOffset(), q.getEndOffset())); countClauses(((MultiTermNode) q).getTerms().size());
+      } else if (true) {
+begin = getToken(1).beginColumn;
+        conj = Conjunction();
+        mods = Modifiers();
+        q = Clause(field);
+clauses.add(new ClauseNode(conj, mods, q, begin, token.endColumn)); countClauses(1);
       } else {
-        switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
-        case AND:
-        case OR:
-        case NOT:
-        case PLUS:
-        case MINUS:
-        case BAREOPER:
-        case LPAREN:
-        case STAR:
-        case QUOTED:
-        case TERM:
-        case PREFIXTERM:
-        case WILDTERM:
-        case REGEXPTERM:
-        case RANGEIN_START:
-        case RANGEEX_START:
-        case NUMBER:{
-          conj = Conjunction();
-          mods = Modifiers();
-          q = Clause(field);
-addClause(clauses, conj, mods, q);
-          break;
-          }
-        default:
-          jj_la1[6] = jj_gen;
-          jj_consume_token(-1);
-          throw new ParseException();
-        }
+        jj_consume_token(-1);
+        throw new ParseException();
       }
     }
-if (clauses.size() == 1 && firstQuery != null) {
-      {if ("" != null) return firstQuery;}
-    } else {
-      {if ("" != null) return getBooleanQuery(clauses);}
-    }
+{if ("" != null) return clauses;}
     throw new Error("Missing return statement in function");
 }
 
-  final public Query Clause(String field) throws ParseException {Query q;
-  Token fieldToken=null, boost=null;
-    if (jj_2_3(2)) {
+  final public QueryNode Clause(String field) throws ParseException {QueryNode q;
+  List<ClauseNode> clauses;
+  Token fieldToken=null, boost=null, lparen, reference;
+    if (startsField()) {
       switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
       case TERM:{
         fieldToken = jj_consume_token(TERM);
@@ -343,7 +476,7 @@ field="*";
         break;
         }
       default:
-        jj_la1[7] = jj_gen;
+        jj_la1[4] = jj_gen;
         jj_consume_token(-1);
         throw new ParseException();
       }
@@ -365,38 +498,54 @@ field="*";
       break;
       }
     case LPAREN:{
-      jj_consume_token(LPAREN);
-      q = Query(field);
+      lparen = jj_consume_token(LPAREN);
+enterGroup();
+      clauses = Query(field);
+expectEndOfQuery(RPAREN);
       jj_consume_token(RPAREN);
-      switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
-      case CARAT:{
-        jj_consume_token(CARAT);
-        boost = jj_consume_token(NUMBER);
-        break;
-        }
-      default:
-        jj_la1[8] = jj_gen;
-        ;
+exitGroup();
+      boost = Boost();
+q = new BooleanNode(clauses, boost(boost), lparen.beginColumn, token.endColumn);
+      break;
       }
+    case REFERENCE:{
+      reference = jj_consume_token(REFERENCE);
+      boost = Boost();
+checkReferenceField(field, reference);
+        q = new ReferenceNode(field, image(reference).substring(1), boost(boost), reference.beginColumn, token.endColumn);
       break;
       }
     default:
-      jj_la1[9] = jj_gen;
+      jj_la1[5] = jj_gen;
       jj_consume_token(-1);
       throw new ParseException();
     }
-{if ("" != null) return handleBoost(q, boost);}
+{if ("" != null) return q;}
+    throw new Error("Missing return statement in function");
+}
+
+/** The optional boost of a group or reference */
+  final public Token Boost() throws ParseException {Token boost = null;
+    switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
+    case CARAT:{
+      jj_consume_token(CARAT);
+      boost = jj_consume_token(NUMBER);
+      break;
+      }
+    default:
+      jj_la1[6] = jj_gen;
+      ;
+    }
+{if ("" != null) return boost;}
     throw new Error("Missing return statement in function");
 }
 
-  final public Query Term(String field) throws ParseException {Token term, boost=null, fuzzySlop=null, goop1, goop2;
-  boolean prefix = false;
-  boolean wildcard = false;
-  boolean fuzzy = false;
-  boolean regexp = false;
+  final public QueryNode Term(String field) throws ParseException {Token term, boost=null, fuzzySlop=null, goop1, goop2;
+  TermNode.Kind kind = TermNode.Kind.TERM;
   boolean startInc=false;
   boolean endInc=false;
-  Query q;
+  int begin = getToken(1).beginColumn;
+  QueryNode q;
     switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
     case BAREOPER:
     case STAR:
@@ -412,22 +561,22 @@ field="*";
         }
       case STAR:{
         term = jj_consume_token(STAR);
-wildcard=true;
+kind=TermNode.Kind.WILDCARD;
         break;
         }
       case PREFIXTERM:{
         term = jj_consume_token(PREFIXTERM);
-prefix=true;
+kind=TermNode.Kind.PREFIX;
         break;
         }
       case WILDTERM:{
         term = jj_consume_token(WILDTERM);
-wildcard=true;
+kind=TermNode.Kind.WILDCARD;
         break;
         }
       case REGEXPTERM:{
         term = jj_consume_token(REGEXPTERM);
-regexp=true;
+kind=TermNode.Kind.REGEXP;
         break;
         }
       case NUMBER:{
@@ -436,11 +585,11 @@ regexp=true;
         }
       case BAREOPER:{
         term = jj_consume_token(BAREOPER);
-term.image = term.image.substring(0,1);
+term.image = image(term).substring(0,1);
         break;
         }
       default:
-        jj_la1[10] = jj_gen;
+        jj_la1[7] = jj_gen;
         jj_consume_token(-1);
         throw new ParseException();
       }
@@ -454,18 +603,16 @@ term.image = term.image.substring(0,1);
           switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
           case FUZZY_SLOP:{
             fuzzySlop = jj_consume_token(FUZZY_SLOP);
-fuzzy=true;
             break;
             }
           default:
-            jj_la1[11] = jj_gen;
+            jj_la1[8] = jj_gen;
             ;
           }
           break;
           }
         case FUZZY_SLOP:{
           fuzzySlop = jj_consume_token(FUZZY_SLOP);
-fuzzy=true;
           switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
           case CARAT:{
             jj_consume_token(CARAT);
@@ -473,24 +620,23 @@ fuzzy=true;
             break;
             }
           default:
-            jj_la1[12] = jj_gen;
+            jj_la1[9] = jj_gen;
             ;
           }
           break;
           }
         default:
-          jj_la1[13] = jj_gen;
+          jj_la1[10] = jj_gen;
           jj_consume_token(-1);
           throw new ParseException();
         }
         break;
         }
       default:
-        jj_la1[14] = jj_gen;
+        jj_la1[11] = jj_gen;
         ;
       }
-fieldTexts.add(new FieldText(new String(field),new String(term.image)));
-        q = handleBareTokenQuery(field, term, fuzzySlop, prefix, wildcard, fuzzy, regexp);
+q = new TermNode(field, kind, image(term), fuzzySlop == null ? null : image(fuzzySlop), boost(boost), begin, token.endColumn);
       break;
       }
     case RANGEIN_START:
@@ -506,7 +652,7 @@ startInc = true;
         break;
         }
       default:
-        jj_la1[15] = jj_gen;
+        jj_la1[12] = jj_gen;
         jj_consume_token(-1);
         throw new ParseException();
       }
@@ -520,7 +666,7 @@ startInc = true;
         break;
         }
       default:
-        jj_la1[16] = jj_gen;
+        jj_la1[13] = jj_gen;
         jj_consume_token(-1);
         throw new ParseException();
       }
@@ -530,7 +676,7 @@ startInc = true;
         break;
         }
       default:
-        jj_la1[17] = jj_gen;
+        jj_la1[14] = jj_gen;
         ;
       }
       switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
@@ -543,7 +689,7 @@ startInc = true;
         break;
         }
       default:
-        jj_la1[18] = jj_gen;
+        jj_la1[15] = jj_gen;
         jj_consume_token(-1);
         throw new ParseException();
       }
@@ -558,7 +704,7 @@ endInc = true;
         break;
         }
       default:
-        jj_la1[19] = jj_gen;
+        jj_la1[16] = jj_gen;
         jj_consume_token(-1);
         throw new ParseException();
       }
@@ -569,11 +715,13 @@ endInc = true;
         break;
         }
       default:
-        jj_la1[20] = jj_gen;
+        jj_la1[17] = jj_gen;
         ;
       }
 boolean startOpen=false;
       boolean endOpen=false;
+      image(goop1);
+      image(goop2);
       if (goop1.kind == RANGE_QUOTED) {
         goop1.image = goop1.image.substring(1, goop1.image.length()-1);
       } else if ("*".equals(goop1.image)) {
@@ -584,7 +732,7 @@ boolean startOpen=false;
       } else if ("*".equals(goop2.image)) {
         endOpen=true;
       }
-      q = getRangeQuery(field, startOpen ? null : new String(goop1.image), endOpen ? null : new String(goop2.image), startInc, endInc);
+      q = new RangeNode(field, startOpen ? null : goop1.image, endOpen ? null : goop2.image, startInc, endInc, boost(boost), begin, token.endColumn);
       break;
       }
     case QUOTED:{
@@ -599,18 +747,16 @@ boolean startOpen=false;
           switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
           case FUZZY_SLOP:{
             fuzzySlop = jj_consume_token(FUZZY_SLOP);
-fuzzy=true;
             break;
             }
           default:
-            jj_la1[21] = jj_gen;
+            jj_la1[18] = jj_gen;
             ;
           }
           break;
           }
         case FUZZY_SLOP:{
           fuzzySlop = jj_consume_token(FUZZY_SLOP);
-fuzzy=true;
           switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
           case CARAT:{
             jj_consume_token(CARAT);
@@ -618,43 +764,39 @@ fuzzy=true;
             break;
             }
           default:
-            jj_la1[22] = jj_gen;
+            jj_la1[19] = jj_gen;
             ;
           }
           break;
           }
         default:
-          jj_la1[23] = jj_gen;
+          jj_la1[20] = jj_gen;
           jj_consume_token(-1);
           throw new ParseException();
         }
         break;
         }
       default:
-        jj_la1[24] = jj_gen;
+        jj_la1[21] = jj_gen;
         ;
       }
-fieldTexts.add(new FieldText(new String(field),new String(term.image)));
-        q = handleQuotedTerm(field, term, fuzzySlop);
+q = new TermNode(field, TermNode.Kind.PHRASE, image(term), fuzzySlop == null ? null : image(fuzzySlop), boost(boost), begin, token.endColumn);
       break;
       }
     default:
-      jj_la1[25] = jj_gen;
+      jj_la1[22] = jj_gen;
       jj_consume_token(-1);
       throw new ParseException();
     }
-{if ("" != null) return handleBoost(q, boost);}
+{if ("" != null) return q;}
     throw new Error("Missing return statement in function");
 }
 
-/** Returns the first query if splitOnWhitespace=true or otherwise the entire produced query */
-  final public Query MultiTerm(String field, List<BooleanClause> clauses) throws ParseException {Token text, whitespace, followingText;
-  Query firstQuery = null;
+/** A run of plain terms; split on whitespace or analyzed together when the tree is compiled */
+  final public MultiTermNode MultiTerm(String field) throws ParseException {Token text, followingText;
+  List<String> terms = new ArrayList<String>();
     text = jj_consume_token(TERM);
-if (splitOnWhitespace) {
-      firstQuery = getFieldQuery(field, new String(text.image), false);
-      addClause(clauses, CONJ_NONE, MOD_NONE, firstQuery);
-    }
+terms.add(image(text));
     if (getToken(1).kind == TERM && allowedPostMultiTerm(getToken(2).kind)) {
 
     } else {
@@ -664,114 +806,17 @@ if (splitOnWhitespace) {
     label_2:
     while (true) {
       followingText = jj_consume_token(TERM);
-if (splitOnWhitespace) {
-        Query q = getFieldQuery(field, new String(followingText.image), false);
-        addClause(clauses, CONJ_NONE, MOD_NONE, q);
-      } else { // build up the text to send to analysis
-        text.image += " " + followingText.image;
-      }
+terms.add(image(followingText));
       if (getToken(1).kind == TERM && allowedPostMultiTerm(getToken(2).kind)) {
         ;
       } else {
         break label_2;
       }
     }
-if (splitOnWhitespace == false) {
-      firstQuery = getFieldQuery(field, new String(text.image), false);
-      addMultiTermClauses(clauses, firstQuery);
-    }
-    {if ("" != null) return firstQuery;}
+{if ("" != null) return new MultiTermNode(field, terms, text.beginColumn, token.endColumn);}
     throw new Error("Missing return statement in function");
 }
 
-  private boolean jj_2_1(int xla)
- {
-    jj_la = xla; jj_lastpos = jj_scanpos = token;
-    try { return (!jj_3_1()); }
-    catch(LookaheadSuccess ls) { return true; }
-    finally { jj_save(0, xla); }
-  }
-
-  private boolean jj_2_2(int xla)
- {
-    jj_la = xla; jj_lastpos = jj_scanpos = token;
-    try { return (!jj_3_2()); }
-    catch(LookaheadSuccess ls) { return true; }
-    finally { jj_save(1, xla); }
-  }
-
-  private boolean jj_2_3(int xla)
- {
-    jj_la = xla; jj_lastpos = jj_scanpos = token;
-    try { return (!jj_3_3()); }
-    catch(LookaheadSuccess ls) { return true; }
-    finally { jj_save(2, xla); }
-  }
-
-  private boolean jj_3R_5()
- {
-    if (jj_scan_token(STAR)) return true;
-    if (jj_scan_token(COLON)) return true;
-    return false;
-  }
-
-  private boolean jj_3R_7()
- {
-    if (jj_scan_token(TERM)) return true;
-    return false;
-  }
-
-  private boolean jj_3R_3()
- {
-    if (jj_scan_token(TERM)) return true;
-    jj_lookingAhead = true;
-    jj_semLA = getToken(1).kind == TERM && allowedPostMultiTerm(getToken(2).kind);
-    jj_lookingAhead = false;
-    if (!jj_semLA || jj_3R_6()) return true;
-    Token xsp;
-    if (jj_3R_7()) return true;
-    while (true) {
-      xsp = jj_scanpos;
-      if (jj_3R_7()) { jj_scanpos = xsp; break; }
-    }
-    return false;
-  }
-
-  private boolean jj_3R_4()
- {
-    if (jj_scan_token(TERM)) return true;
-    if (jj_scan_token(COLON)) return true;
-    return false;
-  }
-
-  private boolean jj_3R_6()
- {
-    return false;
-  }
-
-  private boolean jj_3_2()
- {
-    if (jj_3R_3()) return true;
-    return false;
-  }
-
-  private boolean jj_3_1()
- {
-    if (jj_3R_3()) return true;
-    return false;
-  }
-
-  private boolean jj_3_3()
- {
-    Token xsp;
-    xsp = jj_scanpos;
-    if (jj_3R_4()) {
-    jj_scanpos = xsp;
-    if (jj_3R_5()) return true;
-    }
-    return false;
-  }
-
   /** Generated Token Manager. */
   public QueryParserTokenManager token_source;
   /** Current token. */
@@ -779,13 +824,8 @@ if (splitOnWhitespace == false) {
   /** Next token. */
   public Token jj_nt;
   private int jj_ntk;
-  private Token jj_scanpos, jj_lastpos;
-  private int jj_la;
-  /** Whether we are looking ahead. */
-  private boolean jj_lookingAhead = false;
-  private boolean jj_semLA;
   private int jj_gen;
-  final private int[] jj_la1 = new int[26];
+  final private int[] jj_la1 = new int[23];
   static private int[] jj_la1_0;
   static private int[] jj_la1_1;
   static {
@@ -793,14 +833,11 @@ if (splitOnWhitespace == false) {
 	   jj_la1_init_1();
 	}
 	private static void jj_la1_init_0() {
-	   jj_la1_0 = new int[] {0x300,0x300,0x1c00,0x1c00,0xfda7c00,0xfda7f00,0xfda7f00,0x120000,0x40000,0xfda6000,0x9d22000,0x200000,0x40000,0x240000,0x240000,0x6000000,0x80000000,0x10000000,0x80000000,0x60000000,0x40000,0x200000,0x40000,0x240000,0x240000,0xfda2000,};
+	   jj_la1_0 = new int[] {0x300,0x300,0x1c00,0x1c00,0x120000,0x1fda6000,0x40000,0x11d22000,0x200000,0x40000,0x240000,0x240000,0xc000000,0x0,0x20000000,0x0,0xc0000000,0x40000,0x200000,0x40000,0x240000,0x240000,0x1dda2000,};
 	}
 	private static void jj_la1_init_1() {
-	   jj_la1_1 = new int[] {0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x1,0x0,0x1,0x0,0x0,0x0,0x0,0x0,0x0,0x0,};
+	   jj_la1_1 = new int[] {0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x3,0x0,0x3,0x0,0x0,0x0,0x0,0x0,0x0,0x0,};
 	}
-  final private JJCalls[] jj_2_rtns = new JJCalls[3];
-  private boolean jj_rescan = false;
-  private int jj_gc = 0;
 
   /** Constructor with user supplied CharStream. */
   public QueryParser(CharStream stream) {
@@ -808,8 +845,7 @@ if (splitOnWhitespace == false) {
 	 token = new Token();
 	 jj_ntk = -1;
 	 jj_gen = 0;
-	 for (int i = 0; i < 26; i++) jj_la1[i] = -1;
-	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
+	 for (int i = 0; i < 23; i++) jj_la1[i] = -1;
   }
 
   /** Reinitialise. */
@@ -817,10 +853,8 @@ if (splitOnWhitespace == false) {
 	 token_source.ReInit(stream);
 	 token = new Token();
 	 jj_ntk = -1;
-	 jj_lookingAhead = false;
 	 jj_gen = 0;
-	 for (int i = 0; i < 26; i++) jj_la1[i] = -1;
-	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
+	 for (int i = 0; i < 23; i++) jj_la1[i] = -1;
   }
 
   /** Constructor with generated Token Manager. */
@@ -829,8 +863,7 @@ if (splitOnWhitespace == false) {
 	 token = new Token();
 	 jj_ntk = -1;
 	 jj_gen = 0;
-	 for (int i = 0; i < 26; i++) jj_la1[i] = -1;
-	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
+	 for (int i = 0; i < 23; i++) jj_la1[i] = -1;
   }
 
   /** Reinitialise. */
@@ -839,8 +872,7 @@ if (splitOnWhitespace == false) {
 	 token = new Token();
 	 jj_ntk = -1;
 	 jj_gen = 0;
-	 for (int i = 0; i < 26; i++) jj_la1[i] = -1;
-	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
+	 for (int i = 0; i < 23; i++) jj_la1[i] = -1;
   }
 
   private Token jj_consume_token(int kind) throws ParseException {
@@ -850,16 +882,6 @@ if (splitOnWhitespace == false) {
 	 jj_ntk = -1;
 	 if (token.kind == kind) {
 	   jj_gen++;
-	   if (++jj_gc > 100) {
-		 jj_gc = 0;
-		 for (int i = 0; i < jj_2_rtns.length; i++) {
-		   JJCalls c = jj_2_rtns[i];
-		   while (c != null) {
-			 if (c.gen < jj_gen) c.first = null;
-			 c = c.next;
-		   }
-		 }
-	   }
 	   return token;
 	 }
 	 token = oldToken;
@@ -867,30 +889,6 @@ if (splitOnWhitespace == false) {
 	 throw generateParseException();
   }
 
-  @SuppressWarnings("serial")
-  static private final class LookaheadSuccess extends java.lang.Error { }
-  final private LookaheadSuccess jj_ls = new LookaheadSuccess();
-  private boolean jj_scan_token(int kind) {
-	 if (jj_scanpos == jj_lastpos) {
-	   jj_la--;
-	   if (jj_scanpos.next == null) {
-		 jj_lastpos = jj_scanpos = jj_scanpos.next = token_source.getNextToken();
-	   } else {
-		 jj_lastpos = jj_scanpos = jj_scanpos.next;
-	   }
-	 } else {
-	   jj_scanpos = jj_scanpos.next;
-	 }
-	 if (jj_rescan) {
-	   int i = 0; Token tok = token;
-	   while (tok != null && tok != jj_scanpos) { i++; tok = tok.next; }
-	   if (tok != null) jj_add_error_token(kind, i);
-	 }
-	 if (jj_scanpos.kind != kind) return true;
-	 if (jj_la == 0 && jj_scanpos == jj_lastpos) throw jj_ls;
-	 return false;
-  }
-
 
 /** Get the next Token. */
   final public Token getNextToken() {
@@ -903,7 +901,7 @@ if (splitOnWhitespace == false) {
 
 /** Get the specific Token. */
   final public Token getToken(int index) {
-	 Token t = jj_lookingAhead ? jj_scanpos : token;
+	 Token t = token;
 	 for (int i = 0; i < index; i++) {
 	   if (t.next != null) t = t.next;
 	   else t = t.next = token_source.getNextToken();
@@ -921,56 +919,16 @@ if (splitOnWhitespace == false) {
   private java.util.List<int[]> jj_expentries = new java.util.ArrayList<int[]>();
   private int[] jj_expentry;
   private int jj_kind = -1;
-  private int[] jj_lasttokens = new int[100];
-  private int jj_endpos;
-
-  private void jj_add_error_token(int kind, int pos) {
-	 if (pos >= 100) {
-		return;
-	 }
-
-	 if (pos == jj_endpos + 1) {
-	   jj_lasttokens[jj_endpos++] = kind;
-	 } else if (jj_endpos != 0) {
-	   jj_expentry = new int[jj_endpos];
-
-	   for (int i = 0; i < jj_endpos; i++) {
-		 jj_expentry[i] = jj_lasttokens[i];
-	   }
-
-	   for (int[] oldentry : jj_expentries) {
-		 if (oldentry.length == jj_expentry.length) {
-		   boolean isMatched = true;
-
-		   for (int i = 0; i < jj_expentry.length; i++) {
-			 if (oldentry[i] != jj_expentry[i]) {
-			   isMatched = false;
-			   break;
-			 }
-
-		   }
-		   if (isMatched) {
-			 jj_expentries.add(jj_expentry);
-			 break;
-		   }
-		 }
-	   }
-
-	   if (pos != 0) {
-		 jj_lasttokens[(jj_endpos = pos) - 1] = kind;
-	   }
-	 }
-  }
 
   /** Generate ParseException. */
   public ParseException generateParseException() {
 	 jj_expentries.clear();
-	 boolean[] la1tokens = new boolean[33];
+	 boolean[] la1tokens = new boolean[34];
 	 if (jj_kind >= 0) {
 	   la1tokens[jj_kind] = true;
 	   jj_kind = -1;
 	 }
-	 for (int i = 0; i < 26; i++) {
+	 for (int i = 0; i < 23; i++) {
 	   if (jj_la1[i] == jj_gen) {
 		 for (int j = 0; j < 32; j++) {
 		   if ((jj_la1_0[i] & (1<<j)) != 0) {
@@ -982,16 +940,13 @@ if (splitOnWhitespace == false) {
 		 }
 	   }
 	 }
-	 for (int i = 0; i < 33; i++) {
+	 for (int i = 0; i < 34; i++) {
 	   if (la1tokens[i]) {
 		 jj_expentry = new int[1];
 		 jj_expentry[0] = i;
 		 jj_expentries.add(jj_expentry);
 	   }
 	 }
-	 jj_endpos = 0;
-	 jj_rescan_token();
-	 jj_add_error_token(0, 0);
 	 int[][] exptokseq = new int[jj_expentries.size()][];
 	 for (int i = 0; i < jj_expentries.size(); i++) {
 	   exptokseq[i] = jj_expentries.get(i);
@@ -1015,46 +970,4 @@ if (splitOnWhitespace == false) {
   final public void disable_tracing() {
   }
 
-  private void jj_rescan_token() {
-	 jj_rescan = true;
-	 for (int i = 0; i < 3; i++) {
-	   try {
-		 JJCalls p = jj_2_rtns[i];
-
-		 do {
-		   if (p.gen > jj_gen) {
-			 jj_la = p.arg; jj_lastpos = jj_scanpos = p.first;
-			 switch (i) {
-			   case 0: jj_3_1(); break;
-			   case 1: jj_3_2(); break;
-			   case 2: jj_3_3(); break;
-			 }
-		   }
-		   p = p.next;
-		 } while (p != null);
-
-		 } catch(LookaheadSuccess ls) { }
-	 }
-	 jj_rescan = false;
-  }
-
-  private void jj_save(int index, int xla) {
-	 JJCalls p = jj_2_rtns[index];
-	 while (p.gen > jj_gen) {
-	   if (p.next == null) { p = p.next = new JJCalls(); break; }
-	   p = p.next;
-	 }
-
-	 p.gen = jj_gen + xla - jj_la; 
-	 p.first = token;
-	 p.arg = xla;
-  }
-
-  static final class JJCalls {
-	 int gen;
-	 Token first;
-	 int arg;
-	 JJCalls next;
-  }
-
 }
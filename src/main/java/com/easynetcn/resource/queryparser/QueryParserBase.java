@@ -18,10 +18,15 @@ package com.easynetcn.resource.queryparser;
 
 import static org.apache.lucene.util.automaton.Operations.DEFAULT_MAX_DETERMINIZED_STATES;
 
-import java.io.StringReader;
+import java.io.IOException;
 import java.text.DateFormat;
+import java.text.ParsePosition;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -30,6 +35,8 @@ import java.util.Map;
 import java.util.TimeZone;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.document.DateTools;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause;
@@ -74,6 +81,9 @@ public abstract class QueryParserBase extends QueryBuilder {
 	/** Alternative form of QueryParser.Operator.OR */
 	public static final Operator OR_OPERATOR = Operator.OR;
 
+	/** Default limit of references nested in references. */
+	public static final int DEFAULT_MAX_REFERENCE_DEPTH = 16;
+
 	/** The actual operator that parser uses to combine query terms */
 	Operator operator = OR_OPERATOR;
 
@@ -92,6 +102,20 @@ public abstract class QueryParserBase extends QueryBuilder {
 	DateTools.Resolution dateResolution = null;
 	// maps field names to date resolutions
 	Map<String, DateTools.Resolution> fieldToDateResolution = null;
+	// the default patterns of date range bounds
+	DateRangeFormat dateRangeFormat = DateRangeFormat.PATENT;
+	// maps field names to patterns of date range bounds
+	Map<String, DateRangeFormat> fieldToDateRangeFormat = null;
+	// maps field names to the point types of numeric and date fields
+	Map<String, PointType> fieldToPointType = null;
+	// the locale's date format, time zone and calendar of the last date range,
+	// reused while the locale and time zone stay the same
+	private DateFormat localeDateFormat;
+	private Locale localeDateFormatLocale;
+	private ZoneId zoneId;
+	private TimeZone zoneIdTimeZone;
+	private Calendar calendar;
+	private TimeZone calendarTimeZone;
 
 	// Whether or not to analyze range terms when constructing RangeQuerys
 	// (For example, analyzing terms into collation keys for locale-sensitive
@@ -101,7 +125,45 @@ public abstract class QueryParserBase extends QueryBuilder {
 	boolean autoGeneratePhraseQueries;
 	int maxDeterminizedStates = DEFAULT_MAX_DETERMINIZED_STATES;
 
-	List<FieldText> fieldTexts = new ArrayList<FieldText>();
+	// whether the grammar records a FieldText for every term
+	boolean captureFieldTexts = true;
+	// field texts of the current parse, allocated on the first captured term
+	List<FieldText> fieldTexts = null;
+
+	FieldTable fieldTable = null;
+
+	ReferenceResolver referenceResolver = null;
+	int maxReferenceDepth = DEFAULT_MAX_REFERENCE_DEPTH;
+	// parsed queries of resolved references by name, reset by settingsChanged()
+	private Map<String, Reference> references;
+	// names of the references being resolved, outermost first
+	private final List<String> referencePath = new ArrayList<String>();
+
+	ParsedQueryCache queryCache = null;
+	BooleanQueryOptimizer optimizer = null;
+	// 0 disables TermInSetQuery conversion
+	int termSetThreshold = 0;
+	ParserMetrics metrics = ParserMetrics.NOOP;
+	// time spent lexing and analyzing during the current parse, when metered
+	long lexingNanos;
+	long analysisNanos;
+	ParseBudget budget = null;
+	// spent budget of the current parse
+	private int groupDepth;
+	private int clauseCount;
+	private int analysisTokens;
+	private long deadline = Long.MAX_VALUE;
+	// reused by every parse, see doParse()
+	private final StringCharStream stringStream = new StringCharStream();
+	private CharArrayCharStream charArrayStream;
+	boolean lazyTokenImages = false;
+	boolean iterativeNesting = false;
+	// the stream of the current parse when token images are lazy
+	private SourceCharStream source;
+	// lazily computed from collectSettings(), reset by settingsChanged()
+	private Object settingsFingerprint;
+	private final QueryNodeCompiler compiler = new QueryNodeCompiler(this);
+	private final QueryCanonicalizer canonicalizer = new QueryCanonicalizer(this);
 
 	// So the generated QueryParser(CharStream) won't error out
 	protected QueryParserBase() {
@@ -120,12 +182,21 @@ public abstract class QueryParserBase extends QueryBuilder {
 		setAnalyzer(a);
 		field = f;
 		setAutoGeneratePhraseQueries(false);
+		settingsChanged();
 	}
 
 	// the generated parser will create these in QueryParser
 	public abstract void ReInit(CharStream stream);
 
-	public abstract Query TopLevelQuery(String field) throws ParseException;
+	public abstract QueryNode TopLevelQuery(String field) throws ParseException;
+
+	/**
+	 * Parses like {@link #TopLevelQuery(String)} without recursing for every
+	 * parenthesis, see {@link #setIterativeNesting(boolean)}.
+	 */
+	QueryNode iterativeTopLevelQuery(String field) throws ParseException {
+		return TopLevelQuery(field);
+	}
 
 	/**
 	 * Parses a query string, returning a
@@ -137,23 +208,271 @@ public abstract class QueryParserBase extends QueryBuilder {
 	 *             if the parsing fails
 	 */
 	public Query parse(String query) throws ParseException {
-		ReInit(new FastCharStream(new StringReader(query)));
+		ParsedQueryCache cache = queryCache;
+		if (cache == null) {
+			return doParse(query);
+		}
+		return cachedParse(cache, query).getQuery();
+	}
+
+	/**
+	 * Parses a query held in a region of a char array, without copying it
+	 * into a String first unless the query is cached or contains references.
+	 * 
+	 * @param buffer
+	 *            holds the query; must not change during the call.
+	 * @param offset
+	 *            start of the query in <code>buffer</code>.
+	 * @param length
+	 *            number of chars of the query.
+	 * @throws ParseException
+	 *             if the parsing fails
+	 * @see #parse(String)
+	 */
+	public Query parse(char[] buffer, int offset, int length) throws ParseException {
+		if (queryCache != null || indexOf(buffer, offset, length, '#') >= 0) {
+			return parse(new String(buffer, offset, length));
+		}
+		if (charArrayStream == null) {
+			charArrayStream = new CharArrayCharStream();
+		}
+		charArrayStream.reset(buffer, offset, length);
+		startBudget();
+		return parseStream(charArrayStream);
+	}
+
+	/**
+	 * Parses a query string like {@link #parse(String)}, and returns the query
+	 * together with the {@link FieldText}s seen while parsing it.
+	 * 
+	 * @param query
+	 *            the query string to be parsed.
+	 * @throws ParseException
+	 *             if the parsing fails
+	 * @see #setCaptureFieldTexts(boolean)
+	 */
+	public ParseResult parseWithFieldTexts(String query) throws ParseException {
+		ParsedQueryCache cache = queryCache;
+		if (cache == null) {
+			Query res = doParse(query);
+			return new ParseResult(res, getFieldTexts());
+		}
+		return cachedParse(cache, query);
+	}
+
+	private ParseResult cachedParse(ParsedQueryCache cache, String query) throws ParseException {
+		Object settings = getSettingsFingerprint();
+		ParseResult result = cache.get(query, settings);
+		if (result == null) {
+			Query res = doParse(query);
+			result = new ParseResult(res, getFieldTexts());
+			cache.put(query, settings, result);
+		} else {
+			fieldTexts = result.getFieldTexts();
+		}
+		return result;
+	}
+
+	private Query doParse(String query) throws ParseException {
+		startBudget();
+		return parseText(query);
+	}
+
+	/**
+	 * Parses a query or a referenced query within the budget of the current
+	 * parse.
+	 */
+	private Query parseText(String query) throws ParseException {
+		if (query.indexOf('#') >= 0) {
+			// the generated parser is not reentrant, so referenced queries are
+			// parsed up front and picked up by handleReference()
+			resolveReferences(referenceNames(query));
+		}
+
+		stringStream.reset(query);
+		return parseStream(stringStream);
+	}
+
+	/**
+	 * Parses a query string into its syntax tree, without analyzing it or
+	 * building any Lucene query. Fields are resolved, so
+	 * {@link MissingFieldException}s are thrown here, but references are not.
+	 * The tree can be kept, inspected or rewritten, and turned into a query
+	 * later by {@link #compile(QueryNode)}, even after the analyzer changed.
+	 * 
+	 * @param query
+	 *            the query string to be parsed.
+	 * @throws ParseException
+	 *             if the query is not well formed
+	 */
+	public QueryNode parseToAst(String query) throws ParseException {
+		stringStream.reset(query);
+		startBudget();
+		return parseAst(stringStream);
+	}
+
+	/**
+	 * Parses a query string into the form that equivalent queries share, to
+	 * key caches or deduplicate saved searches, see
+	 * {@link #canonicalize(QueryNode)}. References are
+	 * {@link #expandReferences(String) expanded} first, so a reference and
+	 * the query it stands for share their form.
+	 * 
+	 * @throws ParseException
+	 *             if the query is not well formed, or a reference is unknown,
+	 *             cyclic or nested too deep
+	 */
+	public CanonicalQuery canonicalize(String query) throws ParseException {
+		return canonicalize(parseToAst(expandReferences(query)));
+	}
+
+	/**
+	 * Returns the form that equivalent queries share: fields and operators
+	 * are resolved, clauses carry the occur the current default operator
+	 * gives them and are sorted within their group, redundant groups are
+	 * removed and boosts, slops and fuzzy similarities are normalized. Terms
+	 * are not analyzed, so the result, like its fingerprint, is only
+	 * comparable between parsers with the same settings.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the tree contains a {@link ReferenceNode}, whose query
+	 *             depends on the reference resolver; parse the query with
+	 *             {@link #canonicalize(String)} instead
+	 */
+	public CanonicalQuery canonicalize(QueryNode ast) {
+		return new CanonicalQuery(canonicalizer.canonicalize(ast));
+	}
+
+	/**
+	 * Builds the Lucene query of a syntax tree from
+	 * {@link #parseToAst(String)}, with the current settings. Field texts are
+	 * recorded as by {@link #parse(String)}.
+	 * 
+	 * @throws ParseException
+	 *             if a query cannot be built, e.g. a wildcard is not allowed
+	 *             or a reference is unknown
+	 */
+	public Query compile(QueryNode ast) throws ParseException {
+		startBudget();
+		List<String> names = new ArrayList<String>();
+		int clauses = collectReferences(ast, names);
+		resolveReferences(names);
+		countClauses(clauses);
+
+		fieldTexts = null;
 		try {
-			// TopLevelQuery is a Query followed by the end-of-input (EOF)
-			Query res = TopLevelQuery(field);
-			return res != null ? res : newBooleanQuery().build();
-		} catch (ParseException | TokenMgrError tme) {
-			// rethrow to include the original query:
-			ParseException e = new ParseException("Cannot parse '" + query + "': " + tme.getMessage());
-			e.initCause(tme);
-			throw e;
+			return optimize(compiler.compile(ast));
+		} catch (AnalysisBudgetExceeded e) {
+			throw e.exception;
 		} catch (BooleanQuery.TooManyClauses tmc) {
-			ParseException e = new ParseException("Cannot parse '" + query + "': too many boolean clauses");
+			ParseException e = new ParseException("Too many boolean clauses");
 			e.initCause(tmc);
 			throw e;
 		}
 	}
 
+	/**
+	 * Parses and compiles the whole stream. Error messages quote the query
+	 * through the toString() of the stream.
+	 */
+	private Query parseStream(SourceCharStream stream) throws ParseException {
+		if (metrics != ParserMetrics.NOOP) {
+			return meteredParseStream(stream);
+		}
+		return compileStream(stream, parseAst(stream));
+	}
+
+	private Query meteredParseStream(SourceCharStream stream) throws ParseException {
+		ParserMetrics metrics = this.metrics;
+		lexingNanos = 0;
+		analysisNanos = 0;
+		long start = System.nanoTime();
+		try {
+			QueryNode ast = parseAst(stream);
+			long lexing = lexingNanos;
+			long parsed = System.nanoTime();
+			Query res = compileStream(stream, ast);
+			long end = System.nanoTime();
+			metrics.onPhase(ParserMetrics.Phase.LEXING, lexing);
+			metrics.onPhase(ParserMetrics.Phase.GRAMMAR, parsed - start - lexing);
+			metrics.onPhase(ParserMetrics.Phase.ANALYSIS, analysisNanos);
+			metrics.onPhase(ParserMetrics.Phase.CONSTRUCTION, end - parsed - analysisNanos);
+			metrics.onParse(end - start, BooleanQueryOptimizer.countClauses(res));
+			return res;
+		} catch (ParseException e) {
+			metrics.onFailure(System.nanoTime() - start);
+			throw e;
+		}
+	}
+
+	private Query compileStream(SourceCharStream stream, QueryNode ast) throws ParseException {
+		try {
+			return optimize(compiler.compile(ast));
+		} catch (BudgetExceededException bee) {
+			throw bee;
+		} catch (AnalysisBudgetExceeded e) {
+			throw e.exception;
+		} catch (ParseException pe) {
+			throw cannotParse(stream, pe.getMessage(), pe);
+		} catch (BooleanQuery.TooManyClauses tmc) {
+			throw cannotParse(stream, "too many boolean clauses", tmc);
+		}
+	}
+
+	private Query optimize(Query res) {
+		if (res == null) {
+			return newBooleanQuery().build();
+		}
+		BooleanQueryOptimizer optimizer = this.optimizer;
+		return optimizer == null ? res : optimizer.optimize(res).getQuery();
+	}
+
+	private QueryNode parseAst(SourceCharStream stream) throws ParseException {
+		stream.setLazyImages(lazyTokenImages);
+		source = stream;
+		ReInit(stream);
+		// the previous list may be held by a ParseResult, so never clear it
+		fieldTexts = null;
+		groupDepth = 0;
+		int clauses = clauseCount;
+		if (budget != null && stream.length() > budget.get(ParseBudget.Limit.INPUT_LENGTH)) {
+			throw new BudgetExceededException(ParseBudget.Limit.INPUT_LENGTH,
+					budget.get(ParseBudget.Limit.INPUT_LENGTH));
+		}
+		try {
+			// TopLevelQuery is a Query followed by the end-of-input (EOF)
+			return iterativeNesting ? iterativeTopLevelQuery(field) : TopLevelQuery(field);
+		} catch (MissingFieldException | BudgetExceededException e) {
+			// keep the type and the offending token
+			throw e;
+		} catch (ParseException | TokenMgrError tme) {
+			if (lazyTokenImages) {
+				// errors are rare: parse again with images, so that the message
+				// and the tokens of the exception are complete
+				clauseCount = clauses;
+				return parseAstEagerly(stream);
+			}
+			// rethrow to include the original query:
+			throw cannotParse(stream, tme.getMessage(), tme);
+		}
+	}
+
+	private QueryNode parseAstEagerly(SourceCharStream stream) throws ParseException {
+		stream.rewind();
+		lazyTokenImages = false;
+		try {
+			return parseAst(stream);
+		} finally {
+			lazyTokenImages = true;
+		}
+	}
+
+	private static ParseException cannotParse(SourceCharStream stream, String message, Throwable cause) {
+		ParseException e = new ParseException("Cannot parse '" + stream + "': " + message);
+		e.initCause(cause);
+		return e;
+	}
+
 	/**
 	 * @return Returns the default field.
 	 */
@@ -161,6 +480,532 @@ public abstract class QueryParserBase extends QueryBuilder {
 		return field;
 	}
 
+	/**
+	 * Sets the cache consulted by {@link #parse(String)} before parsing, or
+	 * <code>null</code> to disable caching. A cache may be shared by several
+	 * parsers; entries are keyed by the query text and
+	 * {@link #collectSettings(List) the parser settings}. Default: null.
+	 */
+	public void setQueryCache(ParsedQueryCache queryCache) {
+		this.queryCache = queryCache;
+	}
+
+	/**
+	 * @see #setQueryCache(ParsedQueryCache)
+	 */
+	public ParsedQueryCache getQueryCache() {
+		return queryCache;
+	}
+
+	/**
+	 * Sets the optimizer applied to every parsed query, or <code>null</code>
+	 * to return queries as built. Default: null.
+	 */
+	public void setBooleanQueryOptimizer(BooleanQueryOptimizer optimizer) {
+		this.optimizer = optimizer;
+		settingsChanged();
+	}
+
+	/**
+	 * @see #setBooleanQueryOptimizer(BooleanQueryOptimizer)
+	 */
+	public BooleanQueryOptimizer getBooleanQueryOptimizer() {
+		return optimizer;
+	}
+
+	/**
+	 * Sets the number of terms from which a disjunction of plain terms on one
+	 * field, such as <code>pn=(US1 or US2 or ...)</code> with thousands of
+	 * publication numbers, is compiled to a single
+	 * {@link org.apache.lucene.search.TermInSetQuery} instead of a boolean
+	 * query with a clause per term. Such lists are then parsed in linear time
+	 * and no longer fail with {@link BooleanQuery.TooManyClauses}. Terms that
+	 * analysis does not turn into a single term stay separate clauses next to
+	 * the set. The set scores every match the same, so the terms no longer
+	 * contribute to ranking. 0 disables the conversion. Default: 0.
+	 */
+	public void setTermSetThreshold(int termSetThreshold) {
+		if (termSetThreshold < 0) {
+			throw new IllegalArgumentException("termSetThreshold must be >= 0");
+		}
+		this.termSetThreshold = termSetThreshold;
+		settingsChanged();
+	}
+
+	/**
+	 * @see #setTermSetThreshold(int)
+	 */
+	public int getTermSetThreshold() {
+		return termSetThreshold;
+	}
+
+	/**
+	 * Sets the listener of the timings and counts of every parse, or
+	 * <code>null</code> for {@link ParserMetrics#NOOP}. Metering adds a clock
+	 * read per token, so leave it off where every microsecond counts.
+	 * Default: {@link ParserMetrics#NOOP}.
+	 */
+	public void setParserMetrics(ParserMetrics metrics) {
+		this.metrics = metrics == null ? ParserMetrics.NOOP : metrics;
+		meterLexing(this.metrics != ParserMetrics.NOOP);
+	}
+
+	/**
+	 * @see #setParserMetrics(ParserMetrics)
+	 */
+	public ParserMetrics getParserMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Starts or stops adding the time spent in the token manager to
+	 * {@link #lexingNanos}.
+	 */
+	void meterLexing(boolean metered) {
+	}
+
+	/**
+	 * Sets the limits on the work of a single parse, or <code>null</code> for
+	 * no limits. A parse over budget fails with a
+	 * {@link BudgetExceededException} as soon as a limit is exceeded. Limits
+	 * are also enforced by {@link #parseToAst(String)} and
+	 * {@link #compile(QueryNode)}, each with its own time limit. Referenced
+	 * queries are parsed within the budget of the query using them, and each
+	 * use of a reference counts the clauses of its query. Default: null.
+	 */
+	public void setParseBudget(ParseBudget budget) {
+		this.budget = budget;
+		settingsChanged();
+	}
+
+	/**
+	 * @see #setParseBudget(ParseBudget)
+	 */
+	public ParseBudget getParseBudget() {
+		return budget;
+	}
+
+	/**
+	 * Starts the budget of a parse. Referenced queries are parsed within the
+	 * budget of the query referring to them.
+	 */
+	private void startBudget() {
+		clauseCount = 0;
+		analysisTokens = 0;
+		long time = budget == null ? Long.MAX_VALUE : budget.get(ParseBudget.Limit.TIME);
+		deadline = time == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + time;
+	}
+
+	/**
+	 * Called by the grammar when a parenthesis opens.
+	 */
+	final void enterGroup() throws BudgetExceededException {
+		if (budget != null) {
+			if (++groupDepth > budget.get(ParseBudget.Limit.NESTING_DEPTH)) {
+				throw new BudgetExceededException(ParseBudget.Limit.NESTING_DEPTH,
+						budget.get(ParseBudget.Limit.NESTING_DEPTH));
+			}
+			checkDeadline();
+		}
+	}
+
+	/**
+	 * Called by the grammar when a parenthesis closes.
+	 */
+	final void exitGroup() {
+		if (budget != null) {
+			groupDepth--;
+		}
+	}
+
+	/**
+	 * Called by the grammar for every clause, and every term of a run of
+	 * terms.
+	 */
+	final void countClauses(int count) throws BudgetExceededException {
+		if (budget != null) {
+			clauseCount += count;
+			if (clauseCount > budget.get(ParseBudget.Limit.CLAUSES)) {
+				throw new BudgetExceededException(ParseBudget.Limit.CLAUSES, budget.get(ParseBudget.Limit.CLAUSES));
+			}
+			checkDeadline();
+		}
+	}
+
+	/**
+	 * Called before the query of a wildcard or regular expression term is
+	 * built.
+	 */
+	final void checkPattern(String image, boolean regexp) throws BudgetExceededException {
+		if (budget != null) {
+			long max = budget.get(ParseBudget.Limit.PATTERN_COMPLEXITY);
+			if (max != Long.MAX_VALUE && ParseBudget.complexity(image, regexp) > max) {
+				throw new BudgetExceededException(ParseBudget.Limit.PATTERN_COMPLEXITY, max);
+			}
+			checkDeadline();
+		}
+	}
+
+	final void checkDeadline() throws BudgetExceededException {
+		if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+			throw new BudgetExceededException(ParseBudget.Limit.TIME, budget.get(ParseBudget.Limit.TIME));
+		}
+	}
+
+	/**
+	 * Sets the table used to resolve the field of <code>field:</code> clauses
+	 * to a canonical field name, and to reject unknown fields with a
+	 * {@link MissingFieldException}. Without a table, field names are just
+	 * lowercased. Default: null.
+	 */
+	public void setFieldTable(FieldTable fieldTable) {
+		this.fieldTable = fieldTable;
+		settingsChanged();
+	}
+
+	/**
+	 * @see #setFieldTable(FieldTable)
+	 */
+	public FieldTable getFieldTable() {
+		return fieldTable;
+	}
+
+	/**
+	 * Sets the resolver of references such as <code>#12</code>, or
+	 * <code>null</code> to reject them. Each referenced query is parsed once,
+	 * against the default field, and memoized until the settings change or
+	 * {@link #clearReferences()} is called, so compound queries over a long
+	 * search history are assembled from the memoized queries. References may
+	 * contain references themselves, up to
+	 * {@link #setMaxReferenceDepth(int)} levels. Default: null.
+	 */
+	public void setReferenceResolver(ReferenceResolver referenceResolver) {
+		this.referenceResolver = referenceResolver;
+		settingsChanged();
+	}
+
+	/**
+	 * @see #setReferenceResolver(ReferenceResolver)
+	 */
+	public ReferenceResolver getReferenceResolver() {
+		return referenceResolver;
+	}
+
+	/**
+	 * Sets how deep references may be nested in referenced queries. Default:
+	 * {@value #DEFAULT_MAX_REFERENCE_DEPTH}.
+	 */
+	public void setMaxReferenceDepth(int maxReferenceDepth) {
+		if (maxReferenceDepth < 1) {
+			throw new IllegalArgumentException("maxReferenceDepth must be >= 1");
+		}
+		this.maxReferenceDepth = maxReferenceDepth;
+		settingsChanged();
+	}
+
+	/**
+	 * @see #setMaxReferenceDepth(int)
+	 */
+	public int getMaxReferenceDepth() {
+		return maxReferenceDepth;
+	}
+
+	/**
+	 * Forgets the memoized queries of all references, e.g. after entries of
+	 * the search history were replaced. Cached queries parsed with the current
+	 * settings are dropped as well.
+	 */
+	public void clearReferences() {
+		if (queryCache != null) {
+			// the settings are unchanged, so the stale entries would still match
+			queryCache.invalidate(getSettingsFingerprint());
+		}
+		settingsChanged();
+	}
+
+	/**
+	 * Replaces every reference in <code>query</code>, recursively, by the
+	 * query text it stands for. A replacement is enclosed in parentheses
+	 * unless it parses to a single clause without a modifier, so
+	 * <code>#1 and #2</code> with <code>#1</code> = <code>ti=a</code> and
+	 * <code>#2</code> = <code>(ab=b)or(ab=c)</code> expands to
+	 * <code>ti=a and ((ab=b)or(ab=c))</code>.
+	 * 
+	 * @throws ParseException
+	 *             if a reference is unknown, cyclic or nested too deep
+	 */
+	public String expandReferences(String query) throws ParseException {
+		if (query.indexOf('#') < 0) {
+			return query;
+		}
+		StringBuilder sb = new StringBuilder(query.length() * 2);
+		expandReferences(query, sb, new ArrayList<String>());
+		return sb.toString();
+	}
+
+	private void expandReferences(String query, StringBuilder sb, List<String> path) throws ParseException {
+		int last = 0;
+		for (Token reference : lexReferences(query)) {
+			String name = reference.image.substring(1);
+			String text = resolveReference(name, path);
+			boolean group = !isSingleClause(text)
+					|| (reference.endColumn < query.length() && query.charAt(reference.endColumn) == '^');
+
+			sb.append(query, last, reference.beginColumn);
+			if (group) {
+				sb.append('(');
+			}
+			path.add(name);
+			expandReferences(text, sb, path);
+			path.remove(path.size() - 1);
+			if (group) {
+				sb.append(')');
+			}
+			last = reference.endColumn;
+		}
+		sb.append(query, last, query.length());
+	}
+
+	private static List<String> referenceNames(String query) {
+		List<String> names = new ArrayList<String>();
+		for (Token reference : lexReferences(query)) {
+			names.add(reference.image.substring(1));
+		}
+		return names;
+	}
+
+	/**
+	 * Adds the names of the references in a tree to <code>names</code>.
+	 * 
+	 * @return the clauses of the tree, counted like the grammar does.
+	 */
+	private static int collectReferences(QueryNode root, List<String> names) {
+		// without recursion, as trees may be nested arbitrarily deep
+		int count = 0;
+		ArrayDeque<QueryNode> stack = new ArrayDeque<QueryNode>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			QueryNode node = stack.pop();
+			if (node instanceof ReferenceNode) {
+				names.add(((ReferenceNode) node).getName());
+			} else if (node instanceof BooleanNode) {
+				List<ClauseNode> clauses = ((BooleanNode) node).getClauses();
+				for (int i = clauses.size() - 1; i >= 0; i--) {
+					QueryNode query = clauses.get(i).getQuery();
+					count += query instanceof MultiTermNode ? ((MultiTermNode) query).getTerms().size() : 1;
+					stack.push(query);
+				}
+			}
+		}
+		return count;
+	}
+
+	private void resolveReferences(List<String> names) throws ParseException {
+		for (String name : names) {
+			if (references != null && references.containsKey(name)) {
+				continue;
+			}
+
+			String text = resolveReference(name, referencePath);
+			referencePath.add(name);
+			// the clauses are counted where the reference is used, see
+			// handleReference()
+			int clauses = clauseCount;
+			try {
+				Query q = parseText(text);
+				if (references == null) {
+					references = new HashMap<String, Reference>();
+				}
+				references.put(name, new Reference(new ParseResult(q, getFieldTexts()), clauseCount - clauses));
+			} finally {
+				clauseCount = clauses;
+				referencePath.remove(referencePath.size() - 1);
+			}
+		}
+	}
+
+	private String resolveReference(String name, List<String> path) throws ParseException {
+		if (path.contains(name)) {
+			StringBuilder cycle = new StringBuilder("Cyclic reference ");
+			for (String n : path.subList(path.indexOf(name), path.size())) {
+				cycle.append('#').append(n).append(" -> ");
+			}
+			throw new ParseException(cycle.append('#').append(name).toString());
+		}
+		if (path.size() >= maxReferenceDepth) {
+			throw new ParseException("Reference #" + name + " is nested deeper than " + maxReferenceDepth);
+		}
+		if (referenceResolver == null) {
+			throw new ParseException("No ReferenceResolver set to resolve #" + name);
+		}
+		String text = referenceResolver.resolve(name);
+		if (text == null) {
+			throw new ParseException("Unknown reference #" + name);
+		}
+		return text;
+	}
+
+	/**
+	 * @return the reference tokens of <code>query</code>. Lexical errors are
+	 *         left to be reported by the actual parse.
+	 */
+	private static List<Token> lexReferences(String query) {
+		List<Token> tokens = new ArrayList<Token>();
+		QueryParserTokenManager lexer = new QueryParserTokenManager(new StringCharStream(query));
+		try {
+			for (Token t = lexer.getNextToken(); t.kind != QueryParserConstants.EOF; t = lexer.getNextToken()) {
+				if (t.kind == QueryParserConstants.REFERENCE) {
+					tokens.add(t);
+				}
+			}
+		} catch (TokenMgrError e) {
+			// reported by the parse itself
+		}
+		return tokens;
+	}
+
+	private static int indexOf(char[] buffer, int offset, int length, char c) {
+		for (int i = offset; i < offset + length; i++) {
+			if (buffer[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return whether <code>text</code> parses to at most one clause without
+	 *         a modifier, which keeps its meaning when inserted into another
+	 *         query without parentheses.
+	 */
+	private boolean isSingleClause(String text) throws ParseException {
+		List<ClauseNode> clauses = ((BooleanNode) parseToAst(text)).getClauses();
+		if (clauses.size() != 1) {
+			return clauses.isEmpty();
+		}
+		ClauseNode clause = clauses.get(0);
+		return clause.getModifier() == ClauseNode.Modifier.NONE && !(clause.getQuery() instanceof MultiTermNode);
+	}
+
+	/**
+	 * Adds every setting that influences the result of {@link #parse(String)}
+	 * to <code>settings</code>. The values are compared with
+	 * {@link Object#equals(Object)} to decide whether a cached query can be
+	 * reused, so the analyzer is compared by identity.
+	 * <p>
+	 * Subclasses that add settings of their own must override this method,
+	 * call <code>super</code>, and call {@link #settingsChanged()} from their
+	 * setters.
+	 */
+	protected void collectSettings(List<Object> settings) {
+		settings.add(getClass());
+		settings.add(getAnalyzer());
+		settings.add(field);
+		settings.add(operator);
+		settings.add(lowercaseExpandedTerms);
+		settings.add(multiTermRewriteMethod);
+		settings.add(allowLeadingWildcard);
+		settings.add(phraseSlop);
+		settings.add(fuzzyMinSim);
+		settings.add(fuzzyPrefixLength);
+		settings.add(locale);
+		settings.add(timeZone);
+		settings.add(dateResolution);
+		settings.add(fieldToDateResolution == null ? null : new HashMap<>(fieldToDateResolution));
+		settings.add(dateRangeFormat);
+		settings.add(fieldToDateRangeFormat == null ? null : new HashMap<>(fieldToDateRangeFormat));
+		settings.add(fieldToPointType == null ? null : new HashMap<>(fieldToPointType));
+		settings.add(analyzeRangeTerms);
+		settings.add(autoGeneratePhraseQueries);
+		settings.add(maxDeterminizedStates);
+		settings.add(enablePositionIncrements);
+		settings.add(enableGraphQueries);
+		settings.add(autoGenerateMultiTermSynonymsPhraseQuery);
+		settings.add(captureFieldTexts);
+		settings.add(fieldTable);
+		settings.add(referenceResolver);
+		settings.add(maxReferenceDepth);
+		settings.add(optimizer);
+		settings.add(termSetThreshold);
+		settings.add(budget);
+	}
+
+	/**
+	 * Must be called whenever a setting reported by
+	 * {@link #collectSettings(List)} changes. Cached queries parsed with the
+	 * previous settings are left in the {@link ParsedQueryCache}: their
+	 * fingerprint no longer matches this parser, other parsers with those
+	 * settings may still use them, and the LRU ages them out otherwise.
+	 */
+	protected void settingsChanged() {
+		settingsFingerprint = null;
+		references = null;
+	}
+
+	final Object getSettingsFingerprint() {
+		if (settingsFingerprint == null) {
+			List<Object> settings = new ArrayList<>();
+			collectSettings(settings);
+			settingsFingerprint = new SettingsFingerprint(settings.toArray());
+		}
+		return settingsFingerprint;
+	}
+
+	@Override
+	protected Query createFieldQuery(Analyzer analyzer, Occur operator, String field, String queryText,
+			boolean quoted, int phraseSlop) {
+		if (metrics == ParserMetrics.NOOP) {
+			return super.createFieldQuery(analyzer, operator, field, queryText, quoted, phraseSlop);
+		}
+		long start = System.nanoTime();
+		try {
+			return super.createFieldQuery(analyzer, operator, field, queryText, quoted, phraseSlop);
+		} finally {
+			analysisNanos += System.nanoTime() - start;
+		}
+	}
+
+	@Override
+	protected Query createFieldQuery(TokenStream source, Occur operator, String field, boolean quoted,
+			int phraseSlop) {
+		if (budget == null) {
+			return super.createFieldQuery(source, operator, field, quoted, phraseSlop);
+		}
+		return super.createFieldQuery(new BudgetTokenFilter(source), operator, field, quoted, phraseSlop);
+	}
+
+	@Override
+	public void setAnalyzer(Analyzer analyzer) {
+		super.setAnalyzer(analyzer);
+		settingsChanged();
+	}
+
+	@Override
+	public void setEnablePositionIncrements(boolean enable) {
+		super.setEnablePositionIncrements(enable);
+		settingsChanged();
+	}
+
+	@Override
+	public void setEnableGraphQueries(boolean v) {
+		super.setEnableGraphQueries(v);
+		settingsChanged();
+	}
+
+	@Override
+	public void setAutoGenerateMultiTermSynonymsPhraseQuery(boolean enable) {
+		super.setAutoGenerateMultiTermSynonymsPhraseQuery(enable);
+		settingsChanged();
+	}
+
+	/**
+	 * Whether the terms of a {@link MultiTermNode} are analyzed one by one.
+	 * Always true here; {@link QueryParser} makes it a setting.
+	 */
+	public boolean getSplitOnWhitespace() {
+		return true;
+	}
+
 	/**
 	 * @see #setAutoGeneratePhraseQueries(boolean)
 	 */
@@ -178,6 +1023,7 @@ public abstract class QueryParserBase extends QueryBuilder {
 	 */
 	public void setAutoGeneratePhraseQueries(boolean value) {
 		this.autoGeneratePhraseQueries = value;
+		settingsChanged();
 	}
 
 	/**
@@ -192,6 +1038,7 @@ public abstract class QueryParserBase extends QueryBuilder {
 	 */
 	public void setFuzzyMinSim(float fuzzyMinSim) {
 		this.fuzzyMinSim = fuzzyMinSim;
+		settingsChanged();
 	}
 
 	/**
@@ -211,6 +1058,7 @@ public abstract class QueryParserBase extends QueryBuilder {
 	 */
 	public void setFuzzyPrefixLength(int fuzzyPrefixLength) {
 		this.fuzzyPrefixLength = fuzzyPrefixLength;
+		settingsChanged();
 	}
 
 	/**
@@ -219,6 +1067,7 @@ public abstract class QueryParserBase extends QueryBuilder {
 	 */
 	public void setPhraseSlop(int phraseSlop) {
 		this.phraseSlop = phraseSlop;
+		settingsChanged();
 	}
 
 	/**
@@ -239,6 +1088,7 @@ public abstract class QueryParserBase extends QueryBuilder {
 	 */
 	public void setAllowLeadingWildcard(boolean allowLeadingWildcard) {
 		this.allowLeadingWildcard = allowLeadingWildcard;
+		settingsChanged();
 	}
 
 	/**
@@ -259,6 +1109,7 @@ public abstract class QueryParserBase extends QueryBuilder {
 	 */
 	public void setDefaultOperator(Operator op) {
 		this.operator = op;
+		settingsChanged();
 	}
 
 	/**
@@ -275,6 +1126,7 @@ public abstract class QueryParserBase extends QueryBuilder {
 	 */
 	public void setLowercaseExpandedTerms(boolean lowercaseExpandedTerms) {
 		this.lowercaseExpandedTerms = lowercaseExpandedTerms;
+		settingsChanged();
 	}
 
 	/**
@@ -297,6 +1149,7 @@ public abstract class QueryParserBase extends QueryBuilder {
 	 */
 	public void setMultiTermRewriteMethod(MultiTermQuery.RewriteMethod method) {
 		multiTermRewriteMethod = method;
+		settingsChanged();
 	}
 
 	/**
@@ -312,6 +1165,7 @@ public abstract class QueryParserBase extends QueryBuilder {
 	 */
 	public void setLocale(Locale locale) {
 		this.locale = locale;
+		settingsChanged();
 	}
 
 	/**
@@ -323,6 +1177,7 @@ public abstract class QueryParserBase extends QueryBuilder {
 
 	public void setTimeZone(TimeZone timeZone) {
 		this.timeZone = timeZone;
+		settingsChanged();
 	}
 
 	public TimeZone getTimeZone() {
@@ -340,6 +1195,7 @@ public abstract class QueryParserBase extends QueryBuilder {
 	 */
 	public void setDateResolution(DateTools.Resolution dateResolution) {
 		this.dateResolution = dateResolution;
+		settingsChanged();
 	}
 
 	/**
@@ -361,6 +1217,7 @@ public abstract class QueryParserBase extends QueryBuilder {
 		}
 
 		fieldToDateResolution.put(fieldName, dateResolution);
+		settingsChanged();
 	}
 
 	/**
@@ -390,6 +1247,92 @@ public abstract class QueryParserBase extends QueryBuilder {
 		return resolution;
 	}
 
+	/**
+	 * Sets the default patterns range bounds are parsed with for fields which
+	 * have a date resolution but no specific patterns, see
+	 * {@link #setDateRangeFormat(String, DateRangeFormat)}. Bounds that match
+	 * none of the patterns are parsed with the locale's short date format.
+	 * Defaults to {@link DateRangeFormat#PATENT}.
+	 *
+	 * @param dateRangeFormat
+	 *            the default patterns, <code>null</code> for
+	 *            {@link DateRangeFormat#NONE}
+	 */
+	public void setDateRangeFormat(DateRangeFormat dateRangeFormat) {
+		this.dateRangeFormat = dateRangeFormat == null ? DateRangeFormat.NONE : dateRangeFormat;
+		settingsChanged();
+	}
+
+	/**
+	 * Sets the patterns range bounds of a specific field are parsed with.
+	 *
+	 * @param fieldName
+	 *            field for which the patterns are to be set
+	 * @param dateRangeFormat
+	 *            patterns to set, <code>null</code> to use the default
+	 */
+	public void setDateRangeFormat(String fieldName, DateRangeFormat dateRangeFormat) {
+		if (fieldName == null) {
+			throw new IllegalArgumentException("Field must not be null.");
+		}
+
+		if (fieldToDateRangeFormat == null) {
+			// lazily initialize HashMap
+			fieldToDateRangeFormat = new HashMap<>();
+		}
+
+		fieldToDateRangeFormat.put(fieldName, dateRangeFormat);
+		settingsChanged();
+	}
+
+	/**
+	 * Returns the patterns range bounds of the given field are parsed with,
+	 * the default patterns if no field specific ones have been set.
+	 */
+	public DateRangeFormat getDateRangeFormat(String fieldName) {
+		if (fieldName == null) {
+			throw new IllegalArgumentException("Field must not be null.");
+		}
+
+		DateRangeFormat format = fieldToDateRangeFormat == null ? null : fieldToDateRangeFormat.get(fieldName);
+		return format == null ? dateRangeFormat : format;
+	}
+
+	/**
+	 * Sets the point type of a numeric or date field. Range clauses and plain
+	 * terms on the field then compile to point queries instead of
+	 * {@link TermRangeQuery}s and analyzed text queries, and text that is no
+	 * value of the type raises a {@link ParseException}. Dates are parsed
+	 * with the field's {@link #getDateRangeFormat(String) date range format}.
+	 *
+	 * @param fieldName
+	 *            field for which the point type is to be set
+	 * @param pointType
+	 *            point type to set, <code>null</code> for a text field
+	 */
+	public void setPointType(String fieldName, PointType pointType) {
+		if (fieldName == null) {
+			throw new IllegalArgumentException("Field must not be null.");
+		}
+
+		if (fieldToPointType == null) {
+			// lazily initialize HashMap
+			fieldToPointType = new HashMap<>();
+		}
+
+		fieldToPointType.put(fieldName, pointType);
+		settingsChanged();
+	}
+
+	/**
+	 * Returns the point type of the given field, <code>null</code> for text
+	 * fields.
+	 */
+	@Override
+	public PointType getPointType(String fieldName) {
+		return fieldToPointType == null ? null : fieldToPointType.get(fieldName);
+	}
+
 	/**
 	 * Set whether or not to analyze range terms when constructing
 	 * {@link TermRangeQuery}s. For example, setting this to true can enable
@@ -401,6 +1344,7 @@ public abstract class QueryParserBase extends QueryBuilder {
 	 */
 	public void setAnalyzeRangeTerms(boolean analyzeRangeTerms) {
 		this.analyzeRangeTerms = analyzeRangeTerms;
+		settingsChanged();
 	}
 
 	/**
@@ -419,6 +1363,7 @@ public abstract class QueryParserBase extends QueryBuilder {
 	 */
 	public void setMaxDeterminizedStates(int maxDeterminizedStates) {
 		this.maxDeterminizedStates = maxDeterminizedStates;
+		settingsChanged();
 	}
 
 	/**
@@ -430,8 +1375,81 @@ public abstract class QueryParserBase extends QueryBuilder {
 		return maxDeterminizedStates;
 	}
 
+	/**
+	 * Whether to leave token images out while lexing. The image of a token is
+	 * then only materialized when a grammar action needs it, through
+	 * {@link #image(Token)}, e.g. for terms sent to analysis, so operators,
+	 * parentheses and resolved field names produce no garbage. Subclasses
+	 * overriding the handle* methods must read images with
+	 * {@link #image(Token)} instead of {@link Token#image}. Default: false.
+	 */
+	public void setLazyTokenImages(boolean lazyTokenImages) {
+		this.lazyTokenImages = lazyTokenImages;
+	}
+
+	/**
+	 * @see #setLazyTokenImages(boolean)
+	 */
+	public boolean getLazyTokenImages() {
+		return lazyTokenImages;
+	}
+
+	/**
+	 * Whether to parse parenthesized groups with an explicit stack instead of
+	 * one recursion of the generated parser per parenthesis, which costs
+	 * several stack frames and a lookahead scan per level. Queries nested
+	 * thousands of levels deep, e.g. from a query builder UI, then parse
+	 * without {@link StackOverflowError}, their depth bounded only by memory
+	 * and {@link ParseBudget.Limit#NESTING_DEPTH}. The syntax trees are the
+	 * same, only the wording of syntax errors may differ. Compilation never
+	 * recurses per nesting level. Default: false.
+	 */
+	public void setIterativeNesting(boolean iterativeNesting) {
+		this.iterativeNesting = iterativeNesting;
+	}
+
+	/**
+	 * @see #setIterativeNesting(boolean)
+	 */
+	public boolean getIterativeNesting() {
+		return iterativeNesting;
+	}
+
+	/**
+	 * Whether to record a {@link FieldText} for every term and quoted phrase
+	 * of the query. Disable it when the field texts are not used, e.g. for
+	 * highlighting, to save the allocations. Default: true.
+	 */
+	public void setCaptureFieldTexts(boolean captureFieldTexts) {
+		this.captureFieldTexts = captureFieldTexts;
+		settingsChanged();
+	}
+
+	/**
+	 * @see #setCaptureFieldTexts(boolean)
+	 */
+	public boolean getCaptureFieldTexts() {
+		return captureFieldTexts;
+	}
+
+	/**
+	 * @return the field texts of the most recent parse, empty if none were
+	 *         captured.
+	 */
 	public List<FieldText> getFieldTexts() {
-		return fieldTexts;
+		return fieldTexts == null ? Collections.<FieldText> emptyList() : fieldTexts;
+	}
+
+	/**
+	 * Records a field text of the current parse. Called by the grammar.
+	 */
+	protected void addFieldText(String field, String text) {
+		if (captureFieldTexts) {
+			if (fieldTexts == null) {
+				fieldTexts = new ArrayList<FieldText>();
+			}
+			fieldTexts.add(new FieldText(field, text));
+		}
 	}
 
 	protected void addClause(List<BooleanClause> clauses, int conj, int mods, Query q) {
@@ -533,9 +1551,70 @@ public abstract class QueryParserBase extends QueryBuilder {
 	 *                throw in overridden method to disallow
 	 */
 	protected Query getFieldQuery(String field, String queryText, boolean quoted) throws ParseException {
+		PointType pointType = getPointType(field);
+		if (pointType != null) {
+			return newPointQuery(pointType, field, queryText);
+		}
 		return newFieldQuery(getAnalyzer(), field, queryText, quoted);
 	}
 
+	/**
+	 * Builds the query of a plain term on a point field: an exact query, or
+	 * a boolean query of exact queries if the text holds several values.
+	 */
+	private Query newPointQuery(PointType pointType, String field, String queryText) throws ParseException {
+		String[] values = queryText.trim().split("\\s+");
+		if (values.length == 1) {
+			return newPointExactQuery(pointType, field, values[0]);
+		}
+		BooleanClause.Occur occur = operator == Operator.AND ? BooleanClause.Occur.MUST : BooleanClause.Occur.SHOULD;
+		List<BooleanClause> clauses = new ArrayList<BooleanClause>(values.length);
+		for (String value : values) {
+			clauses.add(newBooleanClause(newPointExactQuery(pointType, field, value), occur));
+		}
+		return getBooleanQuery(clauses);
+	}
+
+	private Query newPointExactQuery(PointType pointType, String field, String value) throws ParseException {
+		// dates match the whole period they name
+		Number lower = pointValue(pointType, field, value, false);
+		Number upper = pointType == PointType.DATE ? pointValue(pointType, field, value, true) : lower;
+		return pointType.newRangeQuery(field, lower, upper, true, true);
+	}
+
+	/**
+	 * @return <code>text</code> as a value of <code>pointType</code>,
+	 *         <code>null</code> for an open bound
+	 */
+	private Number pointValue(PointType pointType, String field, String text, boolean endOfPeriod)
+			throws ParseException {
+		if (text == null) {
+			return null;
+		}
+		if (pointType == PointType.DATE) {
+			long time = dateMillis(getDateRangeFormat(field), text, endOfPeriod);
+			if (time == DateRangeFormat.NO_DATE) {
+				throw new ParseException("Cannot parse '" + text + "' as a date of field " + field);
+			}
+			return time;
+		}
+		try {
+			switch (pointType) {
+			case INT:
+				return Integer.parseInt(text);
+			case LONG:
+				return Long.parseLong(text);
+			case FLOAT:
+				return Float.parseFloat(text);
+			default:
+				return Double.parseDouble(text);
+			}
+		} catch (NumberFormatException e) {
+			throw new ParseException("Cannot parse '" + text + "' as " + pointType.name().toLowerCase(Locale.ROOT)
+					+ " of field " + field);
+		}
+	}
+
 	/**
 	 * @exception org.apache.lucene.queryparser.classic.ParseException
 	 *                throw in overridden method to disallow
@@ -593,36 +1672,75 @@ public abstract class QueryParserBase extends QueryBuilder {
 			part2 = part2 == null ? null : part2.toLowerCase(locale);
 		}
 
-		DateFormat df = DateFormat.getDateInstance(DateFormat.SHORT, locale);
-		df.setLenient(true);
+		PointType pointType = getPointType(field);
+		if (pointType != null) {
+			return pointType.newRangeQuery(field, pointValue(pointType, field, part1, false),
+					pointValue(pointType, field, part2, endInclusive), startInclusive, endInclusive);
+		}
+
+		// without a resolution bounds are never dates
 		DateTools.Resolution resolution = getDateResolution(field);
+		if (resolution != null) {
+			DateRangeFormat format = getDateRangeFormat(field);
+			part1 = dateString(format, part1, false, resolution);
+			part2 = dateString(format, part2, endInclusive, resolution);
+		}
 
-		try {
-			part1 = DateTools.dateToString(df.parse(part1), resolution);
-		} catch (Exception e) {
+		return newRangeQuery(field, part1, part2, startInclusive, endInclusive);
+	}
+
+	/**
+	 * @return <code>part</code> as a date string of <code>resolution</code>,
+	 *         or <code>part</code> itself if it is no date
+	 */
+	private String dateString(DateRangeFormat format, String part, boolean endOfDay,
+			DateTools.Resolution resolution) {
+		if (part == null) {
+			return null;
 		}
+		long time = dateMillis(format, part, endOfDay);
+		return time == DateRangeFormat.NO_DATE ? part : DateTools.timeToString(time, resolution);
+	}
 
-		try {
-			Date d2 = df.parse(part2);
-			if (endInclusive) {
+	/**
+	 * @return <code>part</code> in milliseconds since the epoch, or
+	 *         {@link DateRangeFormat#NO_DATE} if it is no date
+	 */
+	private long dateMillis(DateRangeFormat format, String part, boolean endOfDay) {
+		if (zoneIdTimeZone != timeZone) {
+			zoneId = timeZone.toZoneId();
+			zoneIdTimeZone = timeZone;
+		}
+		long time = format.parse(part, endOfDay, zoneId);
+		if (time == DateRangeFormat.NO_DATE) {
+			if (localeDateFormatLocale != locale) {
+				localeDateFormat = DateFormat.getDateInstance(DateFormat.SHORT, locale);
+				localeDateFormat.setLenient(true);
+				localeDateFormatLocale = locale;
+				calendar = null;
+			}
+			Date date = localeDateFormat.parse(part, new ParsePosition(0));
+			if (date == null) {
+				return DateRangeFormat.NO_DATE;
+			}
+			if (endOfDay) {
 				// The user can only specify the date, not the time, so make
-				// sure
-				// the time is set to the latest possible time of that date to
-				// really
-				// include all documents:
-				Calendar cal = Calendar.getInstance(timeZone, locale);
-				cal.setTime(d2);
-				cal.set(Calendar.HOUR_OF_DAY, 23);
-				cal.set(Calendar.MINUTE, 59);
-				cal.set(Calendar.SECOND, 59);
-				cal.set(Calendar.MILLISECOND, 999);
-				d2 = cal.getTime();
+				// sure the time is set to the latest possible time of that date
+				// to really include all documents:
+				if (calendar == null || calendarTimeZone != timeZone) {
+					calendar = Calendar.getInstance(timeZone, locale);
+					calendarTimeZone = timeZone;
+				}
+				calendar.setTime(date);
+				calendar.set(Calendar.HOUR_OF_DAY, 23);
+				calendar.set(Calendar.MINUTE, 59);
+				calendar.set(Calendar.SECOND, 59);
+				calendar.set(Calendar.MILLISECOND, 999);
+				date = calendar.getTime();
 			}
-			part2 = DateTools.dateToString(d2, resolution);
-		} catch (Exception e) {
+			time = date.getTime();
 		}
-
-		return newRangeQuery(field, part1, part2, startInclusive, endInclusive);
+		return time;
 	}
 
 	/**
@@ -900,13 +2018,13 @@ public abstract class QueryParserBase extends QueryBuilder {
 			boolean fuzzy, boolean regexp) throws ParseException {
 		Query q;
 
-		String termImage = new String(term.image);
+		String termImage = image(term);
 		if (wildcard) {
-			q = getWildcardQuery(qfield, term.image);
+			q = getWildcardQuery(qfield, termImage);
 		} else if (prefix) {
-			q = getPrefixQuery(qfield, new String(term.image.substring(0, term.image.length() - 1)));
+			q = getPrefixQuery(qfield, termImage.substring(0, termImage.length() - 1));
 		} else if (regexp) {
-			q = getRegexpQuery(qfield, term.image.substring(1, term.image.length() - 1));
+			q = getRegexpQuery(qfield, termImage.substring(1, termImage.length() - 1));
 		} else if (fuzzy) {
 			q = handleBareFuzzy(qfield, fuzzySlop, termImage);
 		} else {
@@ -919,7 +2037,7 @@ public abstract class QueryParserBase extends QueryBuilder {
 		Query q;
 		float fms = fuzzyMinSim;
 		try {
-			fms = Float.parseFloat(fuzzySlop.image.substring(1));
+			fms = Float.parseFloat(image(fuzzySlop).substring(1));
 		} catch (Exception ignored) {
 		}
 		if (fms < 0.0f) {
@@ -936,11 +2054,12 @@ public abstract class QueryParserBase extends QueryBuilder {
 		int s = phraseSlop; // default
 		if (fuzzySlop != null) {
 			try {
-				s = (int) Float.parseFloat(fuzzySlop.image.substring(1));
+				s = (int) Float.parseFloat(image(fuzzySlop).substring(1));
 			} catch (Exception ignored) {
 			}
 		}
-		return getFieldQuery(qfield, new String(term.image.substring(1, term.image.length() - 1)), s);
+		String termImage = image(term);
+		return getFieldQuery(qfield, termImage.substring(1, termImage.length() - 1), s);
 	}
 
 	// extracted from the .jj grammar
@@ -948,7 +2067,7 @@ public abstract class QueryParserBase extends QueryBuilder {
 		if (boost != null) {
 			float f = (float) 1.0;
 			try {
-				f = Float.parseFloat(boost.image);
+				f = Float.parseFloat(image(boost));
 			} catch (Exception ignored) {
 				/*
 				 * Should this be handled somehow? (defaults to "no boost", if
@@ -964,7 +2083,170 @@ public abstract class QueryParserBase extends QueryBuilder {
 		return q;
 	}
 
-	protected String getField(Token field) {
-		return field.image.toLowerCase();
+	/**
+	 * Rejects a reference in a clause of another field than the default
+	 * field, such as <code>ti=#1</code>: referenced queries are always parsed
+	 * against the default field.
+	 */
+	final void checkReferenceField(String qfield, Token reference) throws ParseException {
+		if (!qfield.equals(field)) {
+			throw new ParseException("Reference " + image(reference) + " at column " + reference.beginColumn
+					+ " cannot be applied to field " + qfield + ", referenced queries use the default field");
+		}
+	}
+
+	/**
+	 * Returns the memoized query of a reference such as <code>#12</code> and
+	 * records its field texts. Every use of a reference counts its clauses
+	 * against the {@link ParseBudget}.
+	 * 
+	 * @throws ParseException
+	 *             if <code>qfield</code> is not the default field, see
+	 *             {@link #checkReferenceField(String, Token)}
+	 */
+	protected Query handleReference(String qfield, Token reference) throws ParseException {
+		checkReferenceField(qfield, reference);
+		Reference ref = references == null ? null : references.get(image(reference).substring(1));
+		if (ref == null) {
+			throw new ParseException("Unresolved reference " + reference.image);
+		}
+		countClauses(ref.clauses);
+		ParseResult result = ref.result;
+		for (FieldText fieldText : result.getFieldTexts()) {
+			addFieldText(fieldText.getField(), fieldText.getText());
+		}
+		return result.getQuery();
+	}
+
+	/**
+	 * @return the value of a boost token, or {@link Float#NaN} if there is
+	 *         none. Like {@link #handleBoost(Query, Token)} an invalid number
+	 *         counts as 1.
+	 */
+	final float boost(Token boost) {
+		if (boost == null) {
+			return Float.NaN;
+		}
+		try {
+			return Float.parseFloat(image(boost));
+		} catch (NumberFormatException e) {
+			return 1.0f;
+		}
+	}
+
+	/**
+	 * Resolves the field of a <code>field:</code> clause.
+	 * 
+	 * @throws MissingFieldException
+	 *             if the field is not in the {@link #setFieldTable(FieldTable)
+	 *             field table}
+	 */
+	protected String getField(Token field) throws ParseException {
+		FieldTable table = fieldTable;
+		if (table != null) {
+			if (field.image == null) {
+				// resolve from the source, the image is only needed for errors
+				String resolved = table.resolve(source, field.beginColumn, field.endColumn);
+				if (resolved != null) {
+					return resolved;
+				}
+				image(field);
+			}
+			return table.resolve(field);
+		}
+		return image(field).toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Returns the image of a token, materializing it from the query if it was
+	 * left out, see {@link #setLazyTokenImages(boolean)}. Grammar actions and
+	 * the handle* methods read token images only through this method.
+	 */
+	protected final String image(Token token) {
+		if (token.image == null) {
+			token.image = source.image(token.beginColumn, token.endColumn);
+		}
+		return token.image;
+	}
+
+	/**
+	 * Counts the tokens of analysis against the budget, and checks the
+	 * deadline every 64 tokens.
+	 */
+	private final class BudgetTokenFilter extends TokenFilter {
+		BudgetTokenFilter(TokenStream input) {
+			super(input);
+		}
+
+		@Override
+		public boolean incrementToken() throws IOException {
+			if (!input.incrementToken()) {
+				return false;
+			}
+			long max = budget.get(ParseBudget.Limit.ANALYSIS_TOKENS);
+			try {
+				if (++analysisTokens > max) {
+					throw new BudgetExceededException(ParseBudget.Limit.ANALYSIS_TOKENS, max);
+				}
+				if ((analysisTokens & 63) == 0) {
+					checkDeadline();
+				}
+			} catch (BudgetExceededException e) {
+				throw new AnalysisBudgetExceeded(e);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Carries a {@link BudgetExceededException} out of analysis, which cannot
+	 * throw checked exceptions other than {@link IOException}.
+	 */
+	private static final class AnalysisBudgetExceeded extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		final BudgetExceededException exception;
+
+		AnalysisBudgetExceeded(BudgetExceededException exception) {
+			super(exception.getMessage(), exception, false, false);
+			this.exception = exception;
+		}
+	}
+
+	/**
+	 * A memoized referenced query and the clauses its parse counted.
+	 */
+	private static final class Reference {
+		final ParseResult result;
+		final int clauses;
+
+		Reference(ParseResult result, int clauses) {
+			this.result = result;
+			this.clauses = clauses;
+		}
+	}
+
+	/**
+	 * Value object over the collected settings, with a precomputed hash.
+	 */
+	private static final class SettingsFingerprint {
+		private final Object[] settings;
+		private final int hash;
+
+		SettingsFingerprint(Object[] settings) {
+			this.settings = settings;
+			this.hash = Arrays.hashCode(settings);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof SettingsFingerprint && hash == ((SettingsFingerprint) obj).hash
+					&& Arrays.equals(settings, ((SettingsFingerprint) obj).settings);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
 	}
 }
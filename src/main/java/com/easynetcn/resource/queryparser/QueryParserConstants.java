@@ -57,21 +57,23 @@ public interface QueryParserConstants {
   /** RegularExpression Id. */
   int REGEXPTERM = 24;
   /** RegularExpression Id. */
-  int RANGEIN_START = 25;
+  int REFERENCE = 25;
   /** RegularExpression Id. */
-  int RANGEEX_START = 26;
+  int RANGEIN_START = 26;
   /** RegularExpression Id. */
-  int NUMBER = 27;
+  int RANGEEX_START = 27;
   /** RegularExpression Id. */
-  int RANGE_TO = 28;
+  int NUMBER = 28;
   /** RegularExpression Id. */
-  int RANGEIN_END = 29;
+  int RANGE_TO = 29;
   /** RegularExpression Id. */
-  int RANGEEX_END = 30;
+  int RANGEIN_END = 30;
   /** RegularExpression Id. */
-  int RANGE_QUOTED = 31;
+  int RANGEEX_END = 31;
   /** RegularExpression Id. */
-  int RANGE_GOOP = 32;
+  int RANGE_QUOTED = 32;
+  /** RegularExpression Id. */
+  int RANGE_GOOP = 33;
 
   /** Lexical state. */
   int Boost = 0;
@@ -107,6 +109,7 @@ public interface QueryParserConstants {
     "<PREFIXTERM>",
     "<WILDTERM>",
     "<REGEXPTERM>",
+    "<REFERENCE>",
     "\"[\"",
     "\"{\"",
     "<NUMBER>",
@@ -2,16 +2,12 @@
 /* Generated By:JavaCC: Do not edit this line. QueryParserTokenManager.java */
 package com.easynetcn.resource.queryparser;
 import java.io.StringReader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.DateTools;
-import org.apache.lucene.search.BooleanClause;
-import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermRangeQuery;
 
 /** Token Manager. */
@@ -45,17 +41,17 @@ private int jjMoveStringLiteralDfa0_2(){
       case 41:
          return jjStopAtPos(0, 15);
       case 42:
-         return jjStartNfaWithStates_2(0, 17, 50);
+         return jjStartNfaWithStates_2(0, 17, 54);
       case 43:
          return jjStartNfaWithStates_2(0, 11, 15);
       case 45:
          return jjStartNfaWithStates_2(0, 12, 15);
       case 91:
-         return jjStopAtPos(0, 25);
+         return jjStopAtPos(0, 26);
       case 94:
          return jjStopAtPos(0, 18);
       case 123:
-         return jjStopAtPos(0, 26);
+         return jjStopAtPos(0, 27);
       default :
          return jjMoveNfa_2(0, 0);
    }
@@ -83,7 +79,7 @@ static final long[] jjbitVec4 = {
 private int jjMoveNfa_2(int startState, int curPos)
 {
    int startsAt = 0;
-   jjnewStateCnt = 50;
+   jjnewStateCnt = 54;
    int i = 1;
    jjstateSet[0] = startState;
    int kind = 0x7fffffff;
@@ -117,6 +113,8 @@ private int jjMoveNfa_2(int startState, int curPos)
                      if (kind > 16)
                         kind = 16;
                   }
+                  else if (curChar == 35)
+                     { jjCheckNAddTwoStates(43, 44); }
                   else if (curChar == 47)
                      { jjCheckNAddStates(0, 2); }
                   else if (curChar == 34)
@@ -140,7 +138,7 @@ private int jjMoveNfa_2(int startState, int curPos)
                   if (curChar == 38)
                      jjstateSet[jjnewStateCnt++] = 4;
                   break;
-               case 50:
+               case 54:
                case 34:
                   if ((0xdbfffcf2ffffd9ffL & l) == 0L)
                      break;
@@ -259,29 +257,45 @@ private int jjMoveNfa_2(int startState, int curPos)
                      kind = 24;
                   break;
                case 42:
+                  if (curChar == 35)
+                     { jjCheckNAddTwoStates(43, 44); }
+                  break;
+               case 43:
+                  if ((0x5bfff8f2ffffd9ffL & l) == 0L)
+                     break;
+                  if (kind > 25)
+                     kind = 25;
+                  { jjCheckNAddTwoStates(43, 44); }
+                  break;
+               case 45:
+                  if (kind > 25)
+                     kind = 25;
+                  { jjCheckNAddTwoStates(43, 44); }
+                  break;
+               case 46:
                   if ((0x5bff50f0ffffd9ffL & l) == 0L)
                      break;
                   if (kind > 20)
                      kind = 20;
                   { jjCheckNAddStates(6, 10); }
                   break;
-               case 43:
+               case 47:
                   if ((0x5bfff8f2ffffd9ffL & l) == 0L)
                      break;
                   if (kind > 20)
                      kind = 20;
-                  { jjCheckNAddTwoStates(43, 44); }
+                  { jjCheckNAddTwoStates(47, 48); }
                   break;
-               case 45:
+               case 49:
                   if (kind > 20)
                      kind = 20;
-                  { jjCheckNAddTwoStates(43, 44); }
+                  { jjCheckNAddTwoStates(47, 48); }
                   break;
-               case 46:
+               case 50:
                   if ((0x5bfff8f2ffffd9ffL & l) != 0L)
                      { jjCheckNAddStates(18, 20); }
                   break;
-               case 48:
+               case 52:
                   { jjCheckNAddStates(18, 20); }
                   break;
                default : break;
@@ -325,7 +339,7 @@ private int jjMoveNfa_2(int startState, int curPos)
                   else if (curChar == 124)
                      jjstateSet[jjnewStateCnt++] = 8;
                   break;
-               case 50:
+               case 54:
                   if ((0x97ffffff87ffffffL & l) != 0L)
                   {
                      if (kind > 23)
@@ -455,41 +469,57 @@ private int jjMoveNfa_2(int startState, int curPos)
                   if (curChar == 92)
                      jjstateSet[jjnewStateCnt++] = 39;
                   break;
-               case 42:
+               case 43:
+                  if ((0x97ffffff87ffffffL & l) == 0L)
+                     break;
+                  if (kind > 25)
+                     kind = 25;
+                  { jjCheckNAddTwoStates(43, 44); }
+                  break;
+               case 44:
+                  if (curChar == 92)
+                     jjstateSet[jjnewStateCnt++] = 45;
+                  break;
+               case 45:
+                  if (kind > 25)
+                     kind = 25;
+                  { jjCheckNAddTwoStates(43, 44); }
+                  break;
+               case 46:
                   if ((0x97ffffff87ffffffL & l) == 0L)
                      break;
                   if (kind > 20)
                      kind = 20;
                   { jjCheckNAddStates(6, 10); }
                   break;
-               case 43:
+               case 47:
                   if ((0x97ffffff87ffffffL & l) == 0L)
                      break;
                   if (kind > 20)
                      kind = 20;
-                  { jjCheckNAddTwoStates(43, 44); }
+                  { jjCheckNAddTwoStates(47, 48); }
                   break;
-               case 44:
+               case 48:
                   if (curChar == 92)
-                     { jjCheckNAdd(45); }
+                     { jjCheckNAdd(49); }
                   break;
-               case 45:
+               case 49:
                   if (kind > 20)
                      kind = 20;
-                  { jjCheckNAddTwoStates(43, 44); }
+                  { jjCheckNAddTwoStates(47, 48); }
                   break;
-               case 46:
+               case 50:
                   if ((0x97ffffff87ffffffL & l) != 0L)
                      { jjCheckNAddStates(18, 20); }
                   break;
-               case 47:
+               case 51:
                   if (curChar == 92)
-                     { jjCheckNAdd(48); }
+                     { jjCheckNAdd(52); }
                   break;
-               case 48:
+               case 52:
                   { jjCheckNAddStates(18, 20); }
                   break;
-               case 49:
+               case 53:
                   if (curChar == 92)
                      { jjCheckNAddStates(21, 23); }
                   break;
@@ -527,7 +557,7 @@ private int jjMoveNfa_2(int startState, int curPos)
                      { jjCheckNAddStates(6, 10); }
                   }
                   break;
-               case 50:
+               case 54:
                case 34:
                   if (!jjCanMove_2(hiByte, i1, i2, l1, l2))
                      break;
@@ -590,32 +620,46 @@ private int jjMoveNfa_2(int startState, int curPos)
                   if (jjCanMove_1(hiByte, i1, i2, l1, l2))
                      { jjAddStates(0, 2); }
                   break;
-               case 42:
+               case 43:
+                  if (!jjCanMove_2(hiByte, i1, i2, l1, l2))
+                     break;
+                  if (kind > 25)
+                     kind = 25;
+                  { jjCheckNAddTwoStates(43, 44); }
+                  break;
+               case 45:
+                  if (!jjCanMove_1(hiByte, i1, i2, l1, l2))
+                     break;
+                  if (kind > 25)
+                     kind = 25;
+                  { jjCheckNAddTwoStates(43, 44); }
+                  break;
+               case 46:
                   if (!jjCanMove_2(hiByte, i1, i2, l1, l2))
                      break;
                   if (kind > 20)
                      kind = 20;
                   { jjCheckNAddStates(6, 10); }
                   break;
-               case 43:
+               case 47:
                   if (!jjCanMove_2(hiByte, i1, i2, l1, l2))
                      break;
                   if (kind > 20)
                      kind = 20;
-                  { jjCheckNAddTwoStates(43, 44); }
+                  { jjCheckNAddTwoStates(47, 48); }
                   break;
-               case 45:
+               case 49:
                   if (!jjCanMove_1(hiByte, i1, i2, l1, l2))
                      break;
                   if (kind > 20)
                      kind = 20;
-                  { jjCheckNAddTwoStates(43, 44); }
+                  { jjCheckNAddTwoStates(47, 48); }
                   break;
-               case 46:
+               case 50:
                   if (jjCanMove_2(hiByte, i1, i2, l1, l2))
                      { jjCheckNAddStates(18, 20); }
                   break;
-               case 48:
+               case 52:
                   if (jjCanMove_1(hiByte, i1, i2, l1, l2))
                      { jjCheckNAddStates(18, 20); }
                   break;
@@ -630,7 +674,7 @@ private int jjMoveNfa_2(int startState, int curPos)
          kind = 0x7fffffff;
       }
       ++curPos;
-      if ((i = jjnewStateCnt) == (startsAt = 50 - (jjnewStateCnt = startsAt)))
+      if ((i = jjnewStateCnt) == (startsAt = 54 - (jjnewStateCnt = startsAt)))
          return curPos;
       try { curChar = input_stream.readChar(); }
       catch(java.io.IOException e) { return curPos; }
@@ -661,8 +705,8 @@ private int jjMoveNfa_0(int startState, int curPos)
                case 0:
                   if ((0x3ff000000000000L & l) == 0L)
                      break;
-                  if (kind > 27)
-                     kind = 27;
+                  if (kind > 28)
+                     kind = 28;
                   { jjAddStates(27, 28); }
                   break;
                case 1:
@@ -672,8 +716,8 @@ private int jjMoveNfa_0(int startState, int curPos)
                case 2:
                   if ((0x3ff000000000000L & l) == 0L)
                      break;
-                  if (kind > 27)
-                     kind = 27;
+                  if (kind > 28)
+                     kind = 28;
                   { jjCheckNAdd(2); }
                   break;
                default : break;
@@ -723,9 +767,9 @@ private final int jjStopStringLiteralDfa_1(int pos, long active0){
    switch (pos)
    {
       case 0:
-         if ((active0 & 0x10000000L) != 0L)
+         if ((active0 & 0x20000000L) != 0L)
          {
-            jjmatchedKind = 32;
+            jjmatchedKind = 33;
             return 6;
          }
          return -1;
@@ -740,12 +784,12 @@ private int jjMoveStringLiteralDfa0_1(){
    switch(curChar)
    {
       case 93:
-         return jjStopAtPos(0, 29);
+         return jjStopAtPos(0, 30);
       case 84:
       case 116:
-         return jjMoveStringLiteralDfa1_1(0x10000000L);
+         return jjMoveStringLiteralDfa1_1(0x20000000L);
       case 125:
-         return jjStopAtPos(0, 30);
+         return jjStopAtPos(0, 31);
       default :
          return jjMoveNfa_1(0, 0);
    }
@@ -760,8 +804,8 @@ private int jjMoveStringLiteralDfa1_1(long active0){
    {
       case 79:
       case 111:
-         if ((active0 & 0x10000000L) != 0L)
-            return jjStartNfaWithStates_1(1, 28, 6);
+         if ((active0 & 0x20000000L) != 0L)
+            return jjStartNfaWithStates_1(1, 29, 6);
          break;
       default :
          break;
@@ -797,8 +841,8 @@ private int jjMoveNfa_1(int startState, int curPos)
                case 0:
                   if ((0xfffffffeffffffffL & l) != 0L)
                   {
-                     if (kind > 32)
-                        kind = 32;
+                     if (kind > 33)
+                        kind = 33;
                      { jjCheckNAdd(6); }
                   }
                   if ((0x100002600L & l) != 0L)
@@ -822,14 +866,14 @@ private int jjMoveNfa_1(int startState, int curPos)
                      { jjCheckNAddStates(29, 31); }
                   break;
                case 5:
-                  if (curChar == 34 && kind > 31)
-                     kind = 31;
+                  if (curChar == 34 && kind > 32)
+                     kind = 32;
                   break;
                case 6:
                   if ((0xfffffffeffffffffL & l) == 0L)
                      break;
-                  if (kind > 32)
-                     kind = 32;
+                  if (kind > 33)
+                     kind = 33;
                   { jjCheckNAdd(6); }
                   break;
                default : break;
@@ -847,8 +891,8 @@ private int jjMoveNfa_1(int startState, int curPos)
                case 6:
                   if ((0xdfffffffdfffffffL & l) == 0L)
                      break;
-                  if (kind > 32)
-                     kind = 32;
+                  if (kind > 33)
+                     kind = 33;
                   { jjCheckNAdd(6); }
                   break;
                case 2:
@@ -881,8 +925,8 @@ private int jjMoveNfa_1(int startState, int curPos)
                   }
                   if (jjCanMove_1(hiByte, i1, i2, l1, l2))
                   {
-                     if (kind > 32)
-                        kind = 32;
+                     if (kind > 33)
+                        kind = 33;
                      { jjCheckNAdd(6); }
                   }
                   break;
@@ -893,8 +937,8 @@ private int jjMoveNfa_1(int startState, int curPos)
                case 6:
                   if (!jjCanMove_1(hiByte, i1, i2, l1, l2))
                      break;
-                  if (kind > 32)
-                     kind = 32;
+                  if (kind > 33)
+                     kind = 33;
                   { jjCheckNAdd(6); }
                   break;
                default : if (i1 == 0 || l1 == 0 || i2 == 0 ||  l2 == 0) break; else break;
@@ -918,8 +962,8 @@ private int jjMoveNfa_1(int startState, int curPos)
 /** Token literal values. */
 public static final String[] jjstrLiteralImages = {
 "", null, null, null, null, null, null, null, null, null, null, "\53", "\55", 
-null, "\50", "\51", null, "\52", "\136", null, null, null, null, null, null, "\133", 
-"\173", null, null, "\135", "\175", null, null, };
+null, "\50", "\51", null, "\52", "\136", null, null, null, null, null, null, null, 
+"\133", "\173", null, null, "\135", "\175", null, null, };
 protected Token jjFillToken()
 {
    final Token t;
@@ -946,8 +990,8 @@ protected Token jjFillToken()
    return t;
 }
 static final int[] jjnextStates = {
-   38, 40, 41, 18, 19, 21, 43, 44, 46, 47, 32, 23, 24, 26, 27, 25, 
-   26, 27, 46, 47, 32, 45, 48, 36, 23, 29, 30, 0, 1, 2, 4, 5, 
+   38, 40, 41, 18, 19, 21, 47, 48, 50, 51, 32, 23, 24, 26, 27, 25, 
+   26, 27, 50, 51, 32, 49, 52, 36, 23, 29, 30, 0, 1, 2, 4, 5, 
 };
 private static final boolean jjCanMove_0(int hiByte, int i1, int i2, long l1, long l2)
 {
@@ -1156,7 +1200,7 @@ private void jjCheckNAddStates(int start, int end)
   {
     int i;
     jjround = 0x80000001;
-    for (i = 50; i-- > 0;)
+    for (i = 54; i-- > 0;)
       jjrounds[i] = 0x80000000;
   }
 
@@ -1188,10 +1232,10 @@ public static final String[] lexStateNames = {
 /** Lex State array. */
 public static final int[] jjnewLexState = {
    -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 0, -1, -1, -1, -1, -1, -1, 
-   1, 1, 2, -1, 2, 2, -1, -1, 
+   -1, 1, 1, 2, -1, 2, 2, -1, -1, 
 };
 static final long[] jjtoToken = {
-   0x1ffffff01L, 
+   0x3ffffff01L, 
 };
 static final long[] jjtoSkip = {
    0x80L, 
@@ -1204,8 +1248,8 @@ static final long[] jjtoMore = {
 };
     protected CharStream  input_stream;
 
-    private final int[] jjrounds = new int[50];
-    private final int[] jjstateSet = new int[2 * 50];
+    private final int[] jjrounds = new int[54];
+    private final int[] jjstateSet = new int[2 * 54];
     private final StringBuilder jjimage = new StringBuilder();
     private StringBuilder image = jjimage;
     private int jjimageLen;
@@ -0,0 +1,37 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.List;
+
+import org.apache.lucene.search.Query;
+
+/**
+ * Receives the records of a {@link QueryFileParser}, one per non-blank line,
+ * in file order.
+ */
+public interface QueryRecordHandler {
+
+	/**
+	 * Called for a line that parsed.
+	 *
+	 * @param lineNumber
+	 *            the line number, starting at 1.
+	 * @param query
+	 *            the parsed query.
+	 * @param fieldTexts
+	 *            the field texts of the query; only valid until this method
+	 *            returns, copy them to keep them.
+	 */
+	void onQuery(long lineNumber, Query query, List<FieldText> fieldTexts);
+
+	/**
+	 * Called for a line that failed to parse.
+	 *
+	 * @param lineNumber
+	 *            the line number, starting at 1.
+	 * @param line
+	 *            the text of the line.
+	 * @param e
+	 *            why it failed.
+	 */
+	void onError(long lineNumber, String line, ParseException e);
+}
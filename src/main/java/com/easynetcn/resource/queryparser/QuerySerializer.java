@@ -0,0 +1,487 @@
+package com.easynetcn.resource.queryparser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.apache.lucene.index.PrefixCodedTerms;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MultiPhraseQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.PointInSetQuery;
+import org.apache.lucene.search.PointRangeQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.RegexpQuery;
+import org.apache.lucene.search.SynonymQuery;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.search.spans.SpanNearQuery;
+import org.apache.lucene.search.spans.SpanOrQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Writes queries as text into a single {@link Appendable}, see
+ * {@link QueryBuilder#toString(Query, String)}. Each query class is written
+ * by the {@link Handler} registered for it or, failing that, for its nearest
+ * superclass; queries without one are written with
+ * {@link Query#toString(String)}. Sub-queries are written into the same
+ * output, so a boolean query of hundreds of clauses is not copied once per
+ * level.
+ * <p>
+ * Handlers for every query the parser builds are registered up front,
+ * {@link #register(Class, Handler)} adds or replaces handlers for custom
+ * queries. Instances are thread-safe, handlers can also be registered while
+ * other threads write queries.
+ */
+public class QuerySerializer {
+	private static final Handler<Query> DEFAULT_HANDLER = (serializer, query, field, out) -> out
+			.append(query.toString(field));
+
+	private final Function<String, PointType> pointTypes;
+	// guarded by this, like the resolution of handlers
+	private final Map<Class<?>, Handler<?>> handlers = new HashMap<>();
+	// handlers by concrete query class, resolved through the superclasses
+	private final Map<Class<?>, Handler<?>> resolved = new ConcurrentHashMap<>();
+
+	/**
+	 * Writes a query of type <code>Q</code>.
+	 */
+	@FunctionalInterface
+	public interface Handler<Q extends Query> {
+		/**
+		 * Writes <code>query</code> into <code>out</code>.
+		 *
+		 * @param serializer
+		 *            the serializer to write sub-queries with
+		 * @param field
+		 *            the default field, which need not be written
+		 */
+		void write(QuerySerializer serializer, Q query, String field, Appendable out) throws IOException;
+	}
+
+	/**
+	 * Creates a serializer that writes point queries as text ranges.
+	 *
+	 * @param pointTypes
+	 *            the point type of each field, returning <code>null</code>
+	 *            for fields whose point queries are written with
+	 *            {@link Query#toString(String)}
+	 */
+	public QuerySerializer(Function<String, PointType> pointTypes) {
+		this.pointTypes = pointTypes;
+		register(TermQuery.class, QuerySerializer::writeTerm);
+		register(BooleanQuery.class, QuerySerializer::writeBoolean);
+		register(WildcardQuery.class, QuerySerializer::writeWildcard);
+		register(PhraseQuery.class, QuerySerializer::writePhrase);
+		register(PrefixQuery.class, QuerySerializer::writePrefix);
+		register(MultiPhraseQuery.class, QuerySerializer::writeMultiPhrase);
+		register(FuzzyQuery.class, QuerySerializer::writeFuzzy);
+		register(RegexpQuery.class, QuerySerializer::writeRegexp);
+		register(TermRangeQuery.class, QuerySerializer::writeTermRange);
+		register(PointRangeQuery.class, QuerySerializer::writePointRange);
+		register(PointInSetQuery.class, QuerySerializer::writePointInSet);
+		register(TermInSetQuery.class, QuerySerializer::writeTermInSet);
+		register(ConstantScoreQuery.class, QuerySerializer::writeConstantScore);
+		register(BoostQuery.class, QuerySerializer::writeBoost);
+		register(DisjunctionMaxQuery.class, QuerySerializer::writeDisjunctionMax);
+		register(MatchAllDocsQuery.class, (serializer, query, field, out) -> out.append("*:*"));
+		register(SynonymQuery.class, QuerySerializer::writeSynonym);
+		register(SpanTermQuery.class, QuerySerializer::writeSpanTerm);
+		register(SpanNearQuery.class, QuerySerializer::writeSpanNear);
+		register(SpanOrQuery.class, QuerySerializer::writeSpanOr);
+	}
+
+	/**
+	 * Registers the handler of <code>type</code> and its subclasses without a
+	 * handler of their own, replacing any previous one.
+	 */
+	public synchronized <Q extends Query> void register(Class<Q> type, Handler<? super Q> handler) {
+		handlers.put(type, handler);
+		resolved.clear();
+	}
+
+	/**
+	 * @return the point type of <code>field</code>, <code>null</code> if
+	 *         unknown
+	 */
+	public PointType getPointType(String field) {
+		return pointTypes.apply(field);
+	}
+
+	/**
+	 * Writes <code>query</code> into <code>out</code>.
+	 *
+	 * @param field
+	 *            the default field, which need not be written
+	 */
+	public void write(Query query, String field, Appendable out) throws IOException {
+		handler(query.getClass()).write(this, query, field, out);
+	}
+
+	/**
+	 * Writes <code>query</code> into <code>out</code>.
+	 *
+	 * @param field
+	 *            the default field, which need not be written
+	 * @return <code>out</code>
+	 */
+	public StringBuilder write(Query query, String field, StringBuilder out) {
+		try {
+			write(query, field, (Appendable) out);
+		} catch (IOException e) {
+			// a StringBuilder does not throw
+			throw new UncheckedIOException(e);
+		}
+		return out;
+	}
+
+	/**
+	 * @return the text of <code>query</code>
+	 */
+	public String toString(Query query, String field) {
+		return write(query, field, new StringBuilder()).toString();
+	}
+
+	@SuppressWarnings("unchecked")
+	private Handler<Query> handler(Class<?> type) {
+		Handler<?> handler = resolved.get(type);
+		if (handler == null) {
+			handler = resolve(type);
+		}
+		return (Handler<Query>) handler;
+	}
+
+	/**
+	 * Resolves the handler of <code>type</code> while no handler is
+	 * registered, so that a concurrent {@link #register(Class, Handler)} does
+	 * not leave a stale handler in the cache.
+	 */
+	private synchronized Handler<?> resolve(Class<?> type) {
+		Handler<?> handler = null;
+		for (Class<?> c = type; handler == null && c != null; c = c.getSuperclass()) {
+			handler = handlers.get(c);
+		}
+		if (handler == null) {
+			handler = DEFAULT_HANDLER;
+		}
+		resolved.put(type, handler);
+		return handler;
+	}
+
+	/** Writes <code>field:</code> unless it is the default field. */
+	private static void writeField(String queryField, String field, Appendable out) throws IOException {
+		if (!queryField.equals(field)) {
+			out.append(queryField).append(':');
+		}
+	}
+
+	/**
+	 * @return the field of a phrase, the default field if it has no terms.
+	 */
+	private static String fieldOf(Term[] terms, String field) {
+		return terms.length == 0 ? field : terms[0].field();
+	}
+
+	private static void writeTerm(QuerySerializer serializer, TermQuery query, String field, Appendable out)
+			throws IOException {
+		Term term = query.getTerm();
+		out.append(term.field()).append(':').append(term.text());
+	}
+
+	private static void writeBoolean(QuerySerializer serializer, BooleanQuery query, String field, Appendable out)
+			throws IOException {
+		List<BooleanClause> clauses = query.clauses();
+		int minShouldMatch = query.getMinimumNumberShouldMatch();
+
+		if (minShouldMatch > 0) {
+			out.append('(');
+		}
+		for (int i = 0; i < clauses.size(); i++) {
+			if (i != 0) {
+				out.append(' ');
+			}
+			BooleanClause c = clauses.get(i);
+			out.append(c.getOccur().toString());
+			writeNested(serializer, c.getQuery(), field, out);
+		}
+		if (minShouldMatch > 0) {
+			out.append(")~").append(Integer.toString(minShouldMatch));
+		}
+	}
+
+	/** Writes a sub-query, wrapping sub-bools in parens. */
+	private static void writeNested(QuerySerializer serializer, Query query, String field, Appendable out)
+			throws IOException {
+		if (query instanceof BooleanQuery) {
+			out.append('(');
+			serializer.write(query, field, out);
+			out.append(')');
+		} else {
+			serializer.write(query, field, out);
+		}
+	}
+
+	private static void writeWildcard(QuerySerializer serializer, WildcardQuery query, String field, Appendable out)
+			throws IOException {
+		writeField(query.getField(), field, out);
+		out.append(query.getTerm().text());
+	}
+
+	private static void writePhrase(QuerySerializer serializer, PhraseQuery query, String field, Appendable out)
+			throws IOException {
+		Term[] terms = query.getTerms();
+		int[] positions = query.getPositions();
+		int maxPosition = positions.length == 0 ? -1 : positions[positions.length - 1];
+
+		out.append(fieldOf(terms, field)).append(":\"");
+		// positions are in order, terms at the same position are joined by |
+		for (int pos = 0, i = 0; pos <= maxPosition; pos++) {
+			if (pos > 0) {
+				out.append(' ');
+			}
+			if (positions[i] != pos) {
+				out.append('?');
+				continue;
+			}
+			out.append(terms[i++].text());
+			while (i < positions.length && positions[i] == pos) {
+				out.append('|').append(terms[i++].text());
+			}
+		}
+		out.append('"');
+		writeSlop(query.getSlop(), out);
+	}
+
+	private static void writeSlop(int slop, Appendable out) throws IOException {
+		if (slop != 0) {
+			out.append('~').append(Integer.toString(slop));
+		}
+	}
+
+	private static void writePrefix(QuerySerializer serializer, PrefixQuery query, String field, Appendable out)
+			throws IOException {
+		writeField(query.getField(), field, out);
+		out.append(query.getPrefix().text()).append('*');
+	}
+
+	private static void writeMultiPhrase(QuerySerializer serializer, MultiPhraseQuery query, String field,
+			Appendable out) throws IOException {
+		Term[][] termArrays = query.getTermArrays();
+		int[] positions = query.getPositions();
+		int lastPos = -1;
+
+		out.append(termArrays.length == 0 ? field : fieldOf(termArrays[0], field)).append(":\"");
+		for (int i = 0; i < termArrays.length; ++i) {
+			Term[] terms = termArrays[i];
+			if (i != 0) {
+				out.append(' ');
+				for (int j = 1; j < positions[i] - lastPos; j++) {
+					out.append("? ");
+				}
+			}
+			if (terms.length > 1) {
+				out.append('(');
+				for (int j = 0; j < terms.length; j++) {
+					if (j != 0) {
+						out.append(' ');
+					}
+					out.append(terms[j].text());
+				}
+				out.append(')');
+			} else {
+				out.append(terms[0].text());
+			}
+			lastPos = positions[i];
+		}
+		out.append('"');
+		writeSlop(query.getSlop(), out);
+	}
+
+	private static void writeFuzzy(QuerySerializer serializer, FuzzyQuery query, String field, Appendable out)
+			throws IOException {
+		Term term = query.getTerm();
+		writeField(term.field(), field, out);
+		out.append(term.text()).append('~').append(Integer.toString(query.getMaxEdits()));
+	}
+
+	private static void writeRegexp(QuerySerializer serializer, RegexpQuery query, String field, Appendable out)
+			throws IOException {
+		Term term = query.getRegexp();
+		writeField(term.field(), field, out);
+		out.append('/').append(term.text()).append('/');
+	}
+
+	private static void writeTermRange(QuerySerializer serializer, TermRangeQuery query, String field, Appendable out)
+			throws IOException {
+		writeField(query.getField(), field, out);
+		out.append(query.includesLower() ? '[' : '{');
+		writeRangeBound(query.getLowerTerm(), out);
+		out.append(" TO ");
+		writeRangeBound(query.getUpperTerm(), out);
+		out.append(query.includesUpper() ? ']' : '}');
+	}
+
+	private static void writeRangeBound(BytesRef bound, Appendable out) throws IOException {
+		// TODO: all these toStrings for queries should just output the bytes,
+		// it might not be UTF-8!
+		if (bound == null) {
+			out.append('*');
+		} else {
+			String text = Term.toString(bound);
+			out.append("*".equals(text) ? "\\*" : text);
+		}
+	}
+
+	private static void writePointRange(QuerySerializer serializer, PointRangeQuery query, String field,
+			Appendable out) throws IOException {
+		PointType pointType = serializer.getPointType(query.getField());
+		if (pointType == null || query.getNumDims() != 1) {
+			out.append(query.toString(field));
+			return;
+		}
+
+		byte[] lowerPoint = query.getLowerPoint();
+		byte[] upperPoint = query.getUpperPoint();
+		writeField(query.getField(), field, out);
+		if (Arrays.equals(lowerPoint, upperPoint)) {
+			out.append(pointType.toString(lowerPoint));
+		} else {
+			out.append('[').append(pointType.toString(lowerPoint)).append(" TO ")
+					.append(pointType.toString(upperPoint)).append(']');
+		}
+	}
+
+	private static void writePointInSet(QuerySerializer serializer, PointInSetQuery query, String field,
+			Appendable out) throws IOException {
+		PointType pointType = serializer.getPointType(query.getField());
+		if (pointType == null || query.getNumDims() != 1) {
+			out.append(query.toString(field));
+			return;
+		}
+
+		Collection<byte[]> points = query.getPackedPoints();
+		writeField(query.getField(), field, out);
+		out.append('{');
+		Iterator<byte[]> it = points.iterator();
+		for (int i = 0; it.hasNext(); i++) {
+			if (i != 0) {
+				out.append(' ');
+			}
+			out.append(pointType.toString(it.next()));
+		}
+		out.append('}');
+	}
+
+	private static void writeTermInSet(QuerySerializer serializer, TermInSetQuery query, String field, Appendable out)
+			throws IOException {
+		PrefixCodedTerms.TermIterator it = query.getTermData().iterator();
+		boolean first = true;
+		for (BytesRef term = it.next(); term != null; term = it.next()) {
+			if (!first) {
+				out.append(' ');
+			}
+			writeField(it.field(), field, out);
+			out.append(Term.toString(term));
+			first = false;
+		}
+	}
+
+	private static void writeConstantScore(QuerySerializer serializer, ConstantScoreQuery query, String field,
+			Appendable out) throws IOException {
+		out.append('(');
+		serializer.write(query.getQuery(), field, out);
+		out.append(')');
+	}
+
+	private static void writeBoost(QuerySerializer serializer, BoostQuery query, String field, Appendable out)
+			throws IOException {
+		out.append('(');
+		serializer.write(query.getQuery(), field, out);
+		out.append(")^").append(Float.toString(query.getBoost()));
+	}
+
+	private static void writeDisjunctionMax(QuerySerializer serializer, DisjunctionMaxQuery query, String field,
+			Appendable out) throws IOException {
+		List<Query> disjuncts = query.getDisjuncts();
+		float tieBreakerMultiplier = query.getTieBreakerMultiplier();
+
+		out.append('(');
+		for (int i = 0; i < disjuncts.size(); i++) {
+			if (i != 0) {
+				out.append(" | ");
+			}
+			writeNested(serializer, disjuncts.get(i), field, out);
+		}
+		out.append(')');
+		if (tieBreakerMultiplier != 0.0f) {
+			out.append('~').append(Float.toString(tieBreakerMultiplier));
+		}
+	}
+
+	private static void writeSynonym(QuerySerializer serializer, SynonymQuery query, String field, Appendable out)
+			throws IOException {
+		List<Term> terms = query.getTerms();
+
+		out.append('(');
+		for (int i = 0; i < terms.size(); i++) {
+			if (i != 0) {
+				out.append(' ');
+			}
+			out.append(terms.get(i).field()).append(':').append(terms.get(i).text());
+		}
+		out.append(')');
+	}
+
+	private static void writeSpanTerm(QuerySerializer serializer, SpanTermQuery query, String field, Appendable out)
+			throws IOException {
+		Term term = query.getTerm();
+		writeField(term.field(), field, out);
+		out.append(term.text());
+	}
+
+	private static void writeSpanNear(QuerySerializer serializer, SpanNearQuery query, String field, Appendable out)
+			throws IOException {
+		out.append("spanNear(");
+		writeSpans(serializer, query.getClauses(), field, out);
+		out.append(", ").append(Integer.toString(query.getSlop())).append(", ")
+				.append(Boolean.toString(query.isInOrder())).append(')');
+	}
+
+	private static void writeSpanOr(QuerySerializer serializer, SpanOrQuery query, String field, Appendable out)
+			throws IOException {
+		out.append("spanOr(");
+		writeSpans(serializer, query.getClauses(), field, out);
+		out.append(')');
+	}
+
+	private static void writeSpans(QuerySerializer serializer, SpanQuery[] clauses, String field, Appendable out)
+			throws IOException {
+		out.append('[');
+		for (int i = 0; i < clauses.length; i++) {
+			if (i != 0) {
+				out.append(", ");
+			}
+			serializer.write(clauses[i], field, out);
+		}
+		out.append(']');
+	}
+}
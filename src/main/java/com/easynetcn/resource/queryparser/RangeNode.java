@@ -0,0 +1,64 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.Objects;
+
+/**
+ * A range such as <code>[a TO b]</code> or <code>{a TO *}</code>.
+ */
+public final class RangeNode extends QueryNode {
+	private final String field;
+	private final String lower;
+	private final String upper;
+	private final boolean includeLower;
+	private final boolean includeUpper;
+
+	/**
+	 * @param lower
+	 *            the lower bound without quotes, or <code>null</code> if open.
+	 * @param upper
+	 *            the upper bound without quotes, or <code>null</code> if open.
+	 */
+	public RangeNode(String field, String lower, String upper, boolean includeLower, boolean includeUpper,
+			float boost, int beginOffset, int endOffset) {
+		super(boost, beginOffset, endOffset);
+		this.field = Objects.requireNonNull(field);
+		this.lower = lower;
+		this.upper = upper;
+		this.includeLower = includeLower;
+		this.includeUpper = includeUpper;
+	}
+
+	public String getField() {
+		return field;
+	}
+
+	/**
+	 * @return the lower bound, or <code>null</code> if open.
+	 */
+	public String getLower() {
+		return lower;
+	}
+
+	/**
+	 * @return the upper bound, or <code>null</code> if open.
+	 */
+	public String getUpper() {
+		return upper;
+	}
+
+	public boolean getIncludeLower() {
+		return includeLower;
+	}
+
+	public boolean getIncludeUpper() {
+		return includeUpper;
+	}
+
+	@Override
+	void toString(StringBuilder sb) {
+		sb.append(field).append(':').append(includeLower ? '[' : '{');
+		sb.append(lower == null ? "*" : lower).append(" TO ").append(upper == null ? "*" : upper);
+		sb.append(includeUpper ? ']' : '}');
+		appendBoost(sb);
+	}
+}
@@ -0,0 +1,43 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.Objects;
+
+/**
+ * A reference such as <code>#12</code> to another query, see
+ * {@link QueryParserBase#setReferenceResolver(ReferenceResolver)}.
+ */
+public final class ReferenceNode extends QueryNode {
+	private final String field;
+	private final String name;
+
+	/**
+	 * @param name
+	 *            the reference without the leading <code>#</code>.
+	 */
+	public ReferenceNode(String field, String name, float boost, int beginOffset, int endOffset) {
+		super(boost, beginOffset, endOffset);
+		this.field = Objects.requireNonNull(field);
+		this.name = Objects.requireNonNull(name);
+	}
+
+	/**
+	 * @return the field of the clause, which the parser only accepts if it is
+	 *         the default field.
+	 */
+	public String getField() {
+		return field;
+	}
+
+	/**
+	 * @return the reference without the leading <code>#</code>.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	void toString(StringBuilder sb) {
+		sb.append('#').append(name);
+		appendBoost(sb);
+	}
+}
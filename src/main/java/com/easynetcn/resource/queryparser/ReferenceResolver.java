@@ -0,0 +1,21 @@
+package com.easynetcn.resource.queryparser;
+
+/**
+ * Resolves a reference such as <code>#12</code> to the query text it stands
+ * for, usually an entry of the user's search history.
+ * <p>
+ * A reference must always resolve to the same text: parsers memoize the query
+ * of every resolved reference, see
+ * {@link QueryParserBase#setReferenceResolver(ReferenceResolver)}.
+ */
+@FunctionalInterface
+public interface ReferenceResolver {
+
+	/**
+	 * @param reference
+	 *            the reference without the leading <code>#</code>.
+	 * @return the query text, or <code>null</code> if the reference is
+	 *         unknown.
+	 */
+	String resolve(String reference);
+}
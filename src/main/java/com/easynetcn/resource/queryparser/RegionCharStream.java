@@ -0,0 +1,149 @@
+package com.easynetcn.resource.queryparser;
+
+import java.io.IOException;
+
+/**
+ * The {@link SourceCharStream} bookkeeping shared by the streams over a
+ * region of a String or a char array: reading, backing up, token images and
+ * columns. Subclasses only provide access to the chars of their source.
+ * <p>
+ * Like {@link FastCharStream} it does no line counting: columns are offsets
+ * from the start of the region.
+ */
+abstract class RegionCharStream implements SourceCharStream {
+	private int start;
+	private int end;
+	private int position; // next char to read
+	private int tokenStart;
+	private boolean lazyImages;
+
+	/**
+	 * @return the char of the source at <code>offset</code>, an index into the
+	 *         whole source rather than the region.
+	 */
+	abstract char get(int offset);
+
+	/**
+	 * @return the chars of the source from <code>begin</code> to
+	 *         <code>end</code>, indexes into the whole source.
+	 */
+	abstract String text(int begin, int end);
+
+	/**
+	 * Reads the chars of the source from start to end.
+	 */
+	final void setRegion(int start, int end) {
+		this.start = start;
+		this.end = end;
+		this.position = start;
+		this.tokenStart = start;
+	}
+
+	@Override
+	public final char readChar() throws IOException {
+		if (position >= end) {
+			throw EndOfInputException.INSTANCE;
+		}
+		return get(position++);
+	}
+
+	@Override
+	public final char BeginToken() throws IOException {
+		tokenStart = position;
+		return readChar();
+	}
+
+	@Override
+	public final void backup(int amount) {
+		position -= amount;
+	}
+
+	@Override
+	public final String GetImage() {
+		return lazyImages ? null : text(tokenStart, position);
+	}
+
+	@Override
+	public final char[] GetSuffix(int len) {
+		char[] value = new char[len];
+		for (int i = 0; i < len; i++) {
+			value[i] = get(position - len + i);
+		}
+		return value;
+	}
+
+	@Override
+	public final void Done() {
+	}
+
+	@Override
+	@Deprecated
+	public final int getColumn() {
+		return position - start;
+	}
+
+	@Override
+	@Deprecated
+	public final int getLine() {
+		return 1;
+	}
+
+	@Override
+	public final int getEndColumn() {
+		return position - start;
+	}
+
+	@Override
+	public final int getEndLine() {
+		return 1;
+	}
+
+	@Override
+	public final int getBeginColumn() {
+		return tokenStart - start;
+	}
+
+	@Override
+	public final int getBeginLine() {
+		return 1;
+	}
+
+	@Override
+	public final void setLazyImages(boolean lazyImages) {
+		this.lazyImages = lazyImages;
+	}
+
+	@Override
+	public final String image(int beginColumn, int endColumn) {
+		return text(start + beginColumn, start + endColumn);
+	}
+
+	@Override
+	public final void rewind() {
+		position = start;
+		tokenStart = start;
+	}
+
+	@Override
+	public final int length() {
+		return end - start;
+	}
+
+	@Override
+	public final char charAt(int index) {
+		return get(start + index);
+	}
+
+	@Override
+	public final CharSequence subSequence(int beginIndex, int endIndex) {
+		return image(beginIndex, endIndex);
+	}
+
+	/**
+	 * @return the text being read.
+	 */
+	@Override
+	public final String toString() {
+		return text(start, end);
+	}
+}
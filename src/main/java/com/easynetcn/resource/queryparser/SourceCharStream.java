@@ -0,0 +1,29 @@
+package com.easynetcn.resource.queryparser;
+
+/**
+ * A {@link CharStream} over text held in memory, whose token columns are
+ * offsets into that text. It is also a {@link CharSequence} of the text.
+ * <p>
+ * With {@link #setLazyImages(boolean) lazy images} {@link #GetImage()}
+ * returns <code>null</code>, so the token manager creates no String for
+ * tokens that have no fixed image; the image of a token can be rebuilt from
+ * its columns with {@link #image(int, int)} for as long as the stream is not
+ * reset. See {@link QueryParserBase#setLazyTokenImages(boolean)}.
+ */
+public interface SourceCharStream extends CharStream, CharSequence {
+
+	/**
+	 * Whether {@link #GetImage()} leaves token images out.
+	 */
+	void setLazyImages(boolean lazyImages);
+
+	/**
+	 * @return the text between two token columns.
+	 */
+	String image(int beginColumn, int endColumn);
+
+	/**
+	 * Starts reading the same text again from the beginning.
+	 */
+	void rewind();
+}
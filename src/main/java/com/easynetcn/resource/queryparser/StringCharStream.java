@@ -0,0 +1,44 @@
+package com.easynetcn.resource.queryparser;
+
+/**
+ * A {@link CharStream} reading directly from a String, without the Reader
+ * and buffer copy of {@link FastCharStream}. It can be {@link #reset(String)
+ * reset} to a new query, so a parser keeps a single instance.
+ * <p>
+ * Like {@link FastCharStream} it does no line counting: columns are offsets
+ * from the start of the query.
+ */
+public final class StringCharStream extends RegionCharStream {
+	private String source = "";
+
+	public StringCharStream() {
+	}
+
+	public StringCharStream(String source) {
+		reset(source);
+	}
+
+	/** Reads <code>source</code> from the beginning. */
+	public void reset(String source) {
+		reset(source, 0, source.length());
+	}
+
+	/** Reads the chars of <code>source</code> from start to end. */
+	public void reset(String source, int start, int end) {
+		if (start < 0 || end > source.length() || start > end) {
+			throw new IndexOutOfBoundsException("start=" + start + ", end=" + end + ", length=" + source.length());
+		}
+		this.source = source;
+		setRegion(start, end);
+	}
+
+	@Override
+	char get(int offset) {
+		return source.charAt(offset);
+	}
+
+	@Override
+	String text(int begin, int end) {
+		return source.substring(begin, end);
+	}
+}
@@ -0,0 +1,85 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.Objects;
+
+/**
+ * A single term, wildcard, prefix, regular expression or quoted phrase.
+ */
+public final class TermNode extends QueryNode {
+
+	/** What kind of term was written. */
+	public enum Kind {
+		/** A plain term, analyzed. */
+		TERM,
+		/** A term ending with <code>*</code>. */
+		PREFIX,
+		/** A term with <code>*</code> or <code>?</code> wildcards. */
+		WILDCARD,
+		/** A regular expression between slashes. */
+		REGEXP,
+		/** Text between double quotes. */
+		PHRASE
+	}
+
+	private final String field;
+	private final Kind kind;
+	private final String image;
+	private final String fuzzySlop;
+
+	/**
+	 * @param image
+	 *            the term as written, including the quotes of a phrase, the
+	 *            slashes of a regular expression and the trailing
+	 *            <code>*</code> of a prefix.
+	 * @param fuzzySlop
+	 *            the <code>~</code> suffix as written, or <code>null</code>.
+	 */
+	public TermNode(String field, Kind kind, String image, String fuzzySlop, float boost, int beginOffset,
+			int endOffset) {
+		super(boost, beginOffset, endOffset);
+		this.field = Objects.requireNonNull(field);
+		this.kind = Objects.requireNonNull(kind);
+		this.image = Objects.requireNonNull(image);
+		this.fuzzySlop = fuzzySlop;
+	}
+
+	public String getField() {
+		return field;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return the term as written, see
+	 *         {@link #TermNode(String, Kind, String, String, float, int, int)}.
+	 */
+	public String getImage() {
+		return image;
+	}
+
+	/**
+	 * @return the <code>~</code> suffix as written: the minimum similarity of
+	 *         a fuzzy term or the slop of a phrase, or <code>null</code>.
+	 */
+	public String getFuzzySlop() {
+		return fuzzySlop;
+	}
+
+	/**
+	 * @return whether this is a fuzzy term; phrases with a slop are not.
+	 */
+	public boolean isFuzzy() {
+		return fuzzySlop != null && kind != Kind.PHRASE;
+	}
+
+	@Override
+	void toString(StringBuilder sb) {
+		sb.append(field).append(':').append(image);
+		if (fuzzySlop != null) {
+			sb.append(fuzzySlop);
+		}
+		appendBoost(sb);
+	}
+}
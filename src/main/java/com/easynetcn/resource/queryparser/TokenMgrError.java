@@ -108,7 +108,7 @@ public class TokenMgrError extends Error
           errorLine + ", column " +
           errorColumn + ".  Encountered: " +
           (EOFSeen ? "<EOF> " : ("\"" + addEscapes(String.valueOf(curChar1)) + "\"") + " (" + (int)curChar + "), ") +
-          "after : \"" + addEscapes(errorAfter) + "\"");
+          "after : \"" + (errorAfter == null ? "" : addEscapes(errorAfter)) + "\"");
   }
 
   /**
@@ -0,0 +1,85 @@
+package com.easynetcn.resource.queryparser;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.search.Query;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+import com.easynetcn.resource.queryparser.QueryParser.Operator;
+
+/**
+ * Tests AnalysisCache.
+ */
+@RunWith(RandomizedRunner.class)
+public class TestAnalysisCache {
+
+	@Test
+	public void testRepeatedTermsAreCached() throws Exception {
+		AnalysisCache cache = new AnalysisCache(100);
+		QueryParser qp = new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random()));
+		qp.setAnalysisCache(cache);
+
+		Assert.assertEquals("+ti:car +(ti:car ab:car)", qp.parse("ti=car and (ti=car or ab=car)").toString());
+		Assert.assertEquals(2, cache.size());
+		Assert.assertEquals(1, cache.getHitCount());
+		Assert.assertEquals(2, cache.getMissCount());
+		Assert.assertEquals("ti:\"red car\"", qp.parse("ti=\"red car\"").toString());
+		Assert.assertEquals(3, cache.size());
+	}
+
+	@Test
+	public void testSettingsArePartOfTheKey() throws Exception {
+		AnalysisCache cache = new AnalysisCache(100);
+		Analyzer a = new MockAnalyzer(QueryParserTestBase.random());
+		QueryParser or = new QueryParser("field", a);
+		QueryParser and = new QueryParser("field", a);
+		and.setDefaultOperator(Operator.AND);
+		or.setAnalysisCache(cache);
+		and.setAnalysisCache(cache);
+
+		Assert.assertEquals("field:\"a b\"~2", or.parse("\"a b\"~2").toString());
+		Assert.assertEquals("field:\"a b\"", and.parse("\"a b\"").toString());
+		Assert.assertEquals(0, cache.getHitCount());
+
+		// a builder with identical settings shares the entries
+		QueryParser other = new QueryParser("field", a);
+		other.setAnalysisCache(cache);
+		Query first = or.parse("patent");
+		Assert.assertSame(first, other.parse("patent"));
+		Assert.assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void testNoQueryIsCached() throws Exception {
+		AnalysisCache cache = new AnalysisCache(100);
+		QueryParser qp = new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random(),
+				MockTokenizer.SIMPLE, true, MockTokenFilter.ENGLISH_STOPSET));
+		qp.setAnalysisCache(cache);
+
+		Assert.assertEquals("ti:car", qp.parse("ti=car and ab=the").toString());
+		Assert.assertEquals("ti:car", qp.parse("ti=car and ab=the").toString());
+		Assert.assertEquals(2, cache.getHitCount());
+		Assert.assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testDisabledField() throws Exception {
+		AnalysisCache cache = new AnalysisCache(100);
+		cache.setFieldEnabled("ab", false);
+		QueryParser qp = new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random()));
+		qp.setAnalysisCache(cache);
+
+		qp.parse("ti=car and ab=car");
+		qp.parse("ti=car and ab=car");
+		Assert.assertEquals(1, cache.size());
+		Assert.assertEquals(1, cache.getHitCount());
+		Assert.assertEquals(2, cache.getBypassCount());
+
+		cache.setEnabledByDefault(false);
+		cache.setFieldEnabled("ab", true);
+		Assert.assertFalse(cache.isEnabled("ti"));
+		Assert.assertTrue(cache.isEnabled("ab"));
+	}
+}
@@ -0,0 +1,152 @@
+package com.easynetcn.resource.queryparser;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+
+/**
+ * Tests BooleanQueryOptimizer.
+ */
+@RunWith(RandomizedRunner.class)
+public class TestBooleanQueryOptimizer {
+
+	private static QueryParser parser() {
+		return new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random()));
+	}
+
+	private static OptimizedQuery optimize(String query) throws ParseException {
+		return BooleanQueryOptimizer.builder().build().optimize(parser().parse(query));
+	}
+
+	@Test
+	public void testFlattensNestedDisjunctions() throws Exception {
+		OptimizedQuery result = optimize("(ti=a or ti=b) or (ti=c or ti=d)");
+		Assert.assertEquals("ti:a ti:b ti:c ti:d", result.getQuery().toString("field"));
+		Assert.assertEquals(6, result.getClauseCountBefore());
+		Assert.assertEquals(4, result.getClauseCountAfter());
+		Assert.assertTrue(result.getContradictions().isEmpty());
+	}
+
+	@Test
+	public void testFlattensNestedConjunctions() throws Exception {
+		OptimizedQuery result = optimize("(ti=a and not ti=b) and ti=c");
+		Assert.assertEquals("+ti:a -ti:b +ti:c", result.getQuery().toString("field"));
+
+		// a disjunction required by a conjunction stays nested
+		result = optimize("(ti=a or ti=b) and ti=c");
+		Assert.assertEquals("+(ti:a ti:b) +ti:c", result.getQuery().toString("field"));
+	}
+
+	@Test
+	public void testDedupAndCollapse() throws Exception {
+		OptimizedQuery result = optimize("ti=a or ti=b or ti=a");
+		Assert.assertEquals("ti:a ti:b", result.getQuery().toString("field"));
+
+		result = optimize("(ti=a or ti=a)");
+		Assert.assertEquals(new TermQuery(new Term("ti", "a")), result.getQuery());
+		Assert.assertEquals(0, result.getClauseCountAfter());
+	}
+
+	@Test
+	public void testContradiction() throws Exception {
+		OptimizedQuery result = optimize("ti=a and not ti=a");
+		Assert.assertTrue(result.getQuery() instanceof MatchNoDocsQuery);
+		Assert.assertEquals(1, result.getContradictions().size());
+		Assert.assertEquals(new TermQuery(new Term("ti", "a")), result.getContradictions().get(0));
+
+		// an optional contradiction drops out, a required one empties the
+		// conjunction
+		result = optimize("ti=b or (ti=a and not ti=a)");
+		Assert.assertEquals(new TermQuery(new Term("ti", "b")), result.getQuery());
+		result = optimize("ti=b and (ti=a and not ti=a)");
+		Assert.assertTrue(result.getQuery() instanceof MatchNoDocsQuery);
+	}
+
+	@Test
+	public void testMergesTermsWithoutScores() throws Exception {
+		Query parsed = parser().parse("ti=a or ti=b or ti=c or ab=d");
+
+		// scores needed: left alone
+		OptimizedQuery scored = BooleanQueryOptimizer.builder().build().optimize(parsed);
+		Assert.assertSame(parsed, scored.getQuery());
+
+		OptimizedQuery filtered = BooleanQueryOptimizer.builder().scoresNeeded(false).build().optimize(parsed);
+		BooleanQuery bq = (BooleanQuery) filtered.getQuery();
+		Assert.assertEquals(2, bq.clauses().size());
+		Assert.assertEquals(Occur.SHOULD, bq.clauses().get(0).getOccur());
+		Assert.assertTrue(bq.clauses().get(0).getQuery() instanceof TermInSetQuery);
+		Assert.assertEquals(new TermQuery(new Term("ab", "d")), bq.clauses().get(1).getQuery());
+
+		// below a constant score query, scores are never needed
+		OptimizedQuery constant = BooleanQueryOptimizer.builder().build().optimize(new ConstantScoreQuery(parsed));
+		Query inner = ((ConstantScoreQuery) constant.getQuery()).getQuery();
+		Assert.assertEquals(2, ((BooleanQuery) inner).clauses().size());
+	}
+
+	@Test
+	public void testMergesProhibitedTerms() throws Exception {
+		OptimizedQuery result = optimize("ti=a and not ti=b and not ti=c");
+		BooleanQuery bq = (BooleanQuery) result.getQuery();
+		Assert.assertEquals(2, bq.clauses().size());
+		Assert.assertEquals(Occur.MUST_NOT, bq.clauses().get(1).getOccur());
+		Assert.assertTrue(bq.clauses().get(1).getQuery() instanceof TermInSetQuery);
+	}
+
+	@Test
+	public void testDisabledOptimizations() throws Exception {
+		Query parsed = parser().parse("(ti=a or ti=b) or (ti=a or ti=b)");
+		BooleanQueryOptimizer none = BooleanQueryOptimizer.builder().flatten(false).dedup(false).collapse(false)
+				.mergeTerms(false).build();
+		Assert.assertSame(parsed, none.optimize(parsed).getQuery());
+	}
+
+	@Test
+	public void testParserAppliesOptimizer() throws Exception {
+		QueryParser qp = parser();
+		qp.setBooleanQueryOptimizer(BooleanQueryOptimizer.builder().build());
+		Assert.assertEquals("ti:a ti:b ti:c", qp.parse("(ti=a or ti=b) or ti=c").toString("field"));
+		Assert.assertEquals("ti:a ti:b ti:c", qp.compile(qp.parseToAst("(ti=a or ti=b) or ti=c")).toString("field"));
+	}
+
+	@Test
+	public void testFlattenKeepsMaxClauseCount() throws Exception {
+		StringBuilder sb = new StringBuilder("(a0");
+		for (int i = 1; i < 600; i++) {
+			sb.append(" or a").append(i);
+		}
+		sb.append(") or (b0");
+		for (int i = 1; i < 600; i++) {
+			sb.append(" or b").append(i);
+		}
+		sb.append(')');
+
+		QueryParser qp = parser();
+		qp.setBooleanQueryOptimizer(BooleanQueryOptimizer.builder().build());
+		BooleanQuery bq = (BooleanQuery) qp.parse(sb.toString());
+		// the first group is flattened, the second one would not fit
+		Assert.assertEquals(601, bq.clauses().size());
+		Assert.assertEquals(1200, countTerms(bq));
+	}
+
+	private static int countTerms(Query query) {
+		if (query instanceof BooleanQuery) {
+			int count = 0;
+			for (BooleanClause clause : ((BooleanQuery) query).clauses()) {
+				count += countTerms(clause.getQuery());
+			}
+			return count;
+		}
+		return 1;
+	}
+}
@@ -0,0 +1,134 @@
+package com.easynetcn.resource.queryparser;
+
+import org.apache.lucene.search.FuzzyQuery;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+
+/**
+ * Tests canonical queries and their fingerprints.
+ */
+@RunWith(RandomizedRunner.class)
+public class TestCanonicalQuery {
+
+	private static QueryParser newParser() {
+		QueryParser qp = new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random()));
+		qp.setFieldTable(FieldTable.builder().field("ti").field("co").field("ab").alias("title", "ti").build());
+		return qp;
+	}
+
+	private static void assertSame(QueryParser qp, String expected, String... queries) throws Exception {
+		for (String query : queries) {
+			CanonicalQuery canonical = qp.canonicalize(query);
+			Assert.assertEquals(query, expected, canonical.getText());
+			Assert.assertEquals(query, QueryFingerprint.of(expected), canonical.getFingerprint());
+		}
+	}
+
+	@Test
+	public void testEquivalentQueries() throws Exception {
+		QueryParser qp = newParser();
+		assertSame(qp, "+co:us +ti:car", "TI=car AND co=us", "co=us and ti = car", "+title=car +co=us",
+				"(co=us and (ti=car))");
+		assertSame(qp, "-co:us ti:car", "ti=car not co=us", "-co=us or ti=car");
+		assertSame(qp, "+(ab:x ab:y) +ti:car", "ti=car and (ab=y or ab=x)", "(ab=x or ab=y) and ti=car");
+	}
+
+	@Test
+	public void testDefaultOperator() throws Exception {
+		QueryParser qp = newParser();
+		assertSame(qp, "ti:a ti:b", "ti=a ti=b", "ti=a or ti=b");
+		qp.setDefaultOperator(QueryParser.Operator.AND);
+		assertSame(qp, "+ti:a +ti:b", "ti=a ti=b", "ti=a and ti=b");
+		assertSame(qp, "ti:a ti:b", "ti=a or ti=b");
+	}
+
+	@Test
+	public void testBoostsAndSlops() throws Exception {
+		QueryParser qp = newParser();
+		assertSame(qp, "ti:car^2.0", "ti=car^2", "ti=car^2.0", "(ti=car)^2", "(ti=car^4)^0.5");
+		assertSame(qp, "ti:car", "ti=car^1", "(ti=car)");
+		assertSame(qp, "ab:\"red engine\"~2", "ab=\"red engine\"~2", "ab=\"red engine\"~2.5");
+		qp.setPhraseSlop(2);
+		assertSame(qp, "ab:\"red engine\"~2", "ab=\"red engine\"");
+		assertSame(qp, "ab:\"red engine\"", "ab=\"red engine\"~0");
+		assertSame(qp, "ti:car~2.0", "ti=car~2", "ti=car~2.0");
+		assertSame(qp, "ti:car~" + FuzzyQuery.defaultMinSimilarity, "ti=car~");
+		assertSame(qp, "ti:ca*", "ti=ca*", "ti=ca*~2");
+	}
+
+	@Test
+	public void testDifferentQueries() throws Exception {
+		QueryParser qp = newParser();
+		qp.setReferenceResolver(name -> "ab=" + name);
+		String[] queries = { "ti=car", "ti=Car", "co=car", "+ti=car", "-ti=car", "ti=car ti=bus", "ti=car and ti=bus",
+				"ti=car*", "ti=\"car\"", "ti=[a to b]", "ti={a to b]", "#1", "#2" };
+		for (int i = 0; i < queries.length; i++) {
+			for (int j = i + 1; j < queries.length; j++) {
+				Assert.assertNotEquals(queries[i] + " " + queries[j], qp.canonicalize(queries[i]).getFingerprint(),
+						qp.canonicalize(queries[j]).getFingerprint());
+			}
+		}
+	}
+
+	@Test
+	public void testReferences() throws Exception {
+		QueryParser qp = newParser();
+		qp.setReferenceResolver(name -> "1".equals(name) ? "ti=car or ti=bus" : null);
+		assertSame(qp, "ti:bus ti:car", "#1", "ti=bus or ti=car");
+		assertSame(qp, "+(ti:bus ti:car) +co:us", "#1 and co=us", "co=us and (ti=bus or ti=car)");
+		assertSame(qp, "(ti:bus ti:car)^2.0", "#1^2");
+
+		TestQueryParser.expectThrows(ParseException.class, () -> qp.canonicalize("#2"));
+		// the tree does not say what the reference stands for
+		QueryNode ast = qp.parseToAst("#1");
+		TestQueryParser.expectThrows(IllegalArgumentException.class, () -> qp.canonicalize(ast));
+	}
+
+	@Test
+	public void testQuotedText() throws Exception {
+		QueryParser qp = newParser();
+		assertSame(qp, "ti:[\"a\" TO \"b\"]", "ti=[a to b]", "ti=[\"a\" to \"b\"]");
+		assertSame(qp, "ti:{* TO \"a b\"]", "ti={* to \"a b\"]");
+
+		// queries that differ only in text that is quoted or escaped
+		String[] queries = { "ti=[\"a TO b\" TO c]", "ti=[a TO \"b TO c\"]", "ti=[* TO b]", "ti=[\"*\" TO b]",
+				"ti=[\"a]\" TO b]", "ti=[\"a\\\"\" TO b]", "ti=a\\ ti\\=b", "ti=a ti=b", "ab=/c d/ or ti=e",
+				"ab=/c d\\/ or ti=e/", "ti=\"a\\\" b\"", "ti=\"a\" b" };
+		for (int i = 0; i < queries.length; i++) {
+			for (int j = i + 1; j < queries.length; j++) {
+				Assert.assertNotEquals(queries[i] + " " + queries[j], qp.parse(queries[i]), qp.parse(queries[j]));
+				Assert.assertNotEquals(queries[i] + " " + queries[j], qp.canonicalize(queries[i]),
+						qp.canonicalize(queries[j]));
+			}
+		}
+	}
+
+	@Test
+	public void testDeepNesting() throws Exception {
+		QueryParser qp = newParser();
+		qp.setIterativeNesting(true);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			sb.append('(');
+		}
+		sb.append("ti=a");
+		for (int i = 0; i < 10000; i++) {
+			sb.append(')');
+		}
+		Assert.assertEquals("ti:a", qp.canonicalize(sb.toString()).getText());
+	}
+
+	@Test
+	public void testFingerprint() {
+		// MurmurHash3_x64_128 reference values
+		Assert.assertEquals(new QueryFingerprint(0, 0), QueryFingerprint.of(""));
+		Assert.assertEquals(new QueryFingerprint(0x629942693e10f867L, 0x92db0b82baeb5347L),
+				QueryFingerprint.of("hell"));
+		Assert.assertEquals(new QueryFingerprint(0xe34bbc7bbc071b6cL, 0x7a433ca9c49a9347L),
+				QueryFingerprint.of("The quick brown fox jumps over the lazy dog"));
+		Assert.assertEquals("629942693e10f86792db0b82baeb5347", QueryFingerprint.of("hell").toString());
+	}
+}
@@ -0,0 +1,69 @@
+package com.easynetcn.resource.queryparser;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+
+/**
+ * Tests StringCharStream and CharArrayCharStream against FastCharStream.
+ */
+@RunWith(RandomizedRunner.class)
+public class TestCharStreams {
+
+	private static final String[] QUERIES = { "", "ti=car", "TI=car and co=us", "ab=(engine or motor) not ti=boat",
+			"pd=[20100101 TO 20151231]", "\"electric vehicle\"~2 ti=汽车", "ti=car* or ab=mot?r^2",
+			"a\\:b /reg[ex]p/ {x TO \"y\"}" };
+
+	private static List<String> tokens(CharStream stream) {
+		List<String> tokens = new ArrayList<>();
+		QueryParserTokenManager tm = new QueryParserTokenManager(stream);
+		Token t;
+		do {
+			t = tm.getNextToken();
+			tokens.add(t.kind + ":" + t.image + "@" + t.beginColumn + "-" + t.endColumn);
+		} while (t.kind != QueryParserConstants.EOF);
+		return tokens;
+	}
+
+	@Test
+	public void testSameTokensAsFastCharStream() {
+		StringCharStream stringStream = new StringCharStream();
+		CharArrayCharStream arrayStream = new CharArrayCharStream();
+		for (String query : QUERIES) {
+			List<String> expected = tokens(new FastCharStream(new StringReader(query)));
+
+			stringStream.reset(query);
+			Assert.assertEquals(expected, tokens(stringStream));
+
+			String padded = "((" + query + "))";
+			stringStream.reset(padded, 2, padded.length() - 2);
+			Assert.assertEquals(expected, tokens(stringStream));
+
+			arrayStream.reset(padded.toCharArray(), 2, query.length());
+			Assert.assertEquals(expected, tokens(arrayStream));
+			Assert.assertEquals(query, arrayStream.toString());
+		}
+	}
+
+	@Test
+	public void testParseCharArray() throws Exception {
+		QueryParser qp = new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random()));
+		for (String query : QUERIES) {
+			if (query.isEmpty()) {
+				continue;
+			}
+			char[] buffer = (" " + query + " ").toCharArray();
+			Assert.assertEquals(qp.parse(query), qp.parse(buffer, 1, query.length()));
+		}
+
+		ParseException e = TestQueryParser.expectThrows(ParseException.class,
+				() -> qp.parse("xxti=(car".toCharArray(), 2, 7));
+		Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Cannot parse 'ti=(car': "));
+	}
+}
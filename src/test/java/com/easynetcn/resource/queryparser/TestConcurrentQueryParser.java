@@ -0,0 +1,181 @@
+package com.easynetcn.resource.queryparser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.search.Query;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+
+/**
+ * Tests ConcurrentQueryParser.
+ */
+@RunWith(RandomizedRunner.class)
+public class TestConcurrentQueryParser {
+
+	private static final String[] QUERIES = { "ti=car", "TI=car and co=us", "ab=(engine or motor) not ti=boat",
+			"pd=[20100101 TO 20151231]", "\"electric vehicle\"~2", "ti=car* or ab=mot?r", "(a (b (c or d)))^2" };
+
+	@Test
+	public void testParseFromManyThreads() throws Exception {
+		Analyzer a = new MockAnalyzer(QueryParserTestBase.random());
+		QueryParser single = new QueryParser("field", a);
+		List<Query> expected = new ArrayList<>();
+		for (String query : QUERIES) {
+			expected.add(single.parse(query));
+		}
+
+		ConcurrentQueryParser qp = new ConcurrentQueryParser("field", a);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 16; t++) {
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 200; i++) {
+						int n = i % QUERIES.length;
+						Assert.assertEquals(expected.get(n), qp.parse(QUERIES[n]));
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+	}
+
+	@Test
+	public void testParseAll() throws Exception {
+		Analyzer a = new MockAnalyzer(QueryParserTestBase.random());
+		QueryParser single = new QueryParser("field", a);
+		List<String> queries = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			queries.add(i % 100 == 7 ? "ti=(broken" : QUERIES[i % QUERIES.length]);
+		}
+
+		ConcurrentQueryParser qp = new ConcurrentQueryParser("field", a);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			BatchParseResult batch = qp.parseAll(queries, pool);
+			Assert.assertEquals(1000, batch.size());
+			Assert.assertEquals(10, batch.getFailureCount());
+			for (int i = 0; i < queries.size(); i++) {
+				if (i % 100 == 7) {
+					Assert.assertNull(batch.getQuery(i));
+					Assert.assertNotNull(batch.getException(i));
+				} else {
+					Assert.assertEquals(single.parse(queries.get(i)), batch.getQuery(i));
+					Assert.assertEquals(single.getFieldTexts().size(), batch.getResult(i).getFieldTexts().size());
+					Assert.assertNull(batch.getException(i));
+				}
+			}
+			Assert.assertTrue(batch.getQueriesPerSecond() > 0);
+
+			BatchParseResult streamed = qp.parseAll(queries.stream().limit(20), pool);
+			Assert.assertEquals(20, streamed.size());
+			Assert.assertEquals(single.parse(queries.get(19)), streamed.getQuery(19));
+		} finally {
+			pool.shutdown();
+			pool.awaitTermination(1, TimeUnit.MINUTES);
+		}
+	}
+
+	@Test
+	public void testParseAllCapturesEveryFailure() throws Exception {
+		// fails on the term "boom"
+		Analyzer a = new Analyzer() {
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName) {
+				Tokenizer tokenizer = new WhitespaceTokenizer();
+				TokenStream stream = new TokenFilter(tokenizer) {
+					private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+
+					@Override
+					public boolean incrementToken() throws IOException {
+						if (!input.incrementToken()) {
+							return false;
+						}
+						if ("boom".equals(termAtt.toString())) {
+							throw new IllegalStateException("boom");
+						}
+						return true;
+					}
+				};
+				return new TokenStreamComponents(tokenizer, stream);
+			}
+		};
+		StringBuilder deep = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			deep.append('(');
+		}
+		deep.append('a');
+		for (int i = 0; i < 100000; i++) {
+			deep.append(')');
+		}
+		List<String> queries = Arrays.asList("ti=car", "ti=boom", null, deep.toString(), "ti=(broken", "ab=bus");
+
+		ConcurrentQueryParser qp = new ConcurrentQueryParser(() -> new QueryParser("field", a), 1, 1);
+		QueryParserBase pooled = qp.lease();
+		qp.release(pooled);
+		ForkJoinPool pool = new ForkJoinPool(1);
+		try {
+			BatchParseResult batch = qp.parseAll(queries, pool);
+			Assert.assertEquals(4, batch.getFailureCount());
+			Assert.assertEquals("ti:car", batch.getQuery(0).toString());
+			Assert.assertTrue(batch.getException(1).getCause() instanceof IllegalStateException);
+			Assert.assertTrue(batch.getException(2).getCause() instanceof NullPointerException);
+			Assert.assertTrue(batch.getException(3).getCause() instanceof StackOverflowError);
+			Assert.assertNotNull(batch.getException(4));
+			Assert.assertEquals("ab:bus", batch.getQuery(5).toString());
+		} finally {
+			pool.shutdown();
+			pool.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		// the parser that overflowed was replaced
+		Assert.assertNotSame(pooled, qp.lease());
+	}
+
+	@Test
+	public void testParserIsReturnedToPool() throws Exception {
+		ConcurrentQueryParser qp = new ConcurrentQueryParser(
+				() -> new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random())), 1, 1);
+		Assert.assertEquals(1, qp.getCapacity());
+
+		QueryParserBase first = qp.lease();
+		QueryParserBase second = qp.lease();
+		Assert.assertNotSame(first, second);
+		qp.release(first);
+		qp.release(second);
+		Assert.assertSame(first, qp.lease());
+	}
+
+	@Test
+	public void testParseExceptionReleasesParser() throws Exception {
+		ConcurrentQueryParser qp = new ConcurrentQueryParser(
+				() -> new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random())), 1, 1);
+		QueryParserBase pooled = qp.lease();
+		qp.release(pooled);
+
+		TestQueryParser.expectThrows(ParseException.class, () -> qp.parse("ti=(car"));
+		Assert.assertSame(pooled, qp.lease());
+	}
+}
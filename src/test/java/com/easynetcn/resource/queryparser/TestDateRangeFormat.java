@@ -0,0 +1,81 @@
+package com.easynetcn.resource.queryparser;
+
+import java.time.ZoneOffset;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.apache.lucene.document.DateTools;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+
+/**
+ * Tests DateRangeFormat.
+ */
+@RunWith(RandomizedRunner.class)
+public class TestDateRangeFormat {
+
+	private static QueryParser parser() {
+		QueryParser qp = new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random()));
+		qp.setLocale(Locale.US);
+		qp.setTimeZone(TimeZone.getTimeZone("UTC"));
+		qp.setDateResolution("pd", DateTools.Resolution.MILLISECOND);
+		return qp;
+	}
+
+	@Test
+	public void testPatentFormats() throws Exception {
+		QueryParser qp = parser();
+		Assert.assertEquals("pd:[20100101000000000 TO 20151231235959999]",
+				qp.parse("pd=[20100101 to 20151231]").toString());
+		Assert.assertEquals("pd:[20100101000000000 TO 20151231235959999]",
+				qp.parse("pd=[2010-01-01 to 2015-12-31]").toString());
+		Assert.assertEquals("pd:{20100101000000000 TO 20150101000000000}",
+				qp.parse("pd={20100101 to 20150101}").toString());
+	}
+
+	@Test
+	public void testPartialDates() throws Exception {
+		QueryParser qp = parser();
+		Assert.assertEquals("pd:[20010101000000000 TO 20021231235959999]", qp.parse("pd=[2001 to 2002]").toString());
+		Assert.assertEquals("pd:{20010101000000000 TO 20020101000000000}", qp.parse("pd={2001 to 2002}").toString());
+
+		qp.setDateRangeFormat(DateRangeFormat.of("uuuu-MM"));
+		Assert.assertEquals("pd:[20000201000000000 TO 20000229235959999]",
+				qp.parse("pd=[2000-02 to 2000-02]").toString());
+	}
+
+	@Test
+	public void testNoDates() throws Exception {
+		QueryParser qp = parser();
+		// invalid dates, other lengths and open bounds are left alone
+		Assert.assertEquals("pd:[20100231 TO 20101301]", qp.parse("pd=[20100231 to 20101301]").toString());
+		Assert.assertEquals("pd:[123 TO 123456]", qp.parse("pd=[123 to 123456]").toString());
+		Assert.assertEquals("pd:[* TO 20151231235959999]", qp.parse("pd=[* to 20151231]").toString());
+		// fields without a resolution are never dates
+		Assert.assertEquals("ad:[20100101 TO 20151231]", qp.parse("ad=[20100101 to 20151231]").toString());
+
+		Assert.assertEquals(DateRangeFormat.NO_DATE,
+				DateRangeFormat.PATENT.parse("2010/01/01", false, ZoneOffset.UTC));
+		Assert.assertEquals(0L, DateRangeFormat.PATENT.parse("1970", false, ZoneOffset.UTC));
+	}
+
+	@Test
+	public void testFieldFormats() throws Exception {
+		QueryParser qp = parser();
+		qp.setDateResolution("ad", DateTools.Resolution.DAY);
+		qp.setDateRangeFormat("ad", DateRangeFormat.of("dd.MM.uuuu"));
+		Assert.assertEquals(DateRangeFormat.of("dd.MM.uuuu"), qp.getDateRangeFormat("ad"));
+		Assert.assertEquals(DateRangeFormat.PATENT, qp.getDateRangeFormat("pd"));
+		Assert.assertEquals("ad:[20100102 TO 20151231]", qp.parse("ad=[02.01.2010 to 31.12.2015]").toString());
+
+		qp.setDateRangeFormat(null);
+		Assert.assertEquals(DateRangeFormat.NONE, qp.getDateRangeFormat("pd"));
+		Assert.assertEquals("pd:[20100101 TO 20151231]", qp.parse("pd=[20100101 to 20151231]").toString());
+		// the locale's format still applies
+		Assert.assertEquals("pd:[20100102000000000 TO 20151231235959999]",
+				qp.parse("pd=[1/2/10 to 12/31/15]").toString());
+	}
+}
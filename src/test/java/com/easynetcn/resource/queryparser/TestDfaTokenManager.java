@@ -0,0 +1,80 @@
+package com.easynetcn.resource.queryparser;
+
+import java.io.StringReader;
+import java.util.Random;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Runs the QueryParser tests with the DfaTokenManager.
+ */
+public class TestDfaTokenManager extends TestQueryParser {
+
+	private static final String[] PIECES = { "a", "b", "Z", "1", "2", ".", "AND", "OR", "NOT", "TO", "&", "|", "+",
+			"-", "!", "(", ")", "[", "]", "{", "}", ":", "=", "^", "\"", "~", "*", "?", "\\", "/", "#", " ", "\t", "\n",
+			"\r", "　", "中", "文", "Ａ", "é" };
+
+	@Override
+	public QueryParser getParser(Analyzer a) throws Exception {
+		QueryParser parser = super.getParser(a);
+		QueryParser qp = new QueryParser(new DfaTokenManager(new FastCharStream(new StringReader(""))));
+		qp.init(getDefaultField(), parser.getAnalyzer());
+		qp.setDefaultOperator(parser.getDefaultOperator());
+		qp.setSplitOnWhitespace(parser.getSplitOnWhitespace());
+		return qp;
+	}
+
+	private static void assertSameTokens(String text) {
+		QueryParserTokenManager expected = new QueryParserTokenManager(new FastCharStream(new StringReader(text)));
+		QueryParserTokenManager actual = new DfaTokenManager(new FastCharStream(new StringReader(text)));
+		for (;;) {
+			Token e;
+			try {
+				e = expected.getNextToken();
+			} catch (TokenMgrError error) {
+				try {
+					actual.getNextToken();
+					Assert.fail("expected " + error.getMessage() + " for " + text);
+				} catch (TokenMgrError actualError) {
+					Assert.assertEquals(text, error.getMessage(), actualError.getMessage());
+				}
+				return;
+			}
+			Token a = actual.getNextToken();
+			String message = text + " at " + e.beginColumn;
+			Assert.assertEquals(message, e.kind, a.kind);
+			Assert.assertEquals(message, e.image, a.image);
+			Assert.assertEquals(message, e.beginColumn, a.beginColumn);
+			Assert.assertEquals(message, e.endColumn, a.endColumn);
+			Assert.assertEquals(message, e.beginLine, a.beginLine);
+			Assert.assertEquals(message, e.endLine, a.endLine);
+			if (e.kind == QueryParserConstants.EOF) {
+				return;
+			}
+		}
+	}
+
+	@Test
+	public void testSameTokens() throws Exception {
+		String[] queries = { "ti=car and ab=(red or blue)", "AND ANDROID && &&x || OR NOT NOTE ! !a",
+				"+a -b + a - b ! c", "a* a*b *a *a* ? a? a** * **", "\"a \\\" b\" \"unterminated",
+				"/a\\/b/ /a\\\\/b/ /open", "#1 # #\\x ~ ~2 ~0.5 ~a.b", "a^2 a^2.5 a^2. a^ 2",
+				"pd=[2001 TO 2002] pd={\"a b\" TO \"c]\"x} pd=[\tx TO\ty] pd=[\"\" TO TOO]",
+				"中文 专利　名称=（汽车）Ａ", "a\\ b \\", "]", "}", "a\\", "\\" };
+		for (String query : queries) {
+			assertSameTokens(query);
+		}
+
+		Random random = random();
+		for (int i = 0; i < 20000; i++) {
+			StringBuilder sb = new StringBuilder();
+			int pieces = random.nextInt(12);
+			for (int j = 0; j < pieces; j++) {
+				sb.append(PIECES[random.nextInt(PIECES.length)]);
+			}
+			assertSameTokens(sb.toString());
+		}
+	}
+}
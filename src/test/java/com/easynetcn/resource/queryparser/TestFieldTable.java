@@ -0,0 +1,70 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+
+/**
+ * Tests FieldTable.
+ */
+@RunWith(RandomizedRunner.class)
+public class TestFieldTable {
+
+	private static FieldTable patentFields() {
+		return FieldTable.builder().field("ti", "title", "名称").field("ab", "abstract", "摘要", "περίληψη")
+				.field("pd").build();
+	}
+
+	@Test
+	public void testResolve() throws Exception {
+		FieldTable table = patentFields();
+		Assert.assertSame("ti", table.resolve("TI", 0, 2));
+		Assert.assertSame("ti", table.resolve("Title", 0, 5));
+		Assert.assertSame("ti", table.resolve("名称", 0, 2));
+		Assert.assertSame("ab", table.resolve("ΠΕΡΊΛΗΨΗ", 0, 8));
+		Assert.assertSame("ab", table.resolve("(abstract)", 1, 9));
+		Assert.assertNull(table.resolve("tit", 0, 3));
+		Assert.assertNull(table.resolve("", 0, 0));
+		Assert.assertEquals(3, table.getFields().size());
+	}
+
+	@Test
+	public void testConflictingAlias() {
+		TestQueryParser.expectThrows(IllegalArgumentException.class,
+				() -> FieldTable.builder().field("ti", "name").field("pa", "NAME"));
+	}
+
+	@Test
+	public void testManyAliases() {
+		Map<String, String> aliases = new HashMap<>();
+		for (int i = 0; i < 5000; i++) {
+			aliases.put("alias" + i, "field" + (i % 100));
+		}
+		FieldTable table = FieldTable.builder().aliases(aliases).build();
+		for (int i = 0; i < 5000; i++) {
+			String alias = "ALIAS" + i;
+			Assert.assertEquals("field" + (i % 100), table.resolve(alias, 0, alias.length()));
+		}
+		Assert.assertEquals(100, table.getFields().size());
+	}
+
+	@Test
+	public void testParserUsesTable() throws Exception {
+		QueryParser qp = new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random()));
+		qp.setFieldTable(patentFields());
+		Assert.assertEquals("+ti:car +ab:engine", qp.parse("名称=car and ABSTRACT=engine").toString());
+
+		MissingFieldException e = TestQueryParser.expectThrows(MissingFieldException.class,
+				() -> qp.parse("ti=car and co=us"));
+		Assert.assertEquals("co", e.getField());
+		Assert.assertEquals(11, e.getFieldToken().beginColumn);
+
+		qp.setFieldTable(FieldTable.builder().field("ti", "名称").allowUnknownFields(true).build());
+		Assert.assertEquals("+ti:car +co:us", qp.parse("名称=car and CO=us").toString());
+	}
+}
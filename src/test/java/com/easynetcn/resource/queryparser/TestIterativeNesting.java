@@ -0,0 +1,139 @@
+package com.easynetcn.resource.queryparser;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Runs the QueryParser tests with iterative nesting.
+ */
+public class TestIterativeNesting extends TestQueryParser {
+
+	@Override
+	public QueryParser getParser(Analyzer a) throws Exception {
+		QueryParser qp = super.getParser(a);
+		qp.setIterativeNesting(true);
+		return qp;
+	}
+
+	private static String nested(int depth, String open, String inner, String close) {
+		StringBuilder query = new StringBuilder();
+		for (int i = 0; i < depth; i++) {
+			query.append(open);
+		}
+		query.append(inner);
+		for (int i = 0; i < depth; i++) {
+			query.append(close);
+		}
+		return query.toString();
+	}
+
+	@Test
+	public void testMatchesRecursive() throws Exception {
+		String[] queries = { "a", "(a)", "((a)) or (b and (c or d))", "ti=(a or (b and not c))^2", "pn=(a b (c d))",
+				"(ti=a and (ab=b or (kw=c and pd=[2001 to 2002])))", "-(a (+b -c))", "(a or b) and c d" };
+		QueryParser recursive = new QueryParser("field", new MockAnalyzer(random()));
+		QueryParser iterative = getParser(new MockAnalyzer(random()));
+		for (String query : queries) {
+			Assert.assertEquals(query, recursive.parse(query), iterative.parse(query));
+			Assert.assertEquals(query, recursive.parseToAst(query).toString(), iterative.parseToAst(query).toString());
+		}
+	}
+
+	@Test
+	public void testDeepNesting() throws Exception {
+		QueryParser qp = getParser(new MockAnalyzer(random()));
+		Assert.assertEquals("a", qp.parse(nested(10000, "(", "a", ")")).toString("field"));
+
+		String query = nested(10000, "(a or ", "b", ")");
+		// the top level query holds the outermost group
+		QueryNode node = ((BooleanNode) qp.parseToAst(query)).getClauses().get(0).getQuery();
+		int depth = 0;
+		while (node instanceof BooleanNode) {
+			node = ((BooleanNode) node).getClauses().get(1).getQuery();
+			depth++;
+		}
+		Assert.assertEquals(10000, depth);
+
+		Query q = qp.parse(query);
+		depth = 0;
+		while (q instanceof BooleanQuery) {
+			q = ((BooleanQuery) q).clauses().get(1).getQuery();
+			depth++;
+		}
+		Assert.assertEquals(10000, depth);
+	}
+
+	@Test
+	public void testDeepNestingIsMetered() throws Exception {
+		HistogramParserMetrics metrics = new HistogramParserMetrics();
+		QueryParser qp = getParser(new MockAnalyzer(random()));
+		qp.setParserMetrics(metrics);
+		qp.parse(nested(10000, "(a or ", "b", ")"));
+		Assert.assertEquals(1, metrics.getClauseCounts().getCount());
+		Assert.assertEquals(20000, metrics.getClauseCounts().getTotal());
+	}
+
+	@Test
+	public void testDeepNestingIsOptimized() throws Exception {
+		HistogramParserMetrics metrics = new HistogramParserMetrics();
+		QueryParser qp = getParser(new MockAnalyzer(random()));
+		qp.setParserMetrics(metrics);
+		qp.setBooleanQueryOptimizer(BooleanQueryOptimizer.builder().build());
+		Assert.assertEquals("a b", qp.parse(nested(10000, "(a or ", "b", ")")).toString("field"));
+		Assert.assertEquals(2, metrics.getClauseCounts().getTotal());
+
+		qp.setBooleanQueryOptimizer(BooleanQueryOptimizer.builder().flatten(false).dedup(false).build());
+		Assert.assertEquals(20000, BooleanQueryOptimizer.countClauses(qp.parse(nested(10000, "(a and ", "b", ")"))));
+	}
+
+	@Test
+	public void testNestingBudget() throws Exception {
+		QueryParser qp = getParser(new MockAnalyzer(random()));
+		qp.setParseBudget(ParseBudget.builder().maxNestingDepth(3).build());
+		Assert.assertEquals("a (b c)", qp.parse("(((a))) or ((b or c))").toString("field"));
+		try {
+			qp.parse("((((a))))");
+			Assert.fail();
+		} catch (BudgetExceededException e) {
+			Assert.assertEquals(ParseBudget.Limit.NESTING_DEPTH, e.getLimit());
+		}
+	}
+
+	@Test
+	public void testUnbalanced() throws Exception {
+		QueryParser qp = getParser(new MockAnalyzer(random()));
+		for (String query : new String[] { "((a)", "(a))", "()", "(a or )", "a)" }) {
+			try {
+				qp.parse(query);
+				Assert.fail(query);
+			} catch (ParseException expected) {
+			}
+		}
+	}
+
+	@Test
+	public void testSameErrors() throws Exception {
+		String[] queries = { "((a)", "(a))", "()", "(a or )", "a)", "and a", "a or", "ti=", "#r1 =", "(a)^2 )",
+				"+ )", "a b:", ": a", "(a and (b or not ))" };
+		QueryParser recursive = new QueryParser("field", new MockAnalyzer(random()));
+		QueryParser iterative = getParser(new MockAnalyzer(random()));
+		for (String query : queries) {
+			String expected = null;
+			try {
+				recursive.parseToAst(query);
+				Assert.fail(query);
+			} catch (ParseException e) {
+				expected = e.getMessage();
+			}
+			try {
+				iterative.parseToAst(query);
+				Assert.fail(query);
+			} catch (ParseException e) {
+				Assert.assertEquals(expected, e.getMessage());
+			}
+		}
+	}
+}
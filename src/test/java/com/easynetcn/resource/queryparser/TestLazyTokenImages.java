@@ -0,0 +1,57 @@
+package com.easynetcn.resource.queryparser;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Runs the QueryParser tests with lazy token images.
+ */
+public class TestLazyTokenImages extends TestQueryParser {
+
+	@Override
+	public QueryParser getParser(Analyzer a) throws Exception {
+		QueryParser qp = super.getParser(a);
+		qp.setLazyTokenImages(true);
+		return qp;
+	}
+
+	@Test
+	public void testOnlyLiteralImagesAreKept() {
+		StringCharStream stream = new StringCharStream("ti=(car and motor) or ab=engine");
+		stream.setLazyImages(true);
+		QueryParserTokenManager tm = new QueryParserTokenManager(stream);
+		for (Token t = tm.getNextToken(); t.kind != QueryParserConstants.EOF; t = tm.getNextToken()) {
+			if (t.kind == QueryParserConstants.LPAREN || t.kind == QueryParserConstants.RPAREN) {
+				Assert.assertNotNull(t.image);
+			} else {
+				Assert.assertNull(t.image);
+			}
+			Assert.assertTrue(stream.image(t.beginColumn, t.endColumn).length() > 0);
+		}
+	}
+
+	@Test
+	public void testErrorsMatchEagerParsing() throws Exception {
+		QueryParser eager = new QueryParser("field", new MockAnalyzer(random()));
+		QueryParser lazy = new QueryParser("field", new MockAnalyzer(random()));
+		lazy.setLazyTokenImages(true);
+		for (String query : new String[] { "ti=(car and", "ti=car )", "ti=car ^", "a \\" }) {
+			ParseException expected = expectThrows(ParseException.class, () -> eager.parse(query));
+			ParseException actual = expectThrows(ParseException.class, () -> lazy.parse(query));
+			Assert.assertEquals(expected.getMessage(), actual.getMessage());
+		}
+		Assert.assertTrue(lazy.getLazyTokenImages());
+	}
+
+	@Test
+	public void testFieldTableWithLazyImages() throws Exception {
+		QueryParser qp = new QueryParser("field", new MockAnalyzer(random()));
+		qp.setLazyTokenImages(true);
+		qp.setFieldTable(FieldTable.builder().field("ti", "名称").build());
+		Assert.assertEquals("ti:car", qp.parse("名称=car").toString());
+
+		MissingFieldException e = expectThrows(MissingFieldException.class, () -> qp.parse("ti=a or co=us"));
+		Assert.assertEquals("co", e.getFieldToken().image);
+	}
+}
@@ -0,0 +1,140 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+
+/**
+ * Tests ParseBudget.
+ */
+@RunWith(RandomizedRunner.class)
+public class TestParseBudget {
+
+	private static QueryParser parser(ParseBudget budget) {
+		QueryParser qp = new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random()));
+		qp.setParseBudget(budget);
+		return qp;
+	}
+
+	private static void assertExceeds(ParseBudget.Limit limit, QueryParser qp, String query) throws ParseException {
+		try {
+			qp.parse(query);
+			Assert.fail("expected " + limit + " to be exceeded by " + query);
+		} catch (BudgetExceededException e) {
+			Assert.assertEquals(limit, e.getLimit());
+		}
+	}
+
+	@Test
+	public void testInputLength() throws Exception {
+		QueryParser qp = parser(ParseBudget.builder().maxInputLength(10).build());
+		Assert.assertEquals("ti:car", qp.parse("ti=car").toString("field"));
+		assertExceeds(ParseBudget.Limit.INPUT_LENGTH, qp, "ti=car and ab=red");
+		char[] buffer = "ti=car and ab=red".toCharArray();
+		try {
+			qp.parse(buffer, 0, buffer.length);
+			Assert.fail();
+		} catch (BudgetExceededException e) {
+			Assert.assertEquals(10, e.getMax());
+		}
+	}
+
+	@Test
+	public void testNestingDepth() throws Exception {
+		QueryParser qp = parser(ParseBudget.builder().maxNestingDepth(3).build());
+		Assert.assertEquals("a (b c)", qp.parse("(((a))) or ((b or c))").toString("field"));
+		assertExceeds(ParseBudget.Limit.NESTING_DEPTH, qp, "((((a))))");
+
+		// lazy token images parse again after errors, and fail the same way
+		qp.setLazyTokenImages(true);
+		assertExceeds(ParseBudget.Limit.NESTING_DEPTH, qp, "((((a))))");
+		Assert.assertEquals("a", qp.parse("(((a)))").toString("field"));
+	}
+
+	@Test
+	public void testClauses() throws Exception {
+		QueryParser qp = parser(ParseBudget.builder().maxClauses(3).build());
+		Assert.assertEquals("a b c", qp.parse("a or b or c").toString("field"));
+		assertExceeds(ParseBudget.Limit.CLAUSES, qp, "a b c d");
+		assertExceeds(ParseBudget.Limit.CLAUSES, qp, "a or (b or (c or d))");
+	}
+
+	@Test
+	public void testReferences() throws Exception {
+		QueryParser qp = parser(ParseBudget.builder().maxClauses(5).maxAnalysisTokens(5).build());
+		Map<String, String> history = new HashMap<>();
+		history.put("1", "a or b");
+		history.put("2", "c or d");
+		history.put("3", "\"e f g\"");
+		qp.setReferenceResolver(history::get);
+
+		// referenced queries share the budget of the query using them
+		Assert.assertEquals("(a b) x", qp.parse("#1 or x").toString("field"));
+		assertExceeds(ParseBudget.Limit.CLAUSES, qp, "#1 and #2");
+		assertExceeds(ParseBudget.Limit.ANALYSIS_TOKENS, qp, "#3 \"x y z\"");
+		try {
+			qp.compile(qp.parseToAst("#1 and #2"));
+			Assert.fail();
+		} catch (BudgetExceededException e) {
+			Assert.assertEquals(ParseBudget.Limit.CLAUSES, e.getLimit());
+		}
+
+		// every use of a memoized reference counts its clauses
+		Assert.assertEquals("(c d) x", qp.parse("#2 or x").toString("field"));
+		assertExceeds(ParseBudget.Limit.CLAUSES, qp, "#1 or #1");
+	}
+
+	@Test
+	public void testPatternComplexity() throws Exception {
+		QueryParser qp = parser(ParseBudget.builder().maxPatternComplexity(2).build());
+		Assert.assertEquals("ti:a*b*", qp.parse("ti=a*b*").toString("field"));
+		assertExceeds(ParseBudget.Limit.PATTERN_COMPLEXITY, qp, "ti=a*b?c*");
+		assertExceeds(ParseBudget.Limit.PATTERN_COMPLEXITY, qp, "ti=/a.*b+c?/");
+	}
+
+	@Test
+	public void testAnalysisTokens() throws Exception {
+		QueryParser qp = parser(ParseBudget.builder().maxAnalysisTokens(3).build());
+		Assert.assertEquals("\"a b c\"", qp.parse("\"a b c\"").toString("field"));
+		assertExceeds(ParseBudget.Limit.ANALYSIS_TOKENS, qp, "\"a b c d\"");
+		assertExceeds(ParseBudget.Limit.ANALYSIS_TOKENS, qp, "a b c d");
+
+		// compiling a syntax tree has its own budget
+		QueryNode ast = qp.parseToAst("\"a b c d\"");
+		try {
+			qp.compile(ast);
+			Assert.fail();
+		} catch (BudgetExceededException e) {
+			Assert.assertEquals(ParseBudget.Limit.ANALYSIS_TOKENS, e.getLimit());
+		}
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		QueryParser qp = parser(ParseBudget.builder().timeout(1, TimeUnit.NANOSECONDS).build());
+		StringBuilder query = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			query.append("(ti=car").append(i).append(") or ");
+		}
+		query.append("ti=car");
+		assertExceeds(ParseBudget.Limit.TIME, qp, query.toString());
+
+		qp.setParseBudget(ParseBudget.builder().timeout(1, TimeUnit.MINUTES).build());
+		Assert.assertNotNull(qp.parse(query.toString()));
+	}
+
+	@Test
+	public void testUnlimited() throws Exception {
+		QueryParser limited = parser(ParseBudget.builder().build());
+		QueryParser unlimited = parser(null);
+		for (String query : new String[] { "a b c", "((ti=a*b?c) and not /x+y*/)^2", "\"a b c d\" or pd=[1 to 2]" }) {
+			Assert.assertEquals(unlimited.parse(query), limited.parse(query));
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com.easynetcn.resource.queryparser;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.search.Query;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+import com.easynetcn.resource.queryparser.QueryParser.Operator;
+
+/**
+ * Tests ParsedQueryCache.
+ */
+@RunWith(RandomizedRunner.class)
+public class TestParsedQueryCache {
+
+	@Test
+	public void testHitReturnsCachedQuery() throws Exception {
+		ParsedQueryCache cache = new ParsedQueryCache(100);
+		QueryParser qp = new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random()));
+		qp.setQueryCache(cache);
+
+		Query first = qp.parse("ti=car and co=us");
+		Query second = qp.parse("ti=car and co=us");
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, cache.getHitCount());
+		Assert.assertEquals(1, cache.getMissCount());
+		Assert.assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testSettingsArePartOfTheKey() throws Exception {
+		ParsedQueryCache cache = new ParsedQueryCache(100);
+		Analyzer a = new MockAnalyzer(QueryParserTestBase.random());
+		QueryParser or = new QueryParser("field", a);
+		QueryParser and = new QueryParser("field", a);
+		and.setDefaultOperator(Operator.AND);
+		or.setQueryCache(cache);
+		and.setQueryCache(cache);
+
+		Assert.assertEquals("a b", or.parse("a b").toString("field"));
+		Assert.assertEquals("+a +b", and.parse("a b").toString("field"));
+		Assert.assertEquals(0, cache.getHitCount());
+
+		// a parser with identical settings shares the entries
+		QueryParser other = new QueryParser("field", a);
+		other.setQueryCache(cache);
+		Assert.assertEquals("a b", other.parse("a b").toString("field"));
+		Assert.assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void testSettingsChangeMisses() throws Exception {
+		ParsedQueryCache cache = new ParsedQueryCache(100);
+		Analyzer a = new MockAnalyzer(QueryParserTestBase.random());
+		QueryParser qp = new QueryParser("field", a);
+		qp.setQueryCache(cache);
+
+		Assert.assertEquals("a b", qp.parse("a b").toString("field"));
+		Assert.assertEquals(1, cache.size());
+		qp.setDefaultOperator(Operator.AND);
+		Assert.assertEquals(1, cache.size());
+		Assert.assertEquals("+a +b", qp.parse("a b").toString("field"));
+		Assert.assertEquals(0, cache.getHitCount());
+		Assert.assertEquals(2, cache.size());
+
+		// entries of the previous settings are kept for parsers still using them
+		QueryParser other = new QueryParser("field", a);
+		other.setQueryCache(cache);
+		Assert.assertEquals("a b", other.parse("a b").toString("field"));
+		Assert.assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void testFieldTextsAreCached() throws Exception {
+		QueryParser qp = new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random()));
+		qp.setQueryCache(new ParsedQueryCache(100));
+
+		ParseResult first = qp.parseWithFieldTexts("ti=car and co=us");
+		qp.parse("other");
+		ParseResult second = qp.parseWithFieldTexts("ti=car and co=us");
+		Assert.assertSame(first, second);
+		Assert.assertEquals(2, second.getFieldTexts().size());
+		Assert.assertSame(second.getFieldTexts(), qp.getFieldTexts());
+		Assert.assertEquals("ti", qp.getFieldTexts().get(0).getField());
+		Assert.assertEquals("car", qp.getFieldTexts().get(0).getText());
+	}
+
+	@Test
+	public void testCaptureFieldTextsIsPartOfTheKey() throws Exception {
+		QueryParser qp = new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random()));
+		qp.setQueryCache(new ParsedQueryCache(100));
+
+		qp.setCaptureFieldTexts(false);
+		Assert.assertTrue(qp.parseWithFieldTexts("ti=car").getFieldTexts().isEmpty());
+		qp.setCaptureFieldTexts(true);
+		Assert.assertEquals(1, qp.parseWithFieldTexts("ti=car").getFieldTexts().size());
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		ParsedQueryCache cache = new ParsedQueryCache(4);
+		QueryParser qp = new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random()));
+		qp.setQueryCache(cache);
+
+		for (int i = 0; i < 10; i++) {
+			qp.parse("term" + i);
+		}
+		Assert.assertEquals(4, cache.size());
+		Assert.assertEquals(6, cache.getEvictionCount());
+
+		ParsedQueryCache small = new ParsedQueryCache(100, 200);
+		qp.setQueryCache(small);
+		for (int i = 0; i < 10; i++) {
+			qp.parse("term" + i);
+		}
+		Assert.assertTrue(small.getWeight() <= 200);
+		Assert.assertTrue(small.getEvictionCount() > 0);
+	}
+}
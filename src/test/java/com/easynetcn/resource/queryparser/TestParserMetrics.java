@@ -0,0 +1,97 @@
+package com.easynetcn.resource.queryparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+import com.easynetcn.resource.queryparser.ParserMetrics.Phase;
+import com.easynetcn.resource.queryparser.ParserMetrics.QueryType;
+
+/**
+ * Tests ParserMetrics, HistogramParserMetrics and Histogram.
+ */
+@RunWith(RandomizedRunner.class)
+public class TestParserMetrics {
+
+	@Test
+	public void testHistogram() {
+		Histogram histogram = new Histogram();
+		Assert.assertEquals(0, histogram.getValueAtPercentile(99));
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		Assert.assertEquals(1000, histogram.getCount());
+		Assert.assertEquals(500500, histogram.getTotal());
+		Assert.assertEquals(1000, histogram.getMax());
+		Assert.assertEquals(1, histogram.getValueAtPercentile(0));
+		long p50 = histogram.getValueAtPercentile(50);
+		Assert.assertTrue(p50 >= 500 && p50 < 500 + 500 / Histogram.SUB_BUCKETS);
+		Assert.assertEquals(1000, histogram.getValueAtPercentile(100));
+
+		histogram.record(Long.MAX_VALUE);
+		Assert.assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+
+		histogram.reset();
+		Assert.assertEquals(0, histogram.getCount());
+		Assert.assertEquals(0, histogram.getMax());
+	}
+
+	@Test
+	public void testBuckets() {
+		for (long value : new long[] { 0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE }) {
+			int bucket = Histogram.bucket(value);
+			Assert.assertTrue(value <= Histogram.upperBound(bucket));
+			Assert.assertTrue(bucket == 0 || value > Histogram.upperBound(bucket - 1));
+		}
+	}
+
+	@Test
+	public void testParseIsMetered() throws Exception {
+		HistogramParserMetrics metrics = new HistogramParserMetrics();
+		QueryParser qp = new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random()));
+		qp.setParserMetrics(metrics);
+
+		Assert.assertEquals("+ti:car +(ab:red ab:blue) +pd:[2001 TO 2002] +ti:whe*",
+				qp.parse("ti=car and ab=(red or blue) and pd=[2001 to 2002] and ti=whe*").toString("field"));
+		Assert.assertEquals(1, metrics.getParseLatency().getCount());
+		for (Phase phase : Phase.values()) {
+			Assert.assertEquals(1, metrics.getPhaseLatency(phase).getCount());
+		}
+		Assert.assertEquals(6, metrics.getClauseCounts().getMax());
+		Assert.assertEquals(3, metrics.getQueryLatency(QueryType.TERM).getCount());
+		Assert.assertEquals(1, metrics.getQueryLatency(QueryType.RANGE).getCount());
+		Assert.assertEquals(1, metrics.getQueryLatency(QueryType.PREFIX).getCount());
+		Assert.assertEquals(Long.valueOf(2), metrics.getFieldTermCounts().get("ti"));
+		Assert.assertEquals(Long.valueOf(2), metrics.getFieldTermCounts().get("ab"));
+
+		try {
+			qp.parse("ti=(car");
+			Assert.fail();
+		} catch (ParseException expected) {
+		}
+		Assert.assertEquals(1, metrics.getFailureCount());
+		Assert.assertEquals(1, metrics.getParseLatency().getCount());
+
+		// switched off, nothing is recorded
+		qp.setParserMetrics(null);
+		Assert.assertSame(ParserMetrics.NOOP, qp.getParserMetrics());
+		Assert.assertEquals("ti:car", qp.parse("ti=car").toString("field"));
+		Assert.assertEquals(1, metrics.getParseLatency().getCount());
+
+		metrics.reset();
+		Assert.assertEquals(0, metrics.getParseLatency().getCount());
+		Assert.assertTrue(metrics.getFieldTermCounts().isEmpty());
+	}
+
+	@Test
+	public void testMeteredParsesLikeUnmetered() throws Exception {
+		QueryParser metered = new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random()));
+		metered.setParserMetrics(new HistogramParserMetrics());
+		QueryParser plain = new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random()));
+		for (String query : new String[] { "a b c", "ti=\"red car\"~2 or ab=blu~", "pd=[2001 to *} and not /a.c/",
+				"(ti=a or ti=b)^2 and co=us" }) {
+			Assert.assertEquals(plain.parse(query), metered.parse(query));
+		}
+	}
+}
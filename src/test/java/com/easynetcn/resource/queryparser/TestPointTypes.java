@@ -0,0 +1,105 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.FloatPoint;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermRangeQuery;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+
+/**
+ * Tests point types of numeric and date fields.
+ */
+@RunWith(RandomizedRunner.class)
+public class TestPointTypes {
+
+	private static QueryParser parser() {
+		QueryParser qp = new QueryParser("ti", new MockAnalyzer(QueryParserTestBase.random()));
+		qp.setLocale(Locale.US);
+		qp.setTimeZone(TimeZone.getTimeZone("UTC"));
+		qp.setPointType("clm", PointType.INT);
+		qp.setPointType("fam", PointType.LONG);
+		qp.setPointType("score", PointType.FLOAT);
+		qp.setPointType("price", PointType.DOUBLE);
+		qp.setPointType("pd", PointType.DATE);
+		return qp;
+	}
+
+	@Test
+	public void testRanges() throws Exception {
+		QueryParser qp = parser();
+		Assert.assertEquals(IntPoint.newRangeQuery("clm", 1, 20), qp.parse("clm=[1 to 20]"));
+		Assert.assertEquals(IntPoint.newRangeQuery("clm", 2, 19), qp.parse("clm={1 to 20}"));
+		Assert.assertEquals(IntPoint.newRangeQuery("clm", Integer.MIN_VALUE, 20), qp.parse("clm={* to 20]"));
+		Assert.assertEquals(LongPoint.newRangeQuery("fam", 5, Long.MAX_VALUE), qp.parse("fam=[5 to *]"));
+		Assert.assertEquals(FloatPoint.newRangeQuery("score", FloatPoint.nextUp(0.5f), 1.5f),
+				qp.parse("score={0.5 to 1.5]"));
+		Assert.assertEquals(DoublePoint.newRangeQuery("price", 0.5, DoublePoint.nextDown(1.5)),
+				qp.parse("price=[0.5 to 1.5}"));
+		Assert.assertTrue(qp.parse("clm={2147483647 to *]") instanceof MatchNoDocsQuery);
+
+		// other fields keep text ranges
+		Assert.assertTrue(qp.parse("ti=[1 to 20]") instanceof TermRangeQuery);
+	}
+
+	@Test
+	public void testDates() throws Exception {
+		QueryParser qp = parser();
+		Assert.assertEquals(LongPoint.newRangeQuery("pd", 1262304000000L, 1451606399999L),
+				qp.parse("pd=[20100101 to 20151231]"));
+		Assert.assertEquals(LongPoint.newRangeQuery("pd", 978307200000L, 1041379199999L),
+				qp.parse("pd=[2001 to 2002]"));
+		// a plain date matches its whole period
+		Assert.assertEquals(LongPoint.newRangeQuery("pd", 1262304000000L, 1262390399999L), qp.parse("pd=20100101"));
+		Assert.assertEquals(LongPoint.newRangeQuery("pd", 1262304000000L, 1262390399999L), qp.parse("pd=1/1/10"));
+	}
+
+	@Test
+	public void testTerms() throws Exception {
+		QueryParser qp = parser();
+		Assert.assertEquals(IntPoint.newExactQuery("clm", 12), qp.parse("clm=12"));
+		Assert.assertEquals(DoublePoint.newExactQuery("price", 9.5), qp.parse("price=9.5"));
+
+		BooleanQuery.Builder expected = new BooleanQuery.Builder();
+		expected.add(IntPoint.newExactQuery("clm", 1), BooleanClause.Occur.SHOULD);
+		expected.add(IntPoint.newExactQuery("clm", 2), BooleanClause.Occur.SHOULD);
+		Assert.assertEquals(expected.build(), qp.parse("clm=(1 or 2)"));
+		Assert.assertEquals(expected.build(), qp.parse("clm=(1 2)"));
+	}
+
+	@Test
+	public void testInvalidValues() throws Exception {
+		QueryParser qp = parser();
+		for (String query : new String[] { "clm=abc", "clm=[1 to x]", "clm=1.5", "clm=[1 to 99999999999]",
+				"pd=[20100231 to 2011]", "pd=yesterday" }) {
+			try {
+				qp.parse(query);
+				Assert.fail(query);
+			} catch (ParseException expected) {
+			}
+		}
+	}
+
+	@Test
+	public void testToString() throws Exception {
+		QueryParser qp = parser();
+		Assert.assertEquals("clm:[1 TO 20]", qp.toString(qp.parse("clm=[1 to 20]"), "ti"));
+		Assert.assertEquals("12", qp.toString(qp.parse("clm=12"), "clm"));
+		Assert.assertEquals("score:[0.5 TO 1.5]", qp.toString(qp.parse("score=[0.5 to 1.5]"), "ti"));
+		Assert.assertEquals("pd:[20100101000000000 TO 20100101235959999]", qp.toString(qp.parse("pd=20100101"), "ti"));
+		Query q = qp.parse("clm=[1 to 20]");
+		qp.setPointType("clm", null);
+		Assert.assertEquals(q.toString("ti"), qp.toString(q, "ti"));
+	}
+}
@@ -0,0 +1,190 @@
+package com.easynetcn.resource.queryparser;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.search.spans.SpanNearQuery;
+import org.apache.lucene.search.spans.SpanOrQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Runs the QueryParser tests on queries encoded and decoded by
+ * {@link QueryCodec}.
+ */
+public class TestQueryCodec extends TestQueryParser {
+
+	private static Query roundTrip(Query query) {
+		ParseResult decoded = QueryCodec.decode(ByteBuffer.wrap(QueryCodec.encode(new ParseResult(query,
+				Collections.<FieldText> emptyList()))));
+		Assert.assertEquals(query, decoded.getQuery());
+		return decoded.getQuery();
+	}
+
+	@Override
+	public Query getQuery(String query, QueryParser cqpC) throws Exception {
+		return roundTrip(super.getQuery(query, cqpC));
+	}
+
+	@Override
+	public Query getQuery(String query, Analyzer a) throws Exception {
+		return roundTrip(super.getQuery(query, a));
+	}
+
+	@Test
+	public void testFieldTexts() throws Exception {
+		QueryParser qp = getParser(new MockAnalyzer(random()));
+		ParseResult result = qp.parseWithFieldTexts("ti=car and (ab=\"red engine\" or ab=mot*) and pd=[2001 to 2002]");
+		ByteBuffer buffer = ByteBuffer.allocate(1024);
+		buffer.put((byte) 42);
+		buffer.put(QueryCodec.encode(result));
+		buffer.put((byte) 43);
+		buffer.flip();
+		buffer.get();
+
+		ParseResult decoded = QueryCodec.decode(buffer);
+		Assert.assertEquals(result.getQuery(), decoded.getQuery());
+		Assert.assertEquals(result.getFieldTexts().size(), decoded.getFieldTexts().size());
+		for (int i = 0; i < result.getFieldTexts().size(); i++) {
+			Assert.assertEquals(result.getFieldTexts().get(i).getField(), decoded.getFieldTexts().get(i).getField());
+			Assert.assertEquals(result.getFieldTexts().get(i).getText(), decoded.getFieldTexts().get(i).getText());
+		}
+		// the position is left after the encoding
+		Assert.assertEquals(43, buffer.get());
+	}
+
+	@Test
+	public void testHeapAndDirectBuffers() {
+		byte[] encoded = QueryCodec.encode(new ParseResult(new TermQuery(new Term("ti", "car")),
+				Collections.<FieldText> emptyList()));
+		Query heap = QueryCodec.decode(ByteBuffer.wrap(encoded)).getQuery();
+		Assert.assertEquals(new TermQuery(new Term("ti", "car")), heap);
+		// the query does not depend on the buffer once decoded
+		Arrays.fill(encoded, (byte) 0);
+		Assert.assertEquals(new TermQuery(new Term("ti", "car")), heap);
+
+		encoded = QueryCodec.encode(new ParseResult(heap, Collections.<FieldText> emptyList()));
+		ByteBuffer direct = ByteBuffer.allocateDirect(encoded.length);
+		direct.put(encoded).flip();
+		Assert.assertEquals(heap, QueryCodec.decode(direct).getQuery());
+	}
+
+	@Test
+	public void testDecodedQueriesOwnTheirBytes() throws Exception {
+		QueryParser qp = getParser(new MockAnalyzer(random()));
+		Query query = new BooleanQuery.Builder()
+				.add(qp.parse("pd=[aaa to zzz] or ti=car or ab=\"red engine\" or ab=mot* or ab=/c[ae]r/"), Occur.SHOULD)
+				.add(new TermInSetQuery("ti", Arrays.asList(new BytesRef("a"), new BytesRef("b"))), Occur.SHOULD)
+				.add(new TermRangeQuery("ti", null, new BytesRef("m"), true, false), Occur.SHOULD).build();
+		byte[] encoded = QueryCodec.encode(new ParseResult(query, Collections.<FieldText> emptyList()));
+		ByteBuffer buffer = ByteBuffer.wrap(encoded);
+		Query decoded = QueryCodec.decode(buffer).getQuery();
+		Assert.assertEquals(query, decoded);
+
+		// a pooled buffer is reused for the next message
+		Arrays.fill(buffer.array(), (byte) 'q');
+		Assert.assertEquals(query, decoded);
+		Assert.assertEquals(query.hashCode(), decoded.hashCode());
+		Assert.assertEquals(query.toString(), decoded.toString());
+	}
+
+	@Test
+	public void testOtherQueries() {
+		roundTrip(IntPoint.newRangeQuery("clm", 1, 20));
+		roundTrip(LongPoint.newExactQuery("pd", 1262304000000L));
+		roundTrip(DoublePoint.newSetQuery("price", 9.5, 1.5));
+		roundTrip(new TermInSetQuery("ti", Arrays.asList(new BytesRef("a"), new BytesRef("b"))));
+		roundTrip(new DisjunctionMaxQuery(Arrays.<Query> asList(new TermQuery(new Term("ti", "a")),
+				new MatchAllDocsQuery()), 0.1f));
+		SpanQuery[] spans = { new SpanTermQuery(new Term("ti", "a")), new SpanTermQuery(new Term("ti", "b")) };
+		roundTrip(new SpanOrQuery(new SpanNearQuery(spans, 2, false), new SpanTermQuery(new Term("ti", "c"))));
+
+		WildcardQuery wildcard = new WildcardQuery(new Term("ti", "c?r"));
+		wildcard.setRewriteMethod(new MultiTermQuery.TopTermsScoringBooleanQueryRewrite(10));
+		Assert.assertEquals(wildcard.getRewriteMethod(),
+				((MultiTermQuery) roundTrip(wildcard)).getRewriteMethod());
+	}
+
+	@Test
+	public void testUnsupported() {
+		ParseResult result = new ParseResult(new Query() {
+			@Override
+			public String toString(String field) {
+				return "custom";
+			}
+
+			@Override
+			public boolean equals(Object obj) {
+				return this == obj;
+			}
+
+			@Override
+			public int hashCode() {
+				return 0;
+			}
+		}, Collections.<FieldText> emptyList());
+		expectThrows(IllegalArgumentException.class, () -> QueryCodec.encode(result));
+
+		byte[] encoded = QueryCodec.encode(new ParseResult(new MatchAllDocsQuery(),
+				Collections.<FieldText> emptyList()));
+		encoded[0] = QueryCodec.VERSION + 1;
+		expectThrows(IllegalArgumentException.class, () -> QueryCodec.decode(ByteBuffer.wrap(encoded)));
+	}
+
+	private static void assertMalformed(byte[] encoded) {
+		expectThrows(IllegalArgumentException.class, () -> QueryCodec.decode(ByteBuffer.wrap(encoded)));
+	}
+
+	@Test
+	public void testCorruptInput() throws Exception {
+		QueryParser qp = getParser(new MockAnalyzer(random()));
+		byte[] encoded = QueryCodec.encode(qp.parseWithFieldTexts("ti=car and ab=(red or blue) not ti=whe*"));
+		for (int length = 0; length < encoded.length; length++) {
+			assertMalformed(Arrays.copyOf(encoded, length));
+		}
+
+		// version, no fields, a boolean query of one clause, no field texts
+		byte[] clause = { QueryCodec.VERSION, 0, 2, 0, 0, 1, (byte) Occur.SHOULD.ordinal(), 15, 0 };
+		Assert.assertEquals(new MatchAllDocsQuery(),
+				((BooleanQuery) QueryCodec.decode(ByteBuffer.wrap(clause)).getQuery()).clauses().get(0).getQuery());
+		clause[6] = 9;
+		assertMalformed(clause);
+		clause[6] = -1;
+		assertMalformed(clause);
+
+		// Integer.MAX_VALUE and -1 clauses
+		assertMalformed(new byte[] { QueryCodec.VERSION, 0, 2, 0, 0, -1, -1, -1, -1, 7, 15, 0 });
+		assertMalformed(new byte[] { QueryCodec.VERSION, 0, 2, 0, 0, -1, -1, -1, -1, 15, 15, 0 });
+		// a field name longer than the buffer
+		assertMalformed(new byte[] { QueryCodec.VERSION, 1, 100, 'a', 15, 0 });
+
+		// anything else is either decoded or rejected
+		for (int i = 0; i < 1000; i++) {
+			byte[] corrupt = encoded.clone();
+			corrupt[random().nextInt(corrupt.length)] = (byte) random().nextInt(256);
+			try {
+				QueryCodec.decode(ByteBuffer.wrap(corrupt));
+			} catch (IllegalArgumentException expected) {
+			}
+		}
+	}
+}
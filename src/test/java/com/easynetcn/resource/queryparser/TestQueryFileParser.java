@@ -0,0 +1,71 @@
+package com.easynetcn.resource.queryparser;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.search.Query;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+
+/**
+ * Tests QueryFileParser.
+ */
+@RunWith(RandomizedRunner.class)
+public class TestQueryFileParser {
+
+	private static class Records implements QueryRecordHandler {
+		final List<String> records = new ArrayList<>();
+
+		@Override
+		public void onQuery(long lineNumber, Query query, List<FieldText> fieldTexts) {
+			records.add(lineNumber + " " + query + " " + fieldTexts.size());
+		}
+
+		@Override
+		public void onError(long lineNumber, String line, ParseException e) {
+			records.add(lineNumber + " error " + line);
+		}
+	}
+
+	private static List<String> parse(byte[] content, int windowSize) throws Exception {
+		Path file = Files.createTempFile("queries", ".txt");
+		try {
+			Files.write(file, content);
+			QueryParser qp = new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random()));
+			Records records = new Records();
+			new QueryFileParser(qp, windowSize).parse(file, records);
+			return records.records;
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testParseFile() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF });
+		out.write("ti=汽车 and ab=engine\r\n\n  \nti=(a or\nab=\"a very long phrase query that spans windows\"\nb"
+				.getBytes(StandardCharsets.UTF_8));
+		List<String> expected = new ArrayList<>();
+		expected.add("1 +ti:汽车 +ab:engine 2");
+		expected.add("4 error ti=(a or");
+		expected.add("5 ab:\"a very long phrase query that spans windows\" 1");
+		expected.add("6 field:b 1");
+		byte[] content = out.toByteArray();
+		for (int windowSize : new int[] { 1, 7, 16, QueryFileParser.DEFAULT_WINDOW_SIZE }) {
+			Assert.assertEquals("windowSize=" + windowSize, expected, parse(content, windowSize));
+		}
+	}
+
+	@Test
+	public void testEmptyFile() throws Exception {
+		Assert.assertTrue(parse(new byte[0], 16).isEmpty());
+	}
+}
@@ -0,0 +1,107 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.List;
+
+import org.apache.lucene.search.Query;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+
+/**
+ * Tests parseToAst and compiling syntax trees.
+ */
+@RunWith(RandomizedRunner.class)
+public class TestQueryNodes {
+
+	private static QueryParser newParser() {
+		return new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random()));
+	}
+
+	@Test
+	public void testTree() throws Exception {
+		QueryParser qp = newParser();
+		String query = "TI=car and -(ab=\"red engine\"~2 or ab=mot*^2) or pd=[2001 TO *} guinea pig";
+		QueryNode ast = qp.parseToAst(query);
+		Assert.assertEquals(
+				"(ti:car AND -(ab:\"red engine\"~2 OR ab:mot*^2.0) OR pd:[2001 TO *} field:<guinea pig>)",
+				ast.toString());
+		Assert.assertEquals(0, ast.getBeginOffset());
+		Assert.assertEquals(query.length(), ast.getEndOffset());
+
+		List<ClauseNode> clauses = ((BooleanNode) ast).getClauses();
+		Assert.assertEquals(4, clauses.size());
+		ClauseNode not = clauses.get(1);
+		Assert.assertEquals(ClauseNode.Conjunction.AND, not.getConjunction());
+		Assert.assertEquals(ClauseNode.Modifier.PROHIBITED, not.getModifier());
+		Assert.assertEquals("and -(ab=\"red engine\"~2 or ab=mot*^2)",
+				query.substring(not.getBeginOffset(), not.getEndOffset()));
+
+		BooleanNode group = (BooleanNode) not.getQuery();
+		TermNode phrase = (TermNode) group.getClauses().get(0).getQuery();
+		Assert.assertEquals(TermNode.Kind.PHRASE, phrase.getKind());
+		Assert.assertEquals("~2", phrase.getFuzzySlop());
+		Assert.assertFalse(phrase.isFuzzy());
+		TermNode prefix = (TermNode) group.getClauses().get(1).getQuery();
+		Assert.assertEquals(TermNode.Kind.PREFIX, prefix.getKind());
+		Assert.assertEquals(2f, prefix.getBoost(), 0f);
+		Assert.assertEquals("mot*^2", query.substring(prefix.getBeginOffset(), prefix.getEndOffset()));
+
+		RangeNode range = (RangeNode) clauses.get(2).getQuery();
+		Assert.assertEquals("2001", range.getLower());
+		Assert.assertNull(range.getUpper());
+		Assert.assertTrue(range.getIncludeLower());
+		Assert.assertFalse(range.getIncludeUpper());
+		Assert.assertFalse(range.hasBoost());
+	}
+
+	@Test
+	public void testCompileMatchesParse() throws Exception {
+		QueryParser qp = newParser();
+		for (String query : new String[] { "ti=car and co=us", "a -b +c", "ti=(a or b)^3 and ab=\"x y\"",
+				"guinea pig", "ab=car~1 or ab=c?r", "pd=[1 TO 5] and ti=/ca[rt]/", "-a", "a and not b" }) {
+			Query expected = qp.parse(query);
+			List<FieldText> expectedTexts = qp.getFieldTexts();
+			Assert.assertEquals(query, expected, qp.compile(qp.parseToAst(query)));
+			Assert.assertEquals(query, expectedTexts.size(), qp.getFieldTexts().size());
+		}
+	}
+
+	@Test
+	public void testTreeIsIndependentOfAnalysis() throws Exception {
+		QueryParser qp = newParser();
+		QueryNode ast = qp.parseToAst("ti=CAR and ab=*gine");
+		Assert.assertEquals("(ti:CAR AND ab:*gine)", ast.toString());
+		// errors of query construction only surface when compiling
+		expectCompileError(qp, ast);
+		qp.setAllowLeadingWildcard(true);
+		Assert.assertEquals("+ti:car +ab:*gine", qp.compile(ast).toString());
+		qp.setDefaultOperator(QueryParser.Operator.AND);
+		Assert.assertEquals("+ti:car +ab:*gine", qp.compile(qp.parseToAst("ti=car ab=*gine")).toString());
+	}
+
+	private static void expectCompileError(QueryParser qp, QueryNode ast) {
+		TestQueryParser.expectThrows(ParseException.class, () -> qp.compile(ast));
+	}
+
+	@Test
+	public void testReferencesAreResolvedWhenCompiling() throws Exception {
+		QueryParser qp = newParser();
+		QueryNode ast = qp.parseToAst("#1 and co=us");
+		Assert.assertEquals("(#1 AND co:us)", ast.toString());
+		TestQueryParser.expectThrows(ParseException.class, () -> qp.compile(ast));
+		qp.setReferenceResolver(name -> "ti=a or ti=b");
+		Assert.assertEquals("+(ti:a ti:b) +co:us", qp.compile(ast).toString());
+		Assert.assertEquals(3, qp.getFieldTexts().size());
+	}
+
+	@Test
+	public void testFieldsAreResolvedWhenParsing() {
+		QueryParser qp = newParser();
+		qp.setFieldTable(FieldTable.builder().field("ti").build());
+		MissingFieldException e = TestQueryParser.expectThrows(MissingFieldException.class,
+				() -> qp.parseToAst("ti=a or xx=b"));
+		Assert.assertEquals("xx", e.getField());
+	}
+}
@@ -17,6 +17,7 @@
 package com.easynetcn.resource.queryparser;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenFilter;
@@ -677,6 +678,28 @@ public class TestQueryParser extends QueryParserTestBase {
 		});
 	}
 
+	@Test
+	public void testFieldTextsArePerParse() throws Exception {
+		QueryParser qp = new QueryParser("field", new MockAnalyzer(random()));
+		ParseResult result = qp.parseWithFieldTexts("ti=car and co=\"united states\"");
+		List<FieldText> fieldTexts = result.getFieldTexts();
+		Assert.assertEquals(2, fieldTexts.size());
+		Assert.assertEquals("ti", fieldTexts.get(0).getField());
+		Assert.assertEquals("car", fieldTexts.get(0).getText());
+		Assert.assertEquals("co", fieldTexts.get(1).getField());
+		Assert.assertEquals("\"united states\"", fieldTexts.get(1).getText());
+
+		qp.parse("boat");
+		Assert.assertEquals(1, qp.getFieldTexts().size());
+		Assert.assertEquals("boat", qp.getFieldTexts().get(0).getText());
+		// earlier results are not affected by later parses
+		Assert.assertEquals(2, result.getFieldTexts().size());
+
+		qp.setCaptureFieldTexts(false);
+		Assert.assertTrue(qp.parseWithFieldTexts("ti=car").getFieldTexts().isEmpty());
+		Assert.assertTrue(qp.getFieldTexts().isEmpty());
+	}
+
 	@FunctionalInterface
 	public interface ThrowingRunnable {
 		void run() throws Throwable;
@@ -0,0 +1,122 @@
+package com.easynetcn.resource.queryparser;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.spans.SpanNearQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+
+/**
+ * Tests writing queries with {@link QuerySerializer}.
+ */
+@RunWith(RandomizedRunner.class)
+public class TestQuerySerializer {
+
+	private static QueryParser parser() {
+		QueryParser qp = new QueryParser("ti", new MockAnalyzer(QueryParserTestBase.random()));
+		qp.setPointType("clm", PointType.INT);
+		return qp;
+	}
+
+	@Test
+	public void testParsedQueries() throws Exception {
+		QueryParser qp = parser();
+		Assert.assertEquals("ti:car -ti:red", qp.toString(qp.parse("ti=car not ti=red"), "ti"));
+		Assert.assertEquals("ti:a (ti:b ti:c)", qp.toString(qp.parse("ti=a or (ti=b or ti=c)"), "ti"));
+		Assert.assertEquals("ab:whe* ab:/c[ae]r/", qp.toString(qp.parse("ab=whe* or ab=/c[ae]r/"), "ti"));
+		Assert.assertEquals("ab:{a TO *]", qp.toString(qp.parse("ab={a to *]"), "ti"));
+		Assert.assertEquals("clm:[1 TO 20]", qp.toString(qp.parse("clm=[1 to 20]"), "ti"));
+		Assert.assertEquals("(ti:car)^2.0", qp.toString(qp.parse("(ti=car)^2"), "ti"));
+	}
+
+	@Test
+	public void testFieldOfTerms() throws Exception {
+		QueryParser qp = new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random()));
+		// terms and phrases are written with their field, even the default one
+		Assert.assertEquals("field:car ti:bus", qp.toString(qp.parse("car or ti=bus"), "field"));
+		Assert.assertEquals("ti:\"red car\"", qp.toString(qp.parse("ti=\"red car\""), "field"));
+		Assert.assertEquals("(ti:car)^2.0", qp.toString(qp.parse("ti=car^2"), "field"));
+		Assert.assertEquals("(ti:[a TO b})^2.0", qp.toString(qp.parse("ti=[a to b}^2"), "field"));
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testDeprecatedOverloads() throws Exception {
+		QueryParser qp = parser();
+		TermQuery term = new TermQuery(new Term("ab", "a"));
+		Assert.assertEquals("ab:a", qp.toString(term, "ti"));
+		Assert.assertEquals("*:*", qp.toString(new MatchAllDocsQuery()));
+		qp.getQuerySerializer().register(TermQuery.class,
+				(serializer, query, field, out) -> out.append('<').append(query.getTerm().text()).append('>'));
+		Assert.assertEquals("<a>", qp.toString(term, "ti"));
+	}
+
+	@Test
+	public void testPhrases() throws Exception {
+		PhraseQuery.Builder builder = new PhraseQuery.Builder();
+		builder.add(new Term("ti", "a"), 0);
+		builder.add(new Term("ti", "b"), 0);
+		builder.add(new Term("ti", "c"), 2);
+		builder.setSlop(1);
+		Assert.assertEquals("ti:\"a|b ? c\"~1", parser().toString(builder.build(), "ti"));
+	}
+
+	@Test
+	public void testOtherQueries() throws Exception {
+		QueryParser qp = parser();
+		Assert.assertEquals("*:*", qp.toString(new MatchAllDocsQuery(), "ti"));
+		Assert.assertEquals("ab:a ab:b",
+				qp.toString(new TermInSetQuery("ab", Arrays.asList(new BytesRef("b"), new BytesRef("a"))), "ti"));
+		Assert.assertEquals("clm:{1 2}", qp.toString(IntPoint.newSetQuery("clm", 2, 1), "ti"));
+		SpanQuery[] spans = { new SpanTermQuery(new Term("ab", "a")), new SpanTermQuery(new Term("ab", "b")) };
+		Assert.assertEquals("spanNear([ab:a, ab:b], 3, true)", qp.toString(new SpanNearQuery(spans, 3, true), "ti"));
+		Assert.assertEquals("(ti:a)^0.5", qp.toString(new BoostQuery(new TermQuery(new Term("ti", "a")), 0.5f), "ti"));
+		Query unknown = new MatchNoDocsQuery("none");
+		Assert.assertEquals(unknown.toString("ti"), qp.toString(unknown, "ti"));
+	}
+
+	@Test
+	public void testCustomHandler() throws Exception {
+		QueryParser qp = parser();
+		qp.getQuerySerializer().register(TermQuery.class,
+				(serializer, query, field, out) -> out.append('<').append(query.getTerm().text()).append('>'));
+		Assert.assertEquals("+<a> +<b>", qp.toString(qp.parse("ti=a and ti=b"), "ti"));
+
+		// registered handlers also write sub-queries
+		qp.getQuerySerializer().register(BooleanQuery.class,
+				(serializer, query, field, out) -> out.append("bool"));
+		Assert.assertEquals("(bool)^2.0", qp.toString(new BoostQuery(new BooleanQuery.Builder()
+				.add(new TermQuery(new Term("ti", "a")), Occur.MUST).build(), 2), "ti"));
+	}
+
+	@Test
+	public void testAppendable() throws Exception {
+		QueryParser qp = parser();
+		StringWriter out = new StringWriter();
+		out.write("q=");
+		qp.getQuerySerializer().write(qp.parse("ti=a or ti=b"), "ti", out);
+		Assert.assertEquals("q=ti:a ti:b", out.toString());
+
+		StringBuilder sb = new StringBuilder("q=");
+		Assert.assertSame(sb, qp.getQuerySerializer().write(qp.parse("ti=a"), "ti", sb));
+		Assert.assertEquals("q=ti:a", sb.toString());
+	}
+}
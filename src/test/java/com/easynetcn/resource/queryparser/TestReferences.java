@@ -0,0 +1,133 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+
+/**
+ * Tests references such as #12 to earlier queries.
+ */
+@RunWith(RandomizedRunner.class)
+public class TestReferences {
+	private final Map<String, String> history = new HashMap<>();
+	private final AtomicInteger resolved = new AtomicInteger();
+	private QueryParser qp;
+
+	@Before
+	public void setUp() {
+		history.put("1", "ti=a");
+		history.put("2", "ab=b or ab=c");
+		history.put("3", "#1 and co=us");
+		qp = newParser();
+		qp.setReferenceResolver(name -> {
+			resolved.incrementAndGet();
+			return history.get(name);
+		});
+	}
+
+	private static QueryParser newParser() {
+		return new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random()));
+	}
+
+	@Test
+	public void testReferences() throws Exception {
+		QueryParser plain = newParser();
+		Assert.assertEquals(plain.parse("ti=a and (ab=b or ab=c)"), qp.parse("#1 and #2"));
+		Assert.assertEquals(plain.parse("ab=car -ti=a"), qp.parse("ab=car not #1"));
+		Assert.assertEquals(plain.parse("(ab=b or ab=c)^2 or x"), qp.parse("#2^2 or x"));
+		Assert.assertEquals(plain.parse("(ti=a and co=us) or ab=b"), qp.parse("#3 or ab=b"));
+	}
+
+	@Test
+	public void testReferencesAreMemoized() throws Exception {
+		qp.parse("#1 and #2");
+		qp.parse("#2 not #1");
+		qp.parse("#3");
+		Assert.assertEquals(3, resolved.get());
+
+		qp.setDefaultOperator(QueryParser.Operator.AND);
+		qp.parse("#1");
+		Assert.assertEquals(4, resolved.get());
+
+		history.put("1", "ti=z");
+		qp.clearReferences();
+		Assert.assertEquals(newParser().parse("ti=z"), qp.parse("#1"));
+	}
+
+	@Test
+	public void testClearReferencesDropsCachedQueries() throws Exception {
+		ParsedQueryCache cache = new ParsedQueryCache(100);
+		qp.setQueryCache(cache);
+		qp.parse("#1 and ti=x");
+		Assert.assertEquals(1, cache.size());
+
+		history.put("1", "ti=z");
+		qp.clearReferences();
+		Assert.assertEquals(0, cache.size());
+		Assert.assertEquals(newParser().parse("ti=z and ti=x"), qp.parse("#1 and ti=x"));
+	}
+
+	@Test
+	public void testFieldTextsOfReferences() throws Exception {
+		ParseResult result = qp.parseWithFieldTexts("#1 and ti=x");
+		Assert.assertEquals(2, result.getFieldTexts().size());
+		Assert.assertEquals("a", result.getFieldTexts().get(0).getText());
+		Assert.assertEquals("x", result.getFieldTexts().get(1).getText());
+	}
+
+	@Test
+	public void testErrors() throws Exception {
+		ParseException e = TestQueryParser.expectThrows(ParseException.class, () -> qp.parse("#4"));
+		Assert.assertTrue(e.getMessage(), e.getMessage().contains("Unknown reference #4"));
+
+		history.put("5", "#6 or x");
+		history.put("6", "y and #5");
+		e = TestQueryParser.expectThrows(ParseException.class, () -> qp.parse("ti=a or #5"));
+		Assert.assertTrue(e.getMessage(), e.getMessage().contains("Cyclic reference #5 -> #6 -> #5"));
+		e = TestQueryParser.expectThrows(ParseException.class, () -> qp.expandReferences("#6"));
+		Assert.assertTrue(e.getMessage(), e.getMessage().contains("Cyclic reference #6 -> #5 -> #6"));
+
+		qp.setMaxReferenceDepth(1);
+		e = TestQueryParser.expectThrows(ParseException.class, () -> qp.parse("#3"));
+		Assert.assertTrue(e.getMessage(), e.getMessage().contains("nested deeper than 1"));
+
+		e = TestQueryParser.expectThrows(ParseException.class, () -> newParser().parse("#1"));
+		Assert.assertTrue(e.getMessage(), e.getMessage().contains("No ReferenceResolver"));
+
+		// referenced queries are parsed against the default field
+		for (String query : new String[] { "ti=#1", "ti=(x or #1)", "*=#1" }) {
+			e = TestQueryParser.expectThrows(ParseException.class, () -> qp.parse(query));
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("cannot be applied to field"));
+			qp.setIterativeNesting(!qp.getIterativeNesting());
+			e = TestQueryParser.expectThrows(ParseException.class, () -> qp.parseToAst(query));
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("cannot be applied to field"));
+		}
+		Assert.assertEquals(qp.parse("#1"), qp.parse("field=#1"));
+	}
+
+	@Test
+	public void testExpandReferences() throws Exception {
+		Assert.assertEquals("ti=a and (ab=b or ab=c)", qp.expandReferences("#1 and #2"));
+		Assert.assertEquals("(ti=a and co=us) not ti=a", qp.expandReferences("#3 not #1"));
+		Assert.assertEquals("(ti=a)^2", qp.expandReferences("#1^2"));
+		Assert.assertEquals("ti=\"#1\"", qp.expandReferences("ti=\"#1\""));
+
+		// grouping follows the parsed reference, not its whitespace
+		history.put("7", "(ti=a)or(ti=b)");
+		history.put("8", "-ti=a");
+		history.put("9", "(ti=a or ti=b)");
+		Assert.assertEquals("((ti=a)or(ti=b)) and ti=c", qp.expandReferences("#7 and ti=c"));
+		Assert.assertEquals("(-ti=a) or ti=c", qp.expandReferences("#8 or ti=c"));
+		Assert.assertEquals("(ti=a or ti=b) and ti=c", qp.expandReferences("#9 and ti=c"));
+		for (String query : new String[] { "#7 and ti=c", "#8 or ti=c", "#9 and ti=c", "#3 not #2" }) {
+			Assert.assertEquals(query, qp.parse(query), newParser().parse(qp.expandReferences(query)));
+		}
+	}
+}
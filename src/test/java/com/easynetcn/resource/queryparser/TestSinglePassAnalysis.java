@@ -0,0 +1,36 @@
+package com.easynetcn.resource.queryparser;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Runs the QueryParser tests with single pass analysis.
+ */
+public class TestSinglePassAnalysis extends TestQueryParser {
+
+	@Override
+	public QueryParser getParser(Analyzer a) throws Exception {
+		QueryParser qp = super.getParser(a);
+		qp.setSinglePassAnalysis(true);
+		return qp;
+	}
+
+	@Test
+	public void testMatchesCachingTokenFilter() throws Exception {
+		String[] queries = { "dogs", "\"dogs\"", "guinea pig", "\"guinea pig running\"", "\"guinea dogs\"~3",
+				"ti=(dogs and cats)", "\"a very long phrase about dogs and guinea pigs\"", "ti=\"dogs guinea pig\"" };
+		for (Analyzer a : new Analyzer[] { new MockAnalyzer(random()), new MockSynonymAnalyzer() }) {
+			QueryParser twoPass = new QueryParser("field", a);
+			QueryParser singlePass = new QueryParser("field", a);
+			singlePass.setSinglePassAnalysis(true);
+			for (boolean graph : new boolean[] { true, false }) {
+				twoPass.setEnableGraphQueries(graph);
+				singlePass.setEnableGraphQueries(graph);
+				for (String query : queries) {
+					Assert.assertEquals(query, twoPass.parse(query), singlePass.parse(query));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.easynetcn.resource.queryparser;
+
+import java.util.Arrays;
+
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.carrotsearch.randomizedtesting.RandomizedRunner;
+
+/**
+ * Tests QueryParserBase#setTermSetThreshold.
+ */
+@RunWith(RandomizedRunner.class)
+public class TestTermSetThreshold {
+
+	private static QueryParser parser(int threshold) {
+		QueryParser qp = new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random()));
+		qp.setTermSetThreshold(threshold);
+		return qp;
+	}
+
+	private static TermInSetQuery termSet(String field, String... terms) {
+		BytesRef[] bytes = new BytesRef[terms.length];
+		for (int i = 0; i < terms.length; i++) {
+			bytes[i] = new BytesRef(terms[i]);
+		}
+		return new TermInSetQuery(field, Arrays.asList(bytes));
+	}
+
+	@Test
+	public void testConvertsLongDisjunction() throws Exception {
+		QueryParser qp = parser(3);
+		Assert.assertEquals(termSet("pn", "us1", "us2", "us3"), qp.parse("pn=(US1 or US2 or US3)"));
+		Assert.assertEquals(3, qp.getFieldTexts().size());
+		Assert.assertEquals(termSet("pn", "us1", "us2", "us3"), qp.parse("pn=(US1 US2 US3)"));
+
+		// below the threshold, or disabled
+		Assert.assertTrue(qp.parse("pn=(US1 or US2)") instanceof BooleanQuery);
+		Assert.assertTrue(parser(0).parse("pn=(US1 or US2 or US3)") instanceof BooleanQuery);
+	}
+
+	@Test
+	public void testOnlyPlainDisjunctions() throws Exception {
+		QueryParser qp = parser(2);
+		Assert.assertTrue(qp.parse("pn=US1 or ti=US2") instanceof BooleanQuery);
+		Assert.assertTrue(qp.parse("pn=(US1 and US2)") instanceof BooleanQuery);
+		Assert.assertTrue(qp.parse("pn=(US1 or not US2)") instanceof BooleanQuery);
+		Assert.assertTrue(qp.parse("pn=(US1 or US2*)") instanceof BooleanQuery);
+		Assert.assertTrue(qp.parse("pn=(US1 or US2^2)") instanceof BooleanQuery);
+
+		// nested lists are converted on their own
+		BooleanQuery bq = (BooleanQuery) qp.parse("ti=car and pn=(US1 or US2)");
+		Assert.assertEquals(termSet("pn", "us1", "us2"), bq.clauses().get(1).getQuery());
+
+		// with AND as the default operator, only explicit ORs
+		qp.setDefaultOperator(QueryParser.Operator.AND);
+		Assert.assertTrue(qp.parse("pn=(US1 US2)") instanceof BooleanQuery);
+		Assert.assertEquals(termSet("pn", "us1", "us2"), qp.parse("pn=(US1 or US2)"));
+	}
+
+	@Test
+	public void testTermsNotAnalyzedToOneTerm() throws Exception {
+		QueryParser qp = new QueryParser("field", new MockAnalyzer(QueryParserTestBase.random(), MockTokenizer.SIMPLE,
+				true, MockTokenFilter.ENGLISH_STOPSET));
+		qp.setTermSetThreshold(2);
+		BooleanQuery bq = (BooleanQuery) qp.parse("pn=(US1 or US2 or the or foo-bar)");
+		Assert.assertEquals(2, bq.clauses().size());
+		Assert.assertEquals(termSet("pn", "us"), bq.clauses().get(0).getQuery());
+		Assert.assertEquals(Occur.SHOULD, bq.clauses().get(1).getOccur());
+	}
+
+	@Test
+	public void testManyTermsDoNotHitTheClauseLimit() throws Exception {
+		StringBuilder query = new StringBuilder("pn=(");
+		for (int i = 0; i < BooleanQuery.getMaxClauseCount() * 4; i++) {
+			if (i > 0) {
+				query.append(" or ");
+			}
+			query.append("US").append(i);
+		}
+		query.append(')');
+		Query q = parser(100).parse(query.toString());
+		Assert.assertTrue(q instanceof TermInSetQuery);
+	}
+}